@@ -66,6 +66,12 @@ public interface CommandLineOptions {
 	String getOutput();
 	boolean isOutput();
 	
+	@Option(shortName = "j",
+			description = "Jar file to compile all .MLM files in the input files \n" +
+				"\t  and directories to, in parallel.")
+	String getJar();
+	boolean isJar();
+	
 	@Option(shortName = "a",
 			description = "Arguments to MLM if running a MLM.")
 	List<String> getArguments();
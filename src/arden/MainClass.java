@@ -29,35 +29,50 @@ package arden;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.Charset;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import uk.co.flamingpenguin.jewel.cli.ArgumentValidationException;
 import uk.co.flamingpenguin.jewel.cli.CliFactory;
+import arden.compiler.BulkCompiler;
+import arden.compiler.CompilationCache;
 import arden.compiler.Compiler;
+import arden.configuration.ApplicationConfiguration;
 import arden.compiler.CompilerException;
 import arden.compiler.CompiledMlm;
 import arden.constants.ConstantParser;
 import arden.constants.ConstantParser.ConstantParserException;
 import arden.runtime.ArdenValue;
+import arden.runtime.BaseExecutionContext;
+import arden.runtime.DelayedCallScheduler;
 import arden.runtime.ExecutionContext;
 import arden.runtime.ExpressionHelpers;
 import arden.runtime.MedicalLogicModule;
 import arden.runtime.StdIOExecutionContext;
 import arden.runtime.jdbc.JDBCExecutionContext;
+import arden.runtime.metrics.MetricsRegistry;
 
 public class MainClass {
 	public final static String MLM_FILE_EXTENSION = ".mlm";
+	/** configuration key of the file the metrics of the MLMs are written to on exit */
+	public final static String METRICS_FILE_KEY = "metrics.file";
 	
 	private final static String COMPILED_MLM_FILE_EXTENSION = ".class";
 
@@ -106,10 +121,15 @@ public class MainClass {
 		}
 		
 		CompiledMlm mlm = null;
-		Compiler compiler = new Compiler();
-		try {			
-			compiler.enableDebugging(mlmfile.getPath());			
-			mlm = compiler.compileMlm(new FileReader(mlmfile.getPath()));
+		CompilationCache cache = CompilationCache.fromConfiguration();
+		try {
+			if (cache != null) {
+				mlm = compileMlm(mlmfile, cache);
+			} else {
+				Compiler compiler = new Compiler();
+				compiler.enableDebugging(mlmfile.getPath());
+				mlm = compiler.compileMlm(new FileReader(mlmfile.getPath()));
+			}
 		} catch (CompilerException e) {
 			System.err.println("exception compiling " + mlmfile.getPath() + ":");
 			e.printStackTrace();
@@ -126,18 +146,66 @@ public class MainClass {
 		return mlm;
 	}
 	
+	/** Takes the MLM from the compilation cache, or compiles and caches it. */
+	private static CompiledMlm compileMlm(File mlmfile, CompilationCache cache) throws CompilerException,
+			IOException {
+		InputStream in = new FileInputStream(mlmfile);
+		List<CompiledMlm> mlms;
+		try {
+			// FileReader reads the default encoding, too
+			mlms = cache.compile(in, Charset.defaultCharset(), mlmfile.getPath());
+		} finally {
+			in.close();
+		}
+		if (mlms.size() != 1)
+			throw new CompilerException("Expected only a single MLM per file", 0, 0);
+		return mlms.get(0);
+	}
+	
 	private ExecutionContext createExecutionContext() {
+		ExecutionContext context;
 		if (options.isEnvironment()) {
 			if (options.getEnvironment().startsWith("jdbc")) {
-				return new JDBCExecutionContext(options);
+				context = new JDBCExecutionContext(options);
 			} else if ("stdio".equalsIgnoreCase(options.getEnvironment())) {
-				return new StdIOExecutionContext(options);
+				context = new StdIOExecutionContext(options);
 			} else {
-				return new StdIOExecutionContext(options);
+				context = new StdIOExecutionContext(options);
 			}
 		} else {
-			return new StdIOExecutionContext(options);
+			context = new StdIOExecutionContext(options);
+		}
+		installMetrics(context);
+		return context;
+	}
+	
+	/**
+	 * Collects metrics of the MLMs if a metrics file is configured, and writes
+	 * them to the file when the program exits.
+	 */
+	private static void installMetrics(ExecutionContext context) {
+		String path = ApplicationConfiguration.get(METRICS_FILE_KEY);
+		if (path == null || path.trim().length() == 0) {
+			return;
 		}
+		final File file = new File(path.trim());
+		final MetricsRegistry metrics = new MetricsRegistry();
+		context.setExecutionListener(metrics);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try {
+					Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+					try {
+						metrics.writePrometheus(out);
+					} finally {
+						out.close();
+					}
+				} catch (IOException e) {
+					System.err.println("Cannot write the metrics to " + file + ": " + e.getMessage());
+				}
+			}
+		});
 	}
 	
 	private ArdenValue[] getArguments() {
@@ -236,9 +304,31 @@ public class MainClass {
 		// run the mlm
 		runMlm(mlm, context);
 		
+		if (context instanceof BaseExecutionContext) {
+			waitForDelayedCalls((BaseExecutionContext) context);
+		}
 		return 0;
 	}
 	
+	/**
+	 * Waits until the MLMs called with a delay have run, as their threads
+	 * would not keep the program alive, and stops the scheduler.
+	 */
+	private void waitForDelayedCalls(BaseExecutionContext context) {
+		DelayedCallScheduler delayedCalls = context.getDelayedCalls();
+		try {
+			if (delayedCalls.getPendingCount() > 0 && options.getVerbose()) {
+				System.out.println("Waiting for " + delayedCalls.getPendingCount() + " delayed calls...");
+			}
+			delayedCalls.awaitPending(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			context.close();
+			delayedCalls.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			context.close();
+		}
+	}
+	
 	private int compileInputFiles(List<File> inputFiles) {
 		boolean firstFile = true;
 		for (File fileToCompile : inputFiles) {
@@ -285,6 +375,48 @@ public class MainClass {
 		return 0;
 	}
 	
+	/**
+	 * Compiles the .mlm files in the input files and directories in parallel
+	 * and writes them into one jar file with an index.
+	 */
+	private int compileJar(List<File> inputFiles) {
+		List<File> sources = BulkCompiler.findSources(inputFiles);
+		if (options.getVerbose()) {
+			System.out.println("Compiling " + sources.size() + " MLM files ...");
+		}
+		BulkCompiler compiler = new BulkCompiler();
+		List<BulkCompiler.Entry> entries = compiler.compile(sources);
+		if (!compiler.getFailures().isEmpty()) {
+			for (BulkCompiler.Failure failure : compiler.getFailures()) {
+				System.err.println("exception compiling " + failure.getFile().getPath() + ":");
+				failure.getError().printStackTrace();
+			}
+			return 1;
+		}
+		File outputFile = new File(options.getJar());
+		try {
+			OutputStream os = new BufferedOutputStream(new FileOutputStream(outputFile));
+			try {
+				BulkCompiler.writeJar(entries, os);
+			} finally {
+				os.close();
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println("error: " + e.getMessage());
+			outputFile.delete();
+			return 1;
+		} catch (IOException e) {
+			System.err.println("Exception writing output file "
+					+ outputFile.getPath() + ":");
+			e.printStackTrace();
+			return 1;
+		}
+		if (options.getVerbose()) {
+			System.out.println("Wrote " + entries.size() + " MLMs to " + outputFile.getPath());
+		}
+		return 0;
+	}
+	
 	private static void printLogo() {
 		System.out.println("Arden2ByteCode Compiler and Runtime Environment");		
 		System.out.println("Copyright 2010-2011 Daniel Grunwald, Hannes Flicka");
@@ -345,7 +477,7 @@ public class MainClass {
 		}
 		ExecutionContext context = createExecutionContext();
 		ArdenValue[] arguments = getArguments();
-		new MlmDaemon(mlms, context, arguments).run();
+		MlmDaemon.createFromConfiguration(mlms, context, arguments).run();
 		return 0;
 	}
 	
@@ -415,6 +547,8 @@ public class MainClass {
 					return result;
 				}
 			}
+		} else if (options.getCompile() && options.isJar()) {
+			return compileJar(inputFiles);
 		} else if (options.getCompile()) {
 			return compileInputFiles(inputFiles);
 		} else if (options.getDaemon()) {
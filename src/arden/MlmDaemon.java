@@ -1,86 +1,648 @@
 package arden;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+import arden.configuration.ApplicationConfiguration;
 import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
+import arden.runtime.BaseExecutionContext;
+import arden.runtime.DelayedCallScheduler;
 import arden.runtime.ExecutionContext;
+import arden.runtime.MaintenanceMetadata;
 import arden.runtime.MedicalLogicModule;
-import arden.runtime.events.EvokeEvent;
+import arden.runtime.ScheduleJournal;
+import arden.runtime.events.DelayedTriggers;
+import arden.runtime.events.EventBus;
+import arden.runtime.events.TimerWheel;
 
+/**
+ * Runs MLMs at the run times of their evoke events, and when the events in
+ * their evoke slots are fired with fireEvent(). Delayed triggers such as
+ * "3 hours after time of lab_result" are kept in a timer wheel shared by all
+ * MLMs.
+ *
+ * If a journal is set, the next run times, the delayed triggers and the
+ * events the MLMs are subscribed to are recorded in it. A daemon that is
+ * started with the journal of a previous daemon continues its schedule: run
+ * times that passed in the meantime are due immediately, and the pending
+ * delayed triggers are restored. An entry is removed from the journal when
+ * its MLM is started. The evoke slots (and thus the data slots) of the MLMs
+ * found in the journal are not evaluated on startup, but only when one of
+ * their events is fired or their next run time is determined. An MLM is
+ * recognized by its name, version and date; if one of them changes, its
+ * evoke slot is evaluated again.
+ *
+ * By default, the MLMs are run one after another on the daemon thread. If an
+ * executor is given, they are run on the executor instead, so one slow MLM
+ * does not delay the others; the execution context must then be safe to use
+ * concurrently. MLMs with the same run time are started in order of
+ * descending priority. When the maximum number of MLMs is pending, the daemon
+ * waits before it takes further MLMs from the schedule.
+ */
 public class MlmDaemon implements Runnable {
-	List<MedicalLogicModule> mlms;	
+	/**
+	 * configuration key of the number of threads that run MLMs: 0 runs them on
+	 * the daemon thread, "virtual" uses virtual threads if available
+	 */
+	public static final String THREADS_KEY = "daemon.threads";
+	/** configuration key of the milliseconds after which a running MLM is interrupted; 0 for none */
+	public static final String TIMEOUT_KEY = "daemon.timeout";
+	/** configuration key of the maximum number of MLMs that are queued or running */
+	public static final String MAXIMUM_PENDING_KEY = "daemon.maxpending";
+	public static final int DEFAULT_MAXIMUM_PENDING = 1000;
+	/** configuration key of the path of the schedule journal; none if not set */
+	public static final String JOURNAL_KEY = "daemon.journal";
+	/** configuration key of whether every change to the journal is written to the disk immediately */
+	public static final String JOURNAL_SYNC_KEY = "daemon.journal.sync";
+
+	List<MedicalLogicModule> mlms;
 	ExecutionContext context;
 	ArdenValue[] arguments;
-	
+
+	/** guarded by this */
+	private final MlmSchedule schedule;
+	private final EventBus events;
+	/** MLMs triggered by events that are to be run; guarded by this */
+	private final List<MedicalLogicModule> triggered = new ArrayList<MedicalLogicModule>();
+	/** delayed triggers caused by events; guarded by this */
+	private final TimerWheel<DelayedTrigger> delayedTriggers;
+	/** null if the schedule is not journaled; guarded by this */
+	private ScheduleJournal journal;
+	private boolean ownsJournal;
+	/** the run times restored from the journal by MLM name, until run() schedules the MLMs */
+	private final Map<String, ScheduleJournal.Record> restoredFirings = new HashMap<String, ScheduleJournal.Record>();
+	/** the subscriptions restored from the journal by MLM name, until run() schedules the MLMs */
+	private final Map<String, ScheduleJournal.Record> restoredSubscriptions = new HashMap<String, ScheduleJournal.Record>();
+	/** the ids of the subscriptions in the journal; guarded by this */
+	private final Map<MedicalLogicModule, Long> subscriptionIds = new IdentityHashMap<MedicalLogicModule, Long>();
+	/** whether the MLMs have been registered with the event bus */
+	private volatile boolean registered = false;
+	private boolean stopped = false;
+	private boolean exitWhenIdle = true;
+
+	/** null if MLMs are run on the daemon thread */
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final long timeout;
+	private final int maximumPending;
+	private final Semaphore pending;
+	private ScheduledExecutorService watchdog = null;
+
 	public MlmDaemon(List<MedicalLogicModule> mlms, ExecutionContext context, ArdenValue[] arguments) {
+		this(mlms, context, arguments, null, 0, DEFAULT_MAXIMUM_PENDING, false);
+	}
+
+	/**
+	 * Creates a daemon that runs the MLMs on an executor, which is not shut
+	 * down by the daemon.
+	 *
+	 * @param timeout
+	 *            milliseconds after which a running MLM is interrupted; 0 for
+	 *            no timeout
+	 * @param maximumPending
+	 *            the maximum number of MLMs that are queued or running
+	 */
+	public MlmDaemon(List<MedicalLogicModule> mlms, ExecutionContext context, ArdenValue[] arguments,
+			ExecutorService executor, long timeout, int maximumPending) {
+		this(mlms, context, arguments, executor, timeout, maximumPending, false);
+	}
+
+	private MlmDaemon(List<MedicalLogicModule> mlms, ExecutionContext context, ArdenValue[] arguments,
+			ExecutorService executor, long timeout, int maximumPending, boolean ownsExecutor) {
+		if (maximumPending < 1) {
+			throw new IllegalArgumentException("maximumPending must be positive");
+		}
 		this.mlms = mlms;
 		this.context = context;
-		this.arguments = arguments;		
+		this.arguments = arguments;
+		this.schedule = new MlmSchedule(context, arguments);
+		this.events = new EventBus(context, arguments);
+		this.delayedTriggers = new TimerWheel<DelayedTrigger>(context.getCurrentTime().value);
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.timeout = timeout;
+		this.maximumPending = maximumPending;
+		this.pending = new Semaphore(maximumPending);
 	}
-	
-	private SortedMap<ArdenTime, List<MedicalLogicModule>> createSchedule(List<MedicalLogicModule> mlms) {
-		SortedMap<ArdenTime, List<MedicalLogicModule>> mlmSchedule = new TreeMap<ArdenTime, List<MedicalLogicModule>>(new ArdenTime.NaturalComparator());
-		for (MedicalLogicModule mlm : mlms) {
+
+	/**
+	 * Creates a daemon with the executor, timeout and queue size given in the
+	 * configuration.
+	 */
+	public static MlmDaemon createFromConfiguration(List<MedicalLogicModule> mlms, ExecutionContext context,
+			ArdenValue[] arguments) {
+		ExecutorService executor = createExecutor(ApplicationConfiguration.get(THREADS_KEY));
+		long timeout = Math.max(0, ApplicationConfiguration.getLong(TIMEOUT_KEY, 0));
+		int maximumPending = (int) Math.max(1, ApplicationConfiguration.getLong(MAXIMUM_PENDING_KEY,
+				DEFAULT_MAXIMUM_PENDING));
+		MlmDaemon daemon = new MlmDaemon(mlms, context, arguments, executor, timeout, maximumPending, true);
+		String journalPath = ApplicationConfiguration.get(JOURNAL_KEY);
+		if (journalPath != null && journalPath.trim().length() > 0) {
+			boolean sync = "true".equalsIgnoreCase(ApplicationConfiguration.get(JOURNAL_SYNC_KEY));
+			ScheduleJournal journal;
 			try {
-				EvokeEvent e = mlm.getEvoke(context, arguments);
-				ArdenTime currentTime = context.getCurrentTime();
-				ArdenTime nextRuntime = e.getNextRunTime(context);
-				if (nextRuntime == null || currentTime.compareTo(nextRuntime) > 0) {
-					continue;
+				journal = new ScheduleJournal(new File(journalPath.trim()), ScheduleJournal.DEFAULT_CAPACITY, sync);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			daemon.setJournal(journal);
+			daemon.ownsJournal = true;
+			if (context instanceof BaseExecutionContext) {
+				// the delayed calls of the MLMs are journaled as well
+				((BaseExecutionContext) context).getDelayedCalls().setJournal(journal);
+			}
+		}
+		return daemon;
+	}
+
+	/**
+	 * Creates an executor for the value of the "daemon.threads" setting, or
+	 * returns null if the MLMs are to be run on the daemon thread.
+	 */
+	static ExecutorService createExecutor(String threads) {
+		if (threads == null || threads.trim().length() == 0) {
+			return null;
+		}
+		threads = threads.trim();
+		if ("virtual".equalsIgnoreCase(threads)) {
+			try {
+				// Java 21 and later
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (Exception e) {
+				System.err.println("Virtual threads are not available, using a fixed thread pool.");
+				return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			}
+		}
+		int count;
+		try {
+			count = Integer.parseInt(threads);
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid value for " + THREADS_KEY + ": " + threads);
+			return null;
+		}
+		return count > 0 ? Executors.newFixedThreadPool(count) : null;
+	}
+
+	/**
+	 * Sets whether run() returns when no MLM is scheduled (the default), or
+	 * waits for MLMs to be added.
+	 */
+	public synchronized void setExitWhenIdle(boolean exitWhenIdle) {
+		this.exitWhenIdle = exitWhenIdle;
+		notifyAll();
+	}
+
+	/**
+	 * Records the schedule in a journal, and restores the run times, the
+	 * delayed triggers and the event subscriptions of the MLMs from it. Must
+	 * be called before run() and before events are fired; the daemon does not
+	 * close the journal.
+	 */
+	public synchronized void setJournal(ScheduleJournal journal) {
+		this.journal = journal;
+		schedule.setJournal(journal);
+		Map<String, MedicalLogicModule> byName = new HashMap<String, MedicalLogicModule>();
+		for (MedicalLogicModule mlm : mlms) {
+			String name = mlm.getName().toLowerCase();
+			if (!byName.containsKey(name)) {
+				byName.put(name, mlm);
+			}
+		}
+		for (ScheduleJournal.Record record : journal.getRecords()) {
+			String name = record.getName().toLowerCase();
+			MedicalLogicModule mlm = byName.get(name);
+			if (mlm != null && record.getKind() == ScheduleJournal.FIRING && !restoredFirings.containsKey(name)) {
+				restoredFirings.put(name, record);
+			} else if (mlm != null && record.getKind() == ScheduleJournal.TRIGGER) {
+				delayedTriggers.schedule(record.getTime(), new DelayedTrigger(mlm, record.getId()));
+			} else if (mlm != null && record.getKind() == ScheduleJournal.SUBSCRIPTION && !registered
+					&& !restoredSubscriptions.containsKey(name) && isSubscriptionOf(record, mlm)) {
+				restoredSubscriptions.put(name, record);
+			} else if (record.getKind() != ScheduleJournal.CALL) {
+				// MLMs that are no longer deployed or have changed
+				journal.remove(record.getId());
+			}
+		}
+		registerMlms();
+	}
+
+	/**
+	 * Subscribes the MLMs to their events, with the mappings restored from
+	 * the journal if there are any.
+	 */
+	private synchronized void registerMlms() {
+		if (registered) {
+			return;
+		}
+		Set<String> restored = new HashSet<String>();
+		for (MedicalLogicModule mlm : mlms) {
+			String name = mlm.getName().toLowerCase();
+			// like the firings, a subscription belongs to the first MLM with the name
+			ScheduleJournal.Record subscription = restored.add(name) ? restoredSubscriptions.get(name) : null;
+			if (subscription != null) {
+				events.register(mlm, decodeMappings(subscription.getPayload()));
+			} else {
+				events.register(mlm);
+			}
+		}
+		registered = true;
+	}
+
+	/**
+	 * Encodes the identity of an MLM and the mappings of its events (null if
+	 * it receives every event) as the payload of a subscription.
+	 */
+	private static byte[] encodeSubscription(MedicalLogicModule mlm, Collection<String> mappings) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeUTF(getIdentity(mlm));
+			out.writeInt(mappings == null ? -1 : mappings.size());
+			if (mappings != null) {
+				for (String mapping : mappings) {
+					out.writeUTF(mapping);
 				}
-				List<MedicalLogicModule> alreadyScheduled = mlmSchedule.get(nextRuntime);
-				if (alreadyScheduled == null) {
-					List<MedicalLogicModule> toSchedule = new LinkedList<MedicalLogicModule>();
-					toSchedule.add(mlm);
-					mlmSchedule.put(nextRuntime, toSchedule);
-				} else {
-					alreadyScheduled.add(mlm);
+			}
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/** Returns whether a subscription was recorded for the same version of an MLM. */
+	private static boolean isSubscriptionOf(ScheduleJournal.Record subscription, MedicalLogicModule mlm) {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(subscription.getPayload()));
+		try {
+			return in.readUTF().equals(getIdentity(mlm));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static List<String> decodeMappings(byte[] payload) {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		try {
+			in.readUTF();
+			int count = in.readInt();
+			if (count < 0) {
+				return null;
+			}
+			List<String> mappings = new ArrayList<String>(count);
+			for (int i = 0; i < count; i++) {
+				mappings.add(in.readUTF());
+			}
+			return mappings;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Gets the name, version and date of an MLM. */
+	private static String getIdentity(MedicalLogicModule mlm) {
+		MaintenanceMetadata maintenance = mlm.getMaintenance();
+		Date date = maintenance.getDate();
+		return maintenance.getMlmName() + "\t" + maintenance.getVersion() + "\t" + (date == null ? "" : date.getTime());
+	}
+
+	/** Schedules an additional MLM. */
+	public synchronized void add(MedicalLogicModule mlm) {
+		schedule.add(mlm);
+		events.register(mlm);
+		notifyAll();
+	}
+	
+	/**
+	 * Removes an MLM from the schedule and from the event subscriptions. Its
+	 * pending delayed triggers are dropped when they expire.
+	 */
+	public synchronized void remove(MedicalLogicModule mlm) {
+		schedule.remove(mlm);
+		events.unregister(mlm);
+		Long subscriptionId = subscriptionIds.remove(mlm);
+		if (subscriptionId != null) {
+			journal.remove(subscriptionId);
+		}
+	}
+	
+	/**
+	 * Passes an event to the MLMs that refer to it in their evoke slots. The
+	 * MLMs that are triggered immediately are run by the daemon; delayed
+	 * triggers are scheduled.
+	 */
+	public void fireEvent(String event) {
+		if (!registered) {
+			registerMlms();
+		}
+		MedicalLogicModule[] subscribers = events.getSubscribers(event);
+		if (subscribers.length == 0) {
+			return;
+		}
+		List<MedicalLogicModule> toRun = new ArrayList<MedicalLogicModule>();
+		TriggerCollector delayed = new TriggerCollector();
+		for (MedicalLogicModule mlm : subscribers) {
+			delayed.mlm = mlm;
+			if (events.runOnEvent(mlm, event, delayed)) {
+				toRun.add(mlm);
+			}
+		}
+		if (toRun.isEmpty() && delayed.times.isEmpty()) {
+			return;
+		}
+		synchronized (this) {
+			for (int i = 0; i < delayed.times.size(); i++) {
+				MedicalLogicModule mlm = delayed.mlms.get(i);
+				long time = delayed.times.get(i).value;
+				long journalId = 0;
+				if (journal != null) {
+					journalId = journal.add(ScheduleJournal.TRIGGER, time, mlm.getName(), null);
 				}
-			} catch (InvocationTargetException e) {
-				throw new RuntimeException(e);
+				delayedTriggers.schedule(time, new DelayedTrigger(mlm, journalId));
 			}
+			triggered.addAll(toRun);
+			notifyAll();
+		}
+	}
+	
+	/** Collects the delayed triggers of the MLMs that receive an event. */
+	private static final class TriggerCollector implements DelayedTriggers {
+		MedicalLogicModule mlm;
+		final List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		final List<ArdenTime> times = new ArrayList<ArdenTime>();
+		
+		@Override
+		public void triggerAt(ArdenTime time) {
+			mlms.add(mlm);
+			times.add(time);
 		}
-		return mlmSchedule;
 	}
 	
+	private static final class DelayedTrigger {
+		final MedicalLogicModule mlm;
+		/** the id of the trigger in the journal, or 0 */
+		final long journalId;
+		
+		DelayedTrigger(MedicalLogicModule mlm, long journalId) {
+			this.mlm = mlm;
+			this.journalId = journalId;
+		}
+	}
+	
+	/** Gets the number of pending delayed triggers. */
+	public synchronized int getDelayedTriggerCount() {
+		return delayedTriggers.size();
+	}
+
+	/**
+	 * Determines the next run time of an MLM again, e.g. after an event
+	 * changed its evoke event.
+	 */
+	public synchronized void reschedule(MedicalLogicModule mlm) {
+		schedule.add(mlm);
+		notifyAll();
+	}
+
+	/** Wakes the daemon up to check for due MLMs before its next run time. */
+	public synchronized void wakeUp() {
+		notifyAll();
+	}
+
+	/** Makes run() return after the MLMs that are running have finished. */
+	public synchronized void stop() {
+		stopped = true;
+		notifyAll();
+	}
+
+	/** Gets the number of MLMs that are queued or running on the executor. */
+	public int getPendingCount() {
+		return maximumPending - pending.availablePermits();
+	}
+
 	@Override
 	public void run() {
-		while (true) {
-			SortedMap<ArdenTime, List<MedicalLogicModule>> mlmSchedule = createSchedule(mlms);
-			if (mlmSchedule.isEmpty()) {
-				break;
-			}
-			ArdenTime nextRuntime = mlmSchedule.firstKey();
-			List<MedicalLogicModule> scheduledMlms = mlmSchedule.get(nextRuntime);
-			ArdenTime currentTime = context.getCurrentTime();
-			long delay = nextRuntime.value - currentTime.value;
-			if (delay >= 0) {
-				try {
-					Thread.sleep(nextRuntime.value - currentTime.value);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
+		synchronized (this) {
+			registerMlms();
+			for (MedicalLogicModule mlm : mlms) {
+				String name = mlm.getName().toLowerCase();
+				ScheduleJournal.Record firing = restoredFirings.remove(name);
+				ScheduleJournal.Record subscription = restoredSubscriptions.remove(name);
+				if (firing != null) {
+					schedule.restore(mlm, firing);
+				} else if (subscription == null) {
+					schedule.add(mlm);
 				}
+				// else the MLM had no next run time
+				if (journal == null || subscriptionIds.containsKey(mlm) || !events.isRegistered(mlm)) {
+					continue;
+				}
+				if (subscription != null) {
+					subscriptionIds.put(mlm, subscription.getId());
+				} else {
+					// recorded after the MLM is scheduled, so that a subscription
+					// without firing means that it has no next run time
+					byte[] payload = encodeSubscription(mlm, events.getMappings(mlm));
+					subscriptionIds.put(mlm, journal.add(ScheduleJournal.SUBSCRIPTION, 0, mlm.getName(), payload));
+				}
+			}
+		}
+		try {
+			List<MedicalLogicModule> scheduledMlms;
+			while ((scheduledMlms = waitForDueMlms()) != null) {
 				for (MedicalLogicModule mlm : scheduledMlms) {
-					try {
-						mlm.run(context, arguments);
-					} catch (InvocationTargetException e) {
-						throw new RuntimeException(e);
+					if (executor == null) {
+						try {
+							mlm.run(context, arguments);
+						} catch (InvocationTargetException e) {
+							throw new RuntimeException(e);
+						}
+					} else {
+						submit(mlm);
 					}
 				}
 			}
-			while (nextRuntime.compareTo(context.getCurrentTime()) >= 0) {
-				try {
-					Thread.sleep(1); // make sure at least 1 ms passes
-				} catch (InterruptedException e) {
-					e.printStackTrace();
+		} finally {
+			if (executor != null) {
+				// wait for the pending MLMs
+				pending.acquireUninterruptibly(maximumPending);
+				pending.release(maximumPending);
+				if (ownsExecutor) {
+					executor.shutdown();
+				}
+			}
+			boolean closeJournal;
+			synchronized (this) {
+				closeJournal = ownsJournal;
+			}
+			if (closeJournal && context instanceof BaseExecutionContext) {
+				// running delayed calls remove themselves from the journal;
+				// not waited for while holding the lock, which they may need
+				awaitTermination(((BaseExecutionContext) context).getDelayedCalls());
+			}
+			synchronized (this) {
+				if (closeJournal) {
+					journal.close();
+				}
+				if (watchdog != null) {
+					watchdog.shutdownNow();
+					watchdog = null;
 				}
 			}
 		}
 	}
 
+	/**
+	 * Sleeps until the next run time or until the daemon is woken up, and
+	 * returns the due MLMs. Returns null if the daemon is stopped.
+	 */
+	private synchronized List<MedicalLogicModule> waitForDueMlms() {
+		while (!stopped) {
+			ArdenTime currentTime = context.getCurrentTime();
+			List<MedicalLogicModule> due = schedule.pollDue(currentTime);
+			if (!triggered.isEmpty()) {
+				due.addAll(0, triggered);
+				triggered.clear();
+			}
+			for (DelayedTrigger trigger : delayedTriggers.advance(currentTime.value)) {
+				if (trigger.journalId != 0) {
+					journal.remove(trigger.journalId);
+				}
+				if (events.isRegistered(trigger.mlm)) {
+					due.add(trigger.mlm);
+				}
+			}
+			if (!due.isEmpty()) {
+				return due;
+			}
+			ArdenTime nextRuntime = schedule.getNextTime();
+			long nextExpiry = delayedTriggers.getNextExpiry();
+			if (nextRuntime == null && nextExpiry != Long.MAX_VALUE
+					|| nextRuntime != null && nextExpiry < nextRuntime.value) {
+				nextRuntime = new ArdenTime(nextExpiry);
+			}
+			try {
+				if (nextRuntime != null) {
+					wait(Math.max(1, nextRuntime.value - currentTime.value));
+				} else if (exitWhenIdle) {
+					break;
+				} else {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stops the delayed calls and waits until the running calls have finished,
+	 * like the pending MLMs are waited for.
+	 */
+	private static void awaitTermination(DelayedCallScheduler delayedCalls) {
+		delayedCalls.shutdown();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (delayedCalls.awaitTermination(1, TimeUnit.SECONDS))
+					break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Runs an MLM on the executor, waiting while too many MLMs are pending. */
+	private void submit(MedicalLogicModule mlm) {
+		pending.acquireUninterruptibly();
+		try {
+			executor.execute(new MlmTask(mlm));
+		} catch (RejectedExecutionException e) {
+			pending.release();
+			throw e;
+		}
+	}
+
+	private synchronized ScheduledExecutorService getWatchdog() {
+		if (watchdog == null) {
+			watchdog = Executors.newSingleThreadScheduledExecutor();
+		}
+		return watchdog;
+	}
+
+	/** Runs an MLM and interrupts it when the timeout elapses. */
+	private final class MlmTask implements Runnable {
+		private final MedicalLogicModule mlm;
+		private Thread worker;
+		private boolean finished = false;
+
+		MlmTask(MedicalLogicModule mlm) {
+			this.mlm = mlm;
+		}
+
+		@Override
+		public void run() {
+			ScheduledFuture<?> alarm = null;
+			try {
+				if (timeout > 0) {
+					worker = Thread.currentThread();
+					alarm = getWatchdog().schedule(new Runnable() {
+						@Override
+						public void run() {
+							interruptIfRunning();
+						}
+					}, timeout, TimeUnit.MILLISECONDS);
+				}
+				mlm.run(context, arguments);
+			} catch (InvocationTargetException e) {
+				System.err.println("MLM " + mlm.getName() + " failed:");
+				e.getCause().printStackTrace();
+			} catch (RuntimeException e) {
+				System.err.println("MLM " + mlm.getName() + " failed:");
+				e.printStackTrace();
+			} finally {
+				synchronized (this) {
+					finished = true;
+				}
+				if (alarm != null) {
+					alarm.cancel(false);
+					// don't leave the pool thread interrupted
+					Thread.interrupted();
+				}
+				pending.release();
+			}
+		}
+
+		synchronized void interruptIfRunning() {
+			if (!finished) {
+				System.err.println("MLM " + mlm.getName() + " timed out after " + timeout + " ms");
+				worker.interrupt();
+			}
+		}
+	}
 }
@@ -0,0 +1,219 @@
+package arden;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.ScheduleJournal;
+import arden.runtime.events.EvokeEvent;
+
+/**
+ * The next run times of a set of MLMs, kept in a heap. Only the MLMs that are
+ * added, rescheduled or due are evaluated, so that the cost of taking the due
+ * MLMs does not grow with the number of scheduled MLMs.
+ *
+ * MLMs with the same run time are due in order of descending priority, and
+ * in the order they were scheduled if their priorities are equal.
+ *
+ * After an MLM has become due at a time t, its next run time is determined as
+ * soon as the current time is after t, as the evoke events only advance past
+ * t then.
+ *
+ * If a journal is set, the pending entries are recorded in it, including
+ * those of MLMs that need a new run time. Restoring an entry from the
+ * journal does not evaluate the evoke slot of the MLM; that is deferred
+ * until its next run time is determined.
+ *
+ * This class is not thread-safe.
+ */
+public final class MlmSchedule {
+	private final ExecutionContext context;
+	private final ArdenValue[] arguments;
+	private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+	/** the pending entry of every MLM in the queue */
+	private final Map<MedicalLogicModule, Entry> entries = new IdentityHashMap<MedicalLogicModule, Entry>();
+	private long nextSequence;
+	private ScheduleJournal journal;
+	/** payload of the firings of MLMs that need a new run time */
+	private static final byte[] RECOMPUTE = { 1 };
+
+	private static final class Entry implements Comparable<Entry> {
+		final MedicalLogicModule mlm;
+		/** null until the evoke slot is evaluated */
+		final EvokeEvent evoke;
+		final long time;
+		final double priority;
+		/** orders entries with the same time and priority by insertion */
+		final long sequence;
+		/** the MLM was due at time - 1 and needs a new run time */
+		final boolean recompute;
+		/** the id of the firing in the journal, or 0 */
+		long journalId;
+		boolean cancelled;
+
+		Entry(MedicalLogicModule mlm, EvokeEvent evoke, long time, long sequence, boolean recompute) {
+			this.mlm = mlm;
+			this.evoke = evoke;
+			this.time = time;
+			this.priority = mlm.getPriority();
+			this.sequence = sequence;
+			this.recompute = recompute;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if (time != other.time)
+				return time < other.time ? -1 : 1;
+			if (priority != other.priority)
+				return priority > other.priority ? -1 : 1;
+			if (sequence != other.sequence)
+				return sequence < other.sequence ? -1 : 1;
+			return 0;
+		}
+	}
+
+	public MlmSchedule(ExecutionContext context, ArdenValue[] arguments) {
+		this.context = context;
+		this.arguments = arguments;
+	}
+
+	/** Sets the journal in which the run times are recorded, or null. */
+	public void setJournal(ScheduleJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Schedules an MLM at the next run time of its evoke event, unless it has
+	 * none or it lies in the past. If the MLM is scheduled already, its run
+	 * time is determined again.
+	 */
+	public void add(MedicalLogicModule mlm) {
+		EvokeEvent evoke = getEvoke(mlm);
+		// the old run time is removed from the journal after the new one is
+		// added, so that a crash in between does not lose the MLM
+		Entry old = entries.remove(mlm);
+		schedule(mlm, evoke, context.getCurrentTime());
+		if (old != null) {
+			old.cancelled = true;
+			forget(old);
+		}
+	}
+
+	/**
+	 * Schedules an MLM at a run time restored from the journal, which may
+	 * be in the past; the MLM is then due immediately. The evoke slot of the
+	 * MLM is not evaluated.
+	 */
+	public void restore(MedicalLogicModule mlm, ScheduleJournal.Record firing) {
+		cancel(mlm);
+		boolean recompute = Arrays.equals(firing.getPayload(), RECOMPUTE);
+		Entry entry = new Entry(mlm, null, firing.getTime(), nextSequence++, recompute);
+		entry.journalId = firing.getId();
+		enqueue(entry);
+	}
+
+	private EvokeEvent getEvoke(MedicalLogicModule mlm) {
+		try {
+			return mlm.getEvoke(context, arguments);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Removes an MLM from the schedule. */
+	public void remove(MedicalLogicModule mlm) {
+		cancel(mlm);
+	}
+
+	/** Returns whether no MLM is scheduled. */
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/** Gets the number of scheduled MLMs. */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the time at which pollDue() needs to be called next, or null if no
+	 * MLM is scheduled.
+	 */
+	public ArdenTime getNextTime() {
+		Entry head = peek();
+		return head == null ? null : new ArdenTime(head.time);
+	}
+
+	/**
+	 * Removes the MLMs that are due at the specified time from the schedule
+	 * and returns them in order of their run times and priorities. They are
+	 * scheduled again once their evoke events have advanced.
+	 */
+	public List<MedicalLogicModule> pollDue(ArdenTime now) {
+		List<MedicalLogicModule> due = new ArrayList<MedicalLogicModule>();
+		Entry head;
+		while ((head = peek()) != null && head.time <= now.value) {
+			queue.poll();
+			entries.remove(head.mlm);
+			if (head.recompute) {
+				schedule(head.mlm, head.evoke, now);
+			} else {
+				due.add(head.mlm);
+				Entry entry = new Entry(head.mlm, head.evoke, head.time + 1, nextSequence++, true);
+				if (journal != null)
+					entry.journalId = journal.add(ScheduleJournal.FIRING, entry.time, head.mlm.getName(), RECOMPUTE);
+				enqueue(entry);
+			}
+			forget(head);
+		}
+		return due;
+	}
+
+	private void schedule(MedicalLogicModule mlm, EvokeEvent evoke, ArdenTime now) {
+		if (evoke == null)
+			evoke = getEvoke(mlm);
+		ArdenTime nextRunTime = evoke.getNextRunTime(context);
+		if (nextRunTime == null || now.compareTo(nextRunTime) > 0)
+			return;
+		Entry entry = new Entry(mlm, evoke, nextRunTime.value, nextSequence++, false);
+		if (journal != null)
+			entry.journalId = journal.add(ScheduleJournal.FIRING, entry.time, mlm.getName(), null);
+		enqueue(entry);
+	}
+
+	private void enqueue(Entry entry) {
+		entries.put(entry.mlm, entry);
+		queue.add(entry);
+	}
+
+	private void cancel(MedicalLogicModule mlm) {
+		Entry entry = entries.remove(mlm);
+		if (entry != null) {
+			entry.cancelled = true;
+			forget(entry);
+		}
+	}
+
+	private void forget(Entry entry) {
+		if (entry.journalId != 0 && journal != null)
+			journal.remove(entry.journalId);
+	}
+
+	/** Gets the first entry that was not cancelled. */
+	private Entry peek() {
+		Entry head = queue.peek();
+		while (head != null && head.cancelled) {
+			queue.poll();
+			head = queue.peek();
+		}
+		return head;
+	}
+}
@@ -0,0 +1,87 @@
+package arden.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arden.runtime.ArdenDuration;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.DatabaseQuery;
+import arden.runtime.ExecutionContext;
+import arden.runtime.events.CyclicEvokeEvent;
+
+/**
+ * Cost of the first next run time of "every 1 minute for 10 years" after the
+ * daemon has been up for some days: stepping through every past minute (as
+ * CyclicEvokeEvent used to) versus computing the occurrence arithmetically.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CyclicEvokeBenchmark {
+	private static final long START = 1262304000000L; // 2010-01-01
+
+	@Param({ "1", "30", "365" })
+	public int uptimeDays;
+
+	private ArdenDuration interval;
+	private ArdenDuration length;
+	private ArdenTime starting;
+	private ExecutionContext context;
+
+	@Setup
+	public void setup() {
+		interval = (ArdenDuration) ArdenDuration.seconds(60, 0);
+		length = (ArdenDuration) ArdenDuration.seconds(10 * 365 * 86400.0, 0);
+		starting = new ArdenTime(START);
+		final ArdenTime now = new ArdenTime(START + uptimeDays * 86400000L + 30000);
+		context = new ExecutionContext() {
+			@Override
+			public DatabaseQuery createQuery(String mapping) {
+				return DatabaseQuery.NULL;
+			}
+
+			@Override
+			public void write(ArdenValue message, String destination) {
+			}
+
+			@Override
+			public ArdenTime getCurrentTime() {
+				return now;
+			}
+		};
+	}
+
+	@Benchmark
+	public ArdenTime stepping() {
+		ArdenTime current = context.getCurrentTime();
+		ArdenTime limit = new ArdenTime(starting.add(length));
+		ArdenTime next = starting;
+		while (current.compareTo(next) > 0) {
+			next = new ArdenTime(next.add(interval));
+			if (next.compareTo(limit) > 0) {
+				return null;
+			}
+		}
+		return next;
+	}
+
+	@Benchmark
+	public ArdenTime closedForm() {
+		return new CyclicEvokeEvent(interval, length, starting).getNextRunTime(context);
+	}
+}
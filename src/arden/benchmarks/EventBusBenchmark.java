@@ -0,0 +1,90 @@
+package arden.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arden.runtime.ArdenValue;
+import arden.runtime.DatabaseQuery;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.events.EventBus;
+import arden.runtime.events.MappedEvokeEvent;
+
+/**
+ * Cost of dispatching one event to the MLMs subscribed to it, as a function of
+ * the number of deployed MLMs: asking every MLM's evoke event versus looking
+ * the subscribers up in the EventBus. Every MLM is subscribed to one of 100
+ * event names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBusBenchmark {
+	private static final int EVENT_NAMES = 100;
+
+	@Param({ "100", "1000", "2000", "10000" })
+	public int count;
+
+	private ExecutionContext context;
+	private List<MedicalLogicModule> mlms;
+	private EventBus bus;
+	private int next;
+
+	@Setup
+	public void setup() {
+		context = new ExecutionContext() {
+			@Override
+			public DatabaseQuery createQuery(String mapping) {
+				return DatabaseQuery.NULL;
+			}
+
+			@Override
+			public void write(ArdenValue message, String destination) {
+			}
+		};
+		mlms = new ArrayList<MedicalLogicModule>();
+		bus = new EventBus(context, null);
+		for (int i = 0; i < count; i++) {
+			MedicalLogicModule mlm = new StubModule(new MappedEvokeEvent("Lab_Result_" + (i % EVENT_NAMES)));
+			mlms.add(mlm);
+			bus.register(mlm);
+		}
+	}
+
+	private String nextEvent() {
+		next = (next + 1) % EVENT_NAMES;
+		return "lab_result_" + next;
+	}
+
+	@Benchmark
+	public List<MedicalLogicModule> askEveryMlm() throws Exception {
+		String event = nextEvent();
+		List<MedicalLogicModule> triggered = new ArrayList<MedicalLogicModule>();
+		for (MedicalLogicModule mlm : mlms) {
+			if (mlm.getEvoke(context, null).runOnEvent(event, context))
+				triggered.add(mlm);
+		}
+		return triggered;
+	}
+
+	@Benchmark
+	public List<MedicalLogicModule> eventBus() {
+		return bus.fire(nextEvent());
+	}
+}
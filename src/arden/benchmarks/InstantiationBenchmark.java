@@ -0,0 +1,78 @@
+package arden.benchmarks;
+
+import java.io.InputStreamReader;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.Compiler;
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.MedicalLogicModuleImplementation;
+
+/**
+ * Compares the cost of creating MLM implementation instances (which includes
+ * running the data slot) through the generated createInstance() method with
+ * the reflective paths used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstantiationBenchmark {
+	@Param({ "x2.1", "x2.2", "x2.3", "x2.4", "x2.5", "x2.6", "x2.7", "x2.8" })
+	public String mlmFile;
+
+	private CompiledMlm mlm;
+	private Class<? extends MedicalLogicModuleImplementation> clazz;
+	private Constructor<? extends MedicalLogicModuleImplementation> ctor;
+	private ExecutionContext context;
+	private ArdenValue[] arguments;
+
+	@Setup
+	public void setup() throws Exception {
+		mlm = new Compiler().compileMlm(new InputStreamReader(
+				InstantiationBenchmark.class.getResourceAsStream("/arden/tests/" + mlmFile + ".mlm"), "UTF-8"));
+		context = new ExecutionContext() {
+		};
+		arguments = ArdenList.EMPTY.getElements();
+		clazz = mlm.createInstance(context, arguments).getClass();
+		ctor = clazz.getConstructor(ExecutionContext.class, MedicalLogicModule.class, ArdenValue[].class);
+	}
+
+	/** The path used before: synchronized constructor lookup on every call. */
+	@Benchmark
+	public MedicalLogicModuleImplementation reflectiveLookupAndNewInstance() throws Exception {
+		Constructor<? extends MedicalLogicModuleImplementation> c;
+		synchronized (this) {
+			c = clazz.getConstructor(ExecutionContext.class, MedicalLogicModule.class, ArdenValue[].class);
+		}
+		return c.newInstance(context, mlm, arguments);
+	}
+
+	@Benchmark
+	public MedicalLogicModuleImplementation reflectiveNewInstance() throws Exception {
+		return ctor.newInstance(context, mlm, arguments);
+	}
+
+	@Benchmark
+	public MedicalLogicModuleImplementation generatedFactory() throws Exception {
+		return mlm.createInstance(context, arguments);
+	}
+}
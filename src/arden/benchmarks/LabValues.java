@@ -0,0 +1,77 @@
+package arden.benchmarks;
+
+import java.util.Random;
+
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenValue;
+
+/**
+ * Creates reproducible patient data for the benchmarks. All values are
+ * generated from a fixed seed, so that every run works on the same input.
+ */
+final class LabValues {
+	/** 2010-01-01T00:00:00 GMT */
+	static final long START_TIME = 1262304000000L;
+	static final long MILLISECONDS_PER_HOUR = 60L * 60 * 1000;
+
+	static final String[] LAB_NAMES = { "glucose", "potassium", "sodium", "serum_creatinine", "hemoglobin",
+			"platelet_count", "white_blood_cell_count", "serum_calcium", "serum_albumin", "blood_urea_nitrogen" };
+
+	private LabValues() {
+	}
+
+	/**
+	 * Creates glucose readings (mg/dl), one per hour. The readings are not
+	 * in chronological order, as they would be returned by a database query
+	 * without ORDER BY clause.
+	 */
+	static ArdenList glucoseReadings(int count) {
+		Random random = new Random(42);
+		ArdenValue[] values = new ArdenValue[count];
+		for (int i = 0; i < count; i++) {
+			double value = Math.round(70 + random.nextGaussian() * 25 + 40);
+			values[i] = ArdenNumber.create(value, START_TIME + i * MILLISECONDS_PER_HOUR);
+		}
+		shuffle(values, random);
+		return new ArdenList(values);
+	}
+
+	/** Creates the same readings as glucoseReadings(), in numeric list form. */
+	static ArdenList numericGlucoseReadings(int count) {
+		ArdenValue[] values = glucoseReadings(count).getElements();
+		double[] numbers = new double[count];
+		long[] times = new long[count];
+		for (int i = 0; i < count; i++) {
+			numbers[i] = ((ArdenNumber) values[i]).value;
+			times[i] = values[i].primaryTime;
+		}
+		return new ArdenList(numbers, times);
+	}
+
+	/** Creates the names of the lab tests belonging to a list of readings. */
+	static ArdenList labNames(int count) {
+		Random random = new Random(43);
+		ArdenValue[] values = new ArdenValue[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = new ArdenString(LAB_NAMES[random.nextInt(LAB_NAMES.length)], START_TIME + i
+					* MILLISECONDS_PER_HOUR);
+		}
+		return new ArdenList(values);
+	}
+
+	/** Gets the end of the time span covered by a list of readings. */
+	static long endTime(int count) {
+		return START_TIME + count * MILLISECONDS_PER_HOUR;
+	}
+
+	private static void shuffle(ArdenValue[] values, Random random) {
+		for (int i = values.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			ArdenValue tmp = values[i];
+			values[i] = values[j];
+			values[j] = tmp;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package arden.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.MemoryQuery;
+
+/**
+ * Benchmarks for the constraint and aggregation chain of MemoryQuery, as used
+ * by "read latest ({glucose} where it occurred within the past week)".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryQueryBenchmark {
+	@Param({ "10", "1000", "100000" })
+	public int size;
+
+	private MemoryQuery query;
+	private ArdenTime windowStart;
+	private ArdenTime windowEnd;
+
+	@Setup
+	public void setup() {
+		query = new MemoryQuery(new ArdenValue[] { LabValues.glucoseReadings(size), LabValues.labNames(size) });
+		// the last week of the covered time span
+		windowEnd = new ArdenTime(LabValues.endTime(size));
+		windowStart = new ArdenTime(windowEnd.value - 7 * 24 * LabValues.MILLISECONDS_PER_HOUR);
+	}
+
+	@Benchmark
+	public ArdenValue[] occursWithinTo() {
+		return query.occursWithinTo(windowStart, windowEnd).execute();
+	}
+
+	@Benchmark
+	public ArdenValue[] latestWithin() {
+		return query.occursWithinTo(windowStart, windowEnd).latest().execute();
+	}
+
+	@Benchmark
+	public ArdenValue[] averageWithin() {
+		return query.occursWithinTo(windowStart, windowEnd).average().execute();
+	}
+
+	@Benchmark
+	public ArdenValue[] countAfter() {
+		return query.occursAfter(windowStart).count().execute();
+	}
+
+	@Benchmark
+	public ArdenValue[] maximumThree() {
+		return query.maximum(3).execute();
+	}
+
+	@Benchmark
+	public ArdenValue[] latestFive() {
+		return query.latest(5).execute();
+	}
+}
@@ -0,0 +1,119 @@
+package arden.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenValue;
+import arden.runtime.BinaryOperator;
+import arden.runtime.ExpressionHelpers;
+
+/**
+ * Benchmarks for the list operators of the runtime library, working on lists
+ * of lab values of realistic sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperatorBenchmark {
+	@Param({ "10", "1000", "100000" })
+	public int size;
+
+	private ArdenList readings;
+	private ArdenList numericReadings;
+	private ArdenList otherReadings;
+	private ArdenList names;
+	private ArdenValue threshold;
+	private ArdenValue aboveThreshold;
+	private ArdenValue interestingLabs;
+	private ArdenValue pattern;
+
+	@Setup
+	public void setup() {
+		readings = LabValues.glucoseReadings(size);
+		numericReadings = LabValues.numericGlucoseReadings(size);
+		otherReadings = (ArdenList) ExpressionHelpers.reverse(readings);
+		names = LabValues.labNames(size);
+		threshold = new ArdenNumber(180);
+		aboveThreshold = BinaryOperator.GT.run(readings, threshold);
+		interestingLabs = new ArdenList(new ArdenValue[] { new ArdenString("potassium"),
+				new ArdenString("sodium"), new ArdenString("serum_creatinine") });
+		pattern = new ArdenString("serum%");
+	}
+
+	@Benchmark
+	public ArdenValue addListAndScalar() {
+		return BinaryOperator.ADD.run(readings, threshold);
+	}
+
+	@Benchmark
+	public ArdenValue addNumericListAndScalar() {
+		return BinaryOperator.ADD.run(numericReadings, threshold);
+	}
+
+	@Benchmark
+	public ArdenValue addListAndList() {
+		return BinaryOperator.ADD.run(readings, otherReadings);
+	}
+
+	@Benchmark
+	public ArdenValue greaterThan() {
+		return BinaryOperator.GT.run(readings, threshold);
+	}
+
+	@Benchmark
+	public ArdenValue average() {
+		return ExpressionHelpers.average(readings);
+	}
+
+	@Benchmark
+	public ArdenValue averageNumeric() {
+		return ExpressionHelpers.average(numericReadings);
+	}
+
+	@Benchmark
+	public ArdenValue sortByData() {
+		return ExpressionHelpers.sortByData(readings);
+	}
+
+	@Benchmark
+	public ArdenValue sortByTime() {
+		return ExpressionHelpers.sortByTime(readings);
+	}
+
+	@Benchmark
+	public ArdenValue median() {
+		return ExpressionHelpers.median(readings);
+	}
+
+	@Benchmark
+	public ArdenValue where() {
+		return ExpressionHelpers.where(readings, aboveThreshold);
+	}
+
+	@Benchmark
+	public ArdenValue isIn() {
+		return ExpressionHelpers.isIn(names, interestingLabs);
+	}
+
+	@Benchmark
+	public ArdenValue matchesPattern() {
+		return ExpressionHelpers.matchesPattern(names, pattern);
+	}
+}
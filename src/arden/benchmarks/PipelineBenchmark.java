@@ -0,0 +1,299 @@
+package arden.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.Compiler;
+import arden.compiler.lexer.Lexer;
+import arden.compiler.node.Start;
+import arden.compiler.parser.Parser;
+import arden.runtime.ArdenValue;
+import arden.runtime.DatabaseQuery;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MemoryQuery;
+
+/**
+ * Measures the whole pipeline from MLM source text to steady-state execution:
+ * <ol>
+ * <li>parse: lexing and parsing with the SableCC parser</li>
+ * <li>compile: Compiler.compile() on the syntax tree</li>
+ * <li>load: loading a CompiledMlm from bytecode, up to the first metadata
+ * access</li>
+ * <li>first run: the first run() of a freshly loaded MLM</li>
+ * <li>run: run() after the MLM has been warmed up</li>
+ * </ol>
+ * For every phase, latency percentiles and the bytes allocated by the
+ * measuring thread are reported. This is not a JMH benchmark, as the
+ * interesting numbers (compile time, first execution) are one-shot costs.
+ *
+ * Usage: PipelineBenchmark [-n iterations] [-r runs] [mlm names]
+ */
+public final class PipelineBenchmark {
+	private static final String[] EXAMPLES = { "x2.1", "x2.2", "x2.3", "x2.4", "x2.5", "x2.6", "x2.7", "x2.8" };
+
+	/**
+	 * statement counts of the data and logic slots of the synthetic MLMs; the
+	 * data slot of synthetic500 compiles to a constructor of more than 32 KB
+	 */
+	private static final int[] SYNTHETIC_SIZES = { 100, 500 };
+
+	private static final String[] PHASES = { "parse", "compile", "load", "first run", "run" };
+
+	private final int iterations;
+	private final int runs;
+	private final AllocationCounter allocations = new AllocationCounter();
+
+	private PipelineBenchmark(int iterations, int runs) {
+		this.iterations = iterations;
+		this.runs = runs;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int iterations = 30;
+		int runs = 2000;
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if ("-n".equals(args[i]))
+				iterations = Integer.parseInt(args[++i]);
+			else if ("-r".equals(args[i]))
+				runs = Integer.parseInt(args[++i]);
+			else
+				names.add(args[i]);
+		}
+
+		Map<String, String> sources = new LinkedHashMap<String, String>();
+		for (String example : EXAMPLES)
+			sources.put(example, readResource("/arden/tests/" + example + ".mlm"));
+		for (int size : SYNTHETIC_SIZES)
+			sources.put("synthetic" + size, createSyntheticMlm(size));
+		if (!names.isEmpty())
+			sources.keySet().retainAll(names);
+
+		PipelineBenchmark benchmark = new PipelineBenchmark(iterations, runs);
+		if (!benchmark.allocations.isSupported())
+			System.out.println("Note: allocation counting is not supported by this JVM.");
+		System.out.println(String.format(Locale.ENGLISH, "%-14s %-10s %10s %10s %10s %10s %12s", "mlm", "phase",
+				"p50 [us]", "p90 [us]", "p99 [us]", "max [us]", "alloc [KB]"));
+		for (Map.Entry<String, String> source : sources.entrySet()) {
+			benchmark.measure(source.getKey(), source.getValue());
+		}
+	}
+
+	private void measure(String name, String source) throws Exception {
+		Sample[] samples = new Sample[PHASES.length];
+		for (int i = 0; i < PHASES.length; i++)
+			samples[i] = new Sample(i == 4 ? runs : iterations);
+		ExecutionContext context = new PatientContext();
+
+		byte[] bytecode = null;
+		String mlmName = null;
+		for (int i = 0; i < iterations; i++) {
+			// parse
+			long start = startMeasurement();
+			Start syntaxTree = new Parser(new Lexer(new PushbackReader(new StringReader(source), 1024))).parse();
+			stopMeasurement(samples[0], start);
+
+			// compile
+			start = startMeasurement();
+			CompiledMlm compiled = new Compiler().compile(syntaxTree).get(0);
+			stopMeasurement(samples[1], start);
+
+			if (bytecode == null) {
+				ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				compiled.saveClassFile(bos);
+				bytecode = bos.toByteArray();
+				mlmName = compiled.getName();
+			}
+
+			// load: defines the class and reads the metadata
+			start = startMeasurement();
+			CompiledMlm mlm = new CompiledMlm(bytecode, mlmName);
+			mlm.getName();
+			stopMeasurement(samples[2], start);
+
+			// first run of the freshly loaded class
+			start = startMeasurement();
+			mlm.run(context, null);
+			stopMeasurement(samples[3], start);
+		}
+
+		CompiledMlm mlm = new CompiledMlm(bytecode, mlmName);
+		for (int i = 0; i < runs; i++)
+			mlm.run(context, null);
+		for (int i = 0; i < runs; i++) {
+			long start = startMeasurement();
+			mlm.run(context, null);
+			stopMeasurement(samples[4], start);
+		}
+
+		for (int i = 0; i < PHASES.length; i++) {
+			System.out.println(String.format(Locale.ENGLISH, "%-14s %-10s %10.1f %10.1f %10.1f %10.1f %12.1f",
+					name, PHASES[i], samples[i].percentile(50), samples[i].percentile(90), samples[i]
+							.percentile(99), samples[i].percentile(100), samples[i].averageAllocation() / 1024.0));
+		}
+	}
+
+	private long allocationAtStart;
+
+	private long startMeasurement() {
+		allocationAtStart = allocations.getAllocatedBytes();
+		return System.nanoTime();
+	}
+
+	private void stopMeasurement(Sample sample, long start) {
+		long duration = System.nanoTime() - start;
+		sample.add(duration, allocations.getAllocatedBytes() - allocationAtStart);
+	}
+
+	private static String readResource(String name) throws IOException {
+		InputStream in = PipelineBenchmark.class.getResourceAsStream(name);
+		if (in == null)
+			throw new IOException("Resource not found: " + name);
+		Reader reader = new InputStreamReader(in, "UTF-8");
+		try {
+			StringBuilder b = new StringBuilder();
+			char[] buffer = new char[4096];
+			int len;
+			while ((len = reader.read(buffer)) > 0)
+				b.append(buffer, 0, len);
+			return b.toString();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Creates an MLM with the specified number of statements in the data slot
+	 * and in the logic slot.
+	 */
+	static String createSyntheticMlm(int statements) {
+		StringBuilder b = new StringBuilder();
+		b.append("maintenance:\n");
+		b.append("    title: Synthetic MLM with ").append(statements).append(" statements;;\n");
+		b.append("    mlmname: synthetic_").append(statements).append(";;\n");
+		b.append("    arden: Version 2.5;;\n");
+		b.append("    version: 1.00;;\n");
+		b.append("    institution: ;;\n");
+		b.append("    author: ;;\n");
+		b.append("    specialist: ;;\n");
+		b.append("    date: 2010-01-01;;\n");
+		b.append("    validation: testing;;\n");
+		b.append("library:\n");
+		b.append("    purpose: ;;\n");
+		b.append("    explanation: ;;\n");
+		b.append("    keywords: ;;\n");
+		b.append("knowledge:\n");
+		b.append("    type: data-driven;;\n");
+		b.append("    data:\n");
+		for (int i = 0; i < statements; i++) {
+			if (i % 4 == 0)
+				b.append("        lab").append(i).append(" := read last {LAB_").append(i).append("};\n");
+			else
+				b.append("        lab").append(i).append(" := ").append(i).append(" * 2 + lab").append(i - 1)
+						.append(" / 3;\n");
+		}
+		b.append("        ;;\n");
+		b.append("    evoke:\n");
+		b.append("        ;;\n");
+		b.append("    logic:\n");
+		b.append("        score := 0;\n");
+		for (int i = 0; i < statements; i++) {
+			b.append("        if lab").append(i).append(" > ").append(i % 50).append(" then\n");
+			b.append("            score := score + 1;\n");
+			b.append("        endif;\n");
+		}
+		b.append("        conclude score > ").append(statements / 2).append(";\n");
+		b.append("        ;;\n");
+		b.append("    action:\n");
+		b.append("        return score;\n");
+		b.append("        ;;\n");
+		b.append("end:\n");
+		return b.toString();
+	}
+
+	/** Returns the same list of lab values for every query. */
+	private static final class PatientContext extends ExecutionContext {
+		private final ArdenValue[] values = new ArdenValue[] { LabValues.glucoseReadings(100) };
+
+		@Override
+		public DatabaseQuery createQuery(String mapping) {
+			return new MemoryQuery(values);
+		}
+
+		@Override
+		public void write(ArdenValue message, String destination) {
+		}
+	}
+
+	/** Collects the measurements of one phase. */
+	private static final class Sample {
+		private final long[] durations;
+		private long allocatedBytes;
+		private int count;
+
+		Sample(int capacity) {
+			durations = new long[capacity];
+		}
+
+		void add(long duration, long allocated) {
+			durations[count++] = duration;
+			allocatedBytes += allocated;
+		}
+
+		/** Gets the percentile in microseconds. */
+		double percentile(int percent) {
+			if (count == 0)
+				return 0;
+			long[] sorted = Arrays.copyOf(durations, count);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percent / 100.0 * count) - 1;
+			return sorted[Math.max(0, index)] / 1000.0;
+		}
+
+		double averageAllocation() {
+			return count == 0 ? 0 : (double) allocatedBytes / count;
+		}
+	}
+
+	/**
+	 * Counts the bytes allocated by the current thread, if the JVM supports
+	 * it (HotSpot does).
+	 */
+	private static final class AllocationCounter {
+		private final com.sun.management.ThreadMXBean bean;
+
+		AllocationCounter() {
+			java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			if (threads instanceof com.sun.management.ThreadMXBean
+					&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+				bean = (com.sun.management.ThreadMXBean) threads;
+				bean.setThreadAllocatedMemoryEnabled(true);
+			} else {
+				bean = null;
+			}
+		}
+
+		boolean isSupported() {
+			return bean != null;
+		}
+
+		long getAllocatedBytes() {
+			if (bean == null)
+				return 0;
+			return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package arden.benchmarks;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arden.MlmSchedule;
+import arden.runtime.ArdenDuration;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.DatabaseQuery;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.events.CyclicEvokeEvent;
+import arden.runtime.events.EvokeEvent;
+
+/**
+ * Scheduling overhead of the MLM daemon per tick, as a function of the number
+ * of deployed MLMs: rebuilding the whole schedule from the evoke events (as
+ * the daemon used to do on every tick) versus taking the due MLMs from the
+ * incremental MlmSchedule. The MLMs are evoked cyclically with different
+ * intervals; running them is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+	private static final long START = 1262304000000L; // 2010-01-01
+
+	@Param({ "100", "1000", "2000", "10000" })
+	public int count;
+
+	private ClockContext context;
+	private List<MedicalLogicModule> mlms;
+	private MlmSchedule schedule;
+
+	@Setup
+	public void setup() {
+		context = new ClockContext(START);
+		mlms = new LinkedList<MedicalLogicModule>();
+		for (int i = 0; i < count; i++) {
+			// every 1 to 60 minutes, for 100 years
+			ArdenDuration interval = (ArdenDuration) ArdenDuration.seconds(60 * (i % 60 + 1), 0);
+			ArdenDuration length = (ArdenDuration) ArdenDuration.seconds(100 * 365 * 24 * 3600.0, 0);
+			mlms.add(new StubModule(new CyclicEvokeEvent(interval, length, new ArdenTime(START + i))));
+		}
+		schedule = new MlmSchedule(context, null);
+		for (MedicalLogicModule mlm : mlms)
+			schedule.add(mlm);
+	}
+
+	/** One tick of the former daemon loop: all MLMs are evaluated and sorted. */
+	@Benchmark
+	public List<MedicalLogicModule> rebuildSchedule() throws Exception {
+		SortedMap<ArdenTime, List<MedicalLogicModule>> mlmSchedule = new TreeMap<ArdenTime, List<MedicalLogicModule>>(
+				new ArdenTime.NaturalComparator());
+		for (MedicalLogicModule mlm : mlms) {
+			EvokeEvent e = mlm.getEvoke(context, null);
+			ArdenTime currentTime = context.getCurrentTime();
+			ArdenTime nextRuntime = e.getNextRunTime(context);
+			if (nextRuntime == null || currentTime.compareTo(nextRuntime) > 0)
+				continue;
+			List<MedicalLogicModule> alreadyScheduled = mlmSchedule.get(nextRuntime);
+			if (alreadyScheduled == null) {
+				List<MedicalLogicModule> toSchedule = new LinkedList<MedicalLogicModule>();
+				toSchedule.add(mlm);
+				mlmSchedule.put(nextRuntime, toSchedule);
+			} else {
+				alreadyScheduled.add(mlm);
+			}
+		}
+		return mlmSchedule.get(mlmSchedule.firstKey());
+	}
+
+	/** One tick of the daemon loop: the clock advances to the next run time. */
+	@Benchmark
+	public List<MedicalLogicModule> incrementalTick() {
+		context.now = schedule.getNextTime().value;
+		return schedule.pollDue(context.getCurrentTime());
+	}
+
+	private static final class ClockContext extends ExecutionContext {
+		long now;
+
+		ClockContext(long now) {
+			this.now = now;
+		}
+
+		@Override
+		public DatabaseQuery createQuery(String mapping) {
+			return DatabaseQuery.NULL;
+		}
+
+		@Override
+		public void write(ArdenValue message, String destination) {
+		}
+
+		@Override
+		public ArdenTime getCurrentTime() {
+			return new ArdenTime(now);
+		}
+	}
+}
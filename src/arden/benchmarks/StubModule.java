@@ -0,0 +1,63 @@
+package arden.benchmarks;
+
+import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
+import arden.runtime.LibraryMetadata;
+import arden.runtime.MaintenanceMetadata;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.MedicalLogicModuleImplementation;
+import arden.runtime.events.EvokeEvent;
+
+/** An MLM that only has an evoke event and does nothing when it is run. */
+final class StubModule implements MedicalLogicModule {
+	private final EvokeEvent evoke;
+
+	StubModule(EvokeEvent evoke) {
+		this.evoke = evoke;
+	}
+
+	@Override
+	public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments) {
+		return null;
+	}
+
+	@Override
+	public MedicalLogicModuleImplementation createInstance(ExecutionContext context, ArdenValue[] arguments) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getName() {
+		return "stub";
+	}
+
+	@Override
+	public MaintenanceMetadata getMaintenance() {
+		return null;
+	}
+
+	@Override
+	public LibraryMetadata getLibrary() {
+		return null;
+	}
+
+	@Override
+	public double getPriority() {
+		return 50;
+	}
+
+	@Override
+	public double getUrgency() {
+		return 50;
+	}
+
+	@Override
+	public EvokeEvent getEvoke(ExecutionContext context, ArdenValue[] arguments) {
+		return evoke;
+	}
+
+	@Override
+	public ArdenValue getValue(String name) {
+		return null;
+	}
+}
@@ -0,0 +1,79 @@
+package arden.benchmarks;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arden.runtime.events.TimerWheel;
+
+/**
+ * Cost of scheduling one delayed trigger and expiring the due ones, as a
+ * function of the number of pending triggers: a priority queue ordered by
+ * deadline versus the TimerWheel. Deadlines are up to one day ahead and the
+ * clock advances by one second per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerWheelBenchmark {
+	private static final long START = 1262304000000L; // 2010-01-01
+	private static final int DAY = 24 * 3600 * 1000;
+
+	@Param({ "1000", "100000", "1000000" })
+	public int count;
+
+	private Random random;
+	private long queueNow;
+	private PriorityQueue<Long> queue;
+	private long wheelNow;
+	private TimerWheel<Long> wheel;
+
+	@Setup
+	public void setup() {
+		random = new Random(1);
+		queueNow = START;
+		wheelNow = START;
+		queue = new PriorityQueue<Long>();
+		wheel = new TimerWheel<Long>(START);
+		for (int i = 0; i < count; i++) {
+			long deadline = START + random.nextInt(DAY);
+			queue.add(deadline);
+			wheel.schedule(deadline, deadline);
+		}
+	}
+
+	@Benchmark
+	public int priorityQueue() {
+		queueNow += 1000;
+		queue.add(queueNow + random.nextInt(DAY));
+		int expired = 0;
+		while (queue.peek() <= queueNow) {
+			queue.poll();
+			expired++;
+		}
+		return expired;
+	}
+
+	@Benchmark
+	public int timerWheel() {
+		wheelNow += 1000;
+		long deadline = wheelNow + random.nextInt(DAY);
+		wheel.schedule(deadline, deadline);
+		return wheel.advance(wheelNow).size();
+	}
+}
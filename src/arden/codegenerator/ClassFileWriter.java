@@ -154,6 +154,11 @@ public final class ClassFileWriter {
 		return createMethod(JAVA_CONSTRUCTOR_NAME, modifiers, parameters, Void.TYPE);
 	}
 
+	/** Gets a reference to a constructor declared in this class */
+	public ConstructorReference getConstructorReference(Class<?>[] parameters) {
+		return pool.createConstructorref(this_class, parameters);
+	}
+
 	public MethodWriter createStaticInitializer() {
 		return createMethod(JAVA_STATIC_INITIALIZER_NAME, Modifier.PUBLIC | Modifier.STATIC, new Class<?>[0], Void.TYPE);
 	}
@@ -302,6 +302,29 @@ public final class ConstantPool {
 		return new FieldReference(index);
 	}
 
+	/**
+	 * Creates a new Methodref-entry for a constructor of a class that is not
+	 * loaded yet (e.g. the class being written).
+	 * 
+	 * @param declaringClass
+	 *            Index of the Class-entry of the declaring class.
+	 * @param parameters
+	 *            The parameter types of the constructor.
+	 * @return Reference to the constructor
+	 */
+	public ConstructorReference createConstructorref(int declaringClass, Class<?>[] parameters) {
+		int natRef = getNameAndType(JAVA_CONSTRUCTOR_NAME, createMethodDescriptor(parameters, Void.TYPE));
+		int index = getNextIndex();
+		try {
+			data.writeByte(CONSTANT_Methodref);
+			data.writeShort(declaringClass);
+			data.writeShort(natRef);
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		return new ConstructorReference(declaringClass, index, parameters.clone());
+	}
+
 	/** Creates a field descriptor string for the type. */
 	static String createFieldDescriptor(Class<?> type) {
 		if (type.isPrimitive()) {
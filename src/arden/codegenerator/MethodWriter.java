@@ -182,6 +182,11 @@ public final class MethodWriter {
 		return byteCode.size();
 	}
 
+	/** Gets the number of bytes of byte code emitted so far. */
+	public int getCodeSize() {
+		return byteCode.size();
+	}
+
 	/** Emits the target location of a label (16-bit offset) */
 	private void emitLabelReference(Label label, int basePosition) {
 		if (checkLabel(label)) {
@@ -529,6 +534,48 @@ public final class MethodWriter {
 		}
 	}
 
+	/**
+	 * Loads the value of a primitive double variable onto the stack. The
+	 * variable occupies the slots vindex and vindex + 1.
+	 * 
+	 * Stack: .. => .., value
+	 */
+	public void loadDoubleVariable(int vindex) {
+		checkLocalCount(vindex + 1);
+		poppush(0, 2);
+		if (vindex < 4) {
+			emit(38 + vindex); // dload_vindex
+		} else if (vindex <= 255) {
+			emit(24); // dload
+			emit(vindex);
+		} else {
+			emit(196); // wide
+			emit(24); // dload
+			emitUInt16(vindex);
+		}
+	}
+
+	/**
+	 * Stores a double value from the stack in the local variable. The
+	 * variable occupies the slots vindex and vindex + 1.
+	 * 
+	 * Stack: .., value => ..
+	 */
+	public void storeDoubleVariable(int vindex) {
+		checkLocalCount(vindex + 1);
+		poppush(2, 0);
+		if (vindex < 4) {
+			emit(71 + vindex); // dstore_vindex
+		} else if (vindex <= 255) {
+			emit(57); // dstore
+			emit(vindex);
+		} else {
+			emit(196); // wide
+			emit(57); // dstore
+			emitUInt16(vindex);
+		}
+	}
+
 	/**
 	 * Increments a primitive int-variable by a constant amount.
 	 * 
@@ -640,6 +687,77 @@ public final class MethodWriter {
 		emit(95); // swap
 	}
 
+	/**
+	 * Adds two doubles.
+	 * 
+	 * Stack: .., lhs (double), rhs (double) => .., result (double)
+	 */
+	public void addDoubles() {
+		poppush(4, 2);
+		emit(99); // dadd
+	}
+
+	/**
+	 * Subtracts two doubles.
+	 * 
+	 * Stack: .., lhs (double), rhs (double) => .., result (double)
+	 */
+	public void subtractDoubles() {
+		poppush(4, 2);
+		emit(103); // dsub
+	}
+
+	/**
+	 * Multiplies two doubles.
+	 * 
+	 * Stack: .., lhs (double), rhs (double) => .., result (double)
+	 */
+	public void multiplyDoubles() {
+		poppush(4, 2);
+		emit(107); // dmul
+	}
+
+	/**
+	 * Divides two doubles.
+	 * 
+	 * Stack: .., lhs (double), rhs (double) => .., result (double)
+	 */
+	public void divideDoubles() {
+		poppush(4, 2);
+		emit(111); // ddiv
+	}
+
+	/**
+	 * Negates a double.
+	 * 
+	 * Stack: .., value (double) => .., result (double)
+	 */
+	public void negateDouble() {
+		poppush(2, 2);
+		emit(119); // dneg
+	}
+
+	/**
+	 * Compares two doubles, pushing -1, 0 or 1. If one of them is NaN, 1 is
+	 * pushed if nanIsGreater, and -1 otherwise.
+	 * 
+	 * Stack: .., lhs (double), rhs (double) => .., result (int)
+	 */
+	public void compareDoubles(boolean nanIsGreater) {
+		poppush(4, 1);
+		emit(nanIsGreater ? 152 : 151); // dcmpg : dcmpl
+	}
+
+	/**
+	 * Compares two longs, pushing -1, 0 or 1.
+	 * 
+	 * Stack: .., lhs (long), rhs (long) => .., result (int)
+	 */
+	public void compareLongs() {
+		poppush(4, 1);
+		emit(148); // lcmp
+	}
+
 	private void emitJump(int opcode, Label label) {
 		int basePosition = getCurrentPosition();
 		emit(opcode);
@@ -659,6 +777,17 @@ public final class MethodWriter {
 		unconditionalControlTransfer();
 	}
 
+	/**
+	 * Unconditional jump to Label, with a 32-bit offset (goto_w). Used for
+	 * jumps that may span more than 32 KB of code.
+	 */
+	public void jumpWide(Label label) {
+		int basePosition = getCurrentPosition();
+		emit(200); // goto_w
+		emitLabelReference32(label, basePosition);
+		unconditionalControlTransfer();
+	}
+
 	/**
 	 * Jump to Label, if value is 0.
 	 * 
@@ -689,6 +818,36 @@ public final class MethodWriter {
 		emitJump(155, label); // iflt
 	}
 
+	/**
+	 * Jump to Label, if value is less than or equal to 0.
+	 * 
+	 * Stack: .., int => ..
+	 */
+	public void jumpIfNonPositive(Label label) {
+		poppush(1, 0);
+		emitJump(158, label); // ifle
+	}
+
+	/**
+	 * Jump to Label, if value is greater than 0.
+	 * 
+	 * Stack: .., int => ..
+	 */
+	public void jumpIfPositive(Label label) {
+		poppush(1, 0);
+		emitJump(157, label); // ifgt
+	}
+
+	/**
+	 * Jump to Label, if value is greater than or equal to 0.
+	 * 
+	 * Stack: .., int => ..
+	 */
+	public void jumpIfNonNegative(Label label) {
+		poppush(1, 0);
+		emitJump(156, label); // ifge
+	}
+
 	/**
 	 * Jump to Label, if lhs is less than rhs.
 	 * 
@@ -896,14 +1055,17 @@ public final class MethodWriter {
 	}
 
 	/**
-	 * Loads the value from a reference-type field.
+	 * Loads the value from a field.
 	 * 
-	 * Stack: .., objectref => .., valueref
+	 * Stack: .., objectref => .., value
 	 */
 	public void loadInstanceField(Field field) {
 		if (isStatic(field))
 			throw new IllegalArgumentException("Expected instance field, but found static field.");
-		loadInstanceField(pool.getFieldref(field));
+		// primitive fields, e.g. double, may take two stack slots
+		poppush(1, getStackSize(field.getType()));
+		emit(180); // getfield
+		emitUInt16(pool.getFieldref(field).index);
 	}
 
 	/**
@@ -1051,6 +1213,29 @@ public final class MethodWriter {
 		emitUInt16(pool.getConstructor(ctor));
 	}
 
+	/**
+	 * Creates a new object of the class declaring the constructor, without
+	 * calling any constructor.
+	 * 
+	 * Stack: .. => .., objectref
+	 */
+	public void newObject(ConstructorReference ctor) {
+		poppush(0, 1);
+		emit(187); // new
+		emitUInt16(ctor.classIndex);
+	}
+
+	/**
+	 * Calls a constructor of the class being written.
+	 * 
+	 * Stack: .., objectref, parameters => ..
+	 */
+	public void invokeConstructor(ConstructorReference ctor) {
+		poppush(1 + getStackSize(ctor.parameterTypes), 0);
+		emit(183); // invokespecial
+		emitUInt16(ctor.index);
+	}
+
 	/**
 	 * Creates a new array.
 	 * 
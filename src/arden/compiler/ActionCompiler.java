@@ -30,6 +30,7 @@ package arden.compiler;
 import arden.codegenerator.Label;
 import arden.compiler.node.*;
 import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
 
 /**
  * Compiler for actions.
@@ -201,7 +202,8 @@ final class ActionCompiler extends VisitorBase {
 		context.writer.loadVariable(context.executionContextVariable);
 		node.getExpr().apply(new ExpressionCompiler(context));
 		context.writer.loadNull();
-		context.writer.invokeInstance(ExecutionContextMethods.write);
+		context.writer.invokeStatic(Compiler.getRuntimeHelper("write", ExecutionContext.class, ArdenValue.class,
+				String.class));
 	}
 
 	@Override
@@ -217,7 +219,8 @@ final class ActionCompiler extends VisitorBase {
 					+ "' is not a valid destination variable.");
 		context.writer.loadThis();
 		context.writer.loadInstanceField(((DestinationVariable) destination).field);
-		context.writer.invokeInstance(ExecutionContextMethods.write);
+		context.writer.invokeStatic(Compiler.getRuntimeHelper("write", ExecutionContext.class, ArdenValue.class,
+				String.class));
 	}
 
 	@Override
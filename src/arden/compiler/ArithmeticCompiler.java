@@ -0,0 +1,383 @@
+package arden.compiler;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import arden.codegenerator.Label;
+import arden.codegenerator.MethodWriter;
+import arden.compiler.node.*;
+import arden.runtime.ArdenBoolean;
+import arden.runtime.ArdenNull;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenValue;
+import arden.runtime.BinaryOperator;
+import arden.runtime.RuntimeHelpers;
+import arden.runtime.UnaryOperator;
+
+/**
+ * Compiles arithmetic expressions (+, -, *, / and a comparison of their
+ * results) on unboxed doubles.
+ *
+ * The operands that are not number literals are evaluated first. If all of
+ * them are numbers without primary time, the expression is computed with
+ * dadd, dmul etc. and only the result is boxed. Otherwise the operators are
+ * run on the operands as usual. Intermediate results that are infinite or
+ * NaN become null, as ArdenNumber.create() does for the boxed operators.
+ */
+final class ArithmeticCompiler {
+	/**
+	 * The size of a method in bytes from which on expressions are compiled on
+	 * boxed values only. The unboxed code comes with a boxed fallback, so it
+	 * roughly doubles the code of an expression; the limit bounds the growth of
+	 * large slots, whose branches must stay within 32 KB.
+	 */
+	static final int MAXIMUM_METHOD_SIZE = 8192;
+
+	private static final int CONSTANT = 0;
+	private static final int OPERAND = 1;
+	private static final int BINARY = 2;
+	private static final int UNARY = 3;
+
+	/** Node of the expression tree. */
+	private static final class Term {
+		final int kind;
+		double value;
+		Node node;
+		int variable;
+		BinaryOperator binaryOperator;
+		UnaryOperator unaryOperator;
+		Term left;
+		Term right;
+
+		Term(int kind) {
+			this.kind = kind;
+		}
+	}
+
+	private final ExpressionCompiler compiler;
+	private final MethodWriter writer;
+	private final List<Term> operands = new ArrayList<Term>();
+	private int operatorCount;
+
+	private ArithmeticCompiler(ExpressionCompiler compiler) {
+		this.compiler = compiler;
+		this.writer = compiler.getContext().writer;
+	}
+
+	/**
+	 * Compiles an arithmetic expression or a comparison on unboxed doubles.
+	 * Returns false if it is not worth it, because the expression has only
+	 * one operator or only literals, or if the method is too large already.
+	 */
+	public static boolean compile(ExpressionCompiler compiler, Node node) {
+		CompilerContext context = compiler.getContext();
+		if (!context.codeGenerator.isUnboxedArithmeticEnabled()
+				|| context.writer.getCodeSize() >= MAXIMUM_METHOD_SIZE)
+			return false;
+		ArithmeticCompiler arithmetic = new ArithmeticCompiler(compiler);
+		BinaryOperator comparison = null;
+		Term left;
+		Term right = null;
+		if (node instanceof ASimExprComparison) {
+			ASimExprComparison comparisonNode = (ASimExprComparison) node;
+			comparison = getComparison(comparisonNode.getSimpleCompOp());
+			if (comparison == null)
+				return false;
+			left = arithmetic.build(comparisonNode.getFirstString());
+			right = arithmetic.build(comparisonNode.getSecondString());
+			arithmetic.operatorCount++;
+		} else {
+			left = arithmetic.build(node);
+		}
+		if (arithmetic.operatorCount < 2 || arithmetic.operands.isEmpty())
+			return false;
+		if (comparison != null)
+			arithmetic.compileComparison(comparison, left, right);
+		else
+			arithmetic.compileArithmetic(left);
+		return true;
+	}
+
+	private static BinaryOperator getComparison(PSimpleCompOp compOp) {
+		if (compOp instanceof AEqSimpleCompOp || compOp instanceof AEqsSimpleCompOp)
+			return BinaryOperator.EQ;
+		else if (compOp instanceof ANeSimpleCompOp || compOp instanceof ANesSimpleCompOp)
+			return BinaryOperator.NE;
+		else if (compOp instanceof AGeSimpleCompOp || compOp instanceof AGesSimpleCompOp)
+			return BinaryOperator.GE;
+		else if (compOp instanceof AGtSimpleCompOp || compOp instanceof AGtsSimpleCompOp)
+			return BinaryOperator.GT;
+		else if (compOp instanceof ALeSimpleCompOp || compOp instanceof ALesSimpleCompOp)
+			return BinaryOperator.LE;
+		else if (compOp instanceof ALtSimpleCompOp || compOp instanceof ALtsSimpleCompOp)
+			return BinaryOperator.LT;
+		return null;
+	}
+
+	private Term build(Node node) {
+		TermBuilder builder = new TermBuilder();
+		node.apply(builder);
+		return builder.result;
+	}
+
+	/** Builds the expression tree, seeing through parentheses. */
+	private final class TermBuilder extends ExpressionVisitorBase {
+		Term result;
+
+		@Override
+		public void defaultCase(Node node) {
+			ArdenValue value = ConstantFolder.fold(node);
+			if (value instanceof ArdenNumber) {
+				result = new Term(CONSTANT);
+				result.value = ((ArdenNumber) value).value;
+			} else {
+				result = new Term(OPERAND);
+				result.node = node;
+				operands.add(result);
+			}
+		}
+
+		private void binary(Node node, BinaryOperator operator, Node lhs, Node rhs) {
+			ArdenValue value = ConstantFolder.fold(node);
+			if (value != null) {
+				defaultCase(node);
+				return;
+			}
+			Term term = new Term(BINARY);
+			term.binaryOperator = operator;
+			term.left = build(lhs);
+			term.right = build(rhs);
+			operatorCount++;
+			result = term;
+		}
+
+		private void unary(Node node, UnaryOperator operator, Node arg) {
+			ArdenValue value = ConstantFolder.fold(node);
+			if (value != null) {
+				defaultCase(node);
+				return;
+			}
+			Term term = new Term(UNARY);
+			term.unaryOperator = operator;
+			term.left = build(arg);
+			operatorCount++;
+			result = term;
+		}
+
+		@Override
+		public void caseAPlusExprPlus(APlusExprPlus node) {
+			binary(node, BinaryOperator.ADD, node.getExprPlus(), node.getExprTimes());
+		}
+
+		@Override
+		public void caseAMinusExprPlus(AMinusExprPlus node) {
+			binary(node, BinaryOperator.SUB, node.getExprPlus(), node.getExprTimes());
+		}
+
+		@Override
+		public void caseAPlustExprPlus(APlustExprPlus node) {
+			unary(node, UnaryOperator.PLUS, node.getExprTimes());
+		}
+
+		@Override
+		public void caseAMintExprPlus(AMintExprPlus node) {
+			unary(node, UnaryOperator.MINUS, node.getExprTimes());
+		}
+
+		@Override
+		public void caseATpowExprTimes(ATpowExprTimes node) {
+			binary(node, BinaryOperator.MUL, node.getExprTimes(), node.getExprPower());
+		}
+
+		@Override
+		public void caseADpowExprTimes(ADpowExprTimes node) {
+			binary(node, BinaryOperator.DIV, node.getExprTimes(), node.getExprPower());
+		}
+
+		// unlike in GetExpressionVisitor, parentheses are passed through
+		@Override
+		public void caseAExpExprFactorAtom(AExpExprFactorAtom node) {
+			node.getExpr().apply(this);
+		}
+	}
+
+	/**
+	 * Evaluates the operands into variables and jumps to the returned label
+	 * if one of them is not a number without primary time.
+	 */
+	private Label compileOperands() {
+		for (Term operand : operands) {
+			operand.node.apply(compiler);
+			operand.variable = compiler.getContext().allocateVariable();
+			writer.storeVariable(operand.variable);
+		}
+		Label boxed = new Label();
+		Method isPlainNumber = getMethod(RuntimeHelpers.class, "isPlainNumber", ArdenValue.class);
+		for (Term operand : operands) {
+			writer.loadVariable(operand.variable);
+			writer.invokeStatic(isPlainNumber);
+			writer.jumpIfZero(boxed);
+		}
+		return boxed;
+	}
+
+	private void compileArithmetic(Term term) {
+		Label boxed = compileOperands();
+		Label end = new Label();
+		compileUnboxed(term);
+		writer.loadLongConstant(ArdenValue.NOPRIMARYTIME);
+		writer.invokeStatic(getMethod(ArdenNumber.class, "create", Double.TYPE, Long.TYPE));
+		writer.jump(end);
+		writer.markForwardJumpsOnly(boxed);
+		compileBoxed(term);
+		writer.markForwardJumpsOnly(end);
+	}
+
+	private void compileComparison(BinaryOperator comparison, Term left, Term right) {
+		Label boxed = compileOperands();
+		Label end = new Label();
+		Label isTrue = new Label();
+		Label isNull = new Label();
+		int lhs = allocateDoubleVariable();
+		int rhs = allocateDoubleVariable();
+		compileFinite(left);
+		writer.storeDoubleVariable(lhs);
+		compileFinite(right);
+		writer.storeDoubleVariable(rhs);
+		// NaN stands for null
+		writer.loadDoubleVariable(lhs);
+		writer.loadDoubleVariable(lhs);
+		writer.compareDoubles(false);
+		writer.jumpIfNonZero(isNull);
+		writer.loadDoubleVariable(rhs);
+		writer.loadDoubleVariable(rhs);
+		writer.compareDoubles(false);
+		writer.jumpIfNonZero(isNull);
+		writer.loadDoubleVariable(lhs);
+		writer.loadDoubleVariable(rhs);
+		writer.compareDoubles(false);
+		if (comparison == BinaryOperator.EQ)
+			writer.jumpIfZero(isTrue);
+		else if (comparison == BinaryOperator.NE)
+			writer.jumpIfNonZero(isTrue);
+		else if (comparison == BinaryOperator.LT)
+			writer.jumpIfNegative(isTrue);
+		else if (comparison == BinaryOperator.LE)
+			writer.jumpIfNonPositive(isTrue);
+		else if (comparison == BinaryOperator.GT)
+			writer.jumpIfPositive(isTrue);
+		else
+			writer.jumpIfNonNegative(isTrue);
+		writer.loadStaticField(getField(ArdenBoolean.class, "FALSE"));
+		writer.jump(end);
+		writer.markForwardJumpsOnly(isTrue);
+		writer.loadStaticField(getField(ArdenBoolean.class, "TRUE"));
+		writer.jump(end);
+		writer.markForwardJumpsOnly(isNull);
+		writer.loadStaticField(getField(ArdenNull.class, "INSTANCE"));
+		writer.jump(end);
+		writer.markForwardJumpsOnly(boxed);
+		compiler.loadOperator(comparison);
+		compileBoxed(left);
+		compileBoxed(right);
+		compiler.invokeLoadedBinaryOperator();
+		writer.markForwardJumpsOnly(end);
+	}
+
+	private int allocateDoubleVariable() {
+		int variable = compiler.getContext().allocateVariable();
+		// a double takes two slots
+		compiler.getContext().allocateVariable();
+		return variable;
+	}
+
+	/** Pushes the double value of the term. */
+	private void compileUnboxed(Term term) {
+		switch (term.kind) {
+		case CONSTANT:
+			writer.loadDoubleConstant(term.value);
+			break;
+		case OPERAND:
+			writer.loadVariable(term.variable);
+			writer.checkCast(ArdenNumber.class);
+			writer.loadInstanceField(getField(ArdenNumber.class, "value"));
+			break;
+		case UNARY:
+			compileUnboxed(term.left);
+			if (term.unaryOperator == UnaryOperator.MINUS)
+				writer.negateDouble();
+			break;
+		default:
+			compileUnboxed(term.left);
+			if (term.binaryOperator == BinaryOperator.DIV)
+				compileFinite(term.right);
+			else
+				compileUnboxed(term.right);
+			if (term.binaryOperator == BinaryOperator.ADD)
+				writer.addDoubles();
+			else if (term.binaryOperator == BinaryOperator.SUB)
+				writer.subtractDoubles();
+			else if (term.binaryOperator == BinaryOperator.MUL)
+				writer.multiplyDoubles();
+			else
+				writer.divideDoubles();
+			break;
+		}
+	}
+
+	/**
+	 * Pushes the double value of the term, or NaN if it is infinite, where
+	 * it matters: dividing by infinity or comparing it would not give null.
+	 */
+	private void compileFinite(Term term) {
+		compileUnboxed(term);
+		if (term.kind == BINARY || term.kind == UNARY) {
+			// x + (x - x) is x if x is finite, and NaN otherwise
+			writer.dup2();
+			writer.dup2();
+			writer.subtractDoubles();
+			writer.addDoubles();
+		}
+	}
+
+	/** Pushes the value of the term as ArdenValue, using the operators. */
+	private void compileBoxed(Term term) {
+		switch (term.kind) {
+		case CONSTANT:
+			writer.loadStaticField(compiler.getContext().codeGenerator.getNumberLiteral(term.value));
+			break;
+		case OPERAND:
+			writer.loadVariable(term.variable);
+			break;
+		case UNARY:
+			compiler.loadOperator(term.unaryOperator);
+			compileBoxed(term.left);
+			compiler.invokeLoadedUnaryOperator();
+			break;
+		default:
+			compiler.loadOperator(term.binaryOperator);
+			compileBoxed(term.left);
+			compileBoxed(term.right);
+			compiler.invokeLoadedBinaryOperator();
+			break;
+		}
+	}
+
+	private static Field getField(Class<?> type, String name) {
+		try {
+			return type.getField(name);
+		} catch (NoSuchFieldException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static Method getMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,338 @@
+package arden.compiler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import arden.MainClass;
+import arden.compiler.analysis.DepthFirstAdapter;
+import arden.compiler.node.AEmapDataAssignPhrase;
+import arden.compiler.node.AIphrDataAssignment;
+import arden.compiler.node.AKnowledgeBody;
+import arden.compiler.node.AKnowledgeCategory;
+import arden.compiler.node.AMlm;
+import arden.compiler.node.Start;
+import arden.compiler.node.TIdentifier;
+
+/**
+ * Compiles a knowledge base, i.e. a directory tree of .mlm files, in parallel
+ * and writes the MLMs into one jar file.
+ *
+ * Besides the class files, the jar contains an index (see INDEX_ENTRY) with
+ * one line per MLM: the name, the institution, the source file and the
+ * mappings of the events in the evoke slot, separated by tabs. It can be read
+ * with readIndex() without loading the MLMs.
+ */
+public final class BulkCompiler {
+	/** name of the index in the jar */
+	public static final String INDEX_ENTRY = "META-INF/arden/mlms.index";
+
+	/** An MLM of the knowledge base. */
+	public static final class Entry {
+		private final String name;
+		private final String institution;
+		private final String source;
+		private final List<String> evokeMappings;
+		private final CompiledMlm mlm;
+
+		Entry(String name, String institution, String source, List<String> evokeMappings, CompiledMlm mlm) {
+			this.name = name;
+			this.institution = institution;
+			this.source = source;
+			this.evokeMappings = Collections.unmodifiableList(evokeMappings);
+			this.mlm = mlm;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getInstitution() {
+			return institution;
+		}
+
+		/** Gets the path of the .mlm file. */
+		public String getSource() {
+			return source;
+		}
+
+		/** Gets the mappings of the events the evoke slot refers to. */
+		public List<String> getEvokeMappings() {
+			return evokeMappings;
+		}
+
+		/** Gets the compiled MLM, or null if the entry was read from an index. */
+		public CompiledMlm getMlm() {
+			return mlm;
+		}
+
+		/** Gets the name of the class file in the jar. */
+		public String getClassFileName() {
+			return name + ".class";
+		}
+	}
+
+	/** A file that could not be compiled. */
+	public static final class Failure {
+		private final File file;
+		private final Exception error;
+
+		Failure(File file, Exception error) {
+			this.file = file;
+			this.error = error;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		/** Gets the CompilerException or IOException. */
+		public Exception getError() {
+			return error;
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final List<Failure> failures = new ArrayList<Failure>();
+
+	public BulkCompiler() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public BulkCompiler(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Finds the .mlm files in the given files and directories, including
+	 * their subdirectories, sorted by path.
+	 */
+	public static List<File> findSources(List<File> roots) {
+		List<File> sources = new ArrayList<File>();
+		for (File root : roots)
+			findSources(root, sources);
+		return sources;
+	}
+
+	private static void findSources(File file, List<File> sources) {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children == null)
+				return;
+			Arrays.sort(children);
+			for (File child : children)
+				findSources(child, sources);
+		} else if (file.getName().endsWith(MainClass.MLM_FILE_EXTENSION)) {
+			sources.add(file);
+		}
+	}
+
+	/**
+	 * Compiles the files in parallel and returns their MLMs in the order of
+	 * the files. Files that can't be compiled are skipped and reported by
+	 * getFailures().
+	 */
+	public List<Entry> compile(List<File> sources) {
+		List<CompileTask> tasks = new ArrayList<CompileTask>(sources.size());
+		for (File source : sources)
+			tasks.add(new CompileTask(source));
+		for (Future<Void> result : pool.invokeAll(tasks)) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				throw new RuntimeException(cause);
+			}
+		}
+		List<Entry> entries = new ArrayList<Entry>();
+		for (CompileTask task : tasks) {
+			if (task.error != null)
+				failures.add(new Failure(task.source, task.error));
+			else
+				entries.addAll(task.entries);
+		}
+		return entries;
+	}
+
+	/** Gets the files the last calls to compile() failed on. */
+	public List<Failure> getFailures() {
+		return Collections.unmodifiableList(failures);
+	}
+
+	private static final class CompileTask implements Callable<Void> {
+		final File source;
+		List<Entry> entries;
+		Exception error;
+
+		CompileTask(File source) {
+			this.source = source;
+		}
+
+		@Override
+		public Void call() {
+			try {
+				entries = compile(source);
+			} catch (CompilerException e) {
+				error = e;
+			} catch (IOException e) {
+				error = e;
+			}
+			return null;
+		}
+	}
+
+	private static List<Entry> compile(File source) throws CompilerException, IOException {
+		Start syntaxTree;
+		Reader reader = new InputStreamReader(new FileInputStream(source));
+		try {
+			syntaxTree = Compiler.parse(reader);
+		} finally {
+			reader.close();
+		}
+		final List<AMlm> mlms = new ArrayList<AMlm>();
+		syntaxTree.apply(new DepthFirstAdapter() {
+			@Override
+			public void caseAMlm(AMlm node) {
+				mlms.add(node);
+			}
+		});
+		Compiler compiler = new Compiler();
+		compiler.enableDebugging(source.getPath());
+		List<Entry> entries = new ArrayList<Entry>(mlms.size());
+		for (AMlm node : mlms) {
+			CompiledMlm mlm = (CompiledMlm) compiler.compileMlm(node);
+			MetadataCompiler metadata = new MetadataCompiler();
+			node.getMaintenanceCategory().apply(metadata);
+			entries.add(new Entry(metadata.maintenance.getMlmName(), metadata.maintenance.getInstitution(),
+					source.getPath(), getEvokeMappings(node), mlm));
+		}
+		return entries;
+	}
+
+	/** Gets the mappings of the event variables the evoke slot refers to. */
+	private static List<String> getEvokeMappings(AMlm mlm) {
+		AKnowledgeBody knowledge = (AKnowledgeBody) ((AKnowledgeCategory) mlm.getKnowledgeCategory())
+				.getKnowledgeBody();
+		final Map<String, String> events = new HashMap<String, String>();
+		knowledge.getDataSlot().apply(new DepthFirstAdapter() {
+			@Override
+			public void caseAIphrDataAssignment(AIphrDataAssignment node) {
+				if (!(node.getDataAssignPhrase() instanceof AEmapDataAssignPhrase))
+					return;
+				TIdentifier identifier = LeftHandSideAnalyzer.analyze(node.getIdentifierBecomes())
+						.getSimpleIdentifier();
+				if (identifier != null) {
+					String name = identifier.getText();
+					AEmapDataAssignPhrase phrase = (AEmapDataAssignPhrase) node.getDataAssignPhrase();
+					events.put(name.toLowerCase(Locale.ENGLISH),
+							ParseHelpers.getStringForMapping(phrase.getMappingFactor()));
+				}
+			}
+		});
+		final Set<String> mappings = new LinkedHashSet<String>();
+		knowledge.getEvokeSlot().apply(new DepthFirstAdapter() {
+			@Override
+			public void caseTIdentifier(TIdentifier node) {
+				String mapping = events.get(node.getText().toLowerCase(Locale.ENGLISH));
+				if (mapping != null)
+					mappings.add(mapping);
+			}
+		});
+		return new ArrayList<String>(mappings);
+	}
+
+	/**
+	 * Writes the MLMs and the index into a jar file.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if two MLMs have the same name
+	 */
+	public static void writeJar(List<Entry> entries, OutputStream os) throws IOException {
+		Set<String> names = new HashSet<String>();
+		for (Entry entry : entries) {
+			if (!names.add(entry.getName().toLowerCase(Locale.ENGLISH)))
+				throw new IllegalArgumentException("There are several MLMs named " + entry.getName());
+		}
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		JarOutputStream jar = new JarOutputStream(os, manifest);
+		for (Entry entry : entries) {
+			jar.putNextEntry(new JarEntry(entry.getClassFileName()));
+			entry.getMlm().saveClassFile(jar);
+			jar.closeEntry();
+		}
+		jar.putNextEntry(new JarEntry(INDEX_ENTRY));
+		Writer index = new OutputStreamWriter(jar, "UTF-8");
+		for (Entry entry : entries) {
+			index.write(escape(entry.getName()));
+			index.write('\t');
+			index.write(escape(entry.getInstitution()));
+			index.write('\t');
+			index.write(escape(entry.getSource()));
+			for (String mapping : entry.getEvokeMappings()) {
+				index.write('\t');
+				index.write(escape(mapping));
+			}
+			index.write('\n');
+		}
+		index.flush();
+		jar.closeEntry();
+		jar.finish();
+	}
+
+	private static String escape(String value) {
+		if (value == null)
+			return "";
+		return value.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+	}
+
+	/**
+	 * Reads the index of a jar written by writeJar(). An empty institution
+	 * is returned as null.
+	 */
+	public static List<Entry> readIndex(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		List<Entry> entries = new ArrayList<Entry>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.length() == 0)
+				continue;
+			String[] fields = line.split("\t", -1);
+			if (fields.length < 3)
+				throw new IOException("Invalid index line: " + line);
+			List<String> mappings = new ArrayList<String>(Arrays.asList(fields).subList(3, fields.length));
+			String institution = fields[1].length() > 0 ? fields[1] : null;
+			entries.add(new Entry(fields[0], institution, fields[2], mappings, null));
+		}
+		return entries;
+	}
+}
@@ -36,10 +36,12 @@ import java.util.HashMap;
 import java.util.Locale;
 
 import arden.codegenerator.ClassFileWriter;
+import arden.codegenerator.ConstructorReference;
 import arden.codegenerator.FieldReference;
 import arden.codegenerator.Label;
 import arden.codegenerator.MethodWriter;
 import arden.compiler.node.TIdentifier;
+import arden.runtime.ArdenDuration;
 import arden.runtime.ArdenNull;
 import arden.runtime.ArdenNumber;
 import arden.runtime.ArdenString;
@@ -64,6 +66,8 @@ final class CodeGenerator {
 	private final HashMap<String, FieldReference> stringLiterals = new HashMap<String, FieldReference>();
 	private final HashMap<Double, FieldReference> numberLiterals = new HashMap<Double, FieldReference>();
 	private final HashMap<Long, FieldReference> timeLiterals = new HashMap<Long, FieldReference>();
+	/** keys are the values with the unit, ArdenDuration.equals() treats months as seconds */
+	private final HashMap<String, FieldReference> durationLiterals = new HashMap<String, FieldReference>();
 	private final HashMap<String, Variable> variables = new HashMap<String, Variable>();
 	private int nextFieldIndex;
 	private boolean isFinished;
@@ -165,6 +169,35 @@ final class CodeGenerator {
 		}
 	}
 
+	/**
+	 * Gets a reference to the static field that stores an ArdenDuration with
+	 * the specified value.
+	 */
+	public FieldReference getDurationLiteral(double value, boolean isMonths) {
+		try {
+			String key = value + (isMonths ? " months" : " seconds");
+			FieldReference ref = durationLiterals.get(key);
+			if (ref == null) {
+				ref = classFileWriter.declareField(literalPrefix + (nextFieldIndex++), ArdenValue.class,
+						Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+				durationLiterals.put(key, ref);
+				getStaticInitializer().loadDoubleConstant(value);
+				getStaticInitializer().loadIntegerConstant(isMonths ? 1 : 0);
+				getStaticInitializer().loadLongConstant(ArdenValue.NOPRIMARYTIME);
+
+				getStaticInitializer().invokeStatic(
+						ArdenDuration.class.getMethod("create", Double.TYPE, Boolean.TYPE, Long.TYPE));
+
+				getStaticInitializer().storeStaticField(ref);
+			}
+			return ref;
+		} catch (SecurityException e) {
+			throw new RuntimeException(e);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	private final int lineNumberForStaticInitializationSequencePoint;
 
 	public CodeGenerator(String mlmName, int lineNumberForStaticInitializationSequencePoint) {
@@ -174,6 +207,7 @@ final class CodeGenerator {
 	}
 
 	private boolean isDebuggingEnabled = false;
+	private boolean isUnboxedArithmeticEnabled = true;
 
 	/** Enables debugging for the code being produced. */
 	public void enableDebugging(String sourceFileName) {
@@ -181,6 +215,18 @@ final class CodeGenerator {
 		classFileWriter.setSourceFileName(sourceFileName);
 	}
 
+	/**
+	 * Compiles all arithmetic on boxed values, which produces less code (see
+	 * ArithmeticCompiler).
+	 */
+	public void disableUnboxedArithmetic() {
+		this.isUnboxedArithmeticEnabled = false;
+	}
+
+	public boolean isUnboxedArithmeticEnabled() {
+		return isUnboxedArithmeticEnabled;
+	}
+
 	private MethodWriter ctor;
 	private final Label ctorUserCodeLabel = new Label();
 	private final Label ctorInitCodeLabel = new Label();
@@ -204,7 +250,8 @@ final class CodeGenerator {
 		} catch (NoSuchMethodException e) {
 			throw new RuntimeException(e);
 		}
-		ctor.jump(ctorInitCodeLabel);
+		// the data slot lies between these jumps and may be larger than 32 KB
+		ctor.jumpWide(ctorInitCodeLabel);
 		ctor.mark(ctorUserCodeLabel);
 		return new CompilerContext(this, ctor, 3);
 	}
@@ -222,6 +269,35 @@ final class CodeGenerator {
 		return new CompilerContext(this, ctor, 3);
 	}
 
+	/**
+	 * Creates the createInstance() method, which calls the constructor
+	 * directly so that the runtime does not need reflection to run the MLM.
+	 */
+	public void createFactoryMethod() {
+		Class<?>[] parameters = new Class<?>[] { ExecutionContext.class, MedicalLogicModule.class, ArdenValue[].class };
+		ConstructorReference ctorRef = classFileWriter.getConstructorReference(parameters);
+		MethodWriter w = classFileWriter.createMethod("createInstance", Modifier.PUBLIC, parameters,
+				MedicalLogicModuleImplementation.class);
+		w.newObject(ctorRef);
+		w.dup();
+		w.loadVariable(1);
+		w.loadVariable(2);
+		w.loadVariable(3);
+		w.invokeConstructor(ctorRef);
+		w.returnObjectFromFunction();
+	}
+
+	/**
+	 * Creates the getFormatVersion() method, which tells the runtime the format
+	 * of the class file.
+	 */
+	public void createGetFormatVersion() {
+		MethodWriter w = classFileWriter.createMethod("getFormatVersion", Modifier.PUBLIC, new Class<?>[] {},
+				Integer.TYPE);
+		w.loadIntegerConstant(MedicalLogicModuleImplementation.FORMAT_VERSION);
+		w.returnIntFromFunction();
+	}
+
 	public CompilerContext createLogic() {
 		MethodWriter w = classFileWriter.createMethod("logic", Modifier.PUBLIC,
 				new Class<?>[] { ExecutionContext.class }, Boolean.TYPE);
@@ -426,7 +502,7 @@ final class CodeGenerator {
 				ctor.storeInstanceField(fieldToInit);
 			}
 
-			ctor.jump(ctorUserCodeLabel);
+			ctor.jumpWide(ctorUserCodeLabel);
 
 			isFinished = true;
 		}
@@ -0,0 +1,283 @@
+package arden.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import arden.configuration.ApplicationConfiguration;
+
+/**
+ * Keeps compiled MLMs on disk, so that unchanged .mlm files are not parsed
+ * and compiled again.
+ *
+ * The entries are keyed by a SHA-256 hash of the source, its encoding, the
+ * file name used for debugging information and the compiler version (see
+ * getCompilerVersion()). Changing the source or the compiler therefore
+ * changes the key; old entries are never used again and may be deleted at
+ * any time. Entries are written to a temporary file first and then renamed,
+ * so several processes can share a cache directory.
+ */
+public final class CompilationCache {
+	/** configuration key of the cache directory; no cache is used if it is not set */
+	public static final String DIRECTORY_KEY = "compiler.cache.directory";
+
+	private static final String ENTRY_EXTENSION = ".mlmc";
+	private static final int FORMAT = 1;
+
+	/** see getCompilerVersion(); null until it is determined */
+	private static String compilerVersion;
+
+	private final File directory;
+	private final String version;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public CompilationCache(File directory) {
+		this(directory, getCompilerVersion());
+	}
+
+	/**
+	 * @param compilerVersion
+	 *            part of the key, entries of other versions are ignored
+	 */
+	public CompilationCache(File directory, String compilerVersion) {
+		this.directory = directory;
+		this.version = compilerVersion;
+	}
+
+	/** Creates the cache in the configured directory, or returns null if none is configured. */
+	public static CompilationCache fromConfiguration() {
+		String path = ApplicationConfiguration.get(DIRECTORY_KEY);
+		if (path == null || path.trim().length() == 0)
+			return null;
+		return new CompilationCache(new File(path.trim()));
+	}
+
+	/**
+	 * Gets the version of the compiler: the Implementation-Version of the
+	 * jar, which is the time of the build. If the classes are not loaded from
+	 * a jar, it is a hash of all compiler and runtime classes, as the code
+	 * generated for an MLM depends on both.
+	 */
+	public static synchronized String getCompilerVersion() {
+		if (compilerVersion == null)
+			compilerVersion = findCompilerVersion();
+		return compilerVersion;
+	}
+
+	private static String findCompilerVersion() {
+		String version = Compiler.class.getPackage() != null ? Compiler.class.getPackage()
+				.getImplementationVersion() : null;
+		if (version != null)
+			return version;
+		URL url = Compiler.class.getResource("Compiler.class");
+		try {
+			if (url != null && url.getProtocol().equals("file")) {
+				// <classes>/arden/compiler/Compiler.class
+				File arden = new File(url.toURI()).getParentFile().getParentFile();
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				hashClasses(digest, arden, "arden/");
+				return "dev-" + toHex(digest.digest());
+			}
+			if (url != null) {
+				// a jar built without version; it changes with every class
+				URLConnection connection = url.openConnection();
+				if (connection instanceof JarURLConnection) {
+					File jar = new File(((JarURLConnection) connection).getJarFileURL().toURI());
+					return "jar-" + jar.lastModified() + "-" + jar.length();
+				}
+			}
+		} catch (IOException e) {
+			// not cached across runs then
+		} catch (URISyntaxException e) {
+			// not cached across runs then
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		return "unknown-" + System.currentTimeMillis();
+	}
+
+	/** Adds the paths and contents of the class files in a directory to the digest. */
+	private static void hashClasses(MessageDigest digest, File directory, String path) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null)
+			throw new IOException("Cannot list " + directory);
+		Arrays.sort(files);
+		for (File file : files) {
+			String name = path + file.getName();
+			if (file.isDirectory()) {
+				// the tests and benchmarks don't affect the generated code
+				if (!name.equals("arden/tests") && !name.equals("arden/benchmarks"))
+					hashClasses(digest, file, name + "/");
+			} else if (name.endsWith(".class")) {
+				byte[] data;
+				InputStream in = new FileInputStream(file);
+				try {
+					data = readFully(in);
+				} finally {
+					in.close();
+				}
+				digest.update((name + "\0" + data.length + "\0").getBytes("UTF-8"));
+				digest.update(data);
+			}
+		}
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) > 0)
+			bytes.write(buffer, 0, read);
+		return bytes.toByteArray();
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes)
+			hex.append(String.format("%02x", b & 0xff));
+		return hex.toString();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Gets the MLMs of a source from the cache, or compiles them and stores
+	 * them in the cache. The MLMs are returned even if they can't be
+	 * stored.
+	 *
+	 * @param sourceFileName
+	 *            the file name for debugging information, or null to compile
+	 *            without
+	 */
+	public List<CompiledMlm> compile(byte[] source, Charset charset, String sourceFileName)
+			throws CompilerException {
+		File entry = new File(directory, getKey(source, charset, sourceFileName) + ENTRY_EXTENSION);
+		List<CompiledMlm> mlms = read(entry);
+		if (mlms != null) {
+			hits.incrementAndGet();
+			return mlms;
+		}
+		misses.incrementAndGet();
+		Compiler compiler = new Compiler();
+		if (sourceFileName != null)
+			compiler.enableDebugging(sourceFileName);
+		try {
+			mlms = compiler.compile(new InputStreamReader(new ByteArrayInputStream(source), charset));
+		} catch (IOException e) {
+			// reading from memory doesn't fail
+			throw new RuntimeException(e);
+		}
+		try {
+			write(entry, mlms);
+		} catch (IOException e) {
+			// the MLMs are compiled again next time
+		}
+		return mlms;
+	}
+
+	/** Reads the source from the stream and calls compile(). */
+	public List<CompiledMlm> compile(InputStream source, Charset charset, String sourceFileName)
+			throws CompilerException, IOException {
+		return compile(readFully(source), charset, sourceFileName);
+	}
+
+	private String getKey(byte[] source, Charset charset, String sourceFileName) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+			digest.update((FORMAT + "\0" + version + "\0" + charset.name() + "\0"
+					+ (sourceFileName != null ? sourceFileName : "") + "\0").getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		digest.update(source);
+		return toHex(digest.digest());
+	}
+
+	/** Reads an entry; returns null if it does not exist or is damaged. */
+	private static List<CompiledMlm> read(File entry) {
+		if (!entry.isFile())
+			return null;
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(entry));
+			try {
+				int count = in.readInt();
+				if (count < 0 || count > entry.length())
+					return null;
+				List<CompiledMlm> mlms = new ArrayList<CompiledMlm>(count);
+				for (int i = 0; i < count; i++) {
+					String name = in.readUTF();
+					int length = in.readInt();
+					if (length < 0 || length > entry.length())
+						return null;
+					byte[] data = new byte[length];
+					in.readFully(data);
+					mlms.add(new CompiledMlm(data, name));
+				}
+				return mlms;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private void write(File entry, List<CompiledMlm> mlms) throws IOException {
+		directory.mkdirs();
+		File temporary = File.createTempFile("entry", ".tmp", directory);
+		try {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(temporary));
+			try {
+				out.writeInt(mlms.size());
+				for (CompiledMlm mlm : mlms) {
+					ByteArrayOutputStream data = new ByteArrayOutputStream();
+					mlm.saveClassFile(data);
+					out.writeUTF(mlm.getName());
+					out.writeInt(data.size());
+					data.writeTo(out);
+				}
+			} finally {
+				out.close();
+			}
+			if (!temporary.renameTo(entry) && !entry.isFile())
+				throw new IOException("Cannot write " + entry);
+		} finally {
+			temporary.delete();
+		}
+	}
+
+	/** Gets the number of sources that were taken from the cache. */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/** Gets the number of sources that had to be compiled. */
+	public long getMissCount() {
+		return misses.get();
+	}
+}
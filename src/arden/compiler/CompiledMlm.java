@@ -33,13 +33,13 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 
 import arden.MainClass;
 import arden.runtime.ArdenList;
 import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
+import arden.runtime.ExecutionListener;
 import arden.runtime.LibraryMetadata;
 import arden.runtime.MaintenanceMetadata;
 import arden.runtime.MedicalLogicModule;
@@ -56,22 +56,75 @@ import arden.runtime.events.EvokeEvent;
  * calling loadClassFile().
  * 
  * When createInstance() or run() is called, the compiled bytecode is loaded
- * using the InMemoryClassLoader for execution.
+ * using the InMemoryClassLoader for execution, or the KnowledgeBaseClassLoader
+ * of the knowledge base it belongs to.
+ * 
+ * A CompiledMlm may be shared between threads: the implementation class, its
+ * constructor and the metadata are resolved once, and every call to run()
+ * works on its own implementation instance. Use invoke() to access the
+ * variable values of one particular execution.
  * 
  * @author Daniel Grunwald, Hannes Flicka
  * 
  */
 public final class CompiledMlm implements MedicalLogicModule {
 	private byte[] data;
-	Class<? extends MedicalLogicModuleImplementation> clazz = null;
-	private MedicalLogicModuleImplementation uninitializedInstance = null;	
-	private MedicalLogicModuleImplementation initializedInstance = null;
-	private EvokeEvent evokeEvent = null;
+	volatile Class<? extends MedicalLogicModuleImplementation> clazz = null;
+	/** instance used for calling the generated createInstance() */
+	private MedicalLogicModuleImplementation factory = null;
+	private volatile MedicalLogicModuleImplementation uninitializedInstance = null;
+	private volatile MedicalLogicModuleImplementation initializedInstance = null;
+	private volatile MaintenanceMetadata maintenance = null;
+	private volatile LibraryMetadata library = null;
+	private volatile EvokeEvent evokeEvent = null;
 	private String mlmname;
+	/** the loader shared with other MLMs, or null to use an InMemoryClassLoader */
+	private final KnowledgeBaseClassLoader classLoader;
+
+	/**
+	 * The outcome of one execution of the MLM. Keeps the implementation
+	 * instance, so that the variable values of exactly this execution can be
+	 * read even if the MLM is run concurrently by other threads.
+	 */
+	public static final class Invocation {
+		private final MedicalLogicModuleImplementation instance;
+		private final ArdenValue[] result;
+
+		Invocation(MedicalLogicModuleImplementation instance, ArdenValue[] result) {
+			this.instance = instance;
+			this.result = result;
+		}
+
+		/**
+		 * Gets the value(s) provided by the "return" statement, or (Java) null
+		 * if no return statement was executed.
+		 */
+		public ArdenValue[] getResult() {
+			return result;
+		}
+
+		/**
+		 * Gets the value of a variable as it was at the end of this execution.
+		 * 
+		 * @return the variable value or null if the value does not exist
+		 */
+		public ArdenValue getValue(String name) {
+			return instance.getValue(name);
+		}
+	}
 
 	public CompiledMlm(byte[] data, String mlmname) {
+		this(data, mlmname, null);
+	}
+
+	/**
+	 * Creates an MLM whose class is loaded by a knowledge base class loader,
+	 * see KnowledgeBaseClassLoader.addMlm().
+	 */
+	CompiledMlm(byte[] data, String mlmname, KnowledgeBaseClassLoader classLoader) {
 		this.data = data;
 		this.mlmname = mlmname;
+		this.classLoader = classLoader;
 	}
 	
 	public CompiledMlm(InputStream in, String mlmname) throws IOException {
@@ -92,6 +145,15 @@ public final class CompiledMlm implements MedicalLogicModule {
 	public void saveClassFile(OutputStream os) throws IOException {
 		os.write(data);
 	}
+
+	byte[] getClassData() {
+		return data;
+	}
+
+	/** Gets the name of the implementation class without loading it. */
+	String getClassName() {
+		return mlmname;
+	}
 	
 	private void loadClassFile(File file) throws IOException {
 		loadClassData(
@@ -106,49 +168,59 @@ public final class CompiledMlm implements MedicalLogicModule {
 	}
 
 	@SuppressWarnings("unchecked")
-	private Class<? extends MedicalLogicModuleImplementation> loadClazz() {
+	private synchronized Class<? extends MedicalLogicModuleImplementation> loadClazz() {
 		if (clazz == null) {
+			Class<? extends MedicalLogicModuleImplementation> loaded;
 			try {
-				ClassLoader classLoader = new InMemoryClassLoader(mlmname, data);
-				clazz = (Class<? extends MedicalLogicModuleImplementation>) classLoader.loadClass(mlmname);
+				ClassLoader loader = classLoader != null ? classLoader : new InMemoryClassLoader(mlmname, data);
+				loaded = (Class<? extends MedicalLogicModuleImplementation>) loader.loadClass(mlmname);
+				factory = newUninitializedInstance(loaded);
 			} catch (ClassNotFoundException e) {
 				throw new RuntimeException(e);
+			} catch (IncompatibleClassChangeError e) {
+				throw incompatible(e);
+			}
+			int format = factory.getFormatVersion();
+			if (format != MedicalLogicModuleImplementation.FORMAT_VERSION) {
+				factory = null;
+				throw new RuntimeException("MLM " + mlmname
+						+ " was compiled by an incompatible version of the compiler (class file format " + format
+						+ ", expected " + MedicalLogicModuleImplementation.FORMAT_VERSION + "), recompile it");
 			}
+			clazz = loaded;
 		}
 		return clazz;
 	}
-	
-	private synchronized Constructor<? extends MedicalLogicModuleImplementation> getConstructor() {
-		Constructor<? extends MedicalLogicModuleImplementation> ctor = null;
-		loadClazz();
+
+	/**
+	 * Reports a class file that refers to members of the runtime that do not
+	 * exist, although it has the expected format.
+	 */
+	private RuntimeException incompatible(IncompatibleClassChangeError e) {
+		return new RuntimeException("MLM " + mlmname
+				+ " was compiled by an incompatible version of the compiler, recompile it", e);
+	}
+
+	private static MedicalLogicModuleImplementation newUninitializedInstance(
+			Class<? extends MedicalLogicModuleImplementation> implementation) {
 		// We know the class has an appropriate constructor because we
 		// compiled it, so wrap all the checked exceptions that should never
 		// occur.
 		try {
-			ctor = clazz.getConstructor(ExecutionContext.class, MedicalLogicModule.class, ArdenValue[].class);
+			return implementation.getConstructor().newInstance();
 		} catch (SecurityException e) {
 			throw new RuntimeException(e);
 		} catch (NoSuchMethodException e) {
 			throw new RuntimeException(e);
-		}
-		return ctor;
-	}
-	
-	private synchronized Constructor<? extends MedicalLogicModuleImplementation> getParameterlessConstructor() {		
-		Constructor<? extends MedicalLogicModuleImplementation> ctor = null;
-		loadClazz();
-		//loadClazz();
-		// We know the class has an appropriate constructor because we
-		// compiled it, so wrap all the checked exceptions that should never
-		// occur.
-		try {
-			ctor = clazz.getConstructor();
-		} catch (SecurityException e) {
+		} catch (InstantiationException e) {
 			throw new RuntimeException(e);
-		} catch (NoSuchMethodException e) {
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException(e);
+		} catch (InvocationTargetException e) {
 			throw new RuntimeException(e);
 		}
-		return ctor;
 	}
 
 	/** Creates an instance of the implementation class. */
@@ -159,16 +231,20 @@ public final class CompiledMlm implements MedicalLogicModule {
 			throw new NullPointerException();
 
 		if (arguments == null)
-			arguments = ArdenList.EMPTY.values;
+			arguments = ArdenList.EMPTY.getElements();
 
+		if (clazz == null)
+			loadClazz();
+		// exceptions in the data block are wrapped just like
+		// Constructor.newInstance() does
 		try {
-			return getConstructor().newInstance(context, this, arguments);
-		} catch (IllegalArgumentException e) {
-			throw new RuntimeException(e);
-		} catch (InstantiationException e) {
-			throw new RuntimeException(e);
-		} catch (IllegalAccessException e) {
-			throw new RuntimeException(e);
+			return factory.createInstance(context, this, arguments);
+		} catch (RuntimeException e) {
+			throw new InvocationTargetException(e);
+		} catch (IncompatibleClassChangeError e) {
+			throw incompatible(e);
+		} catch (Error e) {
+			throw new InvocationTargetException(e);
 		}
 	}
 
@@ -180,44 +256,110 @@ public final class CompiledMlm implements MedicalLogicModule {
 	 */
 	@Override
 	public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments) throws InvocationTargetException {
+		return invoke(context, arguments).getResult();
+	}
+
+	/**
+	 * Executes the MLM. Safe to be called from multiple threads at once.
+	 * 
+	 * @return Returns the result and the variable values of this execution.
+	 */
+	public Invocation invoke(ExecutionContext context, ArdenValue[] arguments) throws InvocationTargetException {
+		ExecutionListener listener = context.getExecutionListener();
+		if (listener != ExecutionListener.NONE)
+			return invokeObserved(context, arguments, listener);
 		MedicalLogicModuleImplementation instance = createInstance(context, arguments);
-		initializedInstance = instance;
+		ArdenValue[] result;
 		try {
 			if (instance.logic(context))
-				return instance.action(context);
+				result = instance.action(context);
 			else
-				return null;
+				result = null;
 		} catch (Exception ex) {
 			throw new InvocationTargetException(ex);
+		} catch (IncompatibleClassChangeError e) {
+			throw incompatible(e);
+		} finally {
+			initializedInstance = instance;
 		}
-	}	
+		return new Invocation(instance, result);
+	}
 	
+	/** Executes the MLM and reports the time of every slot to the listener. */
+	private Invocation invokeObserved(ExecutionContext context, ArdenValue[] arguments, ExecutionListener listener)
+			throws InvocationTargetException {
+		listener.mlmStarted(this);
+		boolean concluded = false;
+		Throwable error = null;
+		MedicalLogicModuleImplementation instance = null;
+		try {
+			long start = System.nanoTime();
+			instance = createInstance(context, arguments);
+			long end = System.nanoTime();
+			listener.phaseCompleted(this, ExecutionListener.DATA, end - start);
+			ArdenValue[] result = null;
+			try {
+				start = end;
+				concluded = instance.logic(context);
+				end = System.nanoTime();
+				listener.phaseCompleted(this, ExecutionListener.LOGIC, end - start);
+				if (concluded) {
+					start = end;
+					result = instance.action(context);
+					listener.phaseCompleted(this, ExecutionListener.ACTION, System.nanoTime() - start);
+				}
+			} catch (Exception ex) {
+				throw new InvocationTargetException(ex);
+			} catch (IncompatibleClassChangeError e) {
+				throw incompatible(e);
+			} finally {
+				initializedInstance = instance;
+			}
+			return new Invocation(instance, result);
+		} catch (InvocationTargetException e) {
+			error = e.getCause() != null ? e.getCause() : e;
+			throw e;
+		} catch (RuntimeException e) {
+			error = e;
+			throw e;
+		} catch (Error e) {
+			error = e;
+			throw e;
+		} finally {
+			listener.mlmCompleted(this, concluded, error);
+		}
+	}
+
 	/** use this method only to access static fields in the MLM implementation */
 	private MedicalLogicModuleImplementation getNonInitializedInstance() {
-		if (uninitializedInstance == null) {
-			try {
-				uninitializedInstance = getParameterlessConstructor().newInstance();
-			} catch (InstantiationException e) {
-				throw new RuntimeException(e);
-			} catch (IllegalAccessException e) {
-				throw new RuntimeException(e);
-			} catch (IllegalArgumentException e) {
-				throw new RuntimeException(e);
-			} catch (InvocationTargetException e) {
-				throw new RuntimeException(e);
-			} 
+		MedicalLogicModuleImplementation instance = uninitializedInstance;
+		if (instance == null) {
+			if (clazz == null)
+				loadClazz();
+			instance = factory;
+			uninitializedInstance = instance;
 		}
-		return uninitializedInstance;
+		return instance;
 	}
 	
 	@Override
 	public MaintenanceMetadata getMaintenance() {
-		return getNonInitializedInstance().getMaintenanceMetadata();
+		MaintenanceMetadata result = maintenance;
+		if (result == null) {
+			result = getNonInitializedInstance().getMaintenanceMetadata();
+			maintenance = result;
+		}
+		return result;
 	}
 
 	@Override
 	public LibraryMetadata getLibrary() {
-		return getNonInitializedInstance().getLibraryMetadata();
+		LibraryMetadata result = library;
+		if (result == null) {
+			result = getNonInitializedInstance().getLibraryMetadata();
+			library = result;
+		}
+		return result;
 	}
 	
 	@Override
@@ -240,19 +382,32 @@ public final class CompiledMlm implements MedicalLogicModule {
 	 * constructor, the data section of the MLM is run */
 	@Override
 	public EvokeEvent getEvoke(ExecutionContext context, ArdenValue[] arguments) throws InvocationTargetException {
-		if (evokeEvent == null) {
-			MedicalLogicModuleImplementation instance = initializedInstance;
-			if (instance == null) {
-				instance = createInstance(context, arguments);
+		EvokeEvent result = evokeEvent;
+		if (result == null) {
+			synchronized (this) {
+				result = evokeEvent;
+				if (result == null) {
+					MedicalLogicModuleImplementation instance = initializedInstance;
+					if (instance == null) {
+						instance = createInstance(context, arguments);
+					}
+					result = instance.getEvokeEvent(context);
+					evokeEvent = result;
+				}
 			}
-			evokeEvent = instance.getEvokeEvent(context);
 		}
-		return evokeEvent;
+		return result;
 	}
 
+	/**
+	 * Gets the value of a variable from the most recently completed execution.
+	 * When the MLM is run concurrently, use the Invocation returned by
+	 * invoke() instead.
+	 */
 	public ArdenValue getValue(String name) {
-		if (initializedInstance != null) {
-			return initializedInstance.getValue(name);
+		MedicalLogicModuleImplementation instance = initializedInstance;
+		if (instance != null) {
+			return instance.getValue(name);
 		}
 		return null;
 	}
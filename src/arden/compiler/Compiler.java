@@ -38,6 +38,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import arden.codegenerator.ClassFileLimitExceededException;
 import arden.codegenerator.FieldReference;
 import arden.codegenerator.Label;
 import arden.codegenerator.MethodWriter;
@@ -93,17 +94,20 @@ public final class Compiler {
 
 	/** Compiles a list of MLMs given in the input stream. */
 	public List<CompiledMlm> compile(Reader input) throws CompilerException, IOException {
+		return compile(parse(input));
+	}
+
+	/** Parses the MLMs given in the input stream. */
+	static Start parse(Reader input) throws CompilerException, IOException {
 		Lexer lexer = new Lexer(new PushbackReader(input, 1024));
 		Parser parser = new Parser(lexer);
-		Start syntaxTree;
 		try {
-			syntaxTree = parser.parse();
+			return parser.parse();
 		} catch (ParserException e) {
 			throw new CompilerException(e);
 		} catch (LexerException e) {
 			throw new CompilerException(e);
 		}
-		return compile(syntaxTree);
 	}
 
 	/** Compiles a list of MLMs given in the syntax tree. */
@@ -133,6 +137,15 @@ public final class Compiler {
 	}
 
 	private CompiledMlm doCompileMlm(AMlm mlm) {
+		try {
+			return doCompileMlm(mlm, true);
+		} catch (ClassFileLimitExceededException e) {
+			// the unboxed arithmetic adds code, without it the MLM may fit
+			return doCompileMlm(mlm, false);
+		}
+	}
+
+	private CompiledMlm doCompileMlm(AMlm mlm, boolean unboxedArithmetic) {
 		MetadataCompiler metadata = new MetadataCompiler();
 		mlm.getMaintenanceCategory().apply(metadata);
 		mlm.getLibraryCategory().apply(metadata);
@@ -148,6 +161,8 @@ public final class Compiler {
 				.getLine());
 		if (isDebuggingEnabled)
 			codeGen.enableDebugging(sourceFileName);
+		if (!unboxedArithmetic)
+			codeGen.disableUnboxedArithmetic();
 		
 		compileData(codeGen, knowledge.getDataSlot());
 		compileLogic(codeGen, knowledge.getLogicSlot());
@@ -165,6 +180,8 @@ public final class Compiler {
 		}
 
 		codeGen.createGetValue();
+		codeGen.createFactoryMethod();
+		codeGen.createGetFormatVersion();
 			
 		byte[] data;
 		try {
@@ -0,0 +1,266 @@
+package arden.compiler;
+
+import arden.compiler.node.*;
+import arden.runtime.ArdenBoolean;
+import arden.runtime.ArdenDuration;
+import arden.runtime.ArdenNull;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.BinaryOperator;
+import arden.runtime.ExpressionHelpers;
+import arden.runtime.UnaryOperator;
+
+/**
+ * Evaluates expressions that consist only of literals and arithmetic,
+ * comparison, logical, concatenation and duration operators at compile time,
+ * e.g. "3 days * 24" or "5 + 2".
+ *
+ * Other expressions, and expressions whose evaluation fails, are not
+ * constant; fold() returns null for them.
+ */
+final class ConstantFolder extends ExpressionVisitorBase {
+	private ArdenValue result;
+
+	private ConstantFolder() {
+	}
+
+	/** Gets the value of a constant expression, or null. */
+	public static ArdenValue fold(Node node) {
+		ConstantFolder folder = new ConstantFolder();
+		try {
+			node.apply(folder);
+		} catch (RuntimeException e) {
+			// evaluation failed, leave it to the runtime
+			return null;
+		}
+		ArdenValue value = folder.result;
+		if (value == null || value.primaryTime != ArdenValue.NOPRIMARYTIME)
+			return null;
+		return value;
+	}
+
+	private static ArdenValue evaluate(Node node) {
+		ConstantFolder folder = new ConstantFolder();
+		node.apply(folder);
+		return folder.result;
+	}
+
+	@Override
+	public void defaultCase(Node node) {
+		result = null;
+	}
+
+	private void unary(UnaryOperator operator, Node arg) {
+		ArdenValue value = evaluate(arg);
+		result = value != null ? operator.run(value) : null;
+	}
+
+	private void binary(BinaryOperator operator, Node lhs, Node rhs) {
+		ArdenValue left = evaluate(lhs);
+		ArdenValue right = left != null ? evaluate(rhs) : null;
+		result = right != null ? operator.run(left, right) : null;
+	}
+
+	/**
+	 * Calendar arithmetic with months depends on the time zone of the
+	 * machine, which may not be the same at compile time and at run time.
+	 */
+	private void timeArithmetic(BinaryOperator operator, Node duration, Node time) {
+		ArdenValue left = evaluate(duration);
+		if (left instanceof ArdenDuration && ((ArdenDuration) left).isMonths)
+			result = null;
+		else
+			binary(operator, duration, time);
+	}
+
+	// unlike in GetExpressionVisitor, durations and parentheses are passed through
+	@Override
+	public void caseADurExprAgo(ADurExprAgo node) {
+		node.getExprDuration().apply(this);
+	}
+
+	@Override
+	public void caseAExpExprFactorAtom(AExpExprFactorAtom node) {
+		node.getExpr().apply(this);
+	}
+
+	// operators
+	@Override
+	public void caseAOrExprOr(AOrExprOr node) {
+		binary(BinaryOperator.OR, node.getExprOr(), node.getExprAnd());
+	}
+
+	@Override
+	public void caseAAndExprAnd(AAndExprAnd node) {
+		binary(BinaryOperator.AND, node.getExprAnd(), node.getExprNot());
+	}
+
+	@Override
+	public void caseANotExprNot(ANotExprNot node) {
+		unary(UnaryOperator.NOT, node.getExprComparison());
+	}
+
+	@Override
+	public void caseASimExprComparison(ASimExprComparison node) {
+		PSimpleCompOp compOp = node.getSimpleCompOp();
+		BinaryOperator op;
+		if (compOp instanceof AEqSimpleCompOp || compOp instanceof AEqsSimpleCompOp)
+			op = BinaryOperator.EQ;
+		else if (compOp instanceof ANeSimpleCompOp || compOp instanceof ANesSimpleCompOp)
+			op = BinaryOperator.NE;
+		else if (compOp instanceof AGeSimpleCompOp || compOp instanceof AGesSimpleCompOp)
+			op = BinaryOperator.GE;
+		else if (compOp instanceof AGtSimpleCompOp || compOp instanceof AGtsSimpleCompOp)
+			op = BinaryOperator.GT;
+		else if (compOp instanceof ALeSimpleCompOp || compOp instanceof ALesSimpleCompOp)
+			op = BinaryOperator.LE;
+		else if (compOp instanceof ALtSimpleCompOp || compOp instanceof ALtsSimpleCompOp)
+			op = BinaryOperator.LT;
+		else
+			op = null;
+		if (op != null)
+			binary(op, node.getFirstString(), node.getSecondString());
+		else
+			result = null;
+	}
+
+	@Override
+	public void caseAOrExprString(AOrExprString node) {
+		// only strings and numbers, the text of other values may depend on
+		// the locale or time zone
+		ArdenValue left = evaluate(node.getExprString());
+		ArdenValue right = left != null ? evaluate(node.getExprPlus()) : null;
+		if (isText(left) && isText(right))
+			result = ExpressionHelpers.concat(left, right);
+		else
+			result = null;
+	}
+
+	private static boolean isText(ArdenValue value) {
+		return value instanceof ArdenString || value instanceof ArdenNumber;
+	}
+
+	@Override
+	public void caseAPlusExprPlus(APlusExprPlus node) {
+		binary(BinaryOperator.ADD, node.getExprPlus(), node.getExprTimes());
+	}
+
+	@Override
+	public void caseAMinusExprPlus(AMinusExprPlus node) {
+		binary(BinaryOperator.SUB, node.getExprPlus(), node.getExprTimes());
+	}
+
+	@Override
+	public void caseAPlustExprPlus(APlustExprPlus node) {
+		unary(UnaryOperator.PLUS, node.getExprTimes());
+	}
+
+	@Override
+	public void caseAMintExprPlus(AMintExprPlus node) {
+		unary(UnaryOperator.MINUS, node.getExprTimes());
+	}
+
+	@Override
+	public void caseATpowExprTimes(ATpowExprTimes node) {
+		binary(BinaryOperator.MUL, node.getExprTimes(), node.getExprPower());
+	}
+
+	@Override
+	public void caseADpowExprTimes(ADpowExprTimes node) {
+		binary(BinaryOperator.DIV, node.getExprTimes(), node.getExprPower());
+	}
+
+	@Override
+	public void caseAExpExprPower(AExpExprPower node) {
+		binary(BinaryOperator.POW, node.getBase(), node.getExp());
+	}
+
+	@Override
+	public void caseABeforeExprBefore(ABeforeExprBefore node) {
+		timeArithmetic(BinaryOperator.BEFORE, node.getExprDuration(), node.getExprAgo());
+	}
+
+	@Override
+	public void caseAAfterExprBefore(AAfterExprBefore node) {
+		timeArithmetic(BinaryOperator.AFTER, node.getExprDuration(), node.getExprAgo());
+	}
+
+	@Override
+	public void caseAFromExprBefore(AFromExprBefore node) {
+		timeArithmetic(BinaryOperator.AFTER, node.getExprDuration(), node.getExprAgo());
+	}
+
+	@Override
+	public void caseAExprDuration(AExprDuration node) {
+		ArdenValue value = evaluate(node.getExprFunction());
+		if (!(value instanceof ArdenNumber)) {
+			result = null;
+			return;
+		}
+		PDurationOp durOp = node.getDurationOp();
+		if (durOp instanceof ADayDurationOp || durOp instanceof ADaysDurationOp)
+			result = ExpressionHelpers.createDuration(value, 86400, false);
+		else if (durOp instanceof AHourDurationOp || durOp instanceof AHoursDurationOp)
+			result = ExpressionHelpers.createDuration(value, 3600, false);
+		else if (durOp instanceof AMinDurationOp || durOp instanceof AMinsDurationOp)
+			result = ExpressionHelpers.createDuration(value, 60, false);
+		else if (durOp instanceof AMonthDurationOp || durOp instanceof AMonthsDurationOp)
+			result = ExpressionHelpers.createDuration(value, 1, true);
+		else if (durOp instanceof ASecDurationOp || durOp instanceof ASecsDurationOp)
+			result = ExpressionHelpers.createDuration(value, 1, false);
+		else if (durOp instanceof AWeekDurationOp || durOp instanceof AWeeksDurationOp)
+			result = ExpressionHelpers.createDuration(value, 604800, false);
+		else if (durOp instanceof AYearDurationOp || durOp instanceof AYearsDurationOp)
+			result = ExpressionHelpers.createDuration(value, 12, true);
+		else
+			result = null;
+	}
+
+	// literals
+	@Override
+	public void caseANumExprFactorAtom(ANumExprFactorAtom node) {
+		result = new ArdenNumber(ParseHelpers.getLiteralDoubleValue(node.getNumberLiteral()));
+	}
+
+	@Override
+	public void caseAStringExprFactorAtom(AStringExprFactorAtom node) {
+		result = new ArdenString(ParseHelpers.getLiteralStringValue(node.getStringLiteral()));
+	}
+
+	@Override
+	public void caseATimeExprFactorAtom(ATimeExprFactorAtom node) {
+		node.getTimeValue().apply(this);
+	}
+
+	@Override
+	public void caseAIdtTimeValue(AIdtTimeValue node) {
+		result = new ArdenTime(ParseHelpers.parseIsoDateTime(node.getIsoDateTime()));
+	}
+
+	@Override
+	public void caseAIdatTimeValue(AIdatTimeValue node) {
+		result = new ArdenTime(ParseHelpers.parseIsoDate(node.getIsoDate()));
+	}
+
+	@Override
+	public void caseABoolExprFactorAtom(ABoolExprFactorAtom node) {
+		node.getBooleanValue().apply(this);
+	}
+
+	@Override
+	public void caseATrueBooleanValue(ATrueBooleanValue node) {
+		result = ArdenBoolean.TRUE;
+	}
+
+	@Override
+	public void caseAFalseBooleanValue(AFalseBooleanValue node) {
+		result = ArdenBoolean.FALSE;
+	}
+
+	@Override
+	public void caseANullExprFactorAtom(ANullExprFactorAtom node) {
+		result = ArdenNull.INSTANCE;
+	}
+}
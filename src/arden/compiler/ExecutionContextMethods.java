@@ -35,8 +35,7 @@ import arden.runtime.ExecutionContext;
 
 /** Contains references to the methods from the ExecutionContext class */
 final class ExecutionContextMethods {
-	public static final Method createQuery;
-	public static final Method write, getMessage;
+	public static final Method getMessage;
 	public static final Method findModule, findInterface;
 	public static final Method callWithDelay;
 	public static final Method getEventTime, getTriggerTime, getCurrentTime;
@@ -44,8 +43,6 @@ final class ExecutionContextMethods {
 
 	static {
 		try {
-			createQuery = ExecutionContext.class.getMethod("createQuery", String.class);
-			write = ExecutionContext.class.getMethod("write", ArdenValue.class, String.class);
 			getMessage = ExecutionContext.class.getMethod("getMessage", String.class);
 			findModule = ExecutionContext.class.getMethod("findModule", String.class, String.class);
 			findInterface = ExecutionContext.class.getMethod("findInterface", String.class);
@@ -35,9 +35,13 @@ import java.util.Locale;
 import arden.codegenerator.Label;
 import arden.compiler.node.*;
 import arden.runtime.ArdenBoolean;
+import arden.runtime.ArdenDuration;
 import arden.runtime.ArdenList;
 import arden.runtime.ArdenNull;
+import arden.runtime.ArdenNumber;
 import arden.runtime.ArdenObject;
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
 import arden.runtime.BinaryOperator;
 import arden.runtime.ExpressionHelpers;
@@ -173,6 +177,34 @@ final class ExpressionCompiler extends VisitorBase {
 		invokeLoadedUnaryOperator();
 	}
 
+	/**
+	 * Loads the value of the expression from the literal pool if it is
+	 * constant. Returns false if it is not, or its value has no literal.
+	 */
+	private boolean loadConstant(Node node) {
+		ArdenValue value = ConstantFolder.fold(node);
+		if (value instanceof ArdenNumber) {
+			context.writer.loadStaticField(context.codeGenerator.getNumberLiteral(((ArdenNumber) value).value));
+		} else if (value instanceof ArdenString) {
+			context.writer.loadStaticField(context.codeGenerator.getStringLiteral(((ArdenString) value).value));
+		} else if (value instanceof ArdenTime) {
+			context.writer.loadStaticField(context.codeGenerator.getTimeLiteral(((ArdenTime) value).value));
+		} else if (value instanceof ArdenDuration) {
+			ArdenDuration duration = (ArdenDuration) value;
+			context.writer.loadStaticField(context.codeGenerator.getDurationLiteral(duration.value, duration.isMonths));
+		} else if (value instanceof ArdenBoolean || value instanceof ArdenNull) {
+			String field = value instanceof ArdenNull ? "INSTANCE" : ((ArdenBoolean) value).value ? "TRUE" : "FALSE";
+			try {
+				context.writer.loadStaticField(value.getClass().getDeclaredField(field));
+			} catch (NoSuchFieldException e) {
+				throw new RuntimeException(e);
+			}
+		} else {
+			return false;
+		}
+		return true;
+	}
+
 	// expr =
 	// {sort} expr_sort
 	// | {exsort} expr comma expr_sort
@@ -288,6 +320,8 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseAOrExprOr(AOrExprOr node) {
 		// expr_or = {or} expr_or or expr_and
+		if (loadConstant(node))
+			return;
 		invokeOperator(BinaryOperator.OR, node.getExprOr(), node.getExprAnd());
 	}
 
@@ -303,6 +337,8 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseAAndExprAnd(AAndExprAnd node) {
 		// expr_and = {and} expr_and and expr_not
+		if (loadConstant(node))
+			return;
 		invokeOperator(BinaryOperator.AND, node.getExprAnd(), node.getExprNot());
 	}
 
@@ -318,6 +354,8 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseANotExprNot(ANotExprNot node) {
 		// expr_not = {not} not expr_comparison
+		if (loadConstant(node))
+			return;
 		invokeOperator(UnaryOperator.NOT, node.getExprComparison());
 	}
 
@@ -356,6 +394,10 @@ final class ExpressionCompiler extends VisitorBase {
 	public void caseASimExprComparison(ASimExprComparison node) {
 		// expr_comparison = [first_string]:expr_string simple_comp_op
 		// [second_string]:expr_string
+		if (loadConstant(node))
+			return;
+		if (ArithmeticCompiler.compile(this, node))
+			return;
 		BinaryOperator op;
 		PSimpleCompOp compOp = node.getSimpleCompOp();
 		if (compOp instanceof AEqSimpleCompOp || compOp instanceof AEqsSimpleCompOp)
@@ -457,6 +499,8 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseAOrExprString(AOrExprString node) {
 		// expr_string = expr_string logor expr_plus
+		if (loadConstant(node))
+			return;
 		node.getExprString().apply(this);
 		node.getExprPlus().apply(this);
 		context.writer.invokeStatic(getMethod("concat", ArdenValue.class, ArdenValue.class));
@@ -541,24 +585,40 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseAPlusExprPlus(APlusExprPlus node) {
 		// expr_plus = {plus} expr_plus plus expr_times
+		if (loadConstant(node))
+			return;
+		if (ArithmeticCompiler.compile(this, node))
+			return;
 		invokeOperator(BinaryOperator.ADD, node.getExprPlus(), node.getExprTimes());
 	}
 
 	@Override
 	public void caseAMinusExprPlus(AMinusExprPlus node) {
 		// expr_plus = {minus} expr_plus minus expr_times
+		if (loadConstant(node))
+			return;
+		if (ArithmeticCompiler.compile(this, node))
+			return;
 		invokeOperator(BinaryOperator.SUB, node.getExprPlus(), node.getExprTimes());
 	}
 
 	@Override
 	public void caseAPlustExprPlus(APlustExprPlus node) {
 		// expr_plus = {plust} plus expr_times
+		if (loadConstant(node))
+			return;
+		if (ArithmeticCompiler.compile(this, node))
+			return;
 		invokeOperator(UnaryOperator.PLUS, node.getExprTimes());
 	}
 
 	@Override
 	public void caseAMintExprPlus(AMintExprPlus node) {
 		// expr_plus = {mint} minus expr_times
+		if (loadConstant(node))
+			return;
+		if (ArithmeticCompiler.compile(this, node))
+			return;
 		invokeOperator(UnaryOperator.MINUS, node.getExprTimes());
 	}
 
@@ -575,12 +635,20 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseATpowExprTimes(ATpowExprTimes node) {
 		// expr_times = {tpow} expr_times times expr_power
+		if (loadConstant(node))
+			return;
+		if (ArithmeticCompiler.compile(this, node))
+			return;
 		invokeOperator(BinaryOperator.MUL, node.getExprTimes(), node.getExprPower());
 	}
 
 	@Override
 	public void caseADpowExprTimes(ADpowExprTimes node) {
 		// expr_times = {dpow} expr_times div expr_power
+		if (loadConstant(node))
+			return;
+		if (ArithmeticCompiler.compile(this, node))
+			return;
 		invokeOperator(BinaryOperator.DIV, node.getExprTimes(), node.getExprPower());
 	}
 
@@ -597,6 +665,8 @@ final class ExpressionCompiler extends VisitorBase {
 		// expr_power = {exp} [base]:expr_function dexp [exp]:expr_function
 		// Exponent (second arguement) must be an expression that evaluates to a
 		// scalar number
+		if (loadConstant(node))
+			return;
 		invokeOperator(BinaryOperator.POW, node.getBase(), node.getExp());
 	}
 
@@ -614,12 +684,16 @@ final class ExpressionCompiler extends VisitorBase {
 	@Override
 	public void caseABeforeExprBefore(ABeforeExprBefore node) {
 		// expr_before = {before} expr_duration before expr_ago
+		if (loadConstant(node))
+			return;
 		invokeOperator(BinaryOperator.BEFORE, node.getExprDuration(), node.getExprAgo());
 	}
 
 	@Override
 	public void caseAAfterExprBefore(AAfterExprBefore node) {
 		// expr_before = {after} expr_duration after expr_ago
+		if (loadConstant(node))
+			return;
 		invokeOperator(BinaryOperator.AFTER, node.getExprDuration(), node.getExprAgo());
 	}
 
@@ -627,6 +701,8 @@ final class ExpressionCompiler extends VisitorBase {
 	public void caseAFromExprBefore(AFromExprBefore node) {
 		// expr_before = {from} expr_duration from expr_ago
 		// FROM and AFTER both do the same (duration + time)
+		if (loadConstant(node))
+			return;
 		invokeOperator(BinaryOperator.AFTER, node.getExprDuration(), node.getExprAgo());
 	}
 
@@ -659,6 +735,8 @@ final class ExpressionCompiler extends VisitorBase {
 	// expr_duration = expr_function duration_op;
 	@Override
 	public void caseAExprDuration(AExprDuration node) {
+		if (loadConstant(node))
+			return;
 		node.getExprFunction().apply(this);
 		PDurationOp durOp = node.getDurationOp();
 		compileDurationOp(durOp);
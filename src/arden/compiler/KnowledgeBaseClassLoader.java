@@ -0,0 +1,90 @@
+package arden.compiler;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ClassLoader for all MLMs of a knowledge base, instead of one
+ * InMemoryClassLoader per MLM. It may also define helper classes the MLMs
+ * share.
+ *
+ * A loader holds one generation of the knowledge base. For a hot swap, the
+ * new rules are defined in a new loader; the classes of the old generation
+ * are unloaded together once neither the loader nor any of its MLMs and
+ * their instances are referenced anymore.
+ *
+ * Classes are defined when they are loaded for the first time; the class
+ * data is dropped then.
+ */
+public final class KnowledgeBaseClassLoader extends ClassLoader {
+	private final int generation;
+	/** class data not yet defined */
+	private final Map<String, byte[]> pending = new HashMap<String, byte[]>();
+	/** names of all added classes */
+	private final Set<String> names = new HashSet<String>();
+	/** MLMs added by addMlm() */
+	private final Map<String, CompiledMlm> mlms = new HashMap<String, CompiledMlm>();
+
+	public KnowledgeBaseClassLoader(int generation) {
+		this(KnowledgeBaseClassLoader.class.getClassLoader(), generation);
+	}
+
+	public KnowledgeBaseClassLoader(ClassLoader parent, int generation) {
+		super(parent);
+		this.generation = generation;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Adds a class. Returns false if a class with this name has already been
+	 * added to this generation, in which case that class is kept.
+	 */
+	public synchronized boolean addClass(String name, byte[] data) {
+		if (!names.add(name))
+			return false;
+		pending.put(name, data);
+		return true;
+	}
+
+	/** Checks whether a class of the given name has been added. */
+	public synchronized boolean containsClass(String name) {
+		return names.contains(name);
+	}
+
+	/**
+	 * Adds the class of an MLM and returns the MLM, loaded by this class
+	 * loader. If an MLM with the same name has already been added, that MLM
+	 * is returned and the new class data is ignored.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a class of that name was added by addClass()
+	 */
+	public synchronized CompiledMlm addMlm(byte[] data, String mlmname) {
+		CompiledMlm mlm = mlms.get(mlmname);
+		if (mlm != null)
+			return mlm;
+		if (!addClass(mlmname, data))
+			throw new IllegalArgumentException("Class " + mlmname + " has already been added");
+		mlm = new CompiledMlm(data, mlmname, this);
+		mlms.put(mlmname, mlm);
+		return mlm;
+	}
+
+	/** Adds an MLM compiled by the compiler; see addMlm(byte[], String). */
+	public CompiledMlm addMlm(CompiledMlm mlm) {
+		return addMlm(mlm.getClassData(), mlm.getClassName());
+	}
+
+	@Override
+	protected synchronized Class<?> findClass(String name) throws ClassNotFoundException {
+		byte[] data = pending.remove(name);
+		if (data == null)
+			throw new ClassNotFoundException(name);
+		return defineClass(name, data, 0, data.length);
+	}
+}
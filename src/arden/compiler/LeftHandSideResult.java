@@ -58,6 +58,14 @@ abstract class LeftHandSideResult {
 
 	/** Reads the current value of the variable. */
 	public abstract void loadValue(CompilerContext context);
+
+	/**
+	 * Gets the identifier if this is a simple identifier ("identifier :=
+	 * ...;"), null otherwise.
+	 */
+	public TIdentifier getSimpleIdentifier() {
+		return null;
+	}
 }
 
 /** Represents a simple identifier on the left-hand-side: "identifier := ...;" */
@@ -73,6 +81,11 @@ final class LeftHandSideIdentifier extends LeftHandSideResult {
 		return identifier;
 	}
 
+	@Override
+	public TIdentifier getSimpleIdentifier() {
+		return identifier;
+	}
+
 	@Override
 	public void assign(CompilerContext context, Switchable expr) {
 		context.writer.sequencePoint(identifier.getLine());
@@ -99,7 +99,11 @@ final class ParseHelpers {
 	public static long parseIsoDateTime(TIsoDateTime dateTime) {
 		String text = dateTime.getText();
 		ParsePosition parsePos = new ParsePosition(0);
-		Date date = ArdenTime.isoDateTimeFormat.parse(text, parsePos);
+		Date date;
+		// the formats are shared, MLMs may be compiled in parallel
+		synchronized (ArdenTime.isoDateTimeFormat) {
+			date = ArdenTime.isoDateTimeFormat.parse(text, parsePos);
+		}
 		if (date == null)
 			throw new RuntimeCompilerException(dateTime, "Invalid DateTime literal");
 		long time = date.getTime();
@@ -126,7 +130,9 @@ final class ParseHelpers {
 
 	public static long parseIsoDate(TIsoDate date) {
 		try {
-			return ArdenTime.isoDateFormat.parse(date.getText()).getTime();
+			synchronized (ArdenTime.isoDateFormat) {
+				return ArdenTime.isoDateFormat.parse(date.getText()).getTime();
+			}
 		} catch (ParseException e) {
 			throw new RuntimeCompilerException(e.getMessage());
 		}
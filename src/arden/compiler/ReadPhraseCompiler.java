@@ -30,6 +30,7 @@ package arden.compiler;
 import arden.codegenerator.Label;
 import arden.compiler.node.*;
 import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
 import arden.runtime.BinaryOperator;
 import arden.runtime.DatabaseQuery;
 
@@ -229,7 +230,7 @@ final class ReadPhraseCompiler extends VisitorBase {
 	public void caseAMappingFactor(AMappingFactor node) {
 		context.writer.loadVariable(context.executionContextVariable);
 		context.writer.loadStringConstant(node.getDataMapping().getText());
-		context.writer.invokeInstance(ExecutionContextMethods.createQuery);
+		context.writer.invokeStatic(Compiler.getRuntimeHelper("createQuery", ExecutionContext.class, String.class));
 	}
 
 	/** Adds the temporalCompOp to the DatabaseQuery on the evaluation stack */
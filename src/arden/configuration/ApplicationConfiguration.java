@@ -86,6 +86,23 @@ public class ApplicationConfiguration {
 		return getInstance().getValue(key);
 	}
 	
+	/**
+	 * Gets a numeric value, or defaultValue if the key is not set or its
+	 * value is not a number.
+	 */
+	public static long getLong(String key, long defaultValue) {
+		String value = get(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid value for " + key + ": " + value);
+			return defaultValue;
+		}
+	}
+	
 	public static void set(String key, String value) {
 		getInstance().setValue(key, value);
 	}
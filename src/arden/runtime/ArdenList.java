@@ -27,17 +27,161 @@
 
 package arden.runtime;
 
+import java.util.Arrays;
+
+/**
+ * A list value. Lists of numbers can be held in a numeric form (a double[] of
+ * values and a long[] of primary times) that is operated on without creating an
+ * ArdenNumber per element; the ArdenValue[] form is only created when the
+ * elements are requested via getElements().
+ */
 public final class ArdenList extends ArdenValue {
 	public final static ArdenList EMPTY = new ArdenList(new ArdenValue[0]);
 
-	public final ArdenValue[] values;
+	/** the elements; lazily created for lists in numeric form */
+	private volatile ArdenValue[] values;
+	/** values of the numeric form; null for other lists. NaN stands for null. */
+	private final double[] numbers;
+	/** primary times of the numeric form; null for other lists */
+	private final long[] primaryTimes;
 
 	public ArdenList(ArdenValue[] values) {
 		this.values = values;
+		this.numbers = null;
+		this.primaryTimes = null;
 	}
-	
+
+	/**
+	 * Creates a list of numbers in numeric form. Non-finite values stand for
+	 * null elements. The arrays are not copied and must not be modified
+	 * afterwards.
+	 */
+	public ArdenList(double[] numbers, long[] primaryTimes) {
+		if (numbers.length != primaryTimes.length)
+			throw new IllegalArgumentException("numbers and primaryTimes must have the same length");
+		this.numbers = numbers;
+		this.primaryTimes = primaryTimes;
+	}
+
+	/** Returns whether this list is held in numeric form. */
+	public boolean isNumeric() {
+		return numbers != null;
+	}
+
+	/** Gets the number of elements, without creating the elements. */
+	public int size() {
+		return numbers != null ? numbers.length : values.length;
+	}
+
+	/** Gets the values of a list in numeric form. Must not be modified. */
+	double[] getNumbers() {
+		return numbers;
+	}
+
+	/** Gets the primary times of a list in numeric form. Must not be modified. */
+	long[] getPrimaryTimes() {
+		return primaryTimes;
+	}
+
+	/** Gets the element at the specified index, without creating the other elements. */
+	ArdenValue get(int index) {
+		ArdenValue[] values = this.values;
+		if (values != null)
+			return values[index];
+		return ArdenNumber.create(numbers[index], primaryTimes[index]);
+	}
+
+	/** Returns whether a list in numeric form contains null elements. */
+	boolean containsNull() {
+		for (double number : numbers) {
+			if (isNull(number))
+				return true;
+		}
+		return false;
+	}
+
+	/** Returns whether a value of the numeric form stands for null. */
+	static boolean isNull(double number) {
+		return Double.isNaN(number) || Double.isInfinite(number);
+	}
+
+	/**
+	 * Gets the common primary time of all elements, or NOPRIMARYTIME if the
+	 * elements have different primary times.
+	 */
+	long getCommonTime() {
+		if (primaryTimes == null)
+			return ExpressionHelpers.getCommonTime(getElements());
+		if (primaryTimes.length == 0)
+			return NOPRIMARYTIME;
+		long time = primaryTimes[0];
+		for (int i = 1; i < primaryTimes.length; i++) {
+			if (primaryTimes[i] != time)
+				return NOPRIMARYTIME;
+		}
+		return time;
+	}
+
+	/**
+	 * Returns the sublist of the elements for which keep is true. The numeric
+	 * form is preserved.
+	 */
+	ArdenList select(boolean[] keep, int count) {
+		if (numbers == null) {
+			ArdenValue[] elements = getElements();
+			ArdenValue[] result = new ArdenValue[count];
+			int pos = 0;
+			for (int i = 0; i < elements.length; i++) {
+				if (keep[i])
+					result[pos++] = elements[i];
+			}
+			return new ArdenList(result);
+		}
+		double[] resultNumbers = new double[count];
+		long[] resultTimes = new long[count];
+		int pos = 0;
+		for (int i = 0; i < numbers.length; i++) {
+			if (keep[i]) {
+				resultNumbers[pos] = numbers[i];
+				resultTimes[pos] = primaryTimes[i];
+				pos++;
+			}
+		}
+		return new ArdenList(resultNumbers, resultTimes);
+	}
+
+	/** Returns the elements from index start (inclusive) to end (exclusive). */
+	ArdenList subList(int start, int end) {
+		if (numbers != null)
+			return new ArdenList(Arrays.copyOfRange(numbers, start, end), Arrays.copyOfRange(primaryTimes, start, end));
+		return new ArdenList(Arrays.copyOfRange(values, start, end));
+	}
+
+	/**
+	 * Returns the sublist of a numeric list with the elements whose primary
+	 * time is (inside == true) or is not (inside == false) within [start, end].
+	 * Elements without primary time are never selected.
+	 */
+	ArdenList selectByTime(long start, long end, boolean inside) {
+		boolean[] keep = new boolean[primaryTimes.length];
+		int count = 0;
+		for (int i = 0; i < primaryTimes.length; i++) {
+			long time = primaryTimes[i];
+			if (time != NOPRIMARYTIME && (time >= start && time <= end) == inside) {
+				keep[i] = true;
+				count++;
+			}
+		}
+		return select(keep, count);
+	}
+
 	@Override
 	public ArdenValue setTime(long newPrimaryTime) {
+		if (numbers != null) {
+			long[] newTimes = new long[numbers.length];
+			Arrays.fill(newTimes, newPrimaryTime);
+			return new ArdenList(numbers, newTimes);
+		}
 		ArdenValue[] newValues = new ArdenValue[values.length];
 		for (int i = 0; i < values.length; i++)
 			newValues[i] = values[i].setTime(newPrimaryTime);
@@ -46,11 +190,20 @@ public final class ArdenList extends ArdenValue {
 	
 	@Override
 	public ArdenValue[] getElements() {
-		return values;
+		ArdenValue[] result = values;
+		if (result == null) {
+			// numeric form: box the elements on first access
+			result = new ArdenValue[numbers.length];
+			for (int i = 0; i < result.length; i++)
+				result[i] = ArdenNumber.create(numbers[i], primaryTimes[i]);
+			values = result;
+		}
+		return result;
 	}
 
 	@Override
 	public String toString() {
+		ArdenValue[] values = getElements();
 		StringBuilder b = new StringBuilder();
 		b.append('(');
 		if (values.length == 1) {
@@ -71,11 +224,12 @@ public final class ArdenList extends ArdenValue {
 	public boolean equals(Object obj) {
 		if (!(obj instanceof ArdenList))
 			return false;
-		ArdenList list = (ArdenList) obj;
-		if (list.values.length != values.length)
+		ArdenValue[] values = getElements();
+		ArdenValue[] otherValues = ((ArdenList) obj).getElements();
+		if (otherValues.length != values.length)
 			return false;
 		for (int i = 0; i < values.length; i++) {
-			if (!values[i].equals(list.values[i]))
+			if (!values[i].equals(otherValues[i]))
 				return false;
 		}
 		return true;
@@ -84,7 +238,7 @@ public final class ArdenList extends ArdenValue {
 	@Override
 	public int hashCode() {
 		int result = 1;
-		for (ArdenValue val : values) {
+		for (ArdenValue val : getElements()) {
 			result *= 27;
 			result += val.hashCode();
 		}
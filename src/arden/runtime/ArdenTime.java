@@ -55,6 +55,7 @@ public final class ArdenTime extends ArdenValue {
 		return new ArdenTime(value, newPrimaryTime);
 	}
 
+	/** Shared formats; DateFormat is not thread-safe, so synchronize on the format when using it. */
 	public static final DateFormat isoDateTimeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
 	public static final DateFormat isoDateTimeFormatWithMillis = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
 	public static final DateFormat isoDateFormat = new SimpleDateFormat("yyyy-MM-dd");
@@ -62,9 +63,13 @@ public final class ArdenTime extends ArdenValue {
 	@Override
 	public String toString() {
 		if (value % 1000 != 0) {
-			return isoDateTimeFormatWithMillis.format(new Date(value));
+			synchronized (isoDateTimeFormatWithMillis) {
+				return isoDateTimeFormatWithMillis.format(new Date(value));
+			}
 		} else {
-			return isoDateTimeFormat.format(new Date(value));
+			synchronized (isoDateTimeFormat) {
+				return isoDateTimeFormat.format(new Date(value));
+			}
 		}
 	}
 
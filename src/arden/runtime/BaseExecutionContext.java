@@ -1,30 +1,46 @@
 package arden.runtime;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
-import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.Charset;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import arden.MainClass;
+import arden.configuration.ApplicationConfiguration;
+import arden.compiler.CompilationCache;
 import arden.compiler.Compiler;
 import arden.compiler.CompilerException;
 import arden.compiler.CompiledMlm;
+import arden.compiler.KnowledgeBaseClassLoader;
 
 public class BaseExecutionContext extends ExecutionContext {
+	/** configuration key of the number of threads that run delayed calls */
+	public static final String DELAYED_CALL_THREADS_KEY = "delayedcalls.threads";
+	/** configuration key of the maximum number of pending delayed calls */
+	public static final String DELAYED_CALL_MAXIMUM_PENDING_KEY = "delayedcalls.maxpending";
+	
 	List<URL> mlmSearchPath;
 	Map<String,ArdenRunnable> moduleList;
+	private DelayedCallScheduler delayedCalls = null;
+	/** the context that owns the scheduler of the delayed calls; this unless shared */
+	private BaseExecutionContext delayedCallsOwner = this;
+	private CompilationCache compilationCache = null;
+	private boolean compilationCacheSet = false;
+	private KnowledgeBaseClassLoader moduleClassLoader = new KnowledgeBaseClassLoader(0);
 	
 	public BaseExecutionContext(URL[] mlmSearchPath) {		
 		setURLs(mlmSearchPath);
-		moduleList = new HashMap<String,ArdenRunnable>();
+		// MLMs may be run concurrently, e.g. by the MlmDaemon
+		moduleList = new ConcurrentHashMap<String,ArdenRunnable>();
 	}
 	
 	public void addURL(URL url) {
@@ -38,14 +54,89 @@ public class BaseExecutionContext extends ExecutionContext {
 		}
 	}
 	
+	/**
+	 * Schedules the call on the delayed call scheduler and returns
+	 * immediately. The MLM runs in this context.
+	 */
 	@Override
 	public void callWithDelay(ArdenRunnable mlm, ArdenValue[] arguments, ArdenValue delay) {
-		System.out.println("delay: " + delay.toString());		
-		try {
-			mlm.run(this, arguments);
-		} catch (InvocationTargetException e) {
-			e.printStackTrace();			
+		getDelayedCalls().schedule(this, mlm, arguments, delay);
+	}
+	
+	/**
+	 * Makes this context use the delayed call scheduler of another context,
+	 * e.g. of the context it was derived from, instead of an own one.
+	 */
+	protected void shareDelayedCalls(BaseExecutionContext other) {
+		delayedCallsOwner = other.delayedCallsOwner;
+	}
+	
+	/**
+	 * Gets the scheduler of the delayed calls, which is created with the
+	 * configured number of threads on first use.
+	 */
+	public DelayedCallScheduler getDelayedCalls() {
+		if (delayedCallsOwner != this)
+			return delayedCallsOwner.getDelayedCalls();
+		return getOwnDelayedCalls();
+	}
+	
+	private synchronized DelayedCallScheduler getOwnDelayedCalls() {
+		if (delayedCalls == null) {
+			int threads = (int) Math.max(1, ApplicationConfiguration.getLong(DELAYED_CALL_THREADS_KEY,
+					DelayedCallScheduler.DEFAULT_THREADS));
+			int maximumPending = (int) Math.max(1, ApplicationConfiguration.getLong(
+					DELAYED_CALL_MAXIMUM_PENDING_KEY, DelayedCallScheduler.DEFAULT_MAXIMUM_PENDING));
+			delayedCalls = new DelayedCallScheduler(this, threads, maximumPending);
+		}
+		return delayedCalls;
+	}
+	
+	/**
+	 * Discards the delayed calls that are waiting, unless the scheduler is
+	 * shared with another context.
+	 */
+	public synchronized void close() {
+		if (delayedCalls != null) {
+			delayedCalls.shutdown();
+		}
+	}
+	
+	/**
+	 * Gets the cache of compiled MLMs that findModule() uses for .mlm files.
+	 * By default it is created from the configuration on first use, or null
+	 * if no cache directory is configured.
+	 */
+	public synchronized CompilationCache getCompilationCache() {
+		if (!compilationCacheSet) {
+			compilationCache = CompilationCache.fromConfiguration();
+			compilationCacheSet = true;
 		}
+		return compilationCache;
+	}
+	
+	/** Sets the cache of compiled MLMs; null compiles every .mlm file. */
+	public synchronized void setCompilationCache(CompilationCache cache) {
+		compilationCache = cache;
+		compilationCacheSet = true;
+	}
+	
+	/**
+	 * Gets the class loader of the MLMs that findModule() has loaded since
+	 * the last call to unloadModules().
+	 */
+	public synchronized KnowledgeBaseClassLoader getModuleClassLoader() {
+		return moduleClassLoader;
+	}
+	
+	/**
+	 * Forgets all MLMs findModule() has loaded, so that changed MLMs are
+	 * loaded again. Their classes are unloaded together when they are not
+	 * used anymore.
+	 */
+	public synchronized void unloadModules() {
+		moduleList.clear();
+		moduleClassLoader = new KnowledgeBaseClassLoader(moduleClassLoader.getGeneration() + 1);
 	}
 	
 	@Override
@@ -57,22 +148,34 @@ public class BaseExecutionContext extends ExecutionContext {
 		if (fromlist != null) {
 			return fromlist;
 		}
+		KnowledgeBaseClassLoader generation = getModuleClassLoader();
 		ClassLoader loader = new URLClassLoader(mlmSearchPath.toArray(new URL[]{}));
 		InputStream in = loader.getResourceAsStream(name + ".class");
 		if (in != null) {
 			try {
-				ArdenRunnable module = new CompiledMlm(in, name); 
-				moduleList.put(name.toLowerCase(), module);
-				return module;
+				try {
+					return addModule(name, generation, generation.addMlm(readFully(in), name));
+				} finally {
+					in.close();
+				}
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
 		}
 		in = loader.getResourceAsStream(name + MainClass.MLM_FILE_EXTENSION);
-		Compiler compiler = new Compiler();
-		MedicalLogicModule mlm = null;
+		CompiledMlm mlm = null;
 		try {
-			mlm = compiler.compile(new InputStreamReader(in, "UTF-8")).get(0);
+			CompilationCache cache = getCompilationCache();
+			if (cache != null) {
+				try {
+					mlm = cache.compile(in, Charset.forName("UTF-8"), null).get(0);
+				} finally {
+					in.close();
+				}
+			} else {
+				Compiler compiler = new Compiler();
+				mlm = compiler.compile(new InputStreamReader(in, "UTF-8")).get(0);
+			}
 		} catch (UnsupportedEncodingException e) {
 			throw new RuntimeException(e);
 		} catch (CompilerException e) {
@@ -80,7 +183,25 @@ public class BaseExecutionContext extends ExecutionContext {
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
-		moduleList.put(name.toLowerCase(), mlm);
+		return addModule(name, generation, generation.addMlm(mlm));
+	}
+	
+	/** Remembers the module unless its generation has been unloaded meanwhile. */
+	private synchronized ArdenRunnable addModule(String name, KnowledgeBaseClassLoader generation,
+			CompiledMlm mlm) {
+		if (generation == moduleClassLoader) {
+			moduleList.put(name.toLowerCase(), mlm);
+		}
 		return mlm;
 	}
+	
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
 }
@@ -0,0 +1,209 @@
+package arden.runtime;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs one MLM in many execution contexts, e.g. one per patient, on a
+ * fork-join pool.
+ *
+ * The contexts are taken from an iterator in batches, so they can be created
+ * lazily. The result of every run is passed to a ResultHandler as soon as it
+ * is available; the handler is called by one thread at a time. Messages
+ * written by the MLM go to the context it ran in, as usual.
+ *
+ * The mapping clauses the MLM queries are recorded while it runs. If a
+ * Prefetcher is set, it is given these mappings and every batch before the
+ * MLM runs in it, so that it can fetch the data of the whole batch at once.
+ */
+public final class BatchEvaluator {
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/** Receives the results of the runs. */
+	public interface ResultHandler {
+		/** Called after the MLM has run in a context; result is null if it returned nothing. */
+		void completed(ExecutionContext context, ArdenValue[] result);
+
+		/** Called if the MLM threw an exception in a context. */
+		void failed(ExecutionContext context, Throwable error);
+	}
+
+	/** Fetches the data of a batch of contexts before the MLM runs in them. */
+	public interface Prefetcher {
+		/**
+		 * @param mappings
+		 *            the mapping clauses the MLM has queried so far
+		 */
+		void prefetch(Collection<String> mappings, List<ExecutionContext> batch);
+	}
+
+	private final MedicalLogicModule mlm;
+	private final ForkJoinPool pool;
+	private final int batchSize;
+	private Prefetcher prefetcher = null;
+	private final Set<String> mappings = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	public BatchEvaluator(MedicalLogicModule mlm) {
+		this(mlm, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param batchSize
+	 *            the number of contexts that are prefetched and run together
+	 */
+	public BatchEvaluator(MedicalLogicModule mlm, ForkJoinPool pool, int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batchSize must be positive");
+		this.mlm = mlm;
+		this.pool = pool;
+		this.batchSize = batchSize;
+	}
+
+	public void setPrefetcher(Prefetcher prefetcher) {
+		this.prefetcher = prefetcher;
+	}
+
+	/** Gets the mapping clauses the MLM has queried so far. */
+	public Set<String> getMappings() {
+		return Collections.unmodifiableSet(mappings);
+	}
+
+	/**
+	 * Runs the MLM in every context and returns the number of runs. Returns
+	 * when all runs have completed.
+	 *
+	 * Exceptions of the MLM are passed to the handler. An Error thrown by the
+	 * MLM, or an exception thrown by the handler, is rethrown once the other
+	 * runs of its batch have completed; the remaining contexts are not run
+	 * then.
+	 */
+	public long evaluate(Iterator<? extends ExecutionContext> contexts, ArdenValue[] arguments,
+			ResultHandler handler) {
+		long count = 0;
+		boolean first = true;
+		while (contexts.hasNext()) {
+			List<ExecutionContext> batch = new ArrayList<ExecutionContext>();
+			if (first && prefetcher != null) {
+				// run one context alone to learn the mappings for the first batch
+				batch.add(contexts.next());
+				run(batch, arguments, handler);
+				count++;
+				first = false;
+				continue;
+			}
+			while (batch.size() < batchSize && contexts.hasNext())
+				batch.add(contexts.next());
+			if (prefetcher != null && !mappings.isEmpty())
+				prefetcher.prefetch(new ArrayList<String>(mappings), batch);
+			run(batch, arguments, handler);
+			count += batch.size();
+		}
+		return count;
+	}
+
+	private void run(List<ExecutionContext> batch, ArdenValue[] arguments, ResultHandler handler) {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(batch.size());
+		for (ExecutionContext context : batch)
+			tasks.add(new Run(context, arguments, handler));
+		for (Future<Void> future : pool.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Error)
+					throw (Error) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	private final class Run implements Callable<Void> {
+		private final ExecutionContext context;
+		private final ArdenValue[] arguments;
+		private final ResultHandler handler;
+
+		Run(ExecutionContext context, ArdenValue[] arguments, ResultHandler handler) {
+			this.context = context;
+			this.arguments = arguments;
+			this.handler = handler;
+		}
+
+		@Override
+		public Void call() {
+			ExecutionListener previous = context.getExecutionListener();
+			context.setExecutionListener(new MappingRecorder(previous));
+			ArdenValue[] result;
+			try {
+				result = mlm.run(context, arguments);
+			} catch (InvocationTargetException e) {
+				failed(e.getCause() != null ? e.getCause() : e);
+				return null;
+			} catch (RuntimeException e) {
+				failed(e);
+				return null;
+			} finally {
+				context.setExecutionListener(previous);
+			}
+			synchronized (handler) {
+				handler.completed(context, result);
+			}
+			return null;
+		}
+
+		private void failed(Throwable error) {
+			synchronized (handler) {
+				handler.failed(context, error);
+			}
+		}
+	}
+
+	/** Records the mappings of the executed queries and passes everything on. */
+	private final class MappingRecorder extends ExecutionListener {
+		private final ExecutionListener next;
+
+		MappingRecorder(ExecutionListener next) {
+			this.next = next;
+		}
+
+		@Override
+		public void mlmStarted(MedicalLogicModule mlm) {
+			next.mlmStarted(mlm);
+		}
+
+		@Override
+		public void phaseCompleted(MedicalLogicModule mlm, int phase, long nanos) {
+			next.phaseCompleted(mlm, phase, nanos);
+		}
+
+		@Override
+		public void mlmCompleted(MedicalLogicModule mlm, boolean concluded, Throwable error) {
+			next.mlmCompleted(mlm, concluded, error);
+		}
+
+		@Override
+		public void queryExecuted(String mapping, long nanos) {
+			mappings.add(mapping);
+			next.queryExecuted(mapping, nanos);
+		}
+
+		@Override
+		public void messageWritten(String destination) {
+			next.messageWritten(destination);
+		}
+	}
+}
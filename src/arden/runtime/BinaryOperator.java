@@ -66,7 +66,7 @@ public abstract class BinaryOperator {
 		};
 	};
 
-	public static final BinaryOperator EQ = new BinaryOperator("EQ") {
+	public static final BinaryOperator EQ = new NumberComparison("EQ") {
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -74,9 +74,14 @@ public abstract class BinaryOperator {
 				return ArdenNull.create(newTime);
 			return ArdenBoolean.create(lhs.equals(rhs), newTime);
 		};
+
+		@Override
+		boolean compareNumbers(double lhs, double rhs) {
+			return lhs == rhs;
+		}
 	};
 
-	public static final BinaryOperator NE = new BinaryOperator("NE") {
+	public static final BinaryOperator NE = new NumberComparison("NE") {
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -84,9 +89,14 @@ public abstract class BinaryOperator {
 				return ArdenNull.create(newTime);
 			return ArdenBoolean.create(!lhs.equals(rhs), newTime);
 		};
+
+		@Override
+		boolean compareNumbers(double lhs, double rhs) {
+			return lhs != rhs;
+		}
 	};
 
-	public static final BinaryOperator LT = new BinaryOperator("LT") {
+	public static final BinaryOperator LT = new NumberComparison("LT") {
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -95,9 +105,14 @@ public abstract class BinaryOperator {
 				return ArdenNull.create(newTime);
 			return ArdenBoolean.create(cmp < 0, newTime);
 		};
+
+		@Override
+		boolean compareNumbers(double lhs, double rhs) {
+			return lhs < rhs;
+		}
 	};
 
-	public static final BinaryOperator LE = new BinaryOperator("LE") {
+	public static final BinaryOperator LE = new NumberComparison("LE") {
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -106,9 +121,14 @@ public abstract class BinaryOperator {
 				return ArdenNull.create(newTime);
 			return ArdenBoolean.create(cmp <= 0, newTime);
 		};
+
+		@Override
+		boolean compareNumbers(double lhs, double rhs) {
+			return lhs <= rhs;
+		}
 	};
 
-	public static final BinaryOperator GT = new BinaryOperator("GT") {
+	public static final BinaryOperator GT = new NumberComparison("GT") {
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -117,9 +137,14 @@ public abstract class BinaryOperator {
 				return ArdenNull.create(newTime);
 			return ArdenBoolean.create(cmp > 0, newTime);
 		};
+
+		@Override
+		boolean compareNumbers(double lhs, double rhs) {
+			return lhs > rhs;
+		}
 	};
 
-	public static final BinaryOperator GE = new BinaryOperator("GE") {
+	public static final BinaryOperator GE = new NumberComparison("GE") {
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -128,9 +153,14 @@ public abstract class BinaryOperator {
 				return ArdenNull.create(newTime);
 			return ArdenBoolean.create(cmp >= 0, newTime);
 		};
+
+		@Override
+		boolean compareNumbers(double lhs, double rhs) {
+			return lhs >= rhs;
+		}
 	};
 
-	public static final BinaryOperator ADD = new BinaryOperator("ADD") {
+	public static final BinaryOperator ADD = new NumericOperator("ADD") {
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -152,9 +182,14 @@ public abstract class BinaryOperator {
 				return ArdenNull.create(newTime);
 			}
 		};
+
+		@Override
+		double runNumbers(double lhs, double rhs) {
+			return lhs + rhs;
+		}
 	};
 
-	public static final BinaryOperator SUB = new BinaryOperator("SUB") {
+	public static final BinaryOperator SUB = new NumericOperator("SUB") {
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -177,9 +212,14 @@ public abstract class BinaryOperator {
 				return ArdenNull.create(newTime);
 			}
 		};
+
+		@Override
+		double runNumbers(double lhs, double rhs) {
+			return lhs - rhs;
+		}
 	};
 
-	public static final BinaryOperator MUL = new BinaryOperator("MUL") {
+	public static final BinaryOperator MUL = new NumericOperator("MUL") {
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -198,9 +238,14 @@ public abstract class BinaryOperator {
 				return ArdenNull.create(newTime);
 			}
 		};
+
+		@Override
+		double runNumbers(double lhs, double rhs) {
+			return lhs * rhs;
+		}
 	};
 
-	public static final BinaryOperator DIV = new BinaryOperator("DIV") {
+	public static final BinaryOperator DIV = new NumericOperator("DIV") {
 		@Override
 		public ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -222,9 +267,14 @@ public abstract class BinaryOperator {
 				return ArdenNull.create(newTime);
 			}
 		};
+
+		@Override
+		double runNumbers(double lhs, double rhs) {
+			return lhs / rhs;
+		}
 	};
 
-	public static final BinaryOperator POW = new BinaryOperator("POW") {
+	public static final BinaryOperator POW = new NumericOperator("POW") {
 		@Override
 		public final ArdenValue runElement(ArdenValue lhs, ArdenValue rhs) {
 			long newTime = combinePrimaryTime(lhs.primaryTime, rhs.primaryTime);
@@ -234,6 +284,11 @@ public abstract class BinaryOperator {
 			}
 			return ArdenNull.create(newTime);
 		}
+
+		@Override
+		double runNumbers(double lhs, double rhs) {
+			return Math.pow(lhs, rhs);
+		}
 	};
 
 	public static final BinaryOperator AFTER = new BinaryOperator("AFTER") {
@@ -316,26 +371,39 @@ public abstract class BinaryOperator {
 			ArdenList leftList = (ArdenList) lhs;
 			if (rhs instanceof ArdenList) {
 				ArdenList rightList = (ArdenList) rhs;
-				if (leftList.values.length != rightList.values.length)
+				if (leftList.size() != rightList.size())
 					return ArdenNull.INSTANCE;
-				ArdenValue[] results = new ArdenValue[leftList.values.length];
+				if (leftList.isNumeric() && rightList.isNumeric())
+					return runNumbers(leftList.size(), leftList.getNumbers(), leftList.getPrimaryTimes(), rightList
+							.getNumbers(), rightList.getPrimaryTimes());
+				ArdenValue[] left = leftList.getElements();
+				ArdenValue[] right = rightList.getElements();
+				ArdenValue[] results = new ArdenValue[left.length];
 				for (int i = 0; i < results.length; i++) {
-					results[i] = runElement(leftList.values[i], rightList.values[i]);
+					results[i] = runElement(left[i], right[i]);
 				}
 				return new ArdenList(results);
 			} else {
-				ArdenValue[] results = new ArdenValue[leftList.values.length];
+				if (leftList.isNumeric() && rhs instanceof ArdenNumber)
+					return runNumbers(leftList.size(), leftList.getNumbers(), leftList.getPrimaryTimes(),
+							new double[] { ((ArdenNumber) rhs).value }, new long[] { rhs.primaryTime });
+				ArdenValue[] left = leftList.getElements();
+				ArdenValue[] results = new ArdenValue[left.length];
 				for (int i = 0; i < results.length; i++) {
-					results[i] = runElement(leftList.values[i], rhs);
+					results[i] = runElement(left[i], rhs);
 				}
 				return new ArdenList(results);
 			}
 		} else {
 			if (rhs instanceof ArdenList) {
 				ArdenList rightList = (ArdenList) rhs;
-				ArdenValue[] results = new ArdenValue[rightList.values.length];
+				if (rightList.isNumeric() && lhs instanceof ArdenNumber)
+					return runNumbers(rightList.size(), new double[] { ((ArdenNumber) lhs).value },
+							new long[] { lhs.primaryTime }, rightList.getNumbers(), rightList.getPrimaryTimes());
+				ArdenValue[] right = rightList.getElements();
+				ArdenValue[] results = new ArdenValue[right.length];
 				for (int i = 0; i < results.length; i++) {
-					results[i] = runElement(lhs, rightList.values[i]);
+					results[i] = runElement(lhs, right[i]);
 				}
 				return new ArdenList(results);
 			} else {
@@ -344,6 +412,69 @@ public abstract class BinaryOperator {
 		}
 	}
 
+	/**
+	 * Runs the operator on operands in the numeric list form without boxing.
+	 * A scalar operand is passed as arrays of length 1.
+	 */
+	private ArdenValue runNumbers(int length, double[] lhs, long[] lhsTimes, double[] rhs, long[] rhsTimes) {
+		boolean lhsIsList = lhs.length == length;
+		boolean rhsIsList = rhs.length == length;
+		if (this instanceof NumericOperator) {
+			NumericOperator op = (NumericOperator) this;
+			double[] results = new double[length];
+			long[] times = new long[length];
+			for (int i = 0; i < length; i++) {
+				int l = lhsIsList ? i : 0;
+				int r = rhsIsList ? i : 0;
+				if (ArdenList.isNull(lhs[l]) || ArdenList.isNull(rhs[r]))
+					results[i] = Double.NaN;
+				else
+					results[i] = op.runNumbers(lhs[l], rhs[r]);
+				times[i] = combinePrimaryTime(lhsTimes[l], rhsTimes[r]);
+			}
+			return new ArdenList(results, times);
+		}
+		ArdenValue[] results = new ArdenValue[length];
+		for (int i = 0; i < length; i++) {
+			int l = lhsIsList ? i : 0;
+			int r = rhsIsList ? i : 0;
+			if (this instanceof NumberComparison) {
+				long newTime = combinePrimaryTime(lhsTimes[l], rhsTimes[r]);
+				if (ArdenList.isNull(lhs[l]) || ArdenList.isNull(rhs[r]))
+					results[i] = ArdenNull.create(newTime);
+				else
+					results[i] = ArdenBoolean.create(((NumberComparison) this).compareNumbers(lhs[l], rhs[r]), newTime);
+			} else {
+				results[i] = runElement(ArdenNumber.create(lhs[l], lhsTimes[l]), ArdenNumber.create(rhs[r],
+						rhsTimes[r]));
+			}
+		}
+		return new ArdenList(results);
+	}
+
+	/**
+	 * Base class for operators that map two numbers to a number, so that
+	 * lists in numeric form can be processed without boxing.
+	 */
+	static abstract class NumericOperator extends BinaryOperator {
+		NumericOperator(String name) {
+			super(name);
+		}
+
+		/** Runs the operator on two (non-null) numbers. Returns NaN for null. */
+		abstract double runNumbers(double lhs, double rhs);
+	}
+
+	/** Base class for operators that compare two numbers. */
+	static abstract class NumberComparison extends BinaryOperator {
+		NumberComparison(String name) {
+			super(name);
+		}
+
+		/** Compares two (non-null) numbers. */
+		abstract boolean compareNumbers(double lhs, double rhs);
+	}
+
 	@Override
 	public String toString() {
 		return name;
@@ -0,0 +1,177 @@
+package arden.runtime;
+
+/**
+ * Wraps the query of a mapping to take the result of execute() from a
+ * QueryCache. The aggregations JDBCQuery translates into SQL (latest,
+ * earliest, count, exist, sum and average) are passed on to the wrapped query
+ * and become part of the cache key. Time constraints and the other operators
+ * are applied in memory to the cached result: time constraints are mostly
+ * relative to the current time, so a key containing them would never be
+ * found again.
+ */
+final class CachedQuery extends DatabaseQuery {
+	private final DatabaseQuery query;
+	private final String mapping;
+	private final String key;
+	private final QueryCache cache;
+
+	CachedQuery(DatabaseQuery query, String mapping, String key, QueryCache cache) {
+		this.query = query;
+		this.mapping = mapping;
+		this.key = key;
+		this.cache = cache;
+	}
+
+	@Override
+	public ArdenValue[] execute() {
+		ArdenValue[] result = tryExecute();
+		return result != null ? result : ArdenList.EMPTY.getElements();
+	}
+
+	@Override
+	public ArdenValue[] tryExecute() {
+		// taken before executing, so that a result read before a change of
+		// the data is not stored after the change
+		long generation = cache.getGeneration();
+		ArdenValue[] result = cache.get(key);
+		if (result == null) {
+			result = query.tryExecute();
+			// failures are not cached, the next execution tries again
+			if (result != null)
+				cache.put(key, mapping, result.clone(), generation);
+			return result;
+		}
+		// the caller may change its array
+		return result.clone();
+	}
+
+	/** Gets the cached result, to apply an operator to it in memory. */
+	private MemoryQuery inMemory() {
+		return new MemoryQuery(execute());
+	}
+
+	@Override
+	public DatabaseQuery occursWithinTo(ArdenTime start, ArdenTime end) {
+		return inMemory().occursWithinTo(start, end);
+	}
+
+	@Override
+	public DatabaseQuery occursNotWithinTo(ArdenTime start, ArdenTime end) {
+		return inMemory().occursNotWithinTo(start, end);
+	}
+
+	@Override
+	public DatabaseQuery occursBefore(ArdenTime time) {
+		return inMemory().occursBefore(time);
+	}
+
+	@Override
+	public DatabaseQuery occursNotBefore(ArdenTime time) {
+		return inMemory().occursNotBefore(time);
+	}
+
+	@Override
+	public DatabaseQuery occursAfter(ArdenTime time) {
+		return inMemory().occursAfter(time);
+	}
+
+	@Override
+	public DatabaseQuery occursNotAfter(ArdenTime time) {
+		return inMemory().occursNotAfter(time);
+	}
+
+	@Override
+	public DatabaseQuery occursAt(ArdenTime time) {
+		return inMemory().occursAt(time);
+	}
+
+	@Override
+	public DatabaseQuery occursNotAt(ArdenTime time) {
+		return inMemory().occursNotAt(time);
+	}
+
+	@Override
+	public DatabaseQuery average() {
+		return new CachedQuery(query.average(), mapping, key + " average", cache);
+	}
+
+	@Override
+	public DatabaseQuery count() {
+		return new CachedQuery(query.count(), mapping, key + " count", cache);
+	}
+
+	@Override
+	public DatabaseQuery exist() {
+		return new CachedQuery(query.exist(), mapping, key + " exist", cache);
+	}
+
+	@Override
+	public DatabaseQuery sum() {
+		return new CachedQuery(query.sum(), mapping, key + " sum", cache);
+	}
+
+	@Override
+	public DatabaseQuery median() {
+		return inMemory().median();
+	}
+
+	@Override
+	public DatabaseQuery minimum() {
+		return inMemory().minimum();
+	}
+
+	@Override
+	public DatabaseQuery minimum(int numberOfElements) {
+		return inMemory().minimum(numberOfElements);
+	}
+
+	@Override
+	public DatabaseQuery maximum() {
+		return inMemory().maximum();
+	}
+
+	@Override
+	public DatabaseQuery maximum(int numberOfElements) {
+		return inMemory().maximum(numberOfElements);
+	}
+
+	@Override
+	public DatabaseQuery last() {
+		return inMemory().last();
+	}
+
+	@Override
+	public DatabaseQuery last(int numberOfElements) {
+		return inMemory().last(numberOfElements);
+	}
+
+	@Override
+	public DatabaseQuery first() {
+		return inMemory().first();
+	}
+
+	@Override
+	public DatabaseQuery first(int numberOfElements) {
+		return inMemory().first(numberOfElements);
+	}
+
+	@Override
+	public DatabaseQuery latest() {
+		return new CachedQuery(query.latest(), mapping, key + " latest", cache);
+	}
+
+	@Override
+	public DatabaseQuery latest(int numberOfElements) {
+		return new CachedQuery(query.latest(numberOfElements), mapping, key + " latest " + numberOfElements, cache);
+	}
+
+	@Override
+	public DatabaseQuery earliest() {
+		return new CachedQuery(query.earliest(), mapping, key + " earliest", cache);
+	}
+
+	@Override
+	public DatabaseQuery earliest(int numberOfElements) {
+		return new CachedQuery(query.earliest(numberOfElements), mapping, key + " earliest " + numberOfElements, cache);
+	}
+}
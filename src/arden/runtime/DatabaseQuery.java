@@ -39,7 +39,7 @@ package arden.runtime;
  */
 public abstract class DatabaseQuery {
 	/** The database query that always returns an empty result (0 columns) */
-	public static final DatabaseQuery NULL = new MemoryQuery(ArdenList.EMPTY.values);
+	public static final DatabaseQuery NULL = new MemoryQuery(ArdenList.EMPTY.getElements());
 
 	/**
 	 * Executes the query.
@@ -51,6 +51,16 @@ public abstract class DatabaseQuery {
 	 */
 	public abstract ArdenValue[] execute();
 
+	/**
+	 * Executes the query like execute(), but returns null instead of an empty
+	 * result if the query failed, e.g. because the database could not be
+	 * reached. QueryCache does not cache failed queries. The default
+	 * implementation calls execute().
+	 */
+	public ArdenValue[] tryExecute() {
+		return execute();
+	}
+
 	/**
 	 * Filters the query results to those results that occur within the
 	 * specified time range.
@@ -0,0 +1,381 @@
+package arden.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the MLMs called with "CALL ... DELAY ..." on a scheduled executor, so
+ * that the calling action slot does not wait for the delay or the callee.
+ *
+ * The number of outstanding calls is bounded; further calls are rejected
+ * with a RejectedExecutionException until some have run. The scheduler keeps
+ * the number of outstanding calls and how late the calls started, in
+ * milliseconds after their due time.
+ *
+ * If a journal is set, calls of MLMs whose arguments are simple values (no
+ * objects) are recorded in it, and the calls that were pending when the
+ * journal was last used are scheduled again. The executor uses daemon
+ * threads, so calls that are pending when the program exits are lost
+ * unless they are journaled or the program waits for them with
+ * awaitPending().
+ *
+ * One scheduler can serve several execution contexts, e.g. the contexts
+ * created per patient from one context; every call runs in the context it
+ * was scheduled for.
+ */
+public final class DelayedCallScheduler {
+	public static final int DEFAULT_THREADS = 1;
+	public static final int DEFAULT_MAXIMUM_PENDING = 10000;
+
+	private final ExecutionContext context;
+	private final ScheduledThreadPoolExecutor executor;
+	private final int maximumPending;
+	private final AtomicInteger pending = new AtomicInteger();
+	/** notified when the number of pending calls drops to 0 */
+	private final Object idle = new Object();
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong totalLateness = new AtomicLong();
+	private final AtomicLong maximumLateness = new AtomicLong();
+	/** null if the calls are not journaled */
+	private volatile ScheduleJournal journal;
+
+	/**
+	 * @param context
+	 *            the context of the calls scheduled without one, and of the
+	 *            calls restored from the journal
+	 * @param threads
+	 *            the number of threads that run the called MLMs
+	 * @param maximumPending
+	 *            the maximum number of calls that are waiting or running
+	 */
+	public DelayedCallScheduler(ExecutionContext context, int threads, int maximumPending) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be positive");
+		if (maximumPending < 1)
+			throw new IllegalArgumentException("maximumPending must be positive");
+		this.context = context;
+		this.maximumPending = maximumPending;
+		this.executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "delayed-call-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// waiting calls are discarded on shutdown
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	/** Schedules a call in the context of the scheduler; see schedule(ExecutionContext, ...). */
+	public void schedule(ArdenRunnable mlm, ArdenValue[] arguments, ArdenValue delay) {
+		schedule(context, mlm, arguments, delay);
+	}
+
+	/**
+	 * Schedules a call.
+	 *
+	 * @param target
+	 *            the context the MLM runs in
+	 * @param delay
+	 *            the delay, as ArdenDuration
+	 * @throws RejectedExecutionException
+	 *             if too many calls are pending or the scheduler is shut down
+	 */
+	public void schedule(ExecutionContext target, ArdenRunnable mlm, ArdenValue[] arguments, ArdenValue delay) {
+		if (!(delay instanceof ArdenDuration))
+			throw new RuntimeException("Delay of a call must be a duration: " + delay);
+		long delayMillis = Math.max(0, Math.round(((ArdenDuration) delay).toSeconds() * 1000));
+		long dueTime = System.currentTimeMillis() + delayMillis;
+		long journalId = 0;
+		ScheduleJournal journal = this.journal;
+		if (journal != null && mlm instanceof MedicalLogicModule) {
+			byte[] payload = encode(arguments);
+			if (payload != null)
+				journalId = journal.add(ScheduleJournal.CALL, dueTime, ((MedicalLogicModule) mlm).getName(), payload);
+		}
+		submit(target, mlm, arguments, dueTime, journalId);
+	}
+
+	private void submit(ExecutionContext target, ArdenRunnable mlm, ArdenValue[] arguments, long dueTime,
+			long journalId) {
+		if (pending.incrementAndGet() > maximumPending) {
+			decrementPending();
+			forget(journalId);
+			throw new RejectedExecutionException("Too many delayed calls are pending (" + maximumPending + ")");
+		}
+		try {
+			long delay = Math.max(0, dueTime - System.currentTimeMillis());
+			executor.schedule(new Call(target, mlm, arguments, dueTime, journalId), delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			decrementPending();
+			forget(journalId);
+			throw e;
+		}
+	}
+
+	private void decrementPending() {
+		if (pending.decrementAndGet() == 0) {
+			synchronized (idle) {
+				idle.notifyAll();
+			}
+		}
+	}
+
+	private void forget(long journalId) {
+		ScheduleJournal journal = this.journal;
+		if (journalId != 0 && journal != null)
+			journal.remove(journalId);
+	}
+
+	private final class Call implements Runnable {
+		private final ExecutionContext target;
+		private final ArdenRunnable mlm;
+		private final ArdenValue[] arguments;
+		private final long dueTime;
+		private final long journalId;
+
+		Call(ExecutionContext target, ArdenRunnable mlm, ArdenValue[] arguments, long dueTime, long journalId) {
+			this.target = target;
+			this.mlm = mlm;
+			this.arguments = arguments;
+			this.dueTime = dueTime;
+			this.journalId = journalId;
+		}
+
+		@Override
+		public void run() {
+			long lateness = Math.max(0, System.currentTimeMillis() - dueTime);
+			started.incrementAndGet();
+			totalLateness.addAndGet(lateness);
+			long maximum;
+			while (lateness > (maximum = maximumLateness.get()) && !maximumLateness.compareAndSet(maximum, lateness))
+				;
+			forget(journalId);
+			try {
+				mlm.run(target, arguments);
+			} catch (InvocationTargetException e) {
+				failed.incrementAndGet();
+				e.printStackTrace();
+			} catch (RuntimeException e) {
+				failed.incrementAndGet();
+				e.printStackTrace();
+			} finally {
+				completed.incrementAndGet();
+				decrementPending();
+			}
+		}
+	}
+
+	/**
+	 * Records the calls in a journal, and schedules the calls that are pending
+	 * in it. The MLMs are looked up with findModule() of the execution
+	 * context; calls of MLMs that cannot be found are dropped.
+	 */
+	public void setJournal(ScheduleJournal journal) {
+		this.journal = journal;
+		for (ScheduleJournal.Record record : journal.getRecords()) {
+			if (record.getKind() != ScheduleJournal.CALL)
+				continue;
+			ArdenRunnable mlm;
+			ArdenValue[] arguments;
+			try {
+				mlm = context.findModule(record.getName(), null);
+				arguments = decode(record.getPayload());
+			} catch (RuntimeException e) {
+				System.err.println("Cannot restore the delayed call of " + record.getName() + ": " + e.getMessage());
+				journal.remove(record.getId());
+				continue;
+			}
+			submit(context, mlm, arguments, record.getTime(), record.getId());
+		}
+	}
+
+	/** Gets the number of calls that are waiting or running. */
+	public int getPendingCount() {
+		return pending.get();
+	}
+
+	/** Gets the number of calls that have run, including the failed ones. */
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	/** Gets the number of calls whose MLMs threw an exception. */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/** Gets the maximum number of milliseconds a call started after its due time. */
+	public long getMaximumLateness() {
+		return maximumLateness.get();
+	}
+
+	/** Gets the average number of milliseconds the calls started after their due times. */
+	public double getAverageLateness() {
+		long count = started.get();
+		return count == 0 ? 0 : (double) totalLateness.get() / count;
+	}
+
+	/**
+	 * Stops the scheduler. Calls that are running are finished; waiting calls
+	 * are discarded, but remain in the journal.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Waits until no calls are waiting or running anymore, including the
+	 * calls scheduled by the called MLMs. Returns false if the timeout
+	 * elapsed before.
+	 */
+	public boolean awaitPending(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (idle) {
+			while (pending.get() > 0) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0)
+					return false;
+				TimeUnit.NANOSECONDS.timedWait(idle, remaining);
+			}
+		}
+		return true;
+	}
+
+	/** Waits until the running calls have finished after shutdown(). */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	private static final int NULL = 0;
+	private static final int BOOLEAN = 1;
+	private static final int NUMBER = 2;
+	private static final int STRING = 3;
+	private static final int TIME = 4;
+	private static final int DURATION = 5;
+	private static final int LIST = 6;
+
+	/** Encodes call arguments, or returns null if they contain objects. */
+	static byte[] encode(ArdenValue[] arguments) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			if (arguments == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(arguments.length);
+				for (ArdenValue argument : arguments) {
+					if (!encode(argument, out))
+						return null;
+				}
+			}
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static boolean encode(ArdenValue value, DataOutputStream out) throws IOException {
+		if (value instanceof ArdenNull) {
+			out.writeByte(NULL);
+		} else if (value instanceof ArdenBoolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean(((ArdenBoolean) value).value);
+		} else if (value instanceof ArdenNumber) {
+			out.writeByte(NUMBER);
+			out.writeDouble(((ArdenNumber) value).value);
+		} else if (value instanceof ArdenString) {
+			byte[] string = ((ArdenString) value).value.getBytes("UTF-8");
+			out.writeByte(STRING);
+			out.writeInt(string.length);
+			out.write(string);
+		} else if (value instanceof ArdenTime) {
+			out.writeByte(TIME);
+			out.writeLong(((ArdenTime) value).value);
+		} else if (value instanceof ArdenDuration) {
+			out.writeByte(DURATION);
+			out.writeDouble(((ArdenDuration) value).value);
+			out.writeBoolean(((ArdenDuration) value).isMonths);
+		} else if (value instanceof ArdenList) {
+			ArdenValue[] elements = value.getElements();
+			out.writeByte(LIST);
+			out.writeInt(elements.length);
+			for (ArdenValue element : elements) {
+				if (!encode(element, out))
+					return false;
+			}
+		} else {
+			return false;
+		}
+		out.writeLong(value.primaryTime);
+		return true;
+	}
+
+	static ArdenValue[] decode(byte[] payload) {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		try {
+			int length = in.readInt();
+			if (length < 0)
+				return null;
+			ArdenValue[] arguments = new ArdenValue[length];
+			for (int i = 0; i < length; i++)
+				arguments[i] = decodeValue(in);
+			return arguments;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static ArdenValue decodeValue(DataInputStream in) throws IOException {
+		ArdenValue value;
+		int type = in.readByte();
+		switch (type) {
+		case NULL:
+			value = ArdenNull.INSTANCE;
+			break;
+		case BOOLEAN:
+			value = ArdenBoolean.create(in.readBoolean(), ArdenValue.NOPRIMARYTIME);
+			break;
+		case NUMBER:
+			value = new ArdenNumber(in.readDouble());
+			break;
+		case STRING:
+			byte[] string = new byte[in.readInt()];
+			in.readFully(string);
+			value = new ArdenString(new String(string, "UTF-8"));
+			break;
+		case TIME:
+			value = new ArdenTime(in.readLong());
+			break;
+		case DURATION:
+			double duration = in.readDouble();
+			value = ArdenDuration.create(duration, in.readBoolean(), ArdenValue.NOPRIMARYTIME);
+			break;
+		case LIST:
+			ArdenValue[] elements = new ArdenValue[in.readInt()];
+			for (int i = 0; i < elements.length; i++)
+				elements[i] = decodeValue(in);
+			value = new ArdenList(elements);
+			break;
+		default:
+			throw new IOException("Unknown value type: " + type);
+		}
+		return value.setTime(in.readLong());
+	}
+}
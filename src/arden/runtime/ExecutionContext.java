@@ -134,4 +134,16 @@ public abstract class ExecutionContext {
 	public ArdenTime getCurrentTime() {
 		return new ArdenTime(new Date());
 	}
+
+	private volatile ExecutionListener executionListener = ExecutionListener.NONE;
+
+	/** Gets the listener that is notified about the MLMs run in this context. */
+	public ExecutionListener getExecutionListener() {
+		return executionListener;
+	}
+
+	/** Sets the listener that is notified about the MLMs run in this context, or null for none. */
+	public void setExecutionListener(ExecutionListener listener) {
+		executionListener = listener == null ? ExecutionListener.NONE : listener;
+	}
 }
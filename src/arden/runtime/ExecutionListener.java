@@ -0,0 +1,62 @@
+package arden.runtime;
+
+/**
+ * Receives notifications about the execution of MLMs in an execution
+ * context, e.g. to collect metrics or to trace the MLMs. All methods do
+ * nothing by default.
+ *
+ * Listeners are called on the threads that run the MLMs, possibly by many at
+ * once, and should return quickly. The runtime does not measure anything
+ * while the listener of the context is NONE.
+ */
+public abstract class ExecutionListener {
+	/** The listener of contexts that are not observed. */
+	public static final ExecutionListener NONE = new ExecutionListener() {
+	};
+
+	/** the data slot, which is run when the MLM is instantiated */
+	public static final int DATA = 0;
+	public static final int LOGIC = 1;
+	public static final int ACTION = 2;
+
+	/** Called before an MLM is run. */
+	public void mlmStarted(MedicalLogicModule mlm) {
+	}
+
+	/**
+	 * Called after a slot of an MLM has been run.
+	 * 
+	 * @param phase
+	 *            DATA, LOGIC or ACTION
+	 * @param nanos
+	 *            the time the slot took in nanoseconds
+	 */
+	public void phaseCompleted(MedicalLogicModule mlm, int phase, long nanos) {
+	}
+
+	/**
+	 * Called after an MLM has been run.
+	 * 
+	 * @param concluded
+	 *            whether the logic slot concluded true
+	 * @param error
+	 *            the exception thrown by the MLM, or null
+	 */
+	public void mlmCompleted(MedicalLogicModule mlm, boolean concluded, Throwable error) {
+	}
+
+	/**
+	 * Called after a database query has been executed.
+	 * 
+	 * @param mapping
+	 *            the mapping clause of the query
+	 * @param nanos
+	 *            the time execute() took in nanoseconds
+	 */
+	public void queryExecuted(String mapping, long nanos) {
+	}
+
+	/** Called after a message has been written; destination is null for the default destination. */
+	public void messageWritten(String destination) {
+	}
+}
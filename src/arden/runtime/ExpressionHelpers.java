@@ -67,8 +67,8 @@ public final class ExpressionHelpers {
 
 	/** implements the "x,y" operator */
 	public static ArdenList binaryComma(ArdenValue lhs, ArdenValue rhs) {
-		ArdenValue[] left = unaryComma(lhs).values;
-		ArdenValue[] right = unaryComma(rhs).values;
+		ArdenValue[] left = unaryComma(lhs).getElements();
+		ArdenValue[] right = unaryComma(rhs).getElements();
 		ArdenValue[] result = new ArdenValue[left.length + right.length];
 		System.arraycopy(left, 0, result, 0, left.length);
 		System.arraycopy(right, 0, result, left.length, right.length);
@@ -78,14 +78,15 @@ public final class ExpressionHelpers {
 	/** implements the SORT DATA operator */
 	public static ArdenValue sortByData(ArdenValue inputVal) {
 		ArdenList input = unaryComma(inputVal);
-		if (input.values.length == 0)
+		ArdenValue[] values = input.getElements();
+		if (values.length == 0)
 			return input;
 		// check whether all elements are comparable (also checks whether list
 		// is already sorted):
-		ArdenValue lastElement = input.values[0];
+		ArdenValue lastElement = values[0];
 		boolean alreadySorted = true;
-		for (int i = 1; i < input.values.length; i++) {
-			ArdenValue thisElement = input.values[i];
+		for (int i = 1; i < values.length; i++) {
+			ArdenValue thisElement = values[i];
 			int r = lastElement.compareTo(thisElement);
 			if (r == Integer.MIN_VALUE) {
 				// list contains non-ordered element types or invalid comparison
@@ -97,7 +98,7 @@ public final class ExpressionHelpers {
 		}
 		if (alreadySorted)
 			return input;
-		ArdenValue[] result = (ArdenValue[]) input.values.clone();
+		ArdenValue[] result = values.clone();
 		Arrays.sort(result, new Comparator<ArdenValue>() {
 			@Override
 			public int compare(ArdenValue o1, ArdenValue o2) {
@@ -110,14 +111,15 @@ public final class ExpressionHelpers {
 	/** implements the SORT TIME operator */
 	public static ArdenValue sortByTime(ArdenValue inputVal) {
 		ArdenList input = unaryComma(inputVal);
-		if (input.values.length == 0)
+		ArdenValue[] values = input.getElements();
+		if (values.length == 0)
 			return input;
 		// check whether all elements have a primary time:
-		for (ArdenValue val : input.values) {
+		for (ArdenValue val : values) {
 			if (val.primaryTime == ArdenValue.NOPRIMARYTIME)
 				return ArdenNull.INSTANCE;
 		}
-		ArdenValue[] result = (ArdenValue[]) input.values.clone();
+		ArdenValue[] result = values.clone();
 		Arrays.sort(result, new Comparator<ArdenValue>() {
 			@Override
 			public int compare(ArdenValue o1, ArdenValue o2) {
@@ -135,15 +137,24 @@ public final class ExpressionHelpers {
 	/** implements the WHERE operator */
 	public static ArdenValue where(ArdenValue sequence, ArdenValue condition) {
 		if (condition instanceof ArdenList) {
-			ArdenValue[] conditionValues = ((ArdenList) condition).values;
+			ArdenValue[] conditionValues = ((ArdenList) condition).getElements();
 			int numTrue = 0;
 			for (ArdenValue cond : conditionValues) {
 				if (cond.isTrue())
 					numTrue++;
 			}
+			if (sequence instanceof ArdenList && ((ArdenList) sequence).isNumeric()) {
+				ArdenList list = (ArdenList) sequence;
+				if (conditionValues.length != list.size())
+					return ArdenNull.INSTANCE;
+				boolean[] keep = new boolean[conditionValues.length];
+				for (int i = 0; i < keep.length; i++)
+					keep[i] = conditionValues[i].isTrue();
+				return list.select(keep, numTrue);
+			}
 			ArdenValue[] result = new ArdenValue[numTrue];
 			if (sequence instanceof ArdenList) {
-				ArdenValue[] sequenceValues = ((ArdenList) sequence).values;
+				ArdenValue[] sequenceValues = ((ArdenList) sequence).getElements();
 				if (conditionValues.length != sequenceValues.length)
 					return ArdenNull.INSTANCE;
 				int pos = 0;
@@ -166,7 +177,7 @@ public final class ExpressionHelpers {
 
 	/** implements the COUNT OF operator */
 	public static ArdenValue count(ArdenValue sequence) {
-		return new ArdenNumber(unaryComma(sequence).values.length);
+		return new ArdenNumber(unaryComma(sequence).size());
 	}
 
 	static long getCommonTime(ArdenValue[] items) {
@@ -183,8 +194,8 @@ public final class ExpressionHelpers {
 	/** implements the EXIST operator */
 	public static ArdenValue exist(ArdenValue sequence) {
 		ArdenList input = unaryComma(sequence);
-		long primaryTime = getCommonTime(input.values);
-		for (ArdenValue val : input.values) {
+		long primaryTime = getCommonTime(input.getElements());
+		for (ArdenValue val : input.getElements()) {
 			if (!(val instanceof ArdenNull))
 				return ArdenBoolean.create(true, primaryTime);
 		}
@@ -194,11 +205,19 @@ public final class ExpressionHelpers {
 	/** implements the SUM operator */
 	public static ArdenValue sum(ArdenValue sequence) {
 		ArdenList input = unaryComma(sequence);
-		if (input.values.length == 0)
+		if (input.size() == 0)
 			return ArdenNumber.ZERO;
-		ArdenValue val = input.values[0];
-		for (int i = 1; i < input.values.length; i++) {
-			val = BinaryOperator.ADD.runElement(val, input.values[i]);
+		if (input.isNumeric()) {
+			// null elements are NaN, which makes the sum null as well
+			double sum = 0;
+			for (double number : input.getNumbers())
+				sum += number;
+			return ArdenNumber.create(sum, input.getCommonTime());
+		}
+		ArdenValue[] values = input.getElements();
+		ArdenValue val = values[0];
+		for (int i = 1; i < values.length; i++) {
+			val = BinaryOperator.ADD.runElement(val, values[i]);
 		}
 		return val;
 	}
@@ -208,7 +227,7 @@ public final class ExpressionHelpers {
 		ArdenValue sorted = sortByData(sequence);
 		if (!(sorted instanceof ArdenList))
 			return sorted; // error during sorting
-		ArdenValue[] values = ((ArdenList) sorted).values;
+		ArdenValue[] values = ((ArdenList) sorted).getElements();
 		if (values.length == 0) {
 			return ArdenNull.INSTANCE;
 		} else if ((values.length % 2) == 1) {
@@ -220,7 +239,16 @@ public final class ExpressionHelpers {
 
 	/** implements the AVERAGE operator */
 	public static ArdenValue average(ArdenValue sequence) {
-		ArdenValue[] values = unaryComma(sequence).values;
+		ArdenList input = unaryComma(sequence);
+		if (input.isNumeric()) {
+			if (input.size() == 0 || input.containsNull())
+				return ArdenNull.INSTANCE;
+			double sum = 0;
+			for (double number : input.getNumbers())
+				sum += number;
+			return ArdenNumber.create(sum / input.size(), input.getCommonTime());
+		}
+		ArdenValue[] values = input.getElements();
 		if (values.length == 0)
 			return ArdenNull.INSTANCE;
 		if (values[0] instanceof ArdenNumber) {
@@ -264,7 +292,13 @@ public final class ExpressionHelpers {
 
 	/** implements the VARIANCE operator */
 	public static ArdenValue variance(ArdenValue sequence) {
-		ArdenValue[] values = unaryComma(sequence).values;
+		ArdenList input = unaryComma(sequence);
+		if (input.isNumeric()) {
+			if (input.size() < 2 || input.containsNull())
+				return ArdenNull.INSTANCE;
+			return ArdenNumber.create(variance(input.getNumbers()), input.getCommonTime());
+		}
+		ArdenValue[] values = input.getElements();
 		if (values.length < 2)
 			return ArdenNull.INSTANCE;
 		double sum = 0;
@@ -284,11 +318,24 @@ public final class ExpressionHelpers {
 		return ArdenNumber.create(variance, getCommonTime(values));
 	}
 
+	private static double variance(double[] numbers) {
+		double sum = 0;
+		for (double number : numbers)
+			sum += number;
+		double avg = sum / numbers.length;
+		double diffsum = 0;
+		for (double number : numbers) {
+			double diff = avg - number;
+			diffsum += diff * diff;
+		}
+		return diffsum / (numbers.length - 1);
+	}
+
 	/** implements the IS IN operator */
 	public static ArdenValue isIn(ArdenValue lhs, ArdenValue rhs) {
-		ArdenValue[] list = unaryComma(rhs).values;
+		ArdenValue[] list = unaryComma(rhs).getElements();
 		if (lhs instanceof ArdenList) {
-			ArdenValue[] left = ((ArdenList) lhs).values;
+			ArdenValue[] left = ((ArdenList) lhs).getElements();
 			ArdenValue[] result = new ArdenValue[left.length];
 			for (int i = 0; i < left.length; i++)
 				result[i] = isIn(left[i], list);
@@ -331,7 +378,7 @@ public final class ExpressionHelpers {
 
 	/** implements the SEQTO operator */
 	public static ArdenValue reverse(ArdenValue input) {
-		ArdenValue[] inputs = unaryComma(input).values;
+		ArdenValue[] inputs = unaryComma(input).getElements();
 		ArdenValue[] result = new ArdenValue[inputs.length];
 		for (int i = 0; i < result.length; i++)
 			result[i] = inputs[inputs.length - i - 1];
@@ -340,7 +387,18 @@ public final class ExpressionHelpers {
 
 	/** implements the INCREASE operator */
 	public static ArdenValue increase(ArdenValue input) {
-		ArdenValue[] inputs = unaryComma(input).values;
+		ArdenList inputList = unaryComma(input);
+		if (inputList.isNumeric()) {
+			if (inputList.size() == 0 || inputList.containsNull())
+				return ArdenNull.INSTANCE;
+			double[] numbers = inputList.getNumbers();
+			long[] times = inputList.getPrimaryTimes();
+			double[] outputs = new double[numbers.length - 1];
+			for (int i = 0; i < outputs.length; i++)
+				outputs[i] = numbers[i + 1] - numbers[i];
+			return new ArdenList(outputs, Arrays.copyOfRange(times, 1, times.length));
+		}
+		ArdenValue[] inputs = inputList.getElements();
 		if (inputs.length == 0)
 			return ArdenNull.INSTANCE;
 		if (!(inputs[0] instanceof ArdenNumber || inputs[0] instanceof ArdenDuration || inputs[0] instanceof ArdenTime))
@@ -356,7 +414,7 @@ public final class ExpressionHelpers {
 
 	/** implements the PERCENT INCREASE operator */
 	public static ArdenValue percentIncrease(ArdenValue input) {
-		ArdenValue[] inputs = unaryComma(input).values;
+		ArdenValue[] inputs = unaryComma(input).getElements();
 		if (inputs.length == 0)
 			return ArdenNull.INSTANCE;
 		if (!(inputs[0] instanceof ArdenNumber || inputs[0] instanceof ArdenDuration))
@@ -374,7 +432,10 @@ public final class ExpressionHelpers {
 
 	/** implements the SLOPE operator */
 	public static ArdenValue slope(ArdenValue input) {
-		ArdenValue[] inputs = unaryComma(input).values;
+		ArdenList inputList = unaryComma(input);
+		if (inputList.isNumeric())
+			return slope(inputList.getNumbers(), inputList.getPrimaryTimes());
+		ArdenValue[] inputs = inputList.getElements();
 		if (inputs.length < 2)
 			return ArdenNull.INSTANCE;
 		// linear regression through (x=primaryTime/y=value) points
@@ -399,10 +460,34 @@ public final class ExpressionHelpers {
 		return ArdenNumber.create(z / n, ArdenValue.NOPRIMARYTIME);
 	}
 
+	private static ArdenValue slope(double[] numbers, long[] times) {
+		if (numbers.length < 2)
+			return ArdenNull.INSTANCE;
+		double avgX = 0;
+		double avgY = 0;
+		for (int i = 0; i < numbers.length; i++) {
+			if (ArdenList.isNull(numbers[i]) || times[i] == ArdenValue.NOPRIMARYTIME)
+				return ArdenNull.INSTANCE;
+			avgX += times[i] / 86000000.0; // x in days
+			avgY += numbers[i];
+		}
+		avgX /= numbers.length;
+		avgY /= numbers.length;
+		double z = 0;
+		double n = 0;
+		for (int i = 0; i < numbers.length; i++) {
+			double x = times[i] / 86000000.0;
+			double y = numbers[i];
+			z += (x - avgX) * (y - avgY);
+			n += (x - avgX) * (x - avgX);
+		}
+		return ArdenNumber.create(z / n, ArdenValue.NOPRIMARYTIME);
+	}
+
 	/** Implements the IS LIST operator. */
 	public static ArdenBoolean isList(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			return ArdenBoolean.create(true, getCommonTime(((ArdenList) input).values));
+			return ArdenBoolean.create(true, getCommonTime(((ArdenList) input).getElements()));
 		} else {
 			return ArdenBoolean.create(false, input.primaryTime);
 		}
@@ -410,45 +495,44 @@ public final class ExpressionHelpers {
 
 	/** Implements the FIRST aggregation operator. */
 	public static ArdenValue first(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
-		if (arr.length == 0)
+		ArdenList list = unaryComma(input);
+		if (list.size() == 0)
 			return ArdenNull.INSTANCE;
 		else
-			return arr[0];
+			return list.get(0);
 	}
 
 	/** Implements the LAST aggregation operator. */
 	public static ArdenValue last(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
-		if (arr.length == 0)
+		ArdenList list = unaryComma(input);
+		if (list.size() == 0)
 			return ArdenNull.INSTANCE;
 		else
-			return arr[arr.length - 1];
+			return list.get(list.size() - 1);
 	}
 
 	/** Implements the FIRST transformation operator. */
 	public static ArdenValue first(ArdenValue input, int numberOfElements) {
 		ArdenList inputList = unaryComma(input);
-		if (numberOfElements >= inputList.values.length)
+		if (numberOfElements >= inputList.size())
 			return inputList;
-		ArdenValue[] result = new ArdenValue[numberOfElements];
-		System.arraycopy(inputList.values, 0, result, 0, numberOfElements);
-		return new ArdenList(result);
+		return inputList.subList(0, numberOfElements);
 	}
 
 	/** Implements the LAST transformation operator. */
 	public static ArdenValue last(ArdenValue input, int numberOfElements) {
 		ArdenList inputList = unaryComma(input);
-		if (numberOfElements >= inputList.values.length)
+		if (numberOfElements >= inputList.size())
 			return inputList;
-		ArdenValue[] result = new ArdenValue[numberOfElements];
-		System.arraycopy(inputList.values, inputList.values.length - numberOfElements, result, 0, numberOfElements);
-		return new ArdenList(result);
+		return inputList.subList(inputList.size() - numberOfElements, inputList.size());
 	}
 
 	/** Implements the INDEX MINIMUM aggregation operator. */
 	public static ArdenValue indexMinimum(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenList list = unaryComma(input);
+		if (list.isNumeric())
+			return indexOfExtremum(list, false);
+		ArdenValue[] arr = list.getElements();
 		if (arr.length == 0)
 			return ArdenNull.INSTANCE;
 		int min = 0;
@@ -464,7 +548,7 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX MINIMUM transformation operator. */
 	public static ArdenValue indexMinimum(ArdenValue input, int numberOfElements) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		ArdenValue sortedInput = sortByData(input);
 		if (!(sortedInput instanceof ArdenList))
 			return ArdenNull.INSTANCE;
@@ -473,7 +557,7 @@ public final class ExpressionHelpers {
 		if (numberOfElements == 0)
 			return ArdenList.EMPTY;
 		ArdenValue[] output = new ArdenValue[numberOfElements];
-		ArdenValue pivot = ((ArdenList) sortedInput).values[numberOfElements - 1];
+		ArdenValue pivot = ((ArdenList) sortedInput).getElements()[numberOfElements - 1];
 		int pos = 0;
 		for (int i = 0; i < arr.length; i++) {
 			if (arr[i].compareTo(pivot) <= 0) {
@@ -489,7 +573,10 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX MAXIMUM aggregation operator. */
 	public static ArdenValue indexMaximum(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenList list = unaryComma(input);
+		if (list.isNumeric())
+			return indexOfExtremum(list, true);
+		ArdenValue[] arr = list.getElements();
 		if (arr.length == 0)
 			return ArdenNull.INSTANCE;
 		int max = 0;
@@ -503,9 +590,27 @@ public final class ExpressionHelpers {
 		return ArdenNumber.create(max + 1, arr[max].primaryTime);
 	}
 
+	/**
+	 * INDEX MINIMUM/MAXIMUM for lists in numeric form: like the generic
+	 * implementation, the latest of several equal elements wins.
+	 */
+	private static ArdenValue indexOfExtremum(ArdenList list, boolean maximum) {
+		double[] numbers = list.getNumbers();
+		long[] times = list.getPrimaryTimes();
+		if (numbers.length == 0 || list.containsNull())
+			return ArdenNull.INSTANCE;
+		int best = 0;
+		for (int i = 1; i < numbers.length; i++) {
+			boolean better = maximum ? numbers[i] > numbers[best] : numbers[i] < numbers[best];
+			if (better || (numbers[i] == numbers[best] && times[i] > times[best]))
+				best = i;
+		}
+		return ArdenNumber.create(best + 1, times[best]);
+	}
+
 	/** Implements the INDEX MAXIMUM transformation operator. */
 	public static ArdenValue indexMaximum(ArdenValue input, int numberOfElements) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		ArdenValue sortedInput = sortByData(input);
 		if (!(sortedInput instanceof ArdenList))
 			return ArdenNull.INSTANCE;
@@ -514,7 +619,7 @@ public final class ExpressionHelpers {
 		if (numberOfElements == 0)
 			return ArdenList.EMPTY;
 		ArdenValue[] output = new ArdenValue[numberOfElements];
-		ArdenValue pivot = ((ArdenList) sortedInput).values[arr.length - numberOfElements];
+		ArdenValue pivot = ((ArdenList) sortedInput).getElements()[arr.length - numberOfElements];
 		int pos = 0;
 		for (int i = 0; i < arr.length; i++) {
 			if (arr[i].compareTo(pivot) >= 0) {
@@ -530,7 +635,10 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX EARLIEST aggregation operator. */
 	public static ArdenValue indexEarliest(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenList list = unaryComma(input);
+		if (list.isNumeric())
+			return indexOfTime(list.getPrimaryTimes(), false);
+		ArdenValue[] arr = list.getElements();
 		if (arr.length == 0 || arr[0].primaryTime == ArdenValue.NOPRIMARYTIME)
 			return ArdenNull.INSTANCE;
 		int best = 0;
@@ -545,7 +653,7 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX EARLIEST transformation operator. */
 	public static ArdenValue indexEarliest(ArdenValue input, int numberOfElements) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		ArdenValue sortedInput = sortByTime(input);
 		if (!(sortedInput instanceof ArdenList))
 			return ArdenNull.INSTANCE;
@@ -554,7 +662,7 @@ public final class ExpressionHelpers {
 		if (numberOfElements == 0)
 			return ArdenList.EMPTY;
 		ArdenValue[] output = new ArdenValue[numberOfElements];
-		ArdenValue pivot = ((ArdenList) sortedInput).values[numberOfElements - 1];
+		ArdenValue pivot = ((ArdenList) sortedInput).getElements()[numberOfElements - 1];
 		int pos = 0;
 		for (int i = 0; i < arr.length; i++) {
 			if (arr[i].primaryTime <= pivot.primaryTime) {
@@ -570,7 +678,10 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX LATEST aggregation operator. */
 	public static ArdenValue indexLatest(ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenList list = unaryComma(input);
+		if (list.isNumeric())
+			return indexOfTime(list.getPrimaryTimes(), true);
+		ArdenValue[] arr = list.getElements();
 		if (arr.length == 0 || arr[0].primaryTime == ArdenValue.NOPRIMARYTIME)
 			return ArdenNull.INSTANCE;
 		int best = 0;
@@ -583,9 +694,23 @@ public final class ExpressionHelpers {
 		return ArdenNumber.create(best + 1, arr[best].primaryTime);
 	}
 
+	/** INDEX EARLIEST/LATEST for lists in numeric form. */
+	private static ArdenValue indexOfTime(long[] times, boolean latest) {
+		if (times.length == 0 || times[0] == ArdenValue.NOPRIMARYTIME)
+			return ArdenNull.INSTANCE;
+		int best = 0;
+		for (int i = 1; i < times.length; i++) {
+			if (times[i] == ArdenValue.NOPRIMARYTIME)
+				return ArdenNull.INSTANCE;
+			if (latest ? times[i] > times[best] : times[i] < times[best])
+				best = i;
+		}
+		return ArdenNumber.create(best + 1, times[best]);
+	}
+
 	/** Implements the INDEX LATEST transformation operator. */
 	public static ArdenValue indexLatest(ArdenValue input, int numberOfElements) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		ArdenValue sortedInput = sortByTime(input);
 		if (!(sortedInput instanceof ArdenList))
 			return ArdenNull.INSTANCE;
@@ -594,7 +719,7 @@ public final class ExpressionHelpers {
 		if (numberOfElements == 0)
 			return ArdenList.EMPTY;
 		ArdenValue[] output = new ArdenValue[numberOfElements];
-		ArdenValue pivot = ((ArdenList) sortedInput).values[arr.length - numberOfElements];
+		ArdenValue pivot = ((ArdenList) sortedInput).getElements()[arr.length - numberOfElements];
 		int pos = 0;
 		for (int i = 0; i < arr.length; i++) {
 			if (arr[i].primaryTime <= pivot.primaryTime) {
@@ -610,7 +735,7 @@ public final class ExpressionHelpers {
 
 	/** Implements the INDEX NEAREST operator. */
 	public static ArdenValue indexNearest(ArdenValue time, ArdenValue input) {
-		ArdenValue[] arr = unaryComma(input).values;
+		ArdenValue[] arr = unaryComma(input).getElements();
 		if (arr.length == 0 || arr[0].primaryTime == ArdenValue.NOPRIMARYTIME || !(time instanceof ArdenTime))
 			return ArdenNull.INSTANCE;
 		long inputTime = ((ArdenTime) time).value;
@@ -630,9 +755,10 @@ public final class ExpressionHelpers {
 
 	/** implements the [] (element) operator */
 	public static ArdenValue elementAt(ArdenValue list, ArdenValue index) {
-		ArdenValue[] values = unaryComma(list).values;
+		ArdenList input = unaryComma(list);
 		if (index instanceof ArdenList) {
-			ArdenValue[] indices = ((ArdenList) index).values;
+			ArdenValue[] values = input.getElements();
+			ArdenValue[] indices = ((ArdenList) index).getElements();
 			ArdenValue[] result = new ArdenValue[indices.length];
 			for (int i = 0; i < indices.length; i++) {
 				int val = RuntimeHelpers.getPrimitiveIntegerValue(indices[i]);
@@ -644,18 +770,18 @@ public final class ExpressionHelpers {
 			return new ArdenList(result);
 		} else {
 			int val = RuntimeHelpers.getPrimitiveIntegerValue(index);
-			if (val < 1 || val > values.length)
+			if (val < 1 || val > input.size())
 				return ArdenNull.INSTANCE;
-			return values[val - 1];
+			return input.get(val - 1);
 		}
 	}
 
 	/** implements the ANY operator */
 	public static ArdenValue any(ArdenValue sequence) {
 		ArdenList input = unaryComma(sequence);
-		long primaryTime = getCommonTime(input.values);
+		long primaryTime = getCommonTime(input.getElements());
 		boolean allFalse = true;
-		for (ArdenValue val : input.values) {
+		for (ArdenValue val : input.getElements()) {
 			if (val.isTrue())
 				return ArdenBoolean.create(true, primaryTime);
 			allFalse &= val.isFalse();
@@ -669,9 +795,9 @@ public final class ExpressionHelpers {
 	/** implements the ALL operator */
 	public static ArdenValue all(ArdenValue sequence) {
 		ArdenList input = unaryComma(sequence);
-		long primaryTime = getCommonTime(input.values);
+		long primaryTime = getCommonTime(input.getElements());
 		boolean allTrue = true;
-		for (ArdenValue val : input.values) {
+		for (ArdenValue val : input.getElements()) {
 			if (val.isFalse())
 				return ArdenBoolean.create(false, primaryTime);
 			allTrue &= val.isTrue();
@@ -699,7 +825,7 @@ public final class ExpressionHelpers {
 	
 	public static ArdenValue createDuration(ArdenValue val, double multiplier, boolean isMonths) {
 		if (val instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) val).values;
+			ArdenValue[] inputs = ((ArdenList) val).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++)
 				results[i] = createDuration(inputs[i], multiplier, isMonths);
@@ -742,7 +868,7 @@ public final class ExpressionHelpers {
 	
 	public static ArdenValue extractTimeComponent(ArdenValue time, int component) {
 		if (time instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) time).values;
+			ArdenValue[] inputs = ((ArdenList) time).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++)
 				results[i] = extractTimeComponent(inputs[i], component);
@@ -775,7 +901,7 @@ public final class ExpressionHelpers {
 	/** implements the STRING... operator */
 	public static ArdenString joinString(ArdenValue input) {
 		StringBuilder b = new StringBuilder();
-		for (ArdenValue val : unaryComma(input).values) {
+		for (ArdenValue val : unaryComma(input).getElements()) {
 			b.append(toString(val));
 		}
 		return new ArdenString(b.toString());
@@ -784,7 +910,7 @@ public final class ExpressionHelpers {
 	/** implements the EXTRACT CHARACTERS operator */
 	public static ArdenList extractCharacters(ArdenValue input) {
 		ArrayList<String> strings = new ArrayList<String>();
-		for (ArdenValue val : unaryComma(input).values) {
+		for (ArdenValue val : unaryComma(input).getElements()) {
 			String txt = toString(val);
 			for (int i = 0; i < txt.length(); i++)
 				strings.add(txt.substring(i, i + 1));
@@ -798,7 +924,7 @@ public final class ExpressionHelpers {
 	/** implements the TRIM operator */
 	public static ArdenValue trim(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -815,7 +941,7 @@ public final class ExpressionHelpers {
 	/** implements the TRIM LEFT operator */
 	public static ArdenValue trimLeft(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -836,7 +962,7 @@ public final class ExpressionHelpers {
 	/** implements the TRIM RIGHT operator */
 	public static ArdenValue trimRight(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -857,7 +983,7 @@ public final class ExpressionHelpers {
 	/** implements the LENGTH OF operator */
 	public static ArdenValue length(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -875,7 +1001,7 @@ public final class ExpressionHelpers {
 	/** implements the UPPERCASE operator */
 	public static ArdenValue toUpperCase(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -893,7 +1019,7 @@ public final class ExpressionHelpers {
 	/** implements the LOWERCASE operator */
 	public static ArdenValue toLowerCase(ArdenValue input) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] list = ((ArdenList) input).values;
+			ArdenValue[] list = ((ArdenList) input).getElements();
 			if (list.length == 0)
 				return ArdenNull.INSTANCE; // special case
 			ArdenValue[] results = new ArdenValue[list.length];
@@ -915,7 +1041,7 @@ public final class ExpressionHelpers {
 			String input = ((ArdenString) lhs).value;
 			return pattern.matcher(input).matches() ? ArdenBoolean.TRUE : ArdenBoolean.FALSE;
 		} else if (lhs instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) lhs).values;
+			ArdenValue[] inputs = ((ArdenList) lhs).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++) {
 				if (inputs[i] instanceof ArdenString) {
@@ -971,7 +1097,7 @@ public final class ExpressionHelpers {
 
 	private static ArdenValue cloneObjects(ArdenValue input, HashMap<ArdenObject, ArdenObject> objectMap) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) input).values;
+			ArdenValue[] inputs = ((ArdenList) input).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++)
 				results[i] = cloneObjects(inputs[i], objectMap);
@@ -999,7 +1125,7 @@ public final class ExpressionHelpers {
 			type = ((ArdenObject) input).type;
 		} else if (input instanceof ArdenList) {
 			// if all objects in list have the same type, get that type
-			ArdenValue[] inputs = ((ArdenList) input).values;
+			ArdenValue[] inputs = ((ArdenList) input).getElements();
 			if (inputs.length == 0 || !(inputs[0] instanceof ArdenObject))
 				return ArdenNull.INSTANCE;
 			type = ((ArdenObject) inputs[0]).type;
@@ -1021,7 +1147,7 @@ public final class ExpressionHelpers {
 	/** IS <Object-Type> operator implementation */
 	public static ArdenValue isObjectType(ArdenValue input, ObjectType type) {
 		if (input instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) input).values;
+			ArdenValue[] inputs = ((ArdenList) input).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++)
 				results[i] = isObjectType(inputs[i], type);
@@ -42,6 +42,35 @@ public abstract class MedicalLogicModuleImplementation {
 	// arguments)
 	// None of the arguments may be null.
 
+	/**
+	 * The format of the classes created by the current compiler. Classes of
+	 * another format cannot be run and have to be recompiled.
+	 * 
+	 * Format 2 no longer accesses the field ArdenList.values, which has been
+	 * replaced by ArdenList.getElements().
+	 */
+	public static final int FORMAT_VERSION = 2;
+
+	/**
+	 * Creates a new instance of this implementation class, running the data
+	 * block. Compiled MLMs override this method to call their constructor
+	 * directly.
+	 * 
+	 * @return The new instance, or null if not supported by this class.
+	 */
+	public MedicalLogicModuleImplementation createInstance(ExecutionContext context, MedicalLogicModule self,
+			ArdenValue[] arguments) {
+		return null;
+	}
+
+	/**
+	 * Gets the format of this class (see FORMAT_VERSION). Compiled MLMs
+	 * override this method; classes without an override have format 1.
+	 */
+	public int getFormatVersion() {
+		return 1;
+	}
+
 	/** Executes the logic block. */
 	public abstract boolean logic(ExecutionContext context);
 
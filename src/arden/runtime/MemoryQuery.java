@@ -47,12 +47,26 @@ public final class MemoryQuery extends DatabaseQuery {
 		return values;
 	}
 
+	/**
+	 * Returns whether the value is a list in numeric form, which the time
+	 * constraints filter by primary time directly instead of evaluating the
+	 * time operators on every element.
+	 */
+	private static boolean isNumericList(ArdenValue value) {
+		return value instanceof ArdenList && ((ArdenList) value).isNumeric();
+	}
+
 	@Override
 	public DatabaseQuery occursWithinTo(ArdenTime start, ArdenTime end) {
 		ArdenValue[] result = new ArdenValue[values.length];
 		for (int i = 0; i < values.length; i++) {
-			ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
-			result[i] = ExpressionHelpers.where(values[i], TernaryOperator.WITHINTO.run(inputTime, start, end));
+			if (isNumericList(values[i])) {
+				result[i] = ((ArdenList) values[i]).selectByTime(Math.min(start.value, end.value), Math.max(start.value,
+						end.value), true);
+			} else {
+				ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
+				result[i] = ExpressionHelpers.where(values[i], TernaryOperator.WITHINTO.run(inputTime, start, end));
+			}
 		}
 		return new MemoryQuery(result);
 	}
@@ -61,9 +75,14 @@ public final class MemoryQuery extends DatabaseQuery {
 	public DatabaseQuery occursNotWithinTo(ArdenTime start, ArdenTime end) {
 		ArdenValue[] result = new ArdenValue[values.length];
 		for (int i = 0; i < values.length; i++) {
-			ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
-			result[i] = ExpressionHelpers.where(values[i], UnaryOperator.NOT.run(TernaryOperator.WITHINTO.run(
-					inputTime, start, end)));
+			if (isNumericList(values[i])) {
+				result[i] = ((ArdenList) values[i]).selectByTime(Math.min(start.value, end.value), Math.max(start.value,
+						end.value), false);
+			} else {
+				ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
+				result[i] = ExpressionHelpers.where(values[i], UnaryOperator.NOT.run(TernaryOperator.WITHINTO.run(
+						inputTime, start, end)));
+			}
 		}
 		return new MemoryQuery(result);
 	}
@@ -72,8 +91,12 @@ public final class MemoryQuery extends DatabaseQuery {
 	public DatabaseQuery occursBefore(ArdenTime time) {
 		ArdenValue[] result = new ArdenValue[values.length];
 		for (int i = 0; i < values.length; i++) {
-			ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
-			result[i] = ExpressionHelpers.where(values[i], BinaryOperator.ISBEFORE.run(inputTime, time));
+			if (isNumericList(values[i])) {
+				result[i] = ((ArdenList) values[i]).selectByTime(Long.MIN_VALUE, time.value - 1, true);
+			} else {
+				ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
+				result[i] = ExpressionHelpers.where(values[i], BinaryOperator.ISBEFORE.run(inputTime, time));
+			}
 		}
 		return new MemoryQuery(result);
 	}
@@ -82,9 +105,13 @@ public final class MemoryQuery extends DatabaseQuery {
 	public DatabaseQuery occursNotBefore(ArdenTime time) {
 		ArdenValue[] result = new ArdenValue[values.length];
 		for (int i = 0; i < values.length; i++) {
-			ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
-			result[i] = ExpressionHelpers.where(values[i], UnaryOperator.NOT.run(BinaryOperator.ISBEFORE.run(inputTime,
-					time)));
+			if (isNumericList(values[i])) {
+				result[i] = ((ArdenList) values[i]).selectByTime(Long.MIN_VALUE, time.value - 1, false);
+			} else {
+				ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
+				result[i] = ExpressionHelpers.where(values[i], UnaryOperator.NOT.run(BinaryOperator.ISBEFORE.run(inputTime,
+						time)));
+			}
 		}
 		return new MemoryQuery(result);
 	}
@@ -93,8 +120,12 @@ public final class MemoryQuery extends DatabaseQuery {
 	public DatabaseQuery occursAfter(ArdenTime time) {
 		ArdenValue[] result = new ArdenValue[values.length];
 		for (int i = 0; i < values.length; i++) {
-			ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
-			result[i] = ExpressionHelpers.where(values[i], BinaryOperator.ISAFTER.run(inputTime, time));
+			if (isNumericList(values[i])) {
+				result[i] = ((ArdenList) values[i]).selectByTime(time.value + 1, Long.MAX_VALUE, true);
+			} else {
+				ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
+				result[i] = ExpressionHelpers.where(values[i], BinaryOperator.ISAFTER.run(inputTime, time));
+			}
 		}
 		return new MemoryQuery(result);
 	}
@@ -103,9 +134,13 @@ public final class MemoryQuery extends DatabaseQuery {
 	public DatabaseQuery occursNotAfter(ArdenTime time) {
 		ArdenValue[] result = new ArdenValue[values.length];
 		for (int i = 0; i < values.length; i++) {
-			ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
-			result[i] = ExpressionHelpers.where(values[i], UnaryOperator.NOT.run(BinaryOperator.ISAFTER.run(inputTime,
-					time)));
+			if (isNumericList(values[i])) {
+				result[i] = ((ArdenList) values[i]).selectByTime(time.value + 1, Long.MAX_VALUE, false);
+			} else {
+				ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
+				result[i] = ExpressionHelpers.where(values[i], UnaryOperator.NOT.run(BinaryOperator.ISAFTER.run(inputTime,
+						time)));
+			}
 		}
 		return new MemoryQuery(result);
 	}
@@ -114,8 +149,12 @@ public final class MemoryQuery extends DatabaseQuery {
 	public DatabaseQuery occursAt(ArdenTime time) {
 		ArdenValue[] result = new ArdenValue[values.length];
 		for (int i = 0; i < values.length; i++) {
-			ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
-			result[i] = ExpressionHelpers.where(values[i], BinaryOperator.EQ.run(inputTime, time));
+			if (isNumericList(values[i])) {
+				result[i] = ((ArdenList) values[i]).selectByTime(time.value, time.value, true);
+			} else {
+				ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
+				result[i] = ExpressionHelpers.where(values[i], BinaryOperator.EQ.run(inputTime, time));
+			}
 		}
 		return new MemoryQuery(result);
 	}
@@ -124,8 +163,12 @@ public final class MemoryQuery extends DatabaseQuery {
 	public DatabaseQuery occursNotAt(ArdenTime time) {
 		ArdenValue[] result = new ArdenValue[values.length];
 		for (int i = 0; i < values.length; i++) {
-			ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
-			result[i] = ExpressionHelpers.where(values[i], BinaryOperator.NE.run(inputTime, time));
+			if (isNumericList(values[i])) {
+				result[i] = ((ArdenList) values[i]).selectByTime(time.value, time.value, false);
+			} else {
+				ArdenValue inputTime = UnaryOperator.TIME.run(values[i]);
+				result[i] = ExpressionHelpers.where(values[i], BinaryOperator.NE.run(inputTime, time));
+			}
 		}
 		return new MemoryQuery(result);
 	}
@@ -0,0 +1,151 @@
+package arden.runtime;
+
+/**
+ * Wraps the query of a mapping clause to report the time execute() takes to
+ * the execution listener. Constraints and aggregations are passed on to the
+ * wrapped query, so it can still evaluate them itself.
+ */
+final class ObservedQuery extends DatabaseQuery {
+	private final DatabaseQuery query;
+	private final String mapping;
+	private final ExecutionListener listener;
+
+	ObservedQuery(DatabaseQuery query, String mapping, ExecutionListener listener) {
+		this.query = query;
+		this.mapping = mapping;
+		this.listener = listener;
+	}
+
+	@Override
+	public ArdenValue[] execute() {
+		long start = System.nanoTime();
+		ArdenValue[] result = query.execute();
+		listener.queryExecuted(mapping, System.nanoTime() - start);
+		return result;
+	}
+
+	@Override
+	public DatabaseQuery occursWithinTo(ArdenTime start, ArdenTime end) {
+		return new ObservedQuery(query.occursWithinTo(start, end), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery occursNotWithinTo(ArdenTime start, ArdenTime end) {
+		return new ObservedQuery(query.occursNotWithinTo(start, end), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery occursBefore(ArdenTime time) {
+		return new ObservedQuery(query.occursBefore(time), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery occursNotBefore(ArdenTime time) {
+		return new ObservedQuery(query.occursNotBefore(time), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery occursAfter(ArdenTime time) {
+		return new ObservedQuery(query.occursAfter(time), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery occursNotAfter(ArdenTime time) {
+		return new ObservedQuery(query.occursNotAfter(time), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery occursAt(ArdenTime time) {
+		return new ObservedQuery(query.occursAt(time), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery occursNotAt(ArdenTime time) {
+		return new ObservedQuery(query.occursNotAt(time), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery average() {
+		return new ObservedQuery(query.average(), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery count() {
+		return new ObservedQuery(query.count(), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery exist() {
+		return new ObservedQuery(query.exist(), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery sum() {
+		return new ObservedQuery(query.sum(), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery median() {
+		return new ObservedQuery(query.median(), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery minimum() {
+		return new ObservedQuery(query.minimum(), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery minimum(int numberOfElements) {
+		return new ObservedQuery(query.minimum(numberOfElements), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery maximum() {
+		return new ObservedQuery(query.maximum(), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery maximum(int numberOfElements) {
+		return new ObservedQuery(query.maximum(numberOfElements), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery last() {
+		return new ObservedQuery(query.last(), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery last(int numberOfElements) {
+		return new ObservedQuery(query.last(numberOfElements), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery first() {
+		return new ObservedQuery(query.first(), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery first(int numberOfElements) {
+		return new ObservedQuery(query.first(numberOfElements), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery latest() {
+		return new ObservedQuery(query.latest(), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery latest(int numberOfElements) {
+		return new ObservedQuery(query.latest(numberOfElements), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery earliest() {
+		return new ObservedQuery(query.earliest(), mapping, listener);
+	}
+
+	@Override
+	public DatabaseQuery earliest(int numberOfElements) {
+		return new ObservedQuery(query.earliest(numberOfElements), mapping, listener);
+	}
+}
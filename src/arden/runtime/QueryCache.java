@@ -0,0 +1,147 @@
+package arden.runtime;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of query results, shared by the MLMs that read the same mapping with
+ * the same parameters, e.g. the MLMs triggered by one event.
+ *
+ * Results are kept for a time to live, which can be set per mapping, and the
+ * least recently used results are dropped when the cache is full. Execution
+ * contexts must call invalidateAll() when they change the data the queries
+ * read.
+ */
+public final class QueryCache {
+	public static final long DEFAULT_TIME_TO_LIVE = 60 * 1000;
+
+	private static final class Entry {
+		final ArdenValue[] result;
+		final long expiry;
+
+		Entry(ArdenValue[] result, long expiry) {
+			this.result = result;
+			this.expiry = expiry;
+		}
+	}
+
+	private final int maximumSize;
+	private final long defaultTimeToLive;
+	private final Map<String, Long> timesToLive = new HashMap<String, Long>();
+	/** in access order, so the first entry is the least recently used one */
+	private final LinkedHashMap<String, Entry> entries;
+	private long hits;
+	private long misses;
+	private long evictions;
+	/** incremented by invalidateAll() */
+	private long generation;
+
+	/**
+	 * @param maximumSize
+	 *            the maximum number of results
+	 * @param defaultTimeToLive
+	 *            the milliseconds results of mappings without own time to
+	 *            live are kept
+	 */
+	public QueryCache(int maximumSize, long defaultTimeToLive) {
+		if (maximumSize < 1)
+			throw new IllegalArgumentException("maximumSize must be positive");
+		this.maximumSize = maximumSize;
+		this.defaultTimeToLive = defaultTimeToLive;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	}
+
+	/**
+	 * Sets the milliseconds the results of a mapping are kept. 0 disables
+	 * caching of the mapping.
+	 */
+	public synchronized void setTimeToLive(String mapping, long milliseconds) {
+		timesToLive.put(mapping, Long.valueOf(Math.max(0, milliseconds)));
+	}
+
+	private long getTimeToLive(String mapping) {
+		Long timeToLive = timesToLive.get(mapping);
+		return timeToLive != null ? timeToLive.longValue() : defaultTimeToLive;
+	}
+
+	/**
+	 * Wraps the query of a mapping, so that its results are taken from the
+	 * cache. The key identifies the mapping and the parameters it was created
+	 * with. The aggregations JDBCQuery translates into SQL are added to it;
+	 * time constraints and the other operators are applied to the cached
+	 * result of the mapping.
+	 */
+	public DatabaseQuery wrap(DatabaseQuery query, String mapping, String key) {
+		synchronized (this) {
+			if (getTimeToLive(mapping) == 0)
+				return query;
+		}
+		return new CachedQuery(query, mapping, key, this);
+	}
+
+	/** Gets a result, or null if it is not cached or has expired. */
+	synchronized ArdenValue[] get(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.expiry - System.nanoTime() <= 0) {
+			entries.remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.result;
+	}
+
+	/** Gets the generation to pass to put() for a query that is about to be executed. */
+	synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Stores a result. It is dropped if invalidateAll() was called since the
+	 * generation was taken, as it may have been read before the change.
+	 */
+	synchronized void put(String key, String mapping, ArdenValue[] result, long generation) {
+		long timeToLive = getTimeToLive(mapping);
+		if (timeToLive == 0 || generation != this.generation)
+			return;
+		entries.put(key, new Entry(result, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeToLive)));
+		if (entries.size() > maximumSize) {
+			Iterator<Entry> eldest = entries.values().iterator();
+			eldest.next();
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	/** Drops all results, e.g. after the database has been changed. */
+	public synchronized void invalidateAll() {
+		entries.clear();
+		generation++;
+	}
+
+	/** Gets the number of cached results, including expired ones not yet dropped. */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/** Gets the number of executions answered from the cache. */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/** Gets the number of executions that had to run the query. */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/** Gets the number of results dropped because the cache was full. */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+}
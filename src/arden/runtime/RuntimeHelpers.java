@@ -57,6 +57,14 @@ public final class RuntimeHelpers {
 		}
 	}
 	
+	/**
+	 * Returns whether val is a number without primary time. This is the
+	 * guard of the arithmetic that is compiled on unboxed doubles.
+	 */
+	public static boolean isPlainNumber(ArdenValue val) {
+		return val instanceof ArdenNumber && val.primaryTime == ArdenValue.NOPRIMARYTIME;
+	}
+
 	public static final double DEFAULT_URGENCY = 50;
 	
 	public static final double DEFAULT_PRIORITY = 50; 
@@ -268,7 +276,7 @@ public final class RuntimeHelpers {
 		int shortestListLength = Integer.MAX_VALUE;
 		for (ArdenValue input : inputs) {
 			if (input instanceof ArdenList)
-				shortestListLength = Math.min(shortestListLength, ((ArdenList) input).values.length);
+				shortestListLength = Math.min(shortestListLength, ((ArdenList) input).size());
 			else
 				allInputsAreLists = false;
 		}
@@ -277,7 +285,7 @@ public final class RuntimeHelpers {
 			for (int i = 0; i < results.length; i++) {
 				ArdenObject obj = new ArdenObject(type);
 				for (int j = 0; j < inputs.length && j < obj.fields.length; j++)
-					obj.fields[j] = ((ArdenList) inputs[j]).values[i];
+					obj.fields[j] = ((ArdenList) inputs[j]).getElements()[i];
 				results[i] = obj;
 			}
 			return new ArdenList(results);
@@ -298,7 +306,7 @@ public final class RuntimeHelpers {
 			else
 				return obj.fields[index];
 		} else if (objref instanceof ArdenList) {
-			ArdenValue[] inputs = ((ArdenList) objref).values;
+			ArdenValue[] inputs = ((ArdenList) objref).getElements();
 			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < inputs.length; i++)
 				results[i] = getObjectMember(inputs[i], upperCaseFieldName);
@@ -315,9 +323,24 @@ public final class RuntimeHelpers {
 			if (index >= 0)
 				obj.fields[index] = newValue;
 		} else if (objref instanceof ArdenList) {
-			for (ArdenValue listEntry : ((ArdenList) objref).values) {
+			for (ArdenValue listEntry : ((ArdenList) objref).getElements()) {
 				setObjectMember(listEntry, upperCaseFieldName, newValue);
 			}
 		}
 	}
+
+	/** Creates the query of a mapping clause, observed by the execution listener if there is one. */
+	public static DatabaseQuery createQuery(ExecutionContext context, String mapping) {
+		DatabaseQuery query = context.createQuery(mapping);
+		ExecutionListener listener = context.getExecutionListener();
+		if (listener == ExecutionListener.NONE)
+			return query;
+		return new ObservedQuery(query, mapping, listener);
+	}
+
+	/** Writes a message and notifies the execution listener. */
+	public static void write(ExecutionContext context, ArdenValue message, String destination) {
+		context.write(message, destination);
+		context.getExecutionListener().messageWritten(destination);
+	}
 }
@@ -0,0 +1,425 @@
+package arden.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of pending firings, delayed triggers, delayed calls and
+ * event subscriptions, so that they survive a restart. The journal is a memory-mapped file on a
+ * local disk; network file systems are not supported.
+ *
+ * Every pending item is appended as a record with a unique id, and removing
+ * it appends a removal record. When most records in the file are dead, or
+ * the file is full, the live records are written to a new file, which then
+ * atomically replaces the old one (compaction), so that a crash leaves
+ * either the old or the new file. Opening a journal replays the file, so
+ * that getRecords() returns the items that were pending when it was last
+ * used.
+ *
+ * Every record carries a checksum. Replay stops at the first incomplete or
+ * damaged record, so a crash while appending loses at most that record.
+ * Appended records survive a crash of the process; unless sync is enabled,
+ * they may be lost if the operating system crashes.
+ */
+public final class ScheduleJournal {
+	/** the next run time of a scheduled MLM */
+	public static final int FIRING = 1;
+	/** an MLM triggered some time after an event */
+	public static final int TRIGGER = 2;
+	/** an MLM called with a delay; the payload holds the arguments */
+	public static final int CALL = 3;
+	/** the events an MLM is subscribed to; the payload holds their mappings */
+	public static final int SUBSCRIPTION = 4;
+	private static final int REMOVAL = 127;
+
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+	/** dead records below this many bytes do not cause a compaction */
+	private static final int COMPACTION_THRESHOLD = 64 * 1024;
+	private static final int MAGIC = 0x41534a31; // "ASJ1"
+	/** record length and checksum */
+	private static final int RECORD_HEADER = 8;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** A pending item in the journal. */
+	public static final class Record {
+		private final int kind;
+		private final long id;
+		private final long time;
+		private final String name;
+		private final byte[] payload;
+		/** bytes of the record in the file */
+		private final int size;
+
+		Record(int kind, long id, long time, String name, byte[] payload) {
+			this.kind = kind;
+			this.id = id;
+			this.time = time;
+			this.name = name;
+			this.payload = payload;
+			this.size = RECORD_HEADER + 1 + 8 + 8 + 4 + name.getBytes(UTF8).length + 4 + payload.length;
+		}
+
+		/** Gets FIRING, TRIGGER, CALL or SUBSCRIPTION. */
+		public int getKind() {
+			return kind;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		/** Gets the time (in milliseconds) at which the item is due. */
+		public long getTime() {
+			return time;
+		}
+
+		/** Gets the name of the MLM. */
+		public String getName() {
+			return name;
+		}
+
+		public byte[] getPayload() {
+			return payload;
+		}
+	}
+
+	private final File file;
+	private final int initialCapacity;
+	private final boolean sync;
+	private MappedByteBuffer buffer;
+	/** the live records in order of their ids */
+	private final Map<Long, Record> records = new LinkedHashMap<Long, Record>();
+	/** bytes of the live records */
+	private long liveBytes;
+	private long nextId = 1;
+	private boolean closed;
+
+	public ScheduleJournal(File file) throws IOException {
+		this(file, DEFAULT_CAPACITY, false);
+	}
+
+	/**
+	 * Opens or creates a journal and replays it.
+	 *
+	 * @param initialCapacity
+	 *            the initial size of the file in bytes; it grows as needed
+	 * @param sync
+	 *            whether every change is written to the disk before it
+	 *            returns
+	 */
+	public ScheduleJournal(File file, int initialCapacity, boolean sync) throws IOException {
+		this.file = file;
+		this.initialCapacity = Math.max(initialCapacity, 4096);
+		this.sync = sync;
+		recoverCompaction();
+		if (file.exists() && file.length() > 0) {
+			buffer = map(file, Math.max(file.length(), this.initialCapacity));
+			replay();
+		} else {
+			buffer = create(file, this.initialCapacity);
+		}
+	}
+
+	/**
+	 * Removes the file of a compaction that was interrupted by a crash. It
+	 * only replaces the journal if the journal itself is missing.
+	 */
+	private void recoverCompaction() throws IOException {
+		File temporary = getCompactionFile();
+		if (!temporary.exists())
+			return;
+		if (file.exists())
+			Files.delete(temporary.toPath());
+		else
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private File getCompactionFile() {
+		return new File(file.getPath() + ".compact");
+	}
+
+	private static MappedByteBuffer map(File file, long size) throws IOException {
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("Journal too large: " + file);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			// the mapping stays valid after the file is closed
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static MappedByteBuffer create(File file, long size) throws IOException {
+		MappedByteBuffer buffer = map(file, size);
+		buffer.putInt(MAGIC);
+		return buffer;
+	}
+
+	/** Reads the records up to the end of the journal or the first damaged record. */
+	private void replay() throws IOException {
+		if (buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a schedule journal: " + file);
+		int end = 4;
+		CRC32 crc = new CRC32();
+		while (end + RECORD_HEADER <= buffer.capacity()) {
+			int length = buffer.getInt(end);
+			int checksum = buffer.getInt(end + 4);
+			if (length <= 0 || length > buffer.capacity() - end - RECORD_HEADER)
+				break;
+			buffer.position(end + RECORD_HEADER);
+			ByteBuffer body = buffer.slice();
+			body.limit(length);
+			crc.reset();
+			for (int i = 0; i < length; i++)
+				crc.update(body.get(i));
+			if ((int) crc.getValue() != checksum)
+				break;
+			try {
+				readRecord(body);
+			} catch (BufferUnderflowException e) {
+				break;
+			}
+			end += RECORD_HEADER + length;
+		}
+		buffer.position(end);
+		for (int i = end; i < buffer.capacity(); i++) {
+			if (buffer.get(i) != 0) {
+				// a damaged record; start a new file, so that its remains
+				// are not mistaken for records appended later
+				compact();
+				break;
+			}
+		}
+	}
+
+	private void readRecord(ByteBuffer body) {
+		int kind = body.get();
+		long id = body.getLong();
+		if (id >= nextId)
+			nextId = id + 1;
+		if (kind == REMOVAL) {
+			Record removed = records.remove(id);
+			if (removed != null)
+				liveBytes -= removed.size;
+			return;
+		}
+		long time = body.getLong();
+		byte[] name = new byte[Math.min(Math.max(body.getInt(), 0), body.remaining())];
+		body.get(name);
+		byte[] payload = new byte[Math.min(Math.max(body.getInt(), 0), body.remaining())];
+		body.get(payload);
+		Record record = new Record(kind, id, time, new String(name, UTF8), payload);
+		records.put(id, record);
+		liveBytes += record.size;
+	}
+
+	/** Gets the pending items, in the order they were added. */
+	public synchronized List<Record> getRecords() {
+		return new ArrayList<Record>(records.values());
+	}
+
+	/** Gets the number of pending items. */
+	public synchronized int size() {
+		return records.size();
+	}
+
+	/**
+	 * Adds an item and returns its id.
+	 *
+	 * @param payload
+	 *            additional data, or null
+	 */
+	public synchronized long add(int kind, long time, String name, byte[] payload) {
+		if (kind != FIRING && kind != TRIGGER && kind != CALL && kind != SUBSCRIPTION)
+			throw new IllegalArgumentException("Unknown kind: " + kind);
+		Record record = new Record(kind, nextId++, time, name, payload == null ? new byte[0] : payload);
+		// register the record only after appending it, so that a compaction
+		// caused by the append does not write it as well
+		append(encode(record));
+		records.put(record.id, record);
+		liveBytes += record.size;
+		return record.id;
+	}
+
+	/** Removes an item; does nothing if there is none with the id. */
+	public synchronized void remove(long id) {
+		Record removed = records.remove(id);
+		if (removed == null)
+			return;
+		liveBytes -= removed.size;
+		ByteBuffer body = ByteBuffer.allocate(1 + 8);
+		body.put((byte) REMOVAL).putLong(id).flip();
+		append(body);
+		long deadBytes = buffer.position() - liveBytes;
+		if (deadBytes > COMPACTION_THRESHOLD && deadBytes > liveBytes)
+			compact();
+	}
+
+	private static ByteBuffer encode(Record record) {
+		byte[] name = record.name.getBytes(UTF8);
+		ByteBuffer body = ByteBuffer.allocate(1 + 8 + 8 + 4 + name.length + 4 + record.payload.length);
+		body.put((byte) record.kind).putLong(record.id).putLong(record.time);
+		body.putInt(name.length).put(name);
+		body.putInt(record.payload.length).put(record.payload);
+		body.flip();
+		return body;
+	}
+
+	private void append(ByteBuffer body) {
+		checkOpen();
+		// keep room for the header of the next record, which terminates the journal
+		if (buffer.remaining() < 2 * RECORD_HEADER + body.remaining()) {
+			compact();
+			if (buffer.remaining() < 2 * RECORD_HEADER + body.remaining())
+				grow(body.remaining());
+		}
+		write(buffer, body);
+		if (sync)
+			buffer.force();
+	}
+
+	/**
+	 * Writes a record so that it only becomes visible when it is complete: the
+	 * length is written after the body.
+	 */
+	private static void write(ByteBuffer buffer, ByteBuffer body) {
+		CRC32 crc = new CRC32();
+		for (int i = body.position(); i < body.limit(); i++)
+			crc.update(body.get(i));
+		int start = buffer.position();
+		int length = body.remaining();
+		buffer.position(start + RECORD_HEADER);
+		buffer.put(body);
+		int end = buffer.position();
+		buffer.putInt(start + 4, (int) crc.getValue());
+		buffer.putInt(start, length);
+		buffer.position(end);
+	}
+
+	private void grow(int needed) {
+		compactInto(Math.max(2L * buffer.capacity(), buffer.capacity() + 2L * needed));
+	}
+
+	/** Replaces the journal with a new file that contains only the live records. */
+	public synchronized void compact() {
+		checkOpen();
+		compactInto(Math.max(initialCapacity, 2 * liveBytes + 4 + RECORD_HEADER));
+	}
+
+	private void compactInto(long capacity) {
+		if (capacity > Integer.MAX_VALUE)
+			throw new RuntimeException(new IOException("Journal too large: " + file));
+		File temporary = getCompactionFile();
+		ByteBuffer content = ByteBuffer.allocate((int) (4 + liveBytes));
+		content.putInt(MAGIC);
+		for (Record record : records.values())
+			write(content, encode(record));
+		content.flip();
+		try {
+			writeCompactionFile(temporary, content, capacity);
+			// a file cannot be replaced while it is mapped on some platforms;
+			// the old buffer must not be used anymore after this
+			buffer.force();
+			int oldCapacity = buffer.capacity();
+			int oldPosition = buffer.position();
+			unmap(buffer);
+			buffer = null;
+			try {
+				Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				// the old file is unchanged, keep using it
+				buffer = map(file, oldCapacity);
+				buffer.position(oldPosition);
+				Files.deleteIfExists(temporary.toPath());
+				throw e;
+			}
+			buffer = map(file, capacity);
+			buffer.position(content.limit());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void writeCompactionFile(File temporary, ByteBuffer content, long capacity) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(temporary, "rw");
+		try {
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			while (content.hasRemaining())
+				channel.write(content);
+			content.rewind();
+			// the rest of the file is zero, which ends the journal
+			raf.setLength(capacity);
+			channel.force(true);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Releases a mapping without waiting for the garbage collector. Java does
+	 * not offer this officially, so this does nothing where the internal
+	 * methods are not available.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner;
+			try {
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			} catch (NoSuchMethodException e) {
+				// Java 8
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+				return;
+			}
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+		} catch (Exception e) {
+			// released by the garbage collector instead
+		}
+	}
+
+	/** Writes all changes to the disk. */
+	public synchronized void sync() {
+		checkOpen();
+		buffer.force();
+	}
+
+	/** Gets the size of the journal file in bytes. */
+	public synchronized long getCapacity() {
+		return buffer.capacity();
+	}
+
+	public synchronized void close() {
+		if (closed)
+			return;
+		buffer.force();
+		closed = true;
+	}
+
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("The journal is closed");
+	}
+}
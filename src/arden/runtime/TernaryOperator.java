@@ -145,13 +145,13 @@ public abstract class TernaryOperator {
 	/** Implements the list logic for running the operator. */
 	public final ArdenValue run(ArdenValue arg1, ArdenValue arg2, ArdenValue arg3) {
 		if (arg1 instanceof ArdenList) {
-			ArdenValue[] args1 = ((ArdenList) arg1).values;
+			ArdenValue[] args1 = ((ArdenList) arg1).getElements();
 			return runList(args1, repeat(arg2, args1.length), repeat(arg3, args1.length));
 		} else if (arg2 instanceof ArdenList) {
-			ArdenValue[] args2 = ((ArdenList) arg2).values;
+			ArdenValue[] args2 = ((ArdenList) arg2).getElements();
 			return runList(repeat(arg1, args2.length), args2, repeat(arg3, args2.length));
 		} else if (arg3 instanceof ArdenList) {
-			ArdenValue[] args3 = ((ArdenList) arg3).values;
+			ArdenValue[] args3 = ((ArdenList) arg3).getElements();
 			return runList(repeat(arg1, args3.length), repeat(arg2, args3.length), args3);
 		} else {
 			return runElement(arg1, arg2, arg3);
@@ -169,7 +169,7 @@ public abstract class TernaryOperator {
 
 	private static ArdenValue[] repeat(ArdenValue arg, int times) {
 		if (arg instanceof ArdenList)
-			return ((ArdenList) arg).values;
+			return ((ArdenList) arg).getElements();
 		ArdenValue[] arr = new ArdenValue[times];
 		for (int i = 0; i < times; i++)
 			arr[i] = arg;
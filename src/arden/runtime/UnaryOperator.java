@@ -270,10 +270,10 @@ public abstract class UnaryOperator {
 	/** Implements the list logic for running the operator. */
 	public final ArdenValue run(ArdenValue val) {
 		if (val instanceof ArdenList) {
-			ArdenList inputList = (ArdenList) val;
-			ArdenValue[] results = new ArdenValue[inputList.values.length];
+			ArdenValue[] inputs = ((ArdenList) val).getElements();
+			ArdenValue[] results = new ArdenValue[inputs.length];
 			for (int i = 0; i < results.length; i++) {
-				results[i] = runElement(inputList.values[i]);
+				results[i] = runElement(inputs[i]);
 			}
 			return new ArdenList(results);
 		} else {
@@ -1,5 +1,6 @@
 package arden.runtime.events;
 
+import java.util.Collection;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -59,6 +60,19 @@ public class AfterEvokeEvent extends EvokeEvent {
 		return false;
 	}
 
+	@Override
+	public boolean runOnEvent(String event, ExecutionContext context, DelayedTriggers triggers) {
+		if (target.runOnEvent(event, context, triggers)) {
+			triggers.triggerAt(new ArdenTime(context.getCurrentTime().add(duration)));
+		}
+		return false;
+	}
+
+	@Override
+	public boolean collectEventMappings(Collection<String> mappings) {
+		return target.collectEventMappings(mappings);
+	}
+
 	@Override
 	public ArdenValue setTime(long newPrimaryTime) {
 		return new AfterEvokeEvent(duration, target, newPrimaryTime);
@@ -1,6 +1,7 @@
 package arden.runtime.events;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import arden.runtime.ArdenTime;
@@ -47,6 +48,25 @@ public class AnyEvokeEvent extends EvokeEvent {
 		return any;
 	}
 
+	@Override
+	public boolean runOnEvent(String event, ExecutionContext context, DelayedTriggers triggers) {
+		// every event is asked, as each may schedule a delayed trigger
+		boolean any = false;
+		for (EvokeEvent e : events) {
+			any |= e.runOnEvent(event, context, triggers);
+		}
+		return any;
+	}
+
+	@Override
+	public boolean collectEventMappings(Collection<String> mappings) {
+		boolean indexable = true;
+		for (EvokeEvent e : events) {
+			indexable &= e.collectEventMappings(mappings);
+		}
+		return indexable;
+	}
+
 	@Override
 	public ArdenValue setTime(long newPrimaryTime) {
 		return new AnyEvokeEvent(events, newPrimaryTime);
@@ -1,16 +1,36 @@
 package arden.runtime.events;
 
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.GregorianCalendar;
+
 import arden.runtime.ArdenDuration;
 import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
 
+/**
+ * An event that occurs at starting, starting + interval, starting + 2 *
+ * interval, ... until starting + length.
+ *
+ * The next occurrence is computed arithmetically rather than by stepping
+ * through the past ones, and remembered for the current time it was computed
+ * for. Occurrences of cycles in whole months are computed from the start
+ * with calendar arithmetic, so they keep the day of the month where it
+ * exists (e.g. the 31st of every month that has one).
+ */
 public class CyclicEvokeEvent extends EvokeEvent {
 	
 	private ArdenDuration interval;
 	private ArdenDuration length;
 	private ArdenTime starting;
 	private ArdenTime next;
+	/** the number of intervals from starting to next */
+	private long nextIndex = 0;
+	private ArdenTime limit = null;
+	/** the current time the last result was computed for */
+	private long cachedTime = Long.MIN_VALUE;
+	private ArdenTime cachedResult = null;
 	
 	public CyclicEvokeEvent(ArdenDuration interval, ArdenDuration length, ArdenTime starting, long primaryTime) {
 		this.interval = interval;
@@ -24,16 +44,70 @@ public class CyclicEvokeEvent extends EvokeEvent {
 	}
 	
 	@Override
-	public ArdenTime getNextRunTime(ExecutionContext context) {
+	public synchronized ArdenTime getNextRunTime(ExecutionContext context) {
 		ArdenTime current = context.getCurrentTime();
-		ArdenTime limit = new ArdenTime(starting.add(length)); 
-		while (current.compareTo(next) > 0) {
-			next = new ArdenTime(next.add(interval));
-			if (next.compareTo(limit) > 0) {
-				return null;
+		if (current.value == cachedTime) {
+			return cachedResult;
+		}
+		if (limit == null) {
+			limit = new ArdenTime(starting.add(length));
+		}
+		if (current.compareTo(next) > 0) {
+			if (!interval.isMonths) {
+				advanceMilliseconds(current.value);
+			} else if (interval.value == Math.rint(interval.value) && interval.value > 0) {
+				advanceMonths(current);
+			} else {
+				// fractional months
+				while (current.compareTo(next) > 0 && next.compareTo(limit) <= 0) {
+					next = new ArdenTime(next.add(interval));
+				}
 			}
 		}
-		return next;
+		cachedTime = current.value;
+		cachedResult = next.compareTo(limit) > 0 ? null : next;
+		return cachedResult;
+	}
+	
+	/** Moves next to the first occurrence at or after the current time. */
+	private void advanceMilliseconds(long current) {
+		long step = (long) (1000 * interval.value);
+		if (step <= 0) {
+			// the event never moves past the current time
+			next = new ArdenTime(Long.MAX_VALUE);
+			return;
+		}
+		long distance = current - next.value;
+		long steps = distance / step + (distance % step == 0 ? 0 : 1);
+		// no further than the first step past the end of the cycle
+		long lastStep = Math.max(1, (limit.value - next.value) / step + 1);
+		if (steps > lastStep) {
+			steps = lastStep;
+		}
+		next = new ArdenTime(next.value + steps * step);
+	}
+	
+	/** Moves next to the first occurrence at or after the current time. */
+	private void advanceMonths(ArdenTime current) {
+		long months = (long) interval.value;
+		GregorianCalendar calendar = new GregorianCalendar();
+		calendar.setTimeInMillis(starting.value);
+		int startMonth = calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+		calendar.setTimeInMillis(current.value);
+		int currentMonth = calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+		// an occurrence in the month before the current one lies before the current time
+		long index = Math.max(nextIndex + 1, (currentMonth - startMonth - 1) / months);
+		ArdenTime candidate = occurrence(index);
+		while (candidate.compareTo(current) < 0 && candidate.compareTo(limit) <= 0) {
+			index++;
+			candidate = occurrence(index);
+		}
+		nextIndex = index;
+		next = candidate;
+	}
+	
+	private ArdenTime occurrence(long index) {
+		return new ArdenTime(starting.add((ArdenDuration) ArdenDuration.months(index * interval.value, NOPRIMARYTIME)));
 	}
 
 	@Override
@@ -41,6 +115,11 @@ public class CyclicEvokeEvent extends EvokeEvent {
 		return false;
 	}
 
+	@Override
+	public boolean collectEventMappings(Collection<String> mappings) {
+		return true;
+	}
+
 	@Override
 	public ArdenValue setTime(long newPrimaryTime) {
 		return new CyclicEvokeEvent(interval, length, starting, newPrimaryTime);
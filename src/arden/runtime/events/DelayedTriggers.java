@@ -0,0 +1,13 @@
+package arden.runtime.events;
+
+import arden.runtime.ArdenTime;
+
+/**
+ * Receives the delayed triggers of evoke events such as "3 hours after time
+ * of lab_result", so that they can be kept outside of the evoke events, e.g.
+ * in a TimerWheel shared by all MLMs.
+ */
+public interface DelayedTriggers {
+	/** The evoke event is to be triggered at the specified time. */
+	void triggerAt(ArdenTime time);
+}
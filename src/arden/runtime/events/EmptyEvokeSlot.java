@@ -1,5 +1,7 @@
 package arden.runtime.events;
 
+import java.util.Collection;
+
 import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
@@ -24,6 +26,11 @@ public class EmptyEvokeSlot extends EvokeEvent {
 		return false;
 	}
 
+	@Override
+	public boolean collectEventMappings(Collection<String> mappings) {
+		return true;
+	}
+
 	@Override
 	public ArdenValue setTime(long newPrimaryTime) {
 		return new EmptyEvokeSlot(newPrimaryTime);
@@ -0,0 +1,193 @@
+package arden.runtime.events;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+
+/**
+ * Dispatches events to the MLMs whose evoke slots refer to them.
+ *
+ * When an MLM is registered, the mappings of the MappedEvokeEvents in its
+ * evoke slot (including those nested in other evoke events) are indexed
+ * ignoring case, so that firing an event only touches the MLMs that are
+ * subscribed to it. MLMs with evoke events that can't be indexed (see
+ * EvokeEvent.collectEventMappings()) receive every event. The mappings may
+ * also be given when registering, e.g. from a journal, so that the evoke
+ * slot is only evaluated when an event the MLM is subscribed to is fired.
+ *
+ * Firing events is lock-free; registration is synchronized.
+ */
+public final class EventBus {
+	private static final MedicalLogicModule[] NONE = new MedicalLogicModule[0];
+
+	private final ExecutionContext context;
+	private final ArdenValue[] arguments;
+	/** subscribed MLMs by lower case mapping; the arrays are never modified */
+	private final ConcurrentHashMap<String, MedicalLogicModule[]> subscribers = new ConcurrentHashMap<String, MedicalLogicModule[]>();
+	/** MLMs that receive every event; never modified */
+	private volatile MedicalLogicModule[] unindexed = NONE;
+	/** the keys under which every registered MLM is indexed; guarded by this */
+	private final Map<MedicalLogicModule, Set<String>> registrations = new IdentityHashMap<MedicalLogicModule, Set<String>>();
+
+	public EventBus(ExecutionContext context, ArdenValue[] arguments) {
+		this.context = context;
+		this.arguments = arguments;
+	}
+
+	private static String key(String mapping) {
+		return mapping.toLowerCase(Locale.ENGLISH);
+	}
+
+	/** Subscribes an MLM to the events in its evoke slot. */
+	public synchronized void register(MedicalLogicModule mlm) {
+		if (registrations.containsKey(mlm))
+			return;
+		EvokeEvent evoke;
+		try {
+			evoke = mlm.getEvoke(context, arguments);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException(e);
+		}
+		List<String> mappings = new ArrayList<String>();
+		register(mlm, evoke.collectEventMappings(mappings) ? mappings : null);
+	}
+
+	/**
+	 * Subscribes an MLM to events without evaluating its evoke slot.
+	 *
+	 * @param mappings
+	 *            the mappings of the events, as returned by getMappings(), or
+	 *            null if the MLM receives every event
+	 */
+	public synchronized void register(MedicalLogicModule mlm, Collection<String> mappings) {
+		if (registrations.containsKey(mlm))
+			return;
+		Set<String> keys = new HashSet<String>();
+		if (mappings != null) {
+			for (String mapping : mappings)
+				keys.add(key(mapping));
+			for (String key : keys) {
+				MedicalLogicModule[] old = subscribers.get(key);
+				subscribers.put(key, add(old == null ? NONE : old, mlm));
+			}
+		} else {
+			unindexed = add(unindexed, mlm);
+		}
+		registrations.put(mlm, mappings != null ? keys : null);
+	}
+
+	/**
+	 * Gets the mappings (in lower case) of the events a registered MLM is
+	 * subscribed to, or null if it receives every event.
+	 */
+	public synchronized Set<String> getMappings(MedicalLogicModule mlm) {
+		if (!registrations.containsKey(mlm))
+			throw new IllegalArgumentException("MLM " + mlm.getName() + " is not registered");
+		Set<String> keys = registrations.get(mlm);
+		return keys == null ? null : Collections.unmodifiableSet(keys);
+	}
+
+	/** Removes the subscriptions of an MLM. */
+	public synchronized void unregister(MedicalLogicModule mlm) {
+		if (!registrations.containsKey(mlm))
+			return;
+		Set<String> keys = registrations.remove(mlm);
+		if (keys == null) {
+			unindexed = remove(unindexed, mlm);
+			return;
+		}
+		for (String key : keys) {
+			MedicalLogicModule[] remaining = remove(subscribers.get(key), mlm);
+			if (remaining.length == 0)
+				subscribers.remove(key);
+			else
+				subscribers.put(key, remaining);
+		}
+	}
+
+	/**
+	 * Gets the MLMs that may react to an event. The returned array must not
+	 * be modified.
+	 */
+	public MedicalLogicModule[] getSubscribers(String event) {
+		MedicalLogicModule[] indexed = subscribers.get(key(event));
+		MedicalLogicModule[] others = unindexed;
+		if (indexed == null)
+			return others;
+		if (others.length == 0)
+			return indexed;
+		MedicalLogicModule[] result = Arrays.copyOf(indexed, indexed.length + others.length);
+		System.arraycopy(others, 0, result, indexed.length, others.length);
+		return result;
+	}
+
+	/**
+	 * Passes an event to the evoke events of the subscribed MLMs and returns
+	 * the MLMs that are to be run now.
+	 */
+	public List<MedicalLogicModule> fire(String event) {
+		List<MedicalLogicModule> triggered = new ArrayList<MedicalLogicModule>();
+		for (MedicalLogicModule mlm : getSubscribers(event)) {
+			if (runOnEvent(mlm, event))
+				triggered.add(mlm);
+		}
+		return triggered;
+	}
+
+	/**
+	 * Calls runOnEvent() on the evoke event of an MLM and returns whether the
+	 * MLM is to be run now.
+	 */
+	public boolean runOnEvent(MedicalLogicModule mlm, String event) {
+		try {
+			return mlm.getEvoke(context, arguments).runOnEvent(event, context);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Like runOnEvent(mlm, event), but passes the delayed triggers caused by
+	 * the event to triggers.
+	 */
+	public boolean runOnEvent(MedicalLogicModule mlm, String event, DelayedTriggers triggers) {
+		try {
+			return mlm.getEvoke(context, arguments).runOnEvent(event, context, triggers);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Returns whether an MLM is registered. */
+	public synchronized boolean isRegistered(MedicalLogicModule mlm) {
+		return registrations.containsKey(mlm);
+	}
+
+	private static MedicalLogicModule[] add(MedicalLogicModule[] array, MedicalLogicModule mlm) {
+		MedicalLogicModule[] result = Arrays.copyOf(array, array.length + 1);
+		result[array.length] = mlm;
+		return result;
+	}
+
+	private static MedicalLogicModule[] remove(MedicalLogicModule[] array, MedicalLogicModule mlm) {
+		List<MedicalLogicModule> result = new ArrayList<MedicalLogicModule>(array.length);
+		for (MedicalLogicModule m : array) {
+			if (m != mlm)
+				result.add(m);
+		}
+		return result.toArray(NONE);
+	}
+}
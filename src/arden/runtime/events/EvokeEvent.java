@@ -1,5 +1,7 @@
 package arden.runtime.events;
 
+import java.util.Collection;
+
 import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
@@ -19,4 +21,21 @@ public abstract class EvokeEvent extends ArdenValue {
 	
 	/** an event such as 'penicillin_storage' occurred */
 	public abstract boolean runOnEvent(String event, ExecutionContext context);
+	
+	/**
+	 * Like runOnEvent(event, context), but delayed triggers caused by the
+	 * event are passed to triggers instead of being kept by this event.
+	 */
+	public boolean runOnEvent(String event, ExecutionContext context, DelayedTriggers triggers) {
+		return runOnEvent(event, context);
+	}
+	
+	/**
+	 * Adds the mappings of the events that runOnEvent() reacts to. Returns
+	 * false if runOnEvent() may also react to other events, so the event can't
+	 * be indexed by its mappings.
+	 */
+	public boolean collectEventMappings(Collection<String> mappings) {
+		return false;
+	}
 }
@@ -1,5 +1,7 @@
 package arden.runtime.events;
 
+import java.util.Collection;
+
 import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
@@ -27,6 +29,11 @@ public class FixedDateEvokeEvent extends EvokeEvent {
 		return false;
 	}
 
+	@Override
+	public boolean collectEventMappings(Collection<String> mappings) {
+		return true;
+	}
+
 	@Override
 	public ArdenValue setTime(long newPrimaryTime) {
 		return new FixedDateEvokeEvent(date, newPrimaryTime);
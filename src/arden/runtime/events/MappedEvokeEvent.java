@@ -1,5 +1,7 @@
 package arden.runtime.events;
 
+import java.util.Collection;
+
 import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
@@ -32,6 +34,12 @@ public class MappedEvokeEvent extends EvokeEvent {
 		return false;
 	}
 
+	@Override
+	public boolean collectEventMappings(Collection<String> mappings) {
+		mappings.add(mapping);
+		return true;
+	}
+
 	@Override
 	public ArdenValue setTime(long newPrimaryTime) {
 		return new MappedEvokeEvent(mapping, newPrimaryTime);
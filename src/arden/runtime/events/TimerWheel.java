@@ -0,0 +1,240 @@
+package arden.runtime.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel: timers are inserted and cancelled in constant
+ * time, and expire in amortized constant time per timer, independent of the
+ * number of pending timers.
+ *
+ * Time is divided into ticks. Every level has 64 buckets; a bucket at level L
+ * covers 64^L ticks. A timer is put into the level that matches the distance
+ * of its deadline from the current tick, and moves to lower levels as that
+ * distance shrinks. Occupancy bitmaps let advance() skip empty buckets, so
+ * advancing over a long idle period is cheap.
+ *
+ * Deadlines are rounded up to whole ticks, so timers never expire early. This
+ * class is not thread-safe.
+ */
+public final class TimerWheel<T> {
+	private static final int BITS = 6;
+	private static final int SLOTS = 1 << BITS;
+	private static final int MASK = SLOTS - 1;
+	/** enough levels for any positive long distance */
+	private static final int LEVELS = (63 + BITS - 1) / BITS;
+
+	/** A pending timer, which can be cancelled. */
+	public static final class Timer<T> {
+		private final long deadline;
+		private final long tick;
+		private final T payload;
+		private Timer<T> previous;
+		private Timer<T> next;
+		/** index of the bucket the timer is in; -1 if it is not pending */
+		private int bucket = -1;
+
+		Timer(long deadline, long tick, T payload) {
+			this.deadline = deadline;
+			this.tick = tick;
+			this.payload = payload;
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+
+		public T getPayload() {
+			return payload;
+		}
+
+		public boolean isPending() {
+			return bucket >= 0;
+		}
+	}
+
+	private final long tickMillis;
+	private long currentTick;
+	/** heads of the doubly linked lists of the buckets, level by level */
+	private final Timer<T>[] buckets = newTimerArray(LEVELS * SLOTS);
+	/** bit s of occupied[L] is set if bucket s of level L is not empty */
+	private final long[] occupied = new long[LEVELS];
+	/** the bucket index of timers that were overdue when they were scheduled */
+	private static final int OVERDUE = LEVELS * SLOTS;
+	private Timer<T> overdue;
+	private int size;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <T> Timer<T>[] newTimerArray(int length) {
+		return new Timer[length];
+	}
+
+	/** Creates a wheel with a tick of one millisecond. */
+	public TimerWheel(long startTime) {
+		this(startTime, 1);
+	}
+
+	public TimerWheel(long startTime, long tickMillis) {
+		if (tickMillis < 1)
+			throw new IllegalArgumentException("tickMillis must be positive");
+		this.tickMillis = tickMillis;
+		this.currentTick = startTime / tickMillis;
+	}
+
+	/** Gets the number of pending timers. */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Adds a timer that expires at the deadline (in milliseconds). A deadline
+	 * that has already passed expires on the next call of advance().
+	 */
+	public Timer<T> schedule(long deadline, T payload) {
+		long tick = deadline / tickMillis;
+		if (tick * tickMillis < deadline)
+			tick++;
+		Timer<T> timer = new Timer<T>(deadline, tick, payload);
+		insert(timer);
+		size++;
+		return timer;
+	}
+
+	/** Removes a pending timer. Returns false if it has already expired or been cancelled. */
+	public boolean cancel(Timer<T> timer) {
+		if (timer.bucket < 0)
+			return false;
+		unlink(timer);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Gets the earliest time (in milliseconds) at which advance() may return
+	 * timers or needs to move timers between levels, or Long.MAX_VALUE if no
+	 * timer is pending. This is never later than the earliest deadline.
+	 */
+	public long getNextExpiry() {
+		if (overdue != null)
+			return currentTick * tickMillis;
+		long tick = nextBucketStart();
+		return tick == Long.MAX_VALUE ? Long.MAX_VALUE : tick * tickMillis;
+	}
+
+	/**
+	 * Moves the wheel forward to the specified time (in milliseconds) and
+	 * returns the payloads of the timers that expired, in order of their
+	 * deadlines (timers that were overdue when scheduled come first).
+	 */
+	public List<T> advance(long now) {
+		long nowTick = now / tickMillis;
+		if (overdue == null && nextBucketStart() > nowTick) {
+			if (nowTick > currentTick)
+				currentTick = nowTick;
+			return Collections.emptyList();
+		}
+		List<T> expired = new ArrayList<T>();
+		while (overdue != null)
+			expire(overdue, expired);
+		long next;
+		while ((next = nextBucketStart()) <= nowTick) {
+			currentTick = next;
+			// cascade the buckets that start now, highest level first
+			for (int level = LEVELS - 1; level > 0; level--) {
+				if ((next & ((1L << (BITS * level)) - 1)) != 0)
+					continue;
+				int index = level * SLOTS + (int) ((next >>> (BITS * level)) & MASK);
+				Timer<T> timer = buckets[index];
+				while (timer != null) {
+					Timer<T> following = timer.next;
+					unlink(timer);
+					insert(timer);
+					timer = following;
+				}
+			}
+			int index = (int) (next & MASK);
+			while (buckets[index] != null)
+				expire(buckets[index], expired);
+			while (overdue != null)
+				expire(overdue, expired);
+		}
+		if (nowTick > currentTick)
+			currentTick = nowTick;
+		return expired;
+	}
+
+	private void expire(Timer<T> timer, List<T> expired) {
+		unlink(timer);
+		size--;
+		expired.add(timer.payload);
+	}
+
+	private void insert(Timer<T> timer) {
+		long delta = timer.tick - currentTick;
+		int index;
+		if (delta <= 0) {
+			index = OVERDUE;
+		} else if (delta < SLOTS) {
+			index = (int) (timer.tick & MASK);
+		} else {
+			int level = (63 - Long.numberOfLeadingZeros(delta)) / BITS;
+			index = level * SLOTS + (int) ((timer.tick >>> (BITS * level)) & MASK);
+		}
+		timer.bucket = index;
+		timer.previous = null;
+		if (index == OVERDUE) {
+			timer.next = overdue;
+			if (overdue != null)
+				overdue.previous = timer;
+			overdue = timer;
+			return;
+		}
+		timer.next = buckets[index];
+		if (buckets[index] != null)
+			buckets[index].previous = timer;
+		buckets[index] = timer;
+		occupied[index / SLOTS] |= 1L << (index % SLOTS);
+	}
+
+	private void unlink(Timer<T> timer) {
+		int index = timer.bucket;
+		if (timer.previous != null)
+			timer.previous.next = timer.next;
+		else if (index == OVERDUE)
+			overdue = timer.next;
+		else
+			buckets[index] = timer.next;
+		if (timer.next != null)
+			timer.next.previous = timer.previous;
+		if (index != OVERDUE && buckets[index] == null)
+			occupied[index / SLOTS] &= ~(1L << (index % SLOTS));
+		timer.previous = null;
+		timer.next = null;
+		timer.bucket = -1;
+	}
+
+	/** Gets the first tick after the current one at which a non-empty bucket starts. */
+	private long nextBucketStart() {
+		long result = Long.MAX_VALUE;
+		for (int level = 0; level < LEVELS; level++) {
+			long bits = occupied[level];
+			if (bits == 0)
+				continue;
+			int shift = BITS * level;
+			int digit = (int) ((currentTick >>> shift) & MASK);
+			// the first occupied slot after the current digit, wrapping around
+			long rotated = Long.rotateRight(bits, (digit + 1) & MASK);
+			int offset = Long.numberOfTrailingZeros(rotated) + 1;
+			long base = (currentTick >>> shift) - digit;
+			long start = (base + digit + offset) << shift;
+			if (start < result)
+				result = start;
+		}
+		return result;
+	}
+}
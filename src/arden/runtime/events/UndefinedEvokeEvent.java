@@ -1,5 +1,7 @@
 package arden.runtime.events;
 
+import java.util.Collection;
+
 import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
@@ -19,6 +21,11 @@ public class UndefinedEvokeEvent extends EvokeEvent {
 		return false;
 	}
 
+	@Override
+	public boolean collectEventMappings(Collection<String> mappings) {
+		return true;
+	}
+
 	@Override
 	public ArdenTime getNextRunTime(ExecutionContext context) {
 		return null;
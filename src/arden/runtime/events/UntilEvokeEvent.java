@@ -1,5 +1,7 @@
 package arden.runtime.events;
 
+import java.util.Collection;
+
 import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
 import arden.runtime.ExecutionContext;
@@ -32,6 +34,16 @@ public class UntilEvokeEvent extends EvokeEvent {
 		return cycle.runOnEvent(event, context);
 	}
 
+	@Override
+	public boolean runOnEvent(String event, ExecutionContext context, DelayedTriggers triggers) {
+		return cycle.runOnEvent(event, context, triggers);
+	}
+
+	@Override
+	public boolean collectEventMappings(Collection<String> mappings) {
+		return cycle.collectEventMappings(mappings);
+	}
+
 	@Override
 	public ArdenValue setTime(long newPrimaryTime) {
 		return new UntilEvokeEvent(cycle, until, newPrimaryTime);
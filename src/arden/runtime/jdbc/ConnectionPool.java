@@ -0,0 +1,235 @@
+package arden.runtime.jdbc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of connections to one JDBC URL. Every pooled connection comes
+ * with its own StatementCache, which is what acquire() returns.
+ *
+ * Connections are opened on demand, up to the maximum size. If all of them are
+ * in use, acquire() waits until one is released or the acquisition timeout
+ * elapses. Idle connections are validated before they are handed out (unless
+ * they were used very recently) and closed after the idle timeout.
+ *
+ * Note that every connection to an unnamed in-memory database (e.g.
+ * "jdbc:h2:mem:") sees a database of its own.
+ */
+public final class ConnectionPool {
+	public static final int DEFAULT_SIZE = 8;
+	/** default acquisition timeout in milliseconds */
+	public static final long DEFAULT_ACQUIRE_TIMEOUT = 30 * 1000;
+	/** default idle timeout in milliseconds */
+	public static final long DEFAULT_IDLE_TIMEOUT = 10 * 60 * 1000;
+	/** default validation timeout in seconds */
+	public static final int DEFAULT_VALIDATION_TIMEOUT = 5;
+
+	/** connections that were released less than this many milliseconds ago are not validated */
+	private static final long VALIDATION_INTERVAL = 1000;
+
+	private final String url;
+	private final int maximumSize;
+	private final long acquireTimeout;
+	private final long idleTimeout;
+	private final int validationTimeout;
+	private final int statementCacheSize;
+	private final Semaphore permits;
+
+	/** the idle connections, most recently released first */
+	private final ArrayDeque<IdleConnection> idle = new ArrayDeque<IdleConnection>();
+	private int activeCount;
+	private boolean closed;
+
+	private static final class IdleConnection {
+		final StatementCache statements;
+		final long idleSince;
+
+		IdleConnection(StatementCache statements, long idleSince) {
+			this.statements = statements;
+			this.idleSince = idleSince;
+		}
+	}
+
+	public ConnectionPool(String url) {
+		this(url, DEFAULT_SIZE, DEFAULT_ACQUIRE_TIMEOUT, DEFAULT_IDLE_TIMEOUT, DEFAULT_VALIDATION_TIMEOUT,
+				StatementCache.DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param maximumSize
+	 *            the maximum number of open connections
+	 * @param acquireTimeout
+	 *            milliseconds acquire() waits for a free connection
+	 * @param idleTimeout
+	 *            milliseconds after which an idle connection is closed
+	 * @param validationTimeout
+	 *            seconds to wait for the validation of an idle connection
+	 * @param statementCacheSize
+	 *            the size of the statement cache of every connection
+	 */
+	public ConnectionPool(String url, int maximumSize, long acquireTimeout, long idleTimeout,
+			int validationTimeout, int statementCacheSize) {
+		if (maximumSize < 1)
+			throw new IllegalArgumentException("maximumSize must be positive");
+		this.url = url;
+		this.maximumSize = maximumSize;
+		this.acquireTimeout = acquireTimeout;
+		this.idleTimeout = idleTimeout;
+		this.validationTimeout = validationTimeout;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maximumSize, true);
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Takes a connection out of the pool, opening a new one if no idle
+	 * connection is left. It must be given back with release().
+	 *
+	 * @throws SQLException
+	 *             if no connection could be opened, or none became available
+	 *             within the acquisition timeout
+	 */
+	public StatementCache acquire() throws SQLException {
+		try {
+			if (!permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS))
+				throw new SQLException("Timed out after " + acquireTimeout
+						+ " ms waiting for a database connection (pool size " + maximumSize + ")");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection");
+		}
+		boolean acquired = false;
+		try {
+			synchronized (this) {
+				if (closed)
+					throw new SQLException("Connection pool is closed");
+			}
+			StatementCache statements = takeIdleConnection();
+			if (statements == null)
+				statements = new StatementCache(DriverManager.getConnection(url), statementCacheSize);
+			synchronized (this) {
+				activeCount++;
+			}
+			acquired = true;
+			return statements;
+		} finally {
+			if (!acquired)
+				permits.release();
+		}
+	}
+
+	/** Gets a valid idle connection, closing the invalid ones. */
+	private StatementCache takeIdleConnection() {
+		while (true) {
+			IdleConnection candidate;
+			synchronized (this) {
+				candidate = idle.pollFirst();
+			}
+			if (candidate == null)
+				return null;
+			long now = System.currentTimeMillis();
+			if (now - candidate.idleSince >= idleTimeout) {
+				discard(candidate.statements);
+			} else if (now - candidate.idleSince < VALIDATION_INTERVAL || isValid(candidate.statements)) {
+				return candidate.statements;
+			} else {
+				discard(candidate.statements);
+			}
+		}
+	}
+
+	private boolean isValid(StatementCache statements) {
+		try {
+			return statements.getConnection().isValid(validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Gives a connection obtained from acquire() back to the pool. Connections
+	 * that were closed by the caller are discarded.
+	 */
+	public void release(StatementCache statements) {
+		boolean open;
+		try {
+			open = !statements.getConnection().isClosed();
+		} catch (SQLException e) {
+			open = false;
+		}
+		boolean keep;
+		synchronized (this) {
+			activeCount--;
+			keep = open && !closed;
+			if (keep)
+				idle.addFirst(new IdleConnection(statements, System.currentTimeMillis()));
+		}
+		if (!keep)
+			discard(statements);
+		permits.release();
+		evictIdleConnections();
+	}
+
+	/** Closes the connections that have been idle for longer than the idle timeout. */
+	public void evictIdleConnections() {
+		List<StatementCache> expired = new ArrayList<StatementCache>();
+		long limit = System.currentTimeMillis() - idleTimeout;
+		synchronized (this) {
+			// the least recently released connections are at the end
+			Iterator<IdleConnection> it = idle.descendingIterator();
+			while (it.hasNext()) {
+				IdleConnection connection = it.next();
+				if (connection.idleSince > limit)
+					break;
+				expired.add(connection.statements);
+				it.remove();
+			}
+		}
+		for (StatementCache statements : expired)
+			discard(statements);
+	}
+
+	/** Gets the number of connections that are currently acquired. */
+	public synchronized int getActiveCount() {
+		return activeCount;
+	}
+
+	/** Gets the number of open connections that are not in use. */
+	public synchronized int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * Closes all idle connections. Connections that are in use are closed when
+	 * they are released.
+	 */
+	public void close() {
+		List<IdleConnection> toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayList<IdleConnection>(idle);
+			idle.clear();
+		}
+		for (IdleConnection connection : toClose)
+			discard(connection.statements);
+	}
+
+	private static void discard(StatementCache statements) {
+		try {
+			statements.close();
+			statements.getConnection().close();
+		} catch (SQLException e) {
+			// the connection is most likely broken already
+		}
+	}
+}
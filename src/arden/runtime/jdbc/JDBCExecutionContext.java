@@ -27,21 +27,56 @@
 
 package arden.runtime.jdbc;
 
-import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import arden.CommandLineOptions;
+import arden.configuration.ApplicationConfiguration;
 import arden.runtime.ArdenString;
 import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
 import arden.runtime.DatabaseQuery;
+import arden.runtime.MemoryQuery;
+import arden.runtime.QueryCache;
 import arden.runtime.StdIOExecutionContext;
 
 public class JDBCExecutionContext extends StdIOExecutionContext {
-	private Connection connection = null;	
+	/** configuration key of the label of the primary time column in query results */
+	public static final String PRIMARY_TIME_COLUMN_KEY = "jdbc.primarytimecolumn";
+	/** configuration key of the number of prepared statements kept open */
+	public static final String STATEMENT_CACHE_SIZE_KEY = "jdbc.statementcache.size";
+	/** configuration key of the maximum number of database connections */
+	public static final String POOL_SIZE_KEY = "jdbc.pool.size";
+	/** configuration key of the milliseconds to wait for a free connection */
+	public static final String POOL_ACQUIRE_TIMEOUT_KEY = "jdbc.pool.acquiretimeout";
+	/** configuration key of the milliseconds after which idle connections are closed */
+	public static final String POOL_IDLE_TIMEOUT_KEY = "jdbc.pool.idletimeout";
+	/** configuration key of the seconds to wait for the validation of an idle connection */
+	public static final String POOL_VALIDATION_TIMEOUT_KEY = "jdbc.pool.validationtimeout";
+	/** configuration key of the maximum number of cached query results (0 disables the cache) */
+	public static final String QUERY_CACHE_SIZE_KEY = "jdbc.querycache.size";
+	/** configuration key of the milliseconds query results are cached */
+	public static final String QUERY_CACHE_TIME_TO_LIVE_KEY = "jdbc.querycache.ttl";
+	/** name of the mapping parameter set by setPatientId() */
+	public static final String PATIENT_ID_PARAMETER = "patient_id";
+	
+	private final CommandLineOptions options;
+	private ConnectionPool pool = null;
+	/** false for the contexts created by forPatient(), which share the pool */
+	private final boolean ownsPool;
+	private String primaryTimeColumn = JDBCQuery.DEFAULT_PRIMARY_TIME_COLUMN;
+	private final Map<String, Object> parameters = new ConcurrentHashMap<String, Object>();
+	/** null if query results are not cached */
+	private volatile QueryCache queryCache = null;
+	/** results fetched for a batch of patients by JDBCPrefetcher, by cache key */
+	private final Map<String, ArdenValue[]> prefetched = new ConcurrentHashMap<String, ArdenValue[]>();
 	
 	public void loadDatabaseDriver(String className) {
 		try {
@@ -66,22 +101,66 @@ public class JDBCExecutionContext extends StdIOExecutionContext {
 	
 	public JDBCExecutionContext(CommandLineOptions options) {
 		super(options);
+		this.options = options;
+		this.ownsPool = true;
 		
 		if (options.isDbdriver()) {
 			loadDatabaseDriver(options.getDbdriver());
 		}
 		
+		String configuredColumn = ApplicationConfiguration.get(PRIMARY_TIME_COLUMN_KEY);
+		if (configuredColumn != null) {
+			primaryTimeColumn = configuredColumn;
+		}
+		
 		// handle environment option
 		if (options.isEnvironment() && options.getEnvironment() != null) {
 			String environment = options.getEnvironment();			
+			pool = new ConnectionPool(environment,
+					(int) getConfiguredNumber(POOL_SIZE_KEY, ConnectionPool.DEFAULT_SIZE, 1),
+					getConfiguredNumber(POOL_ACQUIRE_TIMEOUT_KEY, ConnectionPool.DEFAULT_ACQUIRE_TIMEOUT, 0),
+					getConfiguredNumber(POOL_IDLE_TIMEOUT_KEY, ConnectionPool.DEFAULT_IDLE_TIMEOUT, 0),
+					(int) getConfiguredNumber(POOL_VALIDATION_TIMEOUT_KEY, ConnectionPool.DEFAULT_VALIDATION_TIMEOUT, 0),
+					(int) getConfiguredNumber(STATEMENT_CACHE_SIZE_KEY, StatementCache.DEFAULT_SIZE, 0));
+			// open the first connection now to report connection problems early
 			try {
-				connection = DriverManager.getConnection(environment);
+				pool.release(pool.acquire());
 			} catch (SQLException e) {
 				e.printStackTrace();				
 			}
 		} else {
 			throw new RuntimeException("No JDBC URL given. Can't connect.");
 		}
+		
+		long cacheSize = getConfiguredNumber(QUERY_CACHE_SIZE_KEY, 0, 0);
+		if (cacheSize > 0) {
+			queryCache = new QueryCache((int) Math.min(cacheSize, Integer.MAX_VALUE),
+					getConfiguredNumber(QUERY_CACHE_TIME_TO_LIVE_KEY, QueryCache.DEFAULT_TIME_TO_LIVE, 0));
+		}
+	}
+	
+	private JDBCExecutionContext(JDBCExecutionContext parent) {
+		super(parent.options);
+		this.options = parent.options;
+		this.ownsPool = false;
+		this.pool = parent.pool;
+		this.queryCache = parent.queryCache;
+		this.primaryTimeColumn = parent.primaryTimeColumn;
+		this.parameters.putAll(parent.parameters);
+		setExecutionListener(parent.getExecutionListener());
+		shareDelayedCalls(parent);
+	}
+	
+	/**
+	 * Creates a context that uses the connections and the delayed call
+	 * scheduler of this context, with the same parameters and query cache,
+	 * except that ":patient_id" is set to patientId. Closing it does not
+	 * close the connections or the scheduler.
+	 */
+	public JDBCExecutionContext forPatient(Object patientId) {
+		JDBCExecutionContext context = new JDBCExecutionContext(this);
+		context.setPatientId(patientId);
+		return context;
 	}
 	
 	public void write(ArdenValue message, String destination) {
@@ -89,7 +168,11 @@ public class JDBCExecutionContext extends StdIOExecutionContext {
 			String msgString = ArdenString.getStringFromValue(message);
 			
 			// execute query:
-			new JDBCQuery(msgString, connection).execute();
+			new JDBCQuery(msgString, pool, primaryTimeColumn, getParameters()).execute();
+			prefetched.clear();
+			QueryCache cache = queryCache;
+			if (cache != null)
+				cache.invalidateAll();
 		} else if ("email".equalsIgnoreCase(destination)) {
 			// TODO: implement email sending
 		} else {
@@ -97,9 +180,104 @@ public class JDBCExecutionContext extends StdIOExecutionContext {
 		}
 	}
 	
-	public DatabaseQuery createQuery(String mapping) {		
-		return new JDBCQuery(mapping, connection);
-	}	
+	public DatabaseQuery createQuery(String mapping) {
+		Map<String, Object> parameters = getParameters();
+		String key = getCacheKey(mapping, parameters);
+		ArdenValue[] result = prefetched.get(key);
+		if (result != null)
+			return new MemoryQuery(result.clone());
+		DatabaseQuery query = new JDBCQuery(mapping, pool, primaryTimeColumn, parameters);
+		QueryCache cache = queryCache;
+		if (cache != null)
+			query = cache.wrap(query, mapping, key);
+		return query;
+	}
+	
+	/**
+	 * Sets the result of a mapping with the current parameters, which is then
+	 * used instead of querying the database. Writing to the database discards
+	 * the prefetched results of this context.
+	 */
+	void setPrefetchedResult(String mapping, ArdenValue[] result) {
+		prefetched.put(getCacheKey(mapping, getParameters()), result);
+	}
+	
+	/**
+	 * Creates the key of a mapping and its parameters in the query cache. Every
+	 * part is prefixed with its length, so different parameters never give
+	 * the same key, whatever characters their values contain.
+	 */
+	private static String getCacheKey(String mapping, Map<String, Object> parameters) {
+		StringBuilder key = new StringBuilder();
+		appendKeyPart(key, mapping);
+		for (Map.Entry<String, Object> parameter : new TreeMap<String, Object>(parameters).entrySet()) {
+			appendKeyPart(key, parameter.getKey());
+			appendKeyPart(key, parameter.getValue().getClass().getName());
+			appendKeyPart(key, parameter.getValue().toString());
+		}
+		return key.toString();
+	}
+	
+	private static void appendKeyPart(StringBuilder key, String part) {
+		key.append(part.length()).append(':').append(part);
+	}
+	
+	/** Gets the cache of query results, or null if results are not cached. */
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+	
+	/**
+	 * Sets the cache of query results (null disables caching). The contexts
+	 * created by forPatient() afterwards use it too.
+	 */
+	public void setQueryCache(QueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+	
+	private static long getConfiguredNumber(String key, long defaultValue, long minimum) {
+		return Math.max(minimum, ApplicationConfiguration.getLong(key, defaultValue));
+	}
+	
+	/** Gets the label of the primary time column in query results. */
+	String getPrimaryTimeColumn() {
+		return primaryTimeColumn;
+	}
+	
+	/** Gets the pool of the connections used by queries. */
+	public ConnectionPool getConnectionPool() {
+		return pool;
+	}
+	
+	/**
+	 * Sets the value of a named parameter in mappings, e.g. ":patient_id".
+	 * Names are case-insensitive. A null value removes the parameter.
+	 */
+	public void setParameter(String name, Object value) {
+		String key = name.toLowerCase(Locale.ENGLISH);
+		if (value == null)
+			parameters.remove(key);
+		else
+			parameters.put(key, value);
+	}
+	
+	/** Sets the ":patient_id" parameter of mappings. */
+	public void setPatientId(Object patientId) {
+		setParameter(PATIENT_ID_PARAMETER, patientId);
+	}
+	
+	/** Gets a snapshot of the parameters, so queries are not affected by later changes. */
+	Map<String, Object> getParameters() {
+		return new HashMap<String, Object>(parameters);
+	}
+	
+	/** Closes the database connections, unless they are shared with another context. */
+	@Override
+	public void close() {
+		super.close();
+		if (ownsPool)
+			pool.close();
+	}
 	
 	private ArdenTime eventtime = new ArdenTime(new Date());
 	
@@ -0,0 +1,180 @@
+package arden.runtime.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import arden.runtime.ArdenValue;
+import arden.runtime.BatchEvaluator;
+import arden.runtime.ExecutionContext;
+
+/**
+ * Fetches the data of a batch of patients with one query per mapping, for the
+ * JDBCExecutionContexts created by JDBCExecutionContext.forPatient(). A
+ * mapping like
+ *
+ * <pre>
+ * select val, taken as primarytime from lab where patient = :patient_id
+ * </pre>
+ *
+ * is executed as
+ *
+ * <pre>
+ * select patient as arden_batch_key, val, taken as primarytime from lab where patient IN (?, ?, ...)
+ * </pre>
+ *
+ * and the rows are split by the key column into the results of the contexts,
+ * which the MLM then reads instead of querying the database. Patient ids are
+ * compared by their string values.
+ *
+ * Only mappings that compare a column with ":patient_id" once and return
+ * the rows of a single select are rewritten; mappings with aggregates,
+ * grouping, limits, subqueries or "or" are left to the contexts, as are
+ * mappings the database rejects after rewriting. Contexts whose other
+ * parameters or connections differ from those of the first context of the
+ * batch query the database themselves. Patients without rows get an empty
+ * list per column, just like the mapping gives without rows.
+ */
+public final class JDBCPrefetcher implements BatchEvaluator.Prefetcher {
+	/** the maximum number of patient ids in one query */
+	public static final int MAX_IDS_PER_QUERY = 1000;
+	/** label of the column that holds the patient id of a row */
+	private static final String KEY_COLUMN = "arden_batch_key";
+
+	private static final Pattern SELECT = Pattern.compile("\\s*select\\s+(distinct\\s+)?", Pattern.CASE_INSENSITIVE);
+	private static final Pattern PATIENT_COMPARISON = Pattern.compile("([A-Za-z_][A-Za-z0-9_.]*)\\s*=\\s*:"
+			+ JDBCExecutionContext.PATIENT_ID_PARAMETER + "(?![A-Za-z0-9_])", Pattern.CASE_INSENSITIVE);
+	private static final Pattern PATIENT_PARAMETER = Pattern.compile(":"
+			+ JDBCExecutionContext.PATIENT_ID_PARAMETER + "(?![A-Za-z0-9_])", Pattern.CASE_INSENSITIVE);
+	/** words that may change the rows of a patient if several patients are selected at once */
+	private static final Pattern UNSUPPORTED = Pattern.compile("\\b(select|group|having|limit|offset|top|fetch|"
+			+ "rownum|union|intersect|except|minus|or|count|sum|avg|min|max)\\b", Pattern.CASE_INSENSITIVE);
+
+	/** the rewritten mappings; null for mappings that are not prefetched */
+	private final Map<String, String> rewritten = new HashMap<String, String>();
+
+	@Override
+	public synchronized void prefetch(Collection<String> mappings, List<ExecutionContext> batch) {
+		JDBCExecutionContext first = null;
+		Map<String, Object> parameters = null;
+		List<JDBCExecutionContext> contexts = new ArrayList<JDBCExecutionContext>();
+		List<Object> ids = new ArrayList<Object>();
+		for (ExecutionContext context : batch) {
+			if (!(context instanceof JDBCExecutionContext))
+				continue;
+			JDBCExecutionContext jdbcContext = (JDBCExecutionContext) context;
+			Map<String, Object> contextParameters = jdbcContext.getParameters();
+			Object id = contextParameters.remove(JDBCExecutionContext.PATIENT_ID_PARAMETER);
+			if (id == null)
+				continue;
+			if (first == null) {
+				first = jdbcContext;
+				parameters = contextParameters;
+			} else if (jdbcContext.getConnectionPool() != first.getConnectionPool()
+					|| !jdbcContext.getPrimaryTimeColumn().equals(first.getPrimaryTimeColumn())
+					|| !contextParameters.equals(parameters)) {
+				continue;
+			}
+			contexts.add(jdbcContext);
+			ids.add(id);
+		}
+		if (first == null)
+			return;
+		for (String mapping : mappings) {
+			String batchMapping;
+			if (rewritten.containsKey(mapping)) {
+				batchMapping = rewritten.get(mapping);
+			} else {
+				batchMapping = rewrite(mapping);
+				rewritten.put(mapping, batchMapping);
+			}
+			if (batchMapping == null)
+				continue;
+			for (int start = 0; start < contexts.size(); start += MAX_IDS_PER_QUERY) {
+				int end = Math.min(start + MAX_IDS_PER_QUERY, contexts.size());
+				if (!prefetch(mapping, batchMapping, first, parameters, contexts.subList(start, end), ids.subList(
+						start, end))) {
+					rewritten.put(mapping, null);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rewrites a mapping to select the rows of several patients along with
+	 * their ids, or returns null if it cannot be rewritten.
+	 */
+	private static String rewrite(String mapping) {
+		Matcher select = SELECT.matcher(mapping);
+		if (!select.lookingAt() || UNSUPPORTED.matcher(mapping.substring(select.end())).find())
+			return null;
+		Matcher comparison = PATIENT_COMPARISON.matcher(mapping);
+		if (!comparison.find(select.end()))
+			return null;
+		// the parameter must not be used anywhere else
+		Matcher parameter = PATIENT_PARAMETER.matcher(mapping);
+		int uses = 0;
+		while (parameter.find())
+			uses++;
+		if (uses != 1)
+			return null;
+		String column = comparison.group(1);
+		return mapping.substring(0, select.end()) + column + " AS " + KEY_COLUMN + ", "
+				+ mapping.substring(select.end(), comparison.start()) + column + " IN (:"
+				+ JDBCExecutionContext.PATIENT_ID_PARAMETER + ")" + mapping.substring(comparison.end());
+	}
+
+	/**
+	 * Executes the rewritten mapping for some patients and passes the rows of
+	 * every patient to its context. Returns false if the database rejects the
+	 * rewritten mapping; other errors only leave the contexts without
+	 * prefetched results.
+	 */
+	private static boolean prefetch(String mapping, String batchMapping, JDBCExecutionContext first,
+			Map<String, Object> parameters, List<JDBCExecutionContext> contexts, List<Object> ids) {
+		Map<String, Object> batchParameters = new HashMap<String, Object>(parameters);
+		batchParameters.put(JDBCExecutionContext.PATIENT_ID_PARAMETER, ids);
+		ParameterizedMapping sql = ParameterizedMapping.parse(batchMapping, batchParameters);
+		ConnectionPool pool = first.getConnectionPool();
+		List<String> keys = new ArrayList<String>(ids.size());
+		for (Object id : ids)
+			keys.add(id.toString());
+		Map<String, ArdenValue[]> results;
+		try {
+			StatementCache session = pool.acquire();
+			try {
+				// the statements differ in the number of ids, so they are not cached
+				PreparedStatement statement = session.getConnection().prepareStatement(sql.sql);
+				try {
+					for (int i = 0; i < sql.values.length; i++)
+						statement.setObject(i + 1, sql.values[i]);
+					ResultSet resultSet = statement.executeQuery();
+					try {
+						results = JDBCQuery.resultSetToArdenValuesByKey(resultSet, first.getPrimaryTimeColumn(),
+								KEY_COLUMN, keys);
+					} finally {
+						resultSet.close();
+					}
+				} finally {
+					statement.close();
+				}
+			} finally {
+				pool.release(session);
+			}
+		} catch (SQLException e) {
+			// the contexts query the database themselves
+			return !JDBCQuery.isRejectedStatement(e);
+		}
+		for (int i = 0; i < contexts.size(); i++)
+			contexts.get(i).setPrefetchedResult(mapping, results.get(keys.get(i)));
+		return true;
+	}
+}
@@ -28,110 +28,1067 @@
 package arden.runtime.jdbc;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
 
+import arden.runtime.ArdenBoolean;
 import arden.runtime.ArdenList;
+import arden.runtime.ArdenNull;
 import arden.runtime.ArdenNumber;
 import arden.runtime.ArdenString;
+import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
 import arden.runtime.DatabaseQuery;
+import arden.runtime.MemoryQuery;
 
+/**
+ * DatabaseQuery that executes its mapping as SQL statement.
+ * 
+ * Time constraints, LATEST/EARLIEST and COUNT/EXIST/SUM/AVERAGE are
+ * translated into SQL (see QueryPlan), so that only the answer is transferred
+ * from the database. This requires a primary time column for the time
+ * constraints and column labels that are plain identifiers. All other
+ * operators, and operators that cannot be translated, are evaluated in memory
+ * on the result. If the translated statement fails, e.g. because the database
+ * does not support it, the mapping is executed as it is and the operators are
+ * evaluated in memory; the mapping is not translated on that connection
+ * anymore.
+ * 
+ * Statements are taken from a StatementCache if one is given, or from the
+ * connections of a ConnectionPool, and mappings can contain named parameters
+ * (see ParameterizedMapping).
+ */
 public class JDBCQuery extends DatabaseQuery {
-	private Connection connection;
-	private String mapping;
+	/**
+	 * Name of the result column that holds the primary time of the values in
+	 * the same row, unless another name is configured.
+	 */
+	public static final String DEFAULT_PRIMARY_TIME_COLUMN = "primarytime";
+
+	/** initial capacity of the columns if the driver does not report a fetch size */
+	private static final int DEFAULT_CAPACITY = 64;
+	/** initial number of rows per key in resultSetToArdenValuesByKey() */
+	private static final int KEY_CAPACITY = 4;
+
+	/** result shapes: one list per column, except for exactly one row */
+	private static final int SHAPE_DEFAULT = 0;
+	/** result shapes: one list per column */
+	private static final int SHAPE_LISTS = 1;
+	/** result shapes: one value per column, null if there is no row */
+	private static final int SHAPE_VALUES = 2;
+
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+	/** the connection pool; null if statements is used */
+	private final ConnectionPool pool;
+	/** the statements of the single connection; null if pool is used */
+	private final StatementCache statements;
+	private final ParameterizedMapping mapping;
+	private final String primaryTimeColumn;
+	private final QueryPlan plan;
+	private final Description description;
+	/** the query the plan was derived from, null if the plan is the mapping itself */
+	private final JDBCQuery parent;
+	/** the operator applied to parent, to be evaluated in memory if the plan fails */
+	private final Operator operator;
 	
 	public JDBCQuery(String mapping, Connection connection) {
-		this.mapping = mapping;
-		this.connection = connection;
+		this(mapping, connection, DEFAULT_PRIMARY_TIME_COLUMN);
+	}
+	
+	/**
+	 * Creates a query whose result column labeled primaryTimeColumn (ignoring
+	 * case) is not returned, but provides the primary times of the other
+	 * values in its row.
+	 */
+	public JDBCQuery(String mapping, Connection connection, String primaryTimeColumn) {
+		this(mapping, connection, primaryTimeColumn, null, null);
+	}
+	
+	/**
+	 * Creates a query that takes its statements from a cache (may be null) and
+	 * replaces the named parameters in the mapping with the values in
+	 * parameters (keys in lower case; may be null).
+	 */
+	public JDBCQuery(String mapping, Connection connection, String primaryTimeColumn, StatementCache statements,
+			Map<String, ?> parameters) {
+		this.mapping = ParameterizedMapping.parse(mapping, parameters);
+		this.pool = null;
+		// without a cache, every statement is closed after its execution
+		this.statements = statements != null ? statements : new StatementCache(connection, 0);
+		this.primaryTimeColumn = primaryTimeColumn;
+		this.plan = new QueryPlan(this.mapping);
+		this.description = new Description();
+		this.parent = null;
+		this.operator = null;
+	}
+	
+	/**
+	 * Creates a query that acquires a connection from the pool whenever it is
+	 * executed.
+	 */
+	public JDBCQuery(String mapping, ConnectionPool pool, String primaryTimeColumn, Map<String, ?> parameters) {
+		this.mapping = ParameterizedMapping.parse(mapping, parameters);
+		this.pool = pool;
+		this.statements = null;
+		this.primaryTimeColumn = primaryTimeColumn;
+		this.plan = new QueryPlan(this.mapping);
+		this.description = new Description();
+		this.parent = null;
+		this.operator = null;
+	}
+	
+	private JDBCQuery(JDBCQuery parent, Operator operator, QueryPlan plan) {
+		this.mapping = parent.mapping;
+		this.pool = parent.pool;
+		this.statements = parent.statements;
+		this.primaryTimeColumn = parent.primaryTimeColumn;
+		this.plan = plan;
+		this.description = parent.description;
+		this.parent = parent;
+		this.operator = operator;
 	}
 	
 	public static ArdenValue objectToArdenValue(Object o) {
-		if (o instanceof String) {
-			return new ArdenString((String)o);
-		} else if (o instanceof Double) {
-			return new ArdenNumber(((Double)o).doubleValue());
-		} else if (o instanceof Integer) {
-			return new ArdenNumber(((Integer)o).doubleValue());
+		return objectToArdenValue(o, ArdenValue.NOPRIMARYTIME);
+	}
+	
+	public static ArdenValue objectToArdenValue(Object o, long primaryTime) {
+		if (o == null) {
+			return ArdenNull.create(primaryTime);
+		} else if (o instanceof String) {
+			return new ArdenString((String)o, primaryTime);
+		} else if (o instanceof Number) {
+			return ArdenNumber.create(((Number)o).doubleValue(), primaryTime);
+		} else if (o instanceof Date) {
+			return new ArdenTime(((Date)o).getTime(), primaryTime);
 		} else {
-			return new ArdenString(o.toString());
+			return new ArdenString(o.toString(), primaryTime);
 		}
 	}
 	
 	public static ArdenValue[] resultSetToArdenValues(ResultSet results) throws SQLException {
+		return resultSetToArdenValues(results, DEFAULT_PRIMARY_TIME_COLUMN);
+	}
+	
+	/**
+	 * Converts a result set to one ArdenValue per column. If there is a column
+	 * labeled primaryTimeColumn, it is left out of the result and its values
+	 * become the primary times of the other values in the same row. A result
+	 * set without rows gives an empty list per column.
+	 */
+	public static ArdenValue[] resultSetToArdenValues(ResultSet results, String primaryTimeColumn)
+			throws SQLException {
+		return resultSetToArdenValues(results, primaryTimeColumn, SHAPE_DEFAULT, false);
+	}
+	
+	/**
+	 * @param reverse
+	 *            whether the rows are returned in the opposite order of the
+	 *            result set
+	 */
+	private static ArdenValue[] resultSetToArdenValues(ResultSet results, String primaryTimeColumn, int shape,
+			boolean reverse) throws SQLException {
 		if (results == null) {
-			return ArdenList.EMPTY.values;
+			return ArdenList.EMPTY.getElements();
 		}
 		
-		int columnCount = results.getMetaData().getColumnCount();
+		ResultSetMetaData metaData = results.getMetaData();
+		int capacity = results.getFetchSize() > 0 ? results.getFetchSize() : DEFAULT_CAPACITY;
+		Rows rows = new Rows(metaData, findColumn(metaData, primaryTimeColumn), 0, capacity);
+		while (results.next())
+			rows.read(results);
+		return rows.toArdenValues(shape, reverse);
+	}
+	
+	/**
+	 * Converts a result set that holds the rows of several keys, e.g. of
+	 * several patients, to the result of every key. The keys are the string
+	 * values of the column labeled keyColumn, which is left out of the
+	 * results like the primary time column. The given keys without rows get
+	 * an empty list per column, like a result set without rows.
+	 */
+	static Map<String, ArdenValue[]> resultSetToArdenValuesByKey(ResultSet results, String primaryTimeColumn,
+			String keyColumn, Collection<String> keys) throws SQLException {
+		ResultSetMetaData metaData = results.getMetaData();
+		int timeColumnIndex = findColumn(metaData, primaryTimeColumn);
+		int keyColumnIndex = findColumn(metaData, keyColumn);
+		if (keyColumnIndex == 0)
+			throw new SQLException("No column labeled " + keyColumn);
+		Map<String, Rows> rowsByKey = new HashMap<String, Rows>();
+		while (results.next()) {
+			Object key = results.getObject(keyColumnIndex);
+			if (key == null)
+				continue;
+			Rows rows = rowsByKey.get(key.toString());
+			if (rows == null) {
+				rows = new Rows(metaData, timeColumnIndex, keyColumnIndex, KEY_CAPACITY);
+				rowsByKey.put(key.toString(), rows);
+			}
+			rows.read(results);
+		}
+		Map<String, ArdenValue[]> ardenResults = new HashMap<String, ArdenValue[]>();
+		for (Map.Entry<String, Rows> entry : rowsByKey.entrySet())
+			ardenResults.put(entry.getKey(), entry.getValue().toArdenValues(SHAPE_DEFAULT, false));
+		ArdenValue[] empty = null;
+		for (String key : keys) {
+			if (!ardenResults.containsKey(key)) {
+				if (empty == null)
+					empty = new Rows(metaData, timeColumnIndex, keyColumnIndex, 0).toArdenValues(SHAPE_DEFAULT, false);
+				ardenResults.put(key, empty);
+			}
+		}
+		return ardenResults;
+	}
+	
+	/** Gets the index of the column with the label (ignoring case), or 0 if there is none. */
+	private static int findColumn(ResultSetMetaData metaData, String label) throws SQLException {
+		int columnCount = metaData.getColumnCount();
+		for (int column = 1; column <= columnCount && label != null; column++) {
+			if (label.equalsIgnoreCase(metaData.getColumnLabel(column)))
+				return column;
+		}
+		return 0;
+	}
+	
+	/**
+	 * The rows read from a result set, kept column by column. The primary time
+	 * column provides the primary times of the rows; it and the skipped column
+	 * are not part of the result.
+	 */
+	private static final class Rows {
+		private final Column[] columns;
+		private final int[] columnIndices;
+		private final int timeColumnIndex;
+		private long[] primaryTimes;
+		private int rowCount = 0;
 		
-		List<List<ArdenValue>> resultTable = 
-				new ArrayList<List<ArdenValue>>(columnCount);
-		for (int column = 0; column < columnCount; column++) {
-			resultTable.add(new LinkedList<ArdenValue>());
+		/**
+		 * @param timeColumnIndex
+		 *            the index of the primary time column, 0 if there is none
+		 * @param skippedColumnIndex
+		 *            the index of another column to leave out, 0 if there is none
+		 */
+		Rows(ResultSetMetaData metaData, int timeColumnIndex, int skippedColumnIndex, int capacity)
+				throws SQLException {
+			int columnCount = metaData.getColumnCount();
+			Column[] columns = new Column[columnCount];
+			int[] columnIndices = new int[columnCount];
+			int pos = 0;
+			for (int column = 1; column <= columnCount; column++) {
+				if (column != timeColumnIndex && column != skippedColumnIndex) {
+					columns[pos] = createColumn(metaData.getColumnType(column), capacity);
+					columnIndices[pos] = column;
+					pos++;
+				}
+			}
+			this.columns = Arrays.copyOf(columns, pos);
+			this.columnIndices = Arrays.copyOf(columnIndices, pos);
+			this.timeColumnIndex = timeColumnIndex;
+			this.primaryTimes = new long[capacity];
 		}
 		
-		int rowCount = 0;
-		while (results.next()) {
+		/** Reads the current row of the result set. */
+		void read(ResultSet results) throws SQLException {
+			if (rowCount == primaryTimes.length)
+				primaryTimes = Arrays.copyOf(primaryTimes, rowCount * 2);
+			long primaryTime = ArdenValue.NOPRIMARYTIME;
+			if (timeColumnIndex > 0) {
+				Timestamp timestamp = results.getTimestamp(timeColumnIndex);
+				if (timestamp != null)
+					primaryTime = timestamp.getTime();
+			}
+			primaryTimes[rowCount] = primaryTime;
+			for (int column = 0; column < columns.length; column++) {
+				columns[column].read(results, columnIndices[column], rowCount, primaryTime);
+			}
 			rowCount++;
-			for (int column = 0; column < columnCount; column++) {
-				Object o = results.getObject(column + 1);
-				resultTable.get(column).add(objectToArdenValue(o));
+		}
+		
+		int getColumnCount() {
+			return columns.length;
+		}
+		
+		int getRowCount() {
+			return rowCount;
+		}
+		
+		boolean hasRowWithoutPrimaryTime() {
+			for (int row = 0; row < rowCount; row++) {
+				if (primaryTimes[row] == ArdenValue.NOPRIMARYTIME)
+					return true;
 			}
+			return false;
 		}
 		
-		if (rowCount == 0) {
-			throw new RuntimeException("no results");
-		} else if (rowCount == 1) {
-			// one row
-			List<ArdenValue> ardenResult = new LinkedList<ArdenValue>();
-			for (int column = 0; column < columnCount; column++) {
-				ardenResult.add(resultTable.get(column).get(0));
-			}
-			return ardenResult.toArray(new ArdenValue[0]);
-		} else if (rowCount > 1) {
-			List<ArdenList> ardenResult = new LinkedList<ArdenList>();
-			for (int column = 0; column < columnCount; column++) {
-				// convert every column to ArdenList
-				ardenResult.add(
-						new ArdenList(
-								resultTable.get(column).toArray(
-										new ArdenValue[0])));
-			}
-			return ardenResult.toArray(new ArdenList[0]);
-		} else {
-			throw new RuntimeException("not implemented");				
+		/** Converts the rows to one ArdenValue per column. */
+		ArdenValue[] toArdenValues(int shape, boolean reverse) {
+			if (reverse) {
+				JDBCQuery.reverse(primaryTimes, rowCount);
+				for (Column column : columns)
+					column.reverse(rowCount);
+			}
+			// the numeric columns share the array of primary times
+			long[] times = Arrays.copyOf(primaryTimes, rowCount);
+			ArdenValue[] ardenResult = new ArdenValue[columns.length];
+			for (int column = 0; column < columns.length; column++) {
+				if (rowCount == 0 && shape == SHAPE_VALUES) {
+					ardenResult[column] = ArdenNull.INSTANCE;
+				} else if (rowCount == 1 && shape != SHAPE_LISTS) {
+					// one row: every column is a single value
+					ardenResult[column] = columns[column].getValue(0, times[0]);
+				} else {
+					// convert every column to ArdenList
+					ardenResult[column] = columns[column].toList(rowCount, times);
+				}
+			}
+			return ardenResult;
+		}
+	}
+	
+	private static void reverse(long[] array, int length) {
+		for (int i = 0, j = length - 1; i < j; i++, j--) {
+			long tmp = array[i];
+			array[i] = array[j];
+			array[j] = tmp;
+		}
+	}
+	
+	/** Creates the column that reads values of the specified SQL type. */
+	private static Column createColumn(int sqlType, int capacity) {
+		switch (sqlType) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+		case Types.REAL:
+		case Types.FLOAT:
+		case Types.DOUBLE:
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+			return new NumberColumn(capacity);
+		case Types.DATE:
+		case Types.TIME:
+		case Types.TIMESTAMP:
+			return new TimeColumn(capacity);
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+		case Types.CLOB:
+			return new StringColumn(capacity);
+		default:
+			return new ObjectColumn(capacity);
 		}
 	}
 	
+	/**
+	 * A column of a result set. The arrays holding the values grow
+	 * geometrically as rows are read.
+	 */
+	private static abstract class Column {
+		/** Reads the value of this column in the current row of the result set. */
+		abstract void read(ResultSet results, int columnIndex, int row, long primaryTime) throws SQLException;
+
+		/** Gets the value that was read from the specified row. */
+		abstract ArdenValue getValue(int row, long primaryTime);
+
+		/** Reverses the order of the first rowCount rows. */
+		abstract void reverse(int rowCount);
+
+		/**
+		 * Gets the values of the first rowCount rows as list. primaryTimes has
+		 * the length rowCount.
+		 */
+		abstract ArdenList toList(int rowCount, long[] primaryTimes);
+	}
+	
+	/** Numeric column, read with getDouble() into a numeric ArdenList. */
+	private static final class NumberColumn extends Column {
+		private double[] numbers;
+
+		NumberColumn(int capacity) {
+			numbers = new double[capacity];
+		}
+
+		@Override
+		void read(ResultSet results, int columnIndex, int row, long primaryTime) throws SQLException {
+			if (row == numbers.length)
+				numbers = Arrays.copyOf(numbers, row * 2);
+			double value = results.getDouble(columnIndex);
+			numbers[row] = results.wasNull() ? Double.NaN : value;
+		}
+
+		@Override
+		ArdenValue getValue(int row, long primaryTime) {
+			return ArdenNumber.create(numbers[row], primaryTime);
+		}
+
+		@Override
+		void reverse(int rowCount) {
+			for (int i = 0, j = rowCount - 1; i < j; i++, j--) {
+				double tmp = numbers[i];
+				numbers[i] = numbers[j];
+				numbers[j] = tmp;
+			}
+		}
+
+		@Override
+		ArdenList toList(int rowCount, long[] primaryTimes) {
+			return new ArdenList(Arrays.copyOf(numbers, rowCount), primaryTimes);
+		}
+	}
+	
+	/** Column holding the ArdenValues that were read. */
+	private static abstract class ValueColumn extends Column {
+		private ArdenValue[] values;
+
+		ValueColumn(int capacity) {
+			values = new ArdenValue[capacity];
+		}
+
+		@Override
+		final void read(ResultSet results, int columnIndex, int row, long primaryTime) throws SQLException {
+			if (row == values.length)
+				values = Arrays.copyOf(values, row * 2);
+			values[row] = readValue(results, columnIndex, primaryTime);
+		}
+
+		abstract ArdenValue readValue(ResultSet results, int columnIndex, long primaryTime) throws SQLException;
+
+		@Override
+		final ArdenValue getValue(int row, long primaryTime) {
+			return values[row];
+		}
+
+		@Override
+		final void reverse(int rowCount) {
+			for (int i = 0, j = rowCount - 1; i < j; i++, j--) {
+				ArdenValue tmp = values[i];
+				values[i] = values[j];
+				values[j] = tmp;
+			}
+		}
+
+		@Override
+		final ArdenList toList(int rowCount, long[] primaryTimes) {
+			return new ArdenList(Arrays.copyOf(values, rowCount));
+		}
+	}
+	
+	/** Date and time column, read with getTimestamp(). */
+	private static final class TimeColumn extends ValueColumn {
+		TimeColumn(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		ArdenValue readValue(ResultSet results, int columnIndex, long primaryTime) throws SQLException {
+			Timestamp timestamp = results.getTimestamp(columnIndex);
+			if (timestamp == null)
+				return ArdenNull.create(primaryTime);
+			return new ArdenTime(timestamp.getTime(), primaryTime);
+		}
+	}
+	
+	/** Character column, read with getString(). */
+	private static final class StringColumn extends ValueColumn {
+		StringColumn(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		ArdenValue readValue(ResultSet results, int columnIndex, long primaryTime) throws SQLException {
+			String string = results.getString(columnIndex);
+			if (string == null)
+				return ArdenNull.create(primaryTime);
+			return new ArdenString(string, primaryTime);
+		}
+	}
+	
+	/** Column of any other type, read with getObject(). */
+	private static final class ObjectColumn extends ValueColumn {
+		ObjectColumn(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		ArdenValue readValue(ResultSet results, int columnIndex, long primaryTime) throws SQLException {
+			return objectToArdenValue(results.getObject(columnIndex), primaryTime);
+		}
+	}
+	
+	/** An operator translated into a plan, kept to evaluate it in memory instead. */
+	private static final class Operator {
+		static final int OCCURS_WITHIN_TO = 0;
+		static final int OCCURS_NOT_WITHIN_TO = 1;
+		static final int OCCURS_BEFORE = 2;
+		static final int OCCURS_NOT_BEFORE = 3;
+		static final int OCCURS_AFTER = 4;
+		static final int OCCURS_NOT_AFTER = 5;
+		static final int OCCURS_AT = 6;
+		static final int OCCURS_NOT_AT = 7;
+		static final int LATEST = 8;
+		static final int EARLIEST = 9;
+		static final int COUNT = 10;
+		static final int EXIST = 11;
+		static final int SUM = 12;
+		static final int AVERAGE = 13;
+
+		private final int kind;
+		private final ArdenTime time;
+		private final ArdenTime end;
+		/** number of elements for LATEST and EARLIEST; -1 for a single value */
+		private final int numberOfElements;
+
+		Operator(int kind, ArdenTime time, ArdenTime end, int numberOfElements) {
+			this.kind = kind;
+			this.time = time;
+			this.end = end;
+			this.numberOfElements = numberOfElements;
+		}
+
+		DatabaseQuery apply(DatabaseQuery query) {
+			switch (kind) {
+			case OCCURS_WITHIN_TO:
+				return query.occursWithinTo(time, end);
+			case OCCURS_NOT_WITHIN_TO:
+				return query.occursNotWithinTo(time, end);
+			case OCCURS_BEFORE:
+				return query.occursBefore(time);
+			case OCCURS_NOT_BEFORE:
+				return query.occursNotBefore(time);
+			case OCCURS_AFTER:
+				return query.occursAfter(time);
+			case OCCURS_NOT_AFTER:
+				return query.occursNotAfter(time);
+			case OCCURS_AT:
+				return query.occursAt(time);
+			case OCCURS_NOT_AT:
+				return query.occursNotAt(time);
+			case LATEST:
+				return numberOfElements < 0 ? query.latest() : query.latest(numberOfElements);
+			case EARLIEST:
+				return numberOfElements < 0 ? query.earliest() : query.earliest(numberOfElements);
+			case COUNT:
+				return query.count();
+			case EXIST:
+				return query.exist();
+			case SUM:
+				return query.sum();
+			case AVERAGE:
+				return query.average();
+			default:
+				throw new IllegalStateException("unknown operator " + kind);
+			}
+		}
+	}
+	
+	/**
+	 * The columns of the mapping's result, determined once from the statement
+	 * metadata and shared by all queries derived from the same mapping.
+	 */
+	private static final class Description {
+		private boolean described;
+		/** label of the primary time column; null if there is none */
+		private String timeColumn;
+		/** labels of the other columns; null if the mapping can't be described */
+		private String[] valueColumns;
+		private boolean allNumeric;
+		/** set when a translated statement has failed */
+		private boolean pushDownDisabled;
+
+		synchronized boolean describe(JDBCQuery query) {
+			if (!described) {
+				described = true;
+				try {
+					String sql = query.mapping.sql;
+					StatementCache session = query.openSession();
+					try {
+						if (session.isPushDownDisabled(sql)) {
+							pushDownDisabled = true;
+							return false;
+						}
+						PreparedStatement statement = session.acquire(sql);
+						boolean reusable = false;
+						try {
+							ResultSetMetaData metaData = statement.getMetaData();
+							if (metaData != null)
+								readColumns(metaData, query.primaryTimeColumn);
+							reusable = true;
+						} finally {
+							release(session, sql, statement, reusable);
+						}
+					} finally {
+						query.closeSession(session);
+					}
+				} catch (SQLException e) {
+					// the query will be evaluated in memory
+					valueColumns = null;
+				}
+			}
+			return valueColumns != null && !pushDownDisabled;
+		}
+
+		/** Evaluates the operators of all queries of the mapping in memory from now on. */
+		synchronized void disablePushDown() {
+			pushDownDisabled = true;
+		}
+
+		synchronized boolean isPushDownDisabled() {
+			return pushDownDisabled;
+		}
+
+		private void readColumns(ResultSetMetaData metaData, String primaryTimeColumn) throws SQLException {
+			int columnCount = metaData.getColumnCount();
+			String[] labels = new String[columnCount];
+			boolean numeric = true;
+			int pos = 0;
+			for (int column = 1; column <= columnCount; column++) {
+				String label = metaData.getColumnLabel(column);
+				if (label == null || !IDENTIFIER.matcher(label).matches())
+					return;
+				if (timeColumn == null && label.equalsIgnoreCase(primaryTimeColumn)) {
+					timeColumn = label;
+				} else {
+					labels[pos++] = label;
+					numeric &= createColumn(metaData.getColumnType(column), 0) instanceof NumberColumn;
+				}
+			}
+			valueColumns = Arrays.copyOf(labels, pos);
+			allNumeric = numeric;
+		}
+	}
+	
+	private boolean isDescribed() {
+		return description.describe(this);
+	}
+	
+	/** Returns whether rows can be filtered and ordered by time in SQL. */
+	private boolean canFilterByTime() {
+		return plan.getAggregation() == QueryPlan.ROWS && isDescribed() && description.timeColumn != null;
+	}
+	
+	/** Returns whether the rows can be aggregated in SQL. */
+	private boolean canAggregate(boolean numericOnly) {
+		return plan.getAggregation() == QueryPlan.ROWS && isDescribed() && (description.allNumeric || !numericOnly);
+	}
+	
+	private JDBCQuery where(Operator operator, String predicate, long... parameters) {
+		return new JDBCQuery(this, operator, plan.where(predicate, parameters));
+	}
+	
+	private JDBCQuery aggregate(Operator operator, int aggregation, int limit) {
+		return new JDBCQuery(this, operator, plan.aggregate(aggregation, limit));
+	}
+	
+	/**
+	 * Evaluates the operators of this query in memory on the result of the
+	 * mapping.
+	 */
+	private DatabaseQuery inMemory(ArdenValue[] mappingResult) {
+		if (parent == null)
+			return new MemoryQuery(mappingResult);
+		return operator.apply(parent.inMemory(mappingResult));
+	}
+	
+	@Override
+	public DatabaseQuery occursWithinTo(ArdenTime start, ArdenTime end) {
+		if (!canFilterByTime())
+			return super.occursWithinTo(start, end);
+		return where(new Operator(Operator.OCCURS_WITHIN_TO, start, end, 0), description.timeColumn
+				+ " BETWEEN ? AND ?", Math.min(start.value, end.value), Math.max(start.value, end.value));
+	}
+	
+	@Override
+	public DatabaseQuery occursNotWithinTo(ArdenTime start, ArdenTime end) {
+		if (!canFilterByTime())
+			return super.occursNotWithinTo(start, end);
+		return where(new Operator(Operator.OCCURS_NOT_WITHIN_TO, start, end, 0), "NOT (" + description.timeColumn
+				+ " BETWEEN ? AND ?)", Math.min(start.value, end.value), Math.max(start.value, end.value));
+	}
+	
+	@Override
+	public DatabaseQuery occursBefore(ArdenTime time) {
+		if (!canFilterByTime())
+			return super.occursBefore(time);
+		return where(new Operator(Operator.OCCURS_BEFORE, time, null, 0), description.timeColumn + " < ?", time.value);
+	}
+	
+	@Override
+	public DatabaseQuery occursNotBefore(ArdenTime time) {
+		if (!canFilterByTime())
+			return super.occursNotBefore(time);
+		return where(new Operator(Operator.OCCURS_NOT_BEFORE, time, null, 0), description.timeColumn + " >= ?", time.value);
+	}
+	
+	@Override
+	public DatabaseQuery occursAfter(ArdenTime time) {
+		if (!canFilterByTime())
+			return super.occursAfter(time);
+		return where(new Operator(Operator.OCCURS_AFTER, time, null, 0), description.timeColumn + " > ?", time.value);
+	}
+	
+	@Override
+	public DatabaseQuery occursNotAfter(ArdenTime time) {
+		if (!canFilterByTime())
+			return super.occursNotAfter(time);
+		return where(new Operator(Operator.OCCURS_NOT_AFTER, time, null, 0), description.timeColumn + " <= ?", time.value);
+	}
+	
+	@Override
+	public DatabaseQuery occursAt(ArdenTime time) {
+		if (!canFilterByTime())
+			return super.occursAt(time);
+		return where(new Operator(Operator.OCCURS_AT, time, null, 0), description.timeColumn + " = ?", time.value);
+	}
+	
+	@Override
+	public DatabaseQuery occursNotAt(ArdenTime time) {
+		if (!canFilterByTime())
+			return super.occursNotAt(time);
+		return where(new Operator(Operator.OCCURS_NOT_AT, time, null, 0), description.timeColumn + " <> ?", time.value);
+	}
+	
+	@Override
+	public DatabaseQuery latest() {
+		if (!canFilterByTime())
+			return super.latest();
+		return aggregate(new Operator(Operator.LATEST, null, null, -1), QueryPlan.LATEST, -1);
+	}
+	
+	@Override
+	public DatabaseQuery latest(int numberOfElements) {
+		// no rows can't be limited with setMaxRows()
+		if (numberOfElements < 1 || !canFilterByTime())
+			return super.latest(numberOfElements);
+		return aggregate(new Operator(Operator.LATEST, null, null, numberOfElements), QueryPlan.LATEST,
+				numberOfElements);
+	}
+	
+	@Override
+	public DatabaseQuery earliest() {
+		if (!canFilterByTime())
+			return super.earliest();
+		return aggregate(new Operator(Operator.EARLIEST, null, null, -1), QueryPlan.EARLIEST, -1);
+	}
+	
+	@Override
+	public DatabaseQuery earliest(int numberOfElements) {
+		// no rows can't be limited with setMaxRows()
+		if (numberOfElements < 1 || !canFilterByTime())
+			return super.earliest(numberOfElements);
+		return aggregate(new Operator(Operator.EARLIEST, null, null, numberOfElements), QueryPlan.EARLIEST,
+				numberOfElements);
+	}
+	
+	@Override
+	public DatabaseQuery count() {
+		if (!canAggregate(false))
+			return super.count();
+		return aggregate(new Operator(Operator.COUNT, null, null, 0), QueryPlan.COUNT, 0);
+	}
+	
+	@Override
+	public DatabaseQuery exist() {
+		if (!canAggregate(false))
+			return super.exist();
+		return aggregate(new Operator(Operator.EXIST, null, null, 0), QueryPlan.EXIST, 0);
+	}
+	
+	@Override
+	public DatabaseQuery sum() {
+		if (!canAggregate(true))
+			return super.sum();
+		return aggregate(new Operator(Operator.SUM, null, null, 0), QueryPlan.SUM, 0);
+	}
+	
+	@Override
+	public DatabaseQuery average() {
+		if (!canAggregate(true))
+			return super.average();
+		return aggregate(new Operator(Operator.AVERAGE, null, null, 0), QueryPlan.AVERAGE, 0);
+	}
+	
+	@Override
+	public ArdenValue[] execute() {
+		ArdenValue[] result = tryExecute();
+		if (result == null) {
+			// like a failed mapping whose operators are evaluated in memory
+			return inMemory(ArdenList.EMPTY.getElements()).execute();
+		}
+		return result;
+	}
+	
+	/** Executes the query; prints the SQLException and returns null if it fails. */
 	@Override
-	public ArdenValue[] execute() { 
+	public ArdenValue[] tryExecute() {
+		if (plan.isEmpty())
+			return executeMapping();
+		if (!description.isPushDownDisabled()) {
+			ArdenValue[] result = executePlan();
+			if (result != null)
+				return result;
+		}
+		ArdenValue[] mappingResult = executeMapping();
+		if (mappingResult == null)
+			return null;
+		return inMemory(mappingResult).execute();
+	}
+	
+	/**
+	 * Executes the plan; returns null if it fails. If the database rejects the
+	 * translated statement, the mapping is not translated on the connection
+	 * anymore.
+	 */
+	private ArdenValue[] executePlan() {
+		StatementCache session;
 		try {
-			Statement stmt = connection.createStatement();
-			
-			boolean resultSetAvailable = stmt.execute(mapping);
-			
-			ResultSet results = null;
-			if (resultSetAvailable) {
-				results = stmt.getResultSet();
-			}
-			
-			return resultSetToArdenValues(results);
+			session = openSession();
+		} catch (SQLException e) {
+			// reported when the mapping is executed
+			return null;
+		}
+		try {
+			String sql = plan.toSql(description.timeColumn, description.valueColumns);
+			PreparedStatement statement = session.acquire(sql);
+			boolean reusable = false;
+			try {
+				plan.setParameters(statement);
+				statement.setMaxRows(plan.getMaxRows());
+				ResultSet results = statement.executeQuery();
+				ArdenValue[] ardenResult;
+				try {
+					switch (plan.getAggregation()) {
+					case QueryPlan.COUNT:
+					case QueryPlan.EXIST:
+					case QueryPlan.SUM:
+					case QueryPlan.AVERAGE:
+						results.next();
+						ardenResult = readAggregates(results);
+						break;
+					case QueryPlan.LATEST:
+					case QueryPlan.EARLIEST:
+						ardenResult = readOrderedRows(results);
+						break;
+					default:
+						ardenResult = readFilteredRows(session, results);
+					}
+				} finally {
+					results.close();
+				}
+				reusable = true;
+				return ardenResult;
+			} finally {
+				release(session, sql, statement, reusable);
+			}
 		} catch (SQLException e) {
-			System.out.println("SQL Exception");
-			while (e != null) {
-				System.out.println("    State:   " + e.getSQLState());
-				System.out.println("    Message: " + e.getMessage());
-				System.out.println("    Error:   " + e.getErrorCode());
-				e = e.getNextException();
+			if (isRejectedStatement(e)) {
+				description.disablePushDown();
+				session.disablePushDown(mapping.sql);
 			}
-			return ArdenList.EMPTY.values;
+			// other errors, e.g. timeouts or lost connections, only affect this execution
+			return null;
+		} finally {
+			closeSession(session);
 		}
 	}
-
 	
+	/**
+	 * Reads the rows selected by time constraints. Like the constraints
+	 * evaluated in memory, they are lists, except for a single value per
+	 * column if the only row of the mapping remains.
+	 */
+	private ArdenValue[] readFilteredRows(StatementCache session, ResultSet results) throws SQLException {
+		ResultSetMetaData metaData = results.getMetaData();
+		Rows rows = new Rows(metaData, findColumn(metaData, primaryTimeColumn), 0, DEFAULT_CAPACITY);
+		while (results.next())
+			rows.read(results);
+		boolean single = rows.getRowCount() == 1 && countMappingRows(session) == 1;
+		return rows.toArdenValues(single ? SHAPE_DEFAULT : SHAPE_LISTS, false);
+	}
+	
+	/** Counts the rows of the mapping without the time constraints. */
+	private long countMappingRows(StatementCache session) throws SQLException {
+		QueryPlan count = plan.countMapping();
+		String sql = count.toSql(description.timeColumn, description.valueColumns);
+		PreparedStatement statement = session.acquire(sql);
+		boolean reusable = false;
+		try {
+			count.setParameters(statement);
+			ResultSet results = statement.executeQuery();
+			long rowCount;
+			try {
+				results.next();
+				rowCount = results.getLong(1);
+			} finally {
+				results.close();
+			}
+			reusable = true;
+			return rowCount;
+		} finally {
+			release(session, sql, statement, reusable);
+		}
+	}
+	
+	/**
+	 * Reads the rows selected by latest or earliest. Rows without primary time
+	 * are sorted first; like in memory, there is no latest or earliest row if
+	 * one of them has no primary time.
+	 */
+	private ArdenValue[] readOrderedRows(ResultSet results) throws SQLException {
+		ResultSetMetaData metaData = results.getMetaData();
+		Rows rows = new Rows(metaData, findColumn(metaData, primaryTimeColumn), 0, DEFAULT_CAPACITY);
+		while (results.next())
+			rows.read(results);
+		if (rows.hasRowWithoutPrimaryTime()) {
+			ArdenValue[] ardenResult = new ArdenValue[rows.getColumnCount()];
+			Arrays.fill(ardenResult, ArdenNull.INSTANCE);
+			return ardenResult;
+		}
+		int shape = plan.getLimit() < 0 ? SHAPE_VALUES : SHAPE_LISTS;
+		// the latest rows are selected in descending order
+		return rows.toArdenValues(shape, plan.getAggregation() == QueryPlan.LATEST);
+	}
+	
+	/**
+	 * Checks if the database rejected the translated statement itself, i.e. it
+	 * does not understand its syntax or does not support it.
+	 */
+	static boolean isRejectedStatement(SQLException e) {
+		for (; e != null; e = e.getNextException()) {
+			if (e instanceof SQLSyntaxErrorException || e instanceof SQLFeatureNotSupportedException)
+				return true;
+			String state = e.getSQLState();
+			// class 42: syntax error or access rule violation
+			if (state != null && state.startsWith("42"))
+				return true;
+		}
+		return false;
+	}
+	
+	/** Converts the row returned by a COUNT, EXIST, SUM or AVERAGE plan. */
+	private ArdenValue[] readAggregates(ResultSet results) throws SQLException {
+		String[] valueColumns = description.valueColumns;
+		ArdenValue[] ardenResult = new ArdenValue[valueColumns.length];
+		long rowCount = results.getLong(1);
+		if (plan.getAggregation() == QueryPlan.COUNT) {
+			for (int column = 0; column < ardenResult.length; column++)
+				ardenResult[column] = new ArdenNumber(rowCount);
+			return ardenResult;
+		}
+		// the common primary time of the aggregated values
+		long primaryTime = ArdenValue.NOPRIMARYTIME;
+		int index = 2;
+		if (description.timeColumn != null) {
+			long timeCount = results.getLong(index++);
+			Timestamp minTime = results.getTimestamp(index++);
+			Timestamp maxTime = results.getTimestamp(index++);
+			if (rowCount > 0 && timeCount == rowCount && minTime.equals(maxTime))
+				primaryTime = minTime.getTime();
+		}
+		boolean average = plan.getAggregation() == QueryPlan.AVERAGE;
+		for (int column = 0; column < ardenResult.length; column++) {
+			long nonNullCount = results.getLong(index++);
+			if (plan.getAggregation() == QueryPlan.EXIST) {
+				ardenResult[column] = ArdenBoolean.create(nonNullCount > 0, primaryTime);
+				continue;
+			}
+			double sum = results.getDouble(index++);
+			if (rowCount == 0)
+				ardenResult[column] = average ? ArdenNull.INSTANCE : ArdenNumber.ZERO;
+			else if (nonNullCount < rowCount)
+				ardenResult[column] = average ? ArdenNull.INSTANCE : ArdenNull.create(primaryTime);
+			else
+				ardenResult[column] = ArdenNumber.create(average ? sum / rowCount : sum, primaryTime);
+		}
+		return ardenResult;
+	}
+	
+	/** Executes the mapping as it is, which need not be a query; returns null if it fails. */
+	private ArdenValue[] executeMapping() {
+		try {
+			String sql = mapping.sql;
+			StatementCache session = openSession();
+			try {
+				PreparedStatement stmt = session.acquire(sql);
+				boolean reusable = false;
+				try {
+					for (int i = 0; i < mapping.values.length; i++)
+						stmt.setObject(i + 1, mapping.values[i]);
+					
+					boolean resultSetAvailable = stmt.execute();
+					
+					ArdenValue[] ardenResult;
+					if (resultSetAvailable) {
+						ResultSet results = stmt.getResultSet();
+						try {
+							ardenResult = resultSetToArdenValues(results, primaryTimeColumn);
+						} finally {
+							results.close();
+						}
+					} else {
+						ardenResult = resultSetToArdenValues(null, primaryTimeColumn);
+					}
+					reusable = true;
+					return ardenResult;
+				} finally {
+					release(session, sql, stmt, reusable);
+				}
+			} finally {
+				closeSession(session);
+			}
+		} catch (SQLException e) {
+			printSQLException(e);
+			return null;
+		}
+	}
+	
+	/** Gets the statements of the connection to use for one execution. */
+	private StatementCache openSession() throws SQLException {
+		if (pool != null)
+			return pool.acquire();
+		return statements;
+	}
+	
+	private void closeSession(StatementCache session) {
+		if (pool != null)
+			pool.release(session);
+	}
+	
+	/**
+	 * Returns a statement to the cache, or closes it if it is not reusable
+	 * because its execution failed.
+	 */
+	private static void release(StatementCache session, String sql, PreparedStatement statement, boolean reusable)
+			throws SQLException {
+		if (reusable)
+			session.release(sql, statement);
+		else
+			statement.close();
+	}
+	
+	private static void printSQLException(SQLException e) {
+		System.out.println("SQL Exception");
+		while (e != null) {
+			System.out.println("    State:   " + e.getSQLState());
+			System.out.println("    Message: " + e.getMessage());
+			System.out.println("    Error:   " + e.getErrorCode());
+			e = e.getNextException();
+		}
+	}
 }
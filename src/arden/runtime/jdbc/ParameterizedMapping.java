@@ -0,0 +1,80 @@
+package arden.runtime.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A mapping clause in which the named parameters were replaced by JDBC
+ * placeholders. A parameter is written as ":name" outside of quotes, e.g.
+ *
+ * <pre>
+ * select val from lab where patient = :patient_id
+ * </pre>
+ *
+ * Names are case-insensitive; the parameter map must use lower case keys.
+ * Names that are not in the map are left as they are, so that ":" can still
+ * be used for other purposes (e.g. "::" casts). A parameter whose value is a
+ * collection is replaced by one placeholder per element, e.g. for use in
+ * "IN (:name)"; an empty collection is replaced by NULL, which no value is
+ * equal to.
+ */
+final class ParameterizedMapping {
+	/** the SQL text with '?' placeholders */
+	final String sql;
+	/** the values of the placeholders */
+	final Object[] values;
+
+	private ParameterizedMapping(String sql, Object[] values) {
+		this.sql = sql;
+		this.values = values;
+	}
+
+	static ParameterizedMapping parse(String mapping, Map<String, ?> parameters) {
+		if (parameters == null || parameters.isEmpty() || mapping.indexOf(':') < 0)
+			return new ParameterizedMapping(mapping, new Object[0]);
+		StringBuilder sql = new StringBuilder(mapping.length());
+		List<Object> values = new ArrayList<Object>();
+		char quote = 0;
+		int i = 0;
+		while (i < mapping.length()) {
+			char c = mapping.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == ':' && (i == 0 || mapping.charAt(i - 1) != ':')) {
+				int end = i + 1;
+				while (end < mapping.length() && isNameChar(mapping.charAt(end)))
+					end++;
+				String name = mapping.substring(i + 1, end).toLowerCase(Locale.ENGLISH);
+				if (end > i + 1 && parameters.containsKey(name)) {
+					Object value = parameters.get(name);
+					if (value instanceof Collection) {
+						Collection<?> elements = (Collection<?>) value;
+						if (elements.isEmpty())
+							sql.append("NULL");
+						for (int element = 0; element < elements.size(); element++)
+							sql.append(element == 0 ? "?" : ", ?");
+						values.addAll(elements);
+					} else {
+						sql.append('?');
+						values.add(value);
+					}
+					i = end;
+					continue;
+				}
+			}
+			sql.append(c);
+			i++;
+		}
+		return new ParameterizedMapping(sql.toString(), values.toArray());
+	}
+
+	private static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+}
@@ -0,0 +1,170 @@
+package arden.runtime.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * The SQL statement built for a JDBCQuery: the mapping is wrapped in a SELECT
+ * that filters the rows by primary time and then either returns the rows,
+ * the rows ordered by primary time (for the latest or earliest rows), or
+ * aggregates of the value columns.
+ *
+ * Instances are immutable; every constraint creates a new plan.
+ */
+final class QueryPlan {
+	/** returns all rows that match the predicates */
+	static final int ROWS = 0;
+	/** returns the rows with the latest primary times */
+	static final int LATEST = 1;
+	/** returns the rows with the earliest primary times */
+	static final int EARLIEST = 2;
+	/** returns COUNT(*) */
+	static final int COUNT = 3;
+	/** returns COUNT(*), the primary time range and COUNT() of every column */
+	static final int EXIST = 4;
+	/** like EXIST, plus SUM() of every column */
+	static final int SUM = 5;
+	/**
+	 * same statement as SUM, as AVG() of an integer column is an integer in
+	 * some databases
+	 */
+	static final int AVERAGE = 6;
+
+	private static final String QUERY_ALIAS = "arden_query";
+
+	private final String mapping;
+	/** values of the placeholders in the mapping */
+	private final Object[] mappingParameters;
+	/** predicates with one '?' per parameter */
+	private final String[] predicates;
+	private final long[] parameters;
+	private final int aggregation;
+	/** number of rows for LATEST and EARLIEST; -1 for a single value */
+	private final int limit;
+
+	QueryPlan(ParameterizedMapping mapping) {
+		this(mapping.sql, mapping.values, new String[0], new long[0], ROWS, 0);
+	}
+
+	private QueryPlan(String mapping, Object[] mappingParameters, String[] predicates, long[] parameters,
+			int aggregation, int limit) {
+		this.mapping = mapping;
+		this.mappingParameters = mappingParameters;
+		this.predicates = predicates;
+		this.parameters = parameters;
+		this.aggregation = aggregation;
+		this.limit = limit;
+	}
+
+	/** Returns whether the plan just executes the mapping. */
+	boolean isEmpty() {
+		return predicates.length == 0 && aggregation == ROWS;
+	}
+
+	int getAggregation() {
+		return aggregation;
+	}
+
+	int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Gets the maximum number of rows to fetch (see
+	 * Statement.setMaxRows()), 0 for all rows.
+	 */
+	int getMaxRows() {
+		if (aggregation == LATEST || aggregation == EARLIEST)
+			return limit < 0 ? 1 : limit;
+		return 0;
+	}
+
+	/** Creates a plan that additionally filters with the predicate. */
+	QueryPlan where(String predicate, long... predicateParameters) {
+		String[] newPredicates = new String[predicates.length + 1];
+		System.arraycopy(predicates, 0, newPredicates, 0, predicates.length);
+		newPredicates[predicates.length] = predicate;
+		long[] newParameters = new long[parameters.length + predicateParameters.length];
+		System.arraycopy(parameters, 0, newParameters, 0, parameters.length);
+		System.arraycopy(predicateParameters, 0, newParameters, parameters.length, predicateParameters.length);
+		return new QueryPlan(mapping, mappingParameters, newPredicates, newParameters, aggregation, limit);
+	}
+
+	/** Creates a plan that counts the rows of the mapping, without the predicates. */
+	QueryPlan countMapping() {
+		return new QueryPlan(mapping, mappingParameters, new String[0], new long[0], COUNT, 0);
+	}
+
+	/** Creates a plan that aggregates the filtered rows. */
+	QueryPlan aggregate(int newAggregation, int newLimit) {
+		return new QueryPlan(mapping, mappingParameters, predicates, parameters, newAggregation, newLimit);
+	}
+
+	/**
+	 * Creates the SQL statement.
+	 *
+	 * @param timeColumn
+	 *            the label of the primary time column, or null
+	 * @param valueColumns
+	 *            the labels of the other columns
+	 */
+	String toSql(String timeColumn, String[] valueColumns) {
+		StringBuilder where = new StringBuilder();
+		for (String predicate : predicates)
+			appendPredicate(where, predicate);
+		String from = " FROM (" + stripMapping() + ") " + QUERY_ALIAS + where;
+
+		switch (aggregation) {
+		case LATEST:
+		case EARLIEST:
+			// the number of rows is limited with setMaxRows(), as the syntax of
+			// LIMIT differs between the databases; rows without time come first,
+			// whatever the database does with NULL, so that they are noticed
+			return "SELECT *" + from + " ORDER BY CASE WHEN " + timeColumn + " IS NULL THEN 0 ELSE 1 END, "
+					+ timeColumn + (aggregation == LATEST ? " DESC" : " ASC");
+		case COUNT:
+			return "SELECT COUNT(*)" + from;
+		case EXIST:
+		case SUM:
+		case AVERAGE:
+			StringBuilder b = new StringBuilder("SELECT COUNT(*)");
+			if (timeColumn != null) {
+				b.append(", COUNT(").append(timeColumn).append("), MIN(").append(timeColumn);
+				b.append("), MAX(").append(timeColumn).append(')');
+			}
+			for (String column : valueColumns) {
+				b.append(", COUNT(").append(column).append(')');
+				if (aggregation != EXIST)
+					b.append(", SUM(").append(column).append(')');
+			}
+			return b.append(from).toString();
+		default:
+			return "SELECT *" + from;
+		}
+	}
+
+	/**
+	 * Binds the parameters of the mapping, followed by the parameters of the
+	 * predicates, which are points in time.
+	 */
+	void setParameters(PreparedStatement statement) throws SQLException {
+		for (int i = 0; i < mappingParameters.length; i++)
+			statement.setObject(i + 1, mappingParameters[i]);
+		for (int i = 0; i < parameters.length; i++)
+			statement.setTimestamp(mappingParameters.length + i + 1, new Timestamp(parameters[i]));
+	}
+
+	private static void appendPredicate(StringBuilder where, String predicate) {
+		where.append(where.length() == 0 ? " WHERE " : " AND ");
+		where.append(predicate);
+	}
+
+	/** Removes trailing semicolons, which are not allowed in a subquery. */
+	private String stripMapping() {
+		String sql = mapping.trim();
+		while (sql.endsWith(";"))
+			sql = sql.substring(0, sql.length() - 1).trim();
+		return sql;
+	}
+}
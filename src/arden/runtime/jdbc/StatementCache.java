@@ -0,0 +1,127 @@
+package arden.runtime.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Least recently used cache of the PreparedStatements of one connection,
+ * keyed by SQL text.
+ *
+ * A statement is taken out of the cache with acquire() and put back with
+ * release() after its result set has been closed, so a statement is never
+ * used by two threads at the same time. Statements that don't fit into the
+ * cache are closed.
+ */
+public final class StatementCache {
+	public static final int DEFAULT_SIZE = 64;
+
+	private final Connection connection;
+	private final int maximumSize;
+	/** the idle statements, least recently released first */
+	private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>();
+	/** mappings whose constraints failed in SQL and are evaluated in memory */
+	private final Set<String> inMemoryMappings = new HashSet<String>();
+	private boolean closed;
+	private long hits;
+	private long misses;
+
+	public StatementCache(Connection connection, int maximumSize) {
+		if (maximumSize < 0)
+			throw new IllegalArgumentException("maximumSize must not be negative");
+		this.connection = connection;
+		this.maximumSize = maximumSize;
+	}
+
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Gets an idle statement for the SQL text from the cache, or prepares a
+	 * new one.
+	 */
+	public PreparedStatement acquire(String sql) throws SQLException {
+		synchronized (this) {
+			PreparedStatement statement = statements.remove(sql);
+			if (statement != null) {
+				hits++;
+				return statement;
+			}
+			misses++;
+		}
+		return connection.prepareStatement(sql);
+	}
+
+	/**
+	 * Returns a statement obtained from acquire() to the cache. If the cache
+	 * is full, the least recently used statement is closed.
+	 */
+	public void release(String sql, PreparedStatement statement) throws SQLException {
+		List<PreparedStatement> toClose = new ArrayList<PreparedStatement>();
+		statement.clearParameters();
+		synchronized (this) {
+			if (closed || maximumSize == 0 || statements.containsKey(sql)) {
+				toClose.add(statement);
+			} else {
+				statements.put(sql, statement);
+				Iterator<Map.Entry<String, PreparedStatement>> it = statements.entrySet().iterator();
+				while (statements.size() > maximumSize) {
+					toClose.add(it.next().getValue());
+					it.remove();
+				}
+			}
+		}
+		for (PreparedStatement s : toClose)
+			s.close();
+	}
+
+	/**
+	 * Marks a mapping whose constraints could not be executed as SQL on this
+	 * connection, e.g. because the database does not support the statement.
+	 */
+	synchronized void disablePushDown(String mapping) {
+		inMemoryMappings.add(mapping);
+	}
+
+	synchronized boolean isPushDownDisabled(String mapping) {
+		return inMemoryMappings.contains(mapping);
+	}
+
+	/** Gets the number of idle statements in the cache. */
+	public synchronized int size() {
+		return statements.size();
+	}
+
+	/** Gets the number of acquire() calls that were served from the cache. */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/** Gets the number of acquire() calls that prepared a new statement. */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Closes all idle statements. Statements released later are closed
+	 * immediately. The connection is not closed.
+	 */
+	public void close() throws SQLException {
+		List<PreparedStatement> toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayList<PreparedStatement>(statements.values());
+			statements.clear();
+		}
+		for (PreparedStatement s : toClose)
+			s.close();
+	}
+}
@@ -0,0 +1,45 @@
+package arden.runtime.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets with fixed, exponentially growing upper bounds
+ * from 10 microseconds to 10 seconds. Recording is lock-free.
+ */
+public final class LatencyHistogram {
+	/** the upper bounds of the buckets in nanoseconds; the last bucket has none */
+	static final long[] BOUNDS = { 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L };
+
+	private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+	private final AtomicLong sum = new AtomicLong();
+
+	public void record(long nanos) {
+		int bucket = 0;
+		while (bucket < BOUNDS.length && nanos > BOUNDS[bucket])
+			bucket++;
+		counts.incrementAndGet(bucket);
+		sum.addAndGet(nanos);
+	}
+
+	/** Gets the number of recorded durations. */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < counts.length(); i++)
+			count += counts.get(i);
+		return count;
+	}
+
+	/** Gets the sum of the recorded durations in nanoseconds. */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/** Gets the number of recorded durations up to the upper bound of a bucket. */
+	long getCumulativeCount(int bucket) {
+		long count = 0;
+		for (int i = 0; i <= bucket; i++)
+			count += counts.get(i);
+		return count;
+	}
+}
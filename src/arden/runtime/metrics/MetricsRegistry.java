@@ -0,0 +1,179 @@
+package arden.runtime.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import arden.runtime.ExecutionListener;
+import arden.runtime.MedicalLogicModule;
+
+/**
+ * Execution listener that keeps counters and latency histograms per MLM,
+ * query latencies per mapping and the number of messages per destination.
+ * The metrics can be written in the Prometheus text exposition format.
+ */
+public final class MetricsRegistry extends ExecutionListener {
+	private static final String[] PHASES = { "data", "logic", "action" };
+
+	/** The metrics of one MLM. */
+	public static final class MlmMetrics {
+		private final AtomicLong runs = new AtomicLong();
+		private final AtomicLong concluded = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final LatencyHistogram[] phases = { new LatencyHistogram(), new LatencyHistogram(),
+				new LatencyHistogram() };
+
+		public long getRuns() {
+			return runs.get();
+		}
+
+		/** Gets the number of runs in which the logic slot concluded true. */
+		public long getConcluded() {
+			return concluded.get();
+		}
+
+		public long getFailures() {
+			return failures.get();
+		}
+
+		/**
+		 * @param phase
+		 *            ExecutionListener.DATA, LOGIC or ACTION
+		 */
+		public LatencyHistogram getLatency(int phase) {
+			return phases[phase];
+		}
+	}
+
+	private final ConcurrentMap<String, MlmMetrics> mlms = new ConcurrentHashMap<String, MlmMetrics>();
+	private final ConcurrentMap<String, LatencyHistogram> queries = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, AtomicLong> writes = new ConcurrentHashMap<String, AtomicLong>();
+
+	/** Gets the metrics of an MLM, creating them if the MLM has not run yet. */
+	public MlmMetrics getMlmMetrics(String mlmName) {
+		MlmMetrics metrics = mlms.get(mlmName);
+		if (metrics == null) {
+			MlmMetrics created = new MlmMetrics();
+			metrics = mlms.putIfAbsent(mlmName, created);
+			if (metrics == null)
+				metrics = created;
+		}
+		return metrics;
+	}
+
+	/** Gets the latencies of the queries of a mapping, creating them if there are none yet. */
+	public LatencyHistogram getQueryLatency(String mapping) {
+		LatencyHistogram histogram = queries.get(mapping);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = queries.putIfAbsent(mapping, created);
+			if (histogram == null)
+				histogram = created;
+		}
+		return histogram;
+	}
+
+	/** Gets the number of messages written to a destination; null for the default destination. */
+	public long getWriteCount(String destination) {
+		AtomicLong count = writes.get(destinationKey(destination));
+		return count == null ? 0 : count.get();
+	}
+
+	private static String destinationKey(String destination) {
+		return destination == null ? "" : destination;
+	}
+
+	@Override
+	public void phaseCompleted(MedicalLogicModule mlm, int phase, long nanos) {
+		getMlmMetrics(mlm.getName()).phases[phase].record(nanos);
+	}
+
+	@Override
+	public void mlmCompleted(MedicalLogicModule mlm, boolean concluded, Throwable error) {
+		MlmMetrics metrics = getMlmMetrics(mlm.getName());
+		metrics.runs.incrementAndGet();
+		if (concluded)
+			metrics.concluded.incrementAndGet();
+		if (error != null)
+			metrics.failures.incrementAndGet();
+	}
+
+	@Override
+	public void queryExecuted(String mapping, long nanos) {
+		getQueryLatency(mapping).record(nanos);
+	}
+
+	@Override
+	public void messageWritten(String destination) {
+		String key = destinationKey(destination);
+		AtomicLong count = writes.get(key);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = writes.putIfAbsent(key, created);
+			if (count == null)
+				count = created;
+		}
+		count.incrementAndGet();
+	}
+
+	/** Writes the metrics in the Prometheus text exposition format. */
+	public void writePrometheus(Writer out) throws IOException {
+		Map<String, MlmMetrics> sortedMlms = new TreeMap<String, MlmMetrics>(mlms);
+		header(out, "arden_mlm_runs_total", "counter", "Number of times the MLM was run.");
+		for (Map.Entry<String, MlmMetrics> entry : sortedMlms.entrySet())
+			sample(out, "arden_mlm_runs_total", "mlm", entry.getKey(), entry.getValue().getRuns());
+		header(out, "arden_mlm_concluded_total", "counter", "Number of runs in which the logic slot concluded true.");
+		for (Map.Entry<String, MlmMetrics> entry : sortedMlms.entrySet())
+			sample(out, "arden_mlm_concluded_total", "mlm", entry.getKey(), entry.getValue().getConcluded());
+		header(out, "arden_mlm_failures_total", "counter", "Number of runs that threw an exception.");
+		for (Map.Entry<String, MlmMetrics> entry : sortedMlms.entrySet())
+			sample(out, "arden_mlm_failures_total", "mlm", entry.getKey(), entry.getValue().getFailures());
+		header(out, "arden_mlm_phase_seconds", "histogram", "Time spent in the slots of the MLM.");
+		for (Map.Entry<String, MlmMetrics> entry : sortedMlms.entrySet()) {
+			for (int phase = 0; phase < PHASES.length; phase++) {
+				String labels = "mlm=\"" + escape(entry.getKey()) + "\",phase=\"" + PHASES[phase] + "\"";
+				histogram(out, "arden_mlm_phase_seconds", labels, entry.getValue().phases[phase]);
+			}
+		}
+		header(out, "arden_query_seconds", "histogram", "Time spent executing the queries of a mapping.");
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(queries).entrySet())
+			histogram(out, "arden_query_seconds", "mapping=\"" + escape(entry.getKey()) + "\"", entry.getValue());
+		header(out, "arden_writes_total", "counter", "Number of messages written to a destination.");
+		for (Map.Entry<String, AtomicLong> entry : new TreeMap<String, AtomicLong>(writes).entrySet())
+			sample(out, "arden_writes_total", "destination", entry.getKey(), entry.getValue().get());
+		out.flush();
+	}
+
+	private static void header(Writer out, String name, String type, String help) throws IOException {
+		out.write("# HELP " + name + " " + help + "\n");
+		out.write("# TYPE " + name + " " + type + "\n");
+	}
+
+	private static void sample(Writer out, String name, String label, String value, long count) throws IOException {
+		out.write(name + "{" + label + "=\"" + escape(value) + "\"} " + count + "\n");
+	}
+
+	private static void histogram(Writer out, String name, String labels, LatencyHistogram histogram)
+			throws IOException {
+		for (int i = 0; i < LatencyHistogram.BOUNDS.length; i++) {
+			out.write(name + "_bucket{" + labels + ",le=\"" + seconds(LatencyHistogram.BOUNDS[i]) + "\"} "
+					+ histogram.getCumulativeCount(i) + "\n");
+		}
+		long count = histogram.getCount();
+		out.write(name + "_bucket{" + labels + ",le=\"+Inf\"} " + count + "\n");
+		out.write(name + "_sum{" + labels + "} " + seconds(histogram.getSum()) + "\n");
+		out.write(name + "_count{" + labels + "} " + count + "\n");
+	}
+
+	private static String seconds(long nanos) {
+		return Double.toString(nanos / 1e9);
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,128 @@
+package arden.tests;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.compiler.CompiledMlm;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenValue;
+import arden.runtime.BatchEvaluator;
+import arden.runtime.ExecutionContext;
+import arden.runtime.ExecutionListener;
+
+public class BatchEvaluatorTests {
+	private static class CollectingHandler implements BatchEvaluator.ResultHandler {
+		final List<ExecutionContext> completed = new ArrayList<ExecutionContext>();
+		final List<ArdenValue[]> results = new ArrayList<ArdenValue[]>();
+		final List<Throwable> errors = new ArrayList<Throwable>();
+
+		@Override
+		public void completed(ExecutionContext context, ArdenValue[] result) {
+			completed.add(context);
+			results.add(result);
+		}
+
+		@Override
+		public void failed(ExecutionContext context, Throwable error) {
+			errors.add(error);
+		}
+	}
+
+	private static List<TestContext> createContexts(int count) {
+		List<TestContext> contexts = new ArrayList<TestContext>();
+		for (int i = 0; i < count; i++)
+			contexts.add(new TestContext());
+		return contexts;
+	}
+
+	@Test
+	public void RunsEveryContext() throws Exception {
+		CompiledMlm mlm = EvokeTests.parseTemplate("(a) := ARGUMENT; x := READ {lab results};", "",
+				"conclude true;", "write \"done\"; return a + 1;");
+		List<TestContext> contexts = createContexts(100);
+		CollectingHandler handler = new CollectingHandler();
+		BatchEvaluator evaluator = new BatchEvaluator(mlm, new ForkJoinPool(4), 7);
+		long count = evaluator.evaluate(contexts.iterator(), new ArdenValue[] { new ArdenNumber(1) }, handler);
+
+		Assert.assertEquals(100, count);
+		Assert.assertEquals(Collections.emptyList(), handler.errors);
+		Assert.assertEquals(100, handler.completed.size());
+		Assert.assertTrue(handler.completed.containsAll(contexts));
+		for (ArdenValue[] result : handler.results)
+			Assert.assertEquals(new ArdenNumber(2), result[0]);
+		for (TestContext context : contexts) {
+			Assert.assertEquals("done\n", context.getOutputText());
+			Assert.assertSame(ExecutionListener.NONE, context.getExecutionListener());
+		}
+		Assert.assertEquals(Collections.singleton("lab results"), evaluator.getMappings());
+	}
+
+	@Test
+	public void ReportsFailures() throws Exception {
+		CompiledMlm mlm = EvokeTests.parseTemplate("x := MLM 'missing';", "", "conclude true;", "call x;");
+		CollectingHandler handler = new CollectingHandler();
+		new BatchEvaluator(mlm, ForkJoinPool.commonPool(), 4).evaluate(createContexts(10).iterator(), null, handler);
+		Assert.assertEquals(0, handler.completed.size());
+		Assert.assertEquals(10, handler.errors.size());
+	}
+
+	@Test
+	public void HandlerExceptionsAreRethrown() throws Exception {
+		CompiledMlm mlm = EvokeTests.parseTemplate("", "", "conclude true;", "return 1;");
+		final RuntimeException error = new IllegalStateException("handler");
+		BatchEvaluator.ResultHandler handler = new CollectingHandler() {
+			@Override
+			public void completed(ExecutionContext context, ArdenValue[] result) {
+				throw error;
+			}
+		};
+		try {
+			new BatchEvaluator(mlm, new ForkJoinPool(2), 4).evaluate(createContexts(10).iterator(), null, handler);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// the fork-join pool may wrap the exception to add the stack trace of the caller
+			Assert.assertTrue(e == error || e.getCause() == error);
+		}
+	}
+
+	@Test(expected = StackOverflowError.class)
+	public void ErrorsAreRethrown() throws Exception {
+		CompiledMlm mlm = EvokeTests.parseTemplate("", "", "conclude true;", "return 1;");
+		BatchEvaluator.ResultHandler handler = new CollectingHandler() {
+			@Override
+			public void completed(ExecutionContext context, ArdenValue[] result) {
+				throw new StackOverflowError();
+			}
+		};
+		new BatchEvaluator(mlm, ForkJoinPool.commonPool(), 4).evaluate(createContexts(10).iterator(), null, handler);
+	}
+
+	@Test
+	public void PrefetchesLearnedMappings() throws Exception {
+		CompiledMlm mlm = EvokeTests.parseTemplate("x := READ {lab results}; y := READ {vital signs};", "", "conclude true;", "");
+		final List<Integer> batchSizes = new ArrayList<Integer>();
+		final List<Collection<String>> mappings = new ArrayList<Collection<String>>();
+		BatchEvaluator evaluator = new BatchEvaluator(mlm, ForkJoinPool.commonPool(), 10);
+		evaluator.setPrefetcher(new BatchEvaluator.Prefetcher() {
+			@Override
+			public void prefetch(Collection<String> batchMappings, List<ExecutionContext> batch) {
+				mappings.add(batchMappings);
+				batchSizes.add(batch.size());
+			}
+		});
+		CollectingHandler handler = new CollectingHandler();
+		Assert.assertEquals(25, evaluator.evaluate(createContexts(25).iterator(), null, handler));
+		Assert.assertEquals(25, handler.completed.size());
+		// the first context runs alone to learn the mappings
+		Assert.assertEquals(Arrays.asList(10, 10, 4), batchSizes);
+		for (Collection<String> batchMappings : mappings)
+			Assert.assertEquals(2, batchMappings.size());
+	}
+}
@@ -0,0 +1,124 @@
+package arden.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import arden.compiler.BulkCompiler;
+import arden.compiler.CompiledMlm;
+import arden.compiler.CompilerException;
+
+public class BulkCompilerTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private void copy(String resource, String path) throws IOException {
+		File file = new File(folder.getRoot(), path);
+		file.getParentFile().mkdirs();
+		InputStream in = BulkCompilerTests.class.getResourceAsStream(resource);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				out.write(buffer, 0, read);
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	@Test
+	public void CompileDirectoryToJar() throws Exception {
+		for (int i = 1; i <= 8; i++)
+			copy("x2." + i + ".mlm", (i % 2 == 0 ? "even/" : "odd/") + "x2." + i + ".mlm");
+		new File(folder.getRoot(), "readme.txt").createNewFile();
+
+		List<File> sources = BulkCompiler.findSources(Arrays.asList(folder.getRoot()));
+		Assert.assertEquals(8, sources.size());
+		BulkCompiler compiler = new BulkCompiler();
+		List<BulkCompiler.Entry> entries = compiler.compile(sources);
+		Assert.assertEquals(0, compiler.getFailures().size());
+		Assert.assertEquals(8, entries.size());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BulkCompiler.writeJar(entries, bytes);
+		JarInputStream jar = new JarInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		Map<String, CompiledMlm> classes = new HashMap<String, CompiledMlm>();
+		List<BulkCompiler.Entry> index = null;
+		JarEntry entry;
+		while ((entry = jar.getNextJarEntry()) != null) {
+			if (entry.getName().equals(BulkCompiler.INDEX_ENTRY)) {
+				index = BulkCompiler.readIndex(jar);
+			} else {
+				ByteArrayOutputStream data = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = jar.read(buffer)) > 0)
+					data.write(buffer, 0, read);
+				String name = entry.getName().substring(0, entry.getName().length() - ".class".length());
+				classes.put(name, new CompiledMlm(data.toByteArray(), name));
+			}
+		}
+		jar.close();
+
+		Assert.assertNotNull(index);
+		Assert.assertEquals(8, index.size());
+		Assert.assertEquals(8, classes.size());
+		List<String> names = new ArrayList<String>();
+		for (BulkCompiler.Entry e : index) {
+			names.add(e.getName());
+			Assert.assertEquals(e.getName(), classes.get(e.getName()).getName());
+			Assert.assertEquals(classes.get(e.getName()).getMaintenance().getInstitution(), e.getInstitution());
+		}
+		// in the order of the sorted paths
+		Assert.assertEquals(Arrays.asList("hypercalcemia_for_b", "gentamicin_dosing", "anctms",
+				"test_for_allergies_while_loop", "fractional_na", "pen_allergy", "gentamicin_monitoring",
+				"care_cardiology_mlm"), names);
+		BulkCompiler.Entry anctms = index.get(names.indexOf("anctms"));
+		Assert.assertEquals(Arrays.asList("STORAGE OF ABSOLUTE_NEUTROPHILE_COUNT"), anctms.getEvokeMappings());
+		Assert.assertTrue(anctms.getSource().endsWith("x2.6.mlm"));
+	}
+
+	@Test
+	public void FailuresAreReported() throws Exception {
+		copy("x2.1.mlm", "good.mlm");
+		File bad = new File(folder.getRoot(), "bad.mlm");
+		OutputStream out = new FileOutputStream(bad);
+		out.write("maintenance: title: broken".getBytes("UTF-8"));
+		out.close();
+
+		BulkCompiler compiler = new BulkCompiler();
+		List<BulkCompiler.Entry> entries = compiler.compile(BulkCompiler.findSources(Arrays.asList(folder.getRoot())));
+		Assert.assertEquals(1, entries.size());
+		Assert.assertEquals("fractional_na", entries.get(0).getName());
+		Assert.assertEquals(1, compiler.getFailures().size());
+		Assert.assertEquals(bad, compiler.getFailures().get(0).getFile());
+		Assert.assertTrue(compiler.getFailures().get(0).getError() instanceof CompilerException);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void DuplicateNamesAreRejected() throws Exception {
+		copy("x2.1.mlm", "a/x2.1.mlm");
+		copy("x2.1.mlm", "b/x2.1.mlm");
+		BulkCompiler compiler = new BulkCompiler();
+		List<BulkCompiler.Entry> entries = compiler.compile(BulkCompiler.findSources(Arrays.asList(folder.getRoot())));
+		BulkCompiler.writeJar(entries, new ByteArrayOutputStream());
+	}
+}
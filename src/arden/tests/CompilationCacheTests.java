@@ -0,0 +1,111 @@
+package arden.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import arden.compiler.CompilationCache;
+import arden.compiler.CompiledMlm;
+import arden.runtime.BaseExecutionContext;
+
+public class CompilationCacheTests {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] source(String action) throws IOException {
+		InputStream s = ActionTests.class.getResourceAsStream("ActionTemplate.mlm");
+		return ActionTests.inputStreamToString(s).replace("$DATA", "").replace("$LOGIC", "conclude true;")
+				.replace("$ACTION", action).getBytes("UTF-8");
+	}
+
+	private static String run(CompiledMlm mlm) throws Exception {
+		return mlm.run(new TestContext(), null)[0].toString();
+	}
+
+	@Test
+	public void UnchangedSourceIsTakenFromCache() throws Exception {
+		File entries = new File(folder.getRoot(), "entries");
+		CompilationCache cache = new CompilationCache(entries, "1");
+		List<CompiledMlm> first = cache.compile(source("return 1 + 2;"), UTF8, null);
+		Assert.assertEquals(0, cache.getHitCount());
+		Assert.assertEquals(1, entries.listFiles().length);
+
+		// another process using the same directory
+		CompilationCache other = new CompilationCache(entries, "1");
+		List<CompiledMlm> second = other.compile(source("return 1 + 2;"), UTF8, null);
+		Assert.assertEquals(1, other.getHitCount());
+		Assert.assertEquals(0, other.getMissCount());
+		Assert.assertEquals(1, second.size());
+		Assert.assertEquals(first.get(0).getName(), second.get(0).getName());
+		Assert.assertEquals("3", run(second.get(0)));
+	}
+
+	@Test
+	public void ChangesAreCompiled() throws Exception {
+		CompilationCache cache = new CompilationCache(folder.getRoot(), "1");
+		cache.compile(source("return 1 + 2;"), UTF8, null);
+		Assert.assertEquals("4", run(cache.compile(source("return 2 + 2;"), UTF8, null).get(0)));
+		Assert.assertEquals(2, cache.getMissCount());
+		// debugging information contains the file name
+		cache.compile(source("return 1 + 2;"), UTF8, "a.mlm");
+		Assert.assertEquals(3, cache.getMissCount());
+
+		CompilationCache newer = new CompilationCache(folder.getRoot(), "2");
+		Assert.assertEquals("3", run(newer.compile(source("return 1 + 2;"), UTF8, null).get(0)));
+		Assert.assertEquals(1, newer.getMissCount());
+		Assert.assertEquals(4, folder.getRoot().listFiles().length);
+	}
+
+	@Test
+	public void CompilerVersionCoversTheClasses() throws Exception {
+		String version = CompilationCache.getCompilerVersion();
+		Assert.assertSame(version, CompilationCache.getCompilerVersion());
+		// the tests don't run from a jar
+		Assert.assertTrue(version, version.matches("dev-[0-9a-f]{64}"));
+	}
+
+	@Test
+	public void DamagedEntriesAreReplaced() throws Exception {
+		CompilationCache cache = new CompilationCache(folder.getRoot(), "1");
+		cache.compile(source("return 1 + 2;"), UTF8, null);
+		File entry = folder.getRoot().listFiles()[0];
+		OutputStream out = new FileOutputStream(entry);
+		out.write(new byte[] { 0, 0, 0, 1, 0 });
+		out.close();
+
+		Assert.assertEquals("3", run(cache.compile(source("return 1 + 2;"), UTF8, null).get(0)));
+		Assert.assertEquals(2, cache.getMissCount());
+		Assert.assertEquals("3", run(cache.compile(source("return 1 + 2;"), UTF8, null).get(0)));
+		Assert.assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void FindModuleUsesCache() throws Exception {
+		File mlms = new File(folder.getRoot(), "mlms");
+		mlms.mkdir();
+		OutputStream out = new FileOutputStream(new File(mlms, "test_mlm.mlm"));
+		out.write(source("return \"found\";"));
+		out.close();
+		CompilationCache cache = new CompilationCache(new File(folder.getRoot(), "entries"), "1");
+
+		for (int i = 0; i < 2; i++) {
+			BaseExecutionContext context = new BaseExecutionContext(new URL[] { mlms.toURI().toURL() });
+			context.setCompilationCache(cache);
+			Assert.assertNotNull(context.findModule("test_mlm", null));
+		}
+		Assert.assertEquals(1, cache.getMissCount());
+		Assert.assertEquals(1, cache.getHitCount());
+	}
+}
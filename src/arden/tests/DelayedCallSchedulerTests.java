@@ -0,0 +1,130 @@
+package arden.tests;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.runtime.ArdenDuration;
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenRunnable;
+import arden.runtime.ArdenString;
+import arden.runtime.ArdenValue;
+import arden.runtime.DelayedCallScheduler;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.ScheduleJournal;
+
+public class DelayedCallSchedulerTests {
+	private static final class CountingRunnable implements ArdenRunnable {
+		final CountDownLatch called = new CountDownLatch(1);
+		volatile long time;
+
+		@Override
+		public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments) throws InvocationTargetException {
+			time = System.currentTimeMillis();
+			called.countDown();
+			return null;
+		}
+	}
+
+	private static ArdenValue seconds(double seconds) {
+		return ArdenDuration.seconds(seconds, ArdenValue.NOPRIMARYTIME);
+	}
+
+	@Test(timeout = 10000)
+	public void HonoursDelayWithoutBlocking() throws Exception {
+		DelayedCallScheduler scheduler = new DelayedCallScheduler(new TestContext(), 1, 10);
+		CountingRunnable callee = new CountingRunnable();
+		long start = System.currentTimeMillis();
+		scheduler.schedule(callee, null, seconds(0.3));
+		Assert.assertTrue(System.currentTimeMillis() - start < 300);
+		Assert.assertEquals(1, scheduler.getPendingCount());
+		callee.called.await();
+		Assert.assertTrue(callee.time - start >= 300);
+		scheduler.shutdown();
+		scheduler.awaitTermination(1, TimeUnit.SECONDS);
+		Assert.assertEquals(0, scheduler.getPendingCount());
+		Assert.assertEquals(1, scheduler.getCompletedCount());
+		Assert.assertTrue(scheduler.getMaximumLateness() >= 0);
+	}
+
+	@Test(timeout = 10000)
+	public void RunsInTargetContextAndAwaitsChainedCalls() throws Exception {
+		final TestContext target = new TestContext();
+		final DelayedCallScheduler scheduler = new DelayedCallScheduler(new TestContext(), 1, 10);
+		final CountingRunnable last = new CountingRunnable();
+		ArdenRunnable first = new ArdenRunnable() {
+			@Override
+			public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments) {
+				Assert.assertSame(target, context);
+				// scheduled while this call is pending
+				scheduler.schedule(context, last, null, seconds(0.1));
+				return null;
+			}
+		};
+		scheduler.schedule(target, first, null, seconds(0.1));
+		Assert.assertFalse(scheduler.awaitPending(10, TimeUnit.MILLISECONDS));
+		Assert.assertTrue(scheduler.awaitPending(5, TimeUnit.SECONDS));
+		Assert.assertEquals(0, last.called.getCount());
+		Assert.assertEquals(2, scheduler.getCompletedCount());
+		Assert.assertEquals(0, scheduler.getFailedCount());
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void BoundsPendingCalls() throws Exception {
+		DelayedCallScheduler scheduler = new DelayedCallScheduler(new TestContext(), 1, 2);
+		scheduler.schedule(new CountingRunnable(), null, seconds(60));
+		scheduler.schedule(new CountingRunnable(), null, seconds(60));
+		try {
+			scheduler.schedule(new CountingRunnable(), null, seconds(60));
+			Assert.fail();
+		} catch (RejectedExecutionException e) {
+		}
+		Assert.assertEquals(2, scheduler.getPendingCount());
+		scheduler.shutdown();
+	}
+
+	@Test(timeout = 10000)
+	public void RestoresJournaledCalls() throws Exception {
+		File file = File.createTempFile("calls", ".journal");
+		file.delete();
+		file.deleteOnExit();
+		final MedicalLogicModule callee = EvokeTests.parseTemplate("(a, b) := ARGUMENT;", "", "conclude true;",
+				"write a || \" \" || b;");
+		TestContext context = new TestContext() {
+			@Override
+			public ArdenRunnable findModule(String name, String institution) {
+				return callee;
+			}
+		};
+
+		ScheduleJournal journal = new ScheduleJournal(file);
+		DelayedCallScheduler scheduler = new DelayedCallScheduler(context, 1, 10);
+		scheduler.setJournal(journal);
+		ArdenValue[] arguments = { new ArdenString("x"),
+				new ArdenList(new ArdenValue[] { new ArdenNumber(1), new ArdenNumber(2) }) };
+		scheduler.schedule(callee, arguments, seconds(0.2));
+		// the process ends before the call is due
+		scheduler.shutdown();
+		journal.close();
+		Assert.assertEquals("", context.getOutputText());
+
+		journal = new ScheduleJournal(file);
+		Assert.assertEquals(1, journal.size());
+		scheduler = new DelayedCallScheduler(context, 1, 10);
+		scheduler.setJournal(journal);
+		while (scheduler.getCompletedCount() == 0)
+			Thread.sleep(10);
+		Assert.assertEquals("x (1,2)\n", context.getOutputText());
+		Assert.assertEquals(0, journal.size());
+		scheduler.shutdown();
+		journal.close();
+	}
+}
@@ -0,0 +1,116 @@
+package arden.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.MlmDaemon;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.events.EventBus;
+import arden.runtime.events.EvokeEvent;
+
+public class EventBusTests {
+	@Test
+	public void IndexesNestedMappings() throws Exception {
+		TestContext context = new TestContext();
+		MedicalLogicModule single = EvokeTests.parseEvoke("e1 := EVENT{Lab Result Storage}", "e1");
+		MedicalLogicModule any = EvokeTests.parseEvoke(
+				"e1 := EVENT{lab result storage}; e2 := EVENT{penicillin storage}", "e1 OR e2");
+		MedicalLogicModule after = EvokeTests.parseEvoke("e1 := EVENT{LAB RESULT STORAGE}",
+				"3 days after time of e1");
+		MedicalLogicModule timed = EvokeTests.parseEvoke("1992-03-04");
+		EventBus bus = new EventBus(context, null);
+		bus.register(single);
+		bus.register(any);
+		bus.register(after);
+		bus.register(timed);
+
+		Assert.assertEquals(3, bus.getSubscribers("lab result STORAGE").length);
+		Assert.assertEquals(Arrays.asList(any), Arrays.asList(bus.getSubscribers("Penicillin Storage")));
+		Assert.assertEquals(0, bus.getSubscribers("cephalosporin storage").length);
+		// the AFTER event is not run immediately
+		Assert.assertEquals(Arrays.asList(single, any), bus.fire("Lab Result Storage"));
+
+		bus.unregister(any);
+		Assert.assertEquals(2, bus.getSubscribers("lab result storage").length);
+		Assert.assertEquals(0, bus.getSubscribers("penicillin storage").length);
+	}
+
+	@Test
+	public void UnknownEventsReceiveEverything() throws Exception {
+		EvokeEvent custom = new EvokeEvent() {
+			@Override
+			public ArdenTime getNextRunTime(ExecutionContext context) {
+				return null;
+			}
+
+			@Override
+			public boolean runOnEvent(String event, ExecutionContext context) {
+				return event.startsWith("lab");
+			}
+
+			@Override
+			public ArdenValue setTime(long newPrimaryTime) {
+				return this;
+			}
+		};
+		TestContext context = new TestContext(custom);
+		MedicalLogicModule mlm = EvokeTests.parseEvoke("e1 := EVENT{anything}", "e1");
+		EventBus bus = new EventBus(context, null);
+		bus.register(mlm);
+		Assert.assertEquals(Arrays.asList(mlm), bus.fire("lab result storage"));
+		Assert.assertTrue(bus.fire("penicillin storage").isEmpty());
+	}
+
+	@Test(timeout = 10000)
+	public void DaemonRunsTriggeredMlms() throws Exception {
+		TestContext context = new TestContext();
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		mlms.add(EvokeTests.parseEvoke("e1 := EVENT{lab result storage}", "e1", "write \"lab\";"));
+		mlms.add(EvokeTests.parseEvoke("e1 := EVENT{penicillin storage}", "e1", "write \"penicillin\";"));
+		MlmDaemon daemon = new MlmDaemon(mlms, context, null);
+		daemon.setExitWhenIdle(false);
+		Thread thread = new Thread(daemon);
+		thread.start();
+		try {
+			daemon.fireEvent("Lab Result Storage");
+			while (context.getOutputText().length() == 0)
+				Thread.sleep(10);
+			Assert.assertEquals("lab\n", context.getOutputText());
+		} finally {
+			daemon.stop();
+			thread.join();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void DaemonRunsDelayedTriggers() throws Exception {
+		TestContext context = new TestContext();
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		mlms.add(EvokeTests.parseEvoke("e1 := EVENT{lab result storage}", "1 second after time of e1",
+				"write \"delayed\";"));
+		MlmDaemon daemon = new MlmDaemon(mlms, context, null);
+		daemon.setExitWhenIdle(false);
+		Thread thread = new Thread(daemon);
+		thread.start();
+		try {
+			long fired = System.currentTimeMillis();
+			daemon.fireEvent("Lab Result Storage");
+			Assert.assertEquals(1, daemon.getDelayedTriggerCount());
+			while (context.getOutputText().length() == 0)
+				Thread.sleep(10);
+			Assert.assertTrue(System.currentTimeMillis() - fired >= 1000);
+			Assert.assertEquals("delayed\n", context.getOutputText());
+			Assert.assertEquals(0, daemon.getDelayedTriggerCount());
+		} finally {
+			daemon.stop();
+			thread.join();
+		}
+	}
+}
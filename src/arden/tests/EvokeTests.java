@@ -39,6 +39,7 @@ import org.junit.Test;
 import arden.compiler.CompiledMlm;
 import arden.compiler.Compiler;
 import arden.compiler.CompilerException;
+import arden.runtime.ArdenDuration;
 import arden.runtime.ArdenTime;
 import arden.runtime.MedicalLogicModule;
 import arden.runtime.events.AfterEvokeEvent;
@@ -250,4 +251,49 @@ public class EvokeTests {
 		context.setCurrentTime(createDate(1990, 0, 4));
 		Assert.assertEquals(createDate(1990, 0, 8), e.getNextRunTime(context));
 	}
+	
+	@Test
+	public void CyclicEventInMonths() throws Exception {
+		TestContext context = createTestContext();
+		
+		CompiledMlm mlm = parseEvoke("every 1 month for 1 year starting 1990-01-31");
+		EvokeEvent e = mlm.getEvoke(context, null);
+		
+		Assert.assertEquals(createDate(1990, 0, 31), e.getNextRunTime(context));
+		context.setCurrentTime(createDate(1990, 1, 1));
+		Assert.assertEquals(createDate(1990, 1, 28), e.getNextRunTime(context));
+		// the cycle keeps the day of the month where it exists
+		context.setCurrentTime(createDate(1990, 2, 5));
+		Assert.assertEquals(createDate(1990, 2, 31), e.getNextRunTime(context));
+		context.setCurrentTime(createDate(1990, 11, 31));
+		Assert.assertEquals(createDate(1990, 11, 31), e.getNextRunTime(context));
+		context.setCurrentTime(createDate(1991, 0, 2));
+		Assert.assertEquals(createDate(1991, 0, 31), e.getNextRunTime(context));
+		context.setCurrentTime(createDate(1991, 1, 1));
+		Assert.assertNull(e.getNextRunTime(context));
+	}
+	
+	@Test
+	public void CyclicEventMatchesStepping() throws Exception {
+		ArdenTime start = createDate(1990, 0, 1);
+		double[] intervals = { 0.001, 1, 60, 3600.5, 7 * 86400 };
+		for (double seconds : intervals) {
+			ArdenDuration interval = (ArdenDuration) ArdenDuration.seconds(seconds, 0);
+			ArdenDuration length = (ArdenDuration) ArdenDuration.seconds(100000 * seconds, 0);
+			EvokeEvent e = new CyclicEvokeEvent(interval, length, start);
+			TestContext context = new TestContext(start);
+			long step = (long) (1000 * seconds);
+			long expected = start.value;
+			for (long now = start.value; now < start.value + 110000 * step; now += step * 997 / 10 + 1) {
+				context.setCurrentTime(new ArdenTime(now));
+				while (expected < now)
+					expected += step;
+				ArdenTime next = e.getNextRunTime(context);
+				if (expected > start.value + 100000 * step)
+					Assert.assertNull(next);
+				else
+					Assert.assertEquals(expected, next.value);
+			}
+		}
+	}
 }
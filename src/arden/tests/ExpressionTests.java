@@ -35,6 +35,8 @@ import org.junit.Test;
 import arden.runtime.ArdenBoolean;
 import arden.runtime.ArdenNull;
 import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenValue;
+import arden.runtime.MedicalLogicModule;
 
 public class ExpressionTests extends ExpressionTestBase {
 	@Test
@@ -84,6 +86,78 @@ public class ExpressionTests extends ExpressionTestBase {
 		Assert.assertEquals(3e10, num.value, 0);
 	}
 
+	@Test
+	public void ConstantFolding() throws Exception {
+		// folded values come from the literal pool, so every run returns the same instance
+		String[] constants = { "5 + 2", "3 days * 24", "\"a\" || \"b\" || 1", "-(2 ** 10) / 4", "1 < 2 and not false",
+				"1990-01-01 + 2 weeks", "2 years / 2", "3 = null" };
+		String[] expected = { "7", "72 days", "\"ab1\"", "-256", "true", "1990-01-15T00:00:00", "1 year", "null" };
+		for (int i = 0; i < constants.length; i++) {
+			MedicalLogicModule mlm = ActionTests.parseAction("return (" + constants[i] + ");");
+			ArdenValue first = mlm.run(new TestContext(), null)[0];
+			Assert.assertEquals(constants[i], expected[i], first.toString());
+			Assert.assertSame(constants[i], first, mlm.run(new TestContext(), null)[0]);
+		}
+		// calendar arithmetic and values that are not literals are evaluated at run time
+		MedicalLogicModule mlm = ActionTests.parseAction("return (1990-01-31 + 1 month);");
+		Assert.assertEquals("1990-02-28T00:00:00", mlm.run(new TestContext(), null)[0].toString());
+		mlm = ActionTests.parseTemplate("x := 2;", "conclude true;", "return (x * 3 + 1 day * 2);");
+		Assert.assertEquals("null", mlm.run(new TestContext(), null)[0].toString());
+	}
+
+	@Test
+	public void UnboxedArithmetic() throws Exception {
+		// numbers without primary time are computed on doubles, the results
+		// must be the same as with the operators
+		String[] expressions = { "x * y + 1", "(x + y) / 2", "-x * y", "x / (y - 3)", "x - y * 2 > -5",
+				"x + y = 5", "x + 1 <= 2", "x + y <> 5", "x / (y - 3) < 1", "big * big / big",
+				"1 / (big * big + 1)", "big * big - 1 > 0", "x / (big * big) >= 0" };
+		String[] expected = { "7", "2.5", "-6", "null", "true", "true", "false", "false", "null", "null", "null",
+				"null", "null" };
+		for (int i = 0; i < expressions.length; i++) {
+			MedicalLogicModule mlm = ActionTests.parseTemplate("x := 2; y := 3; big := 10 ** 200;",
+					"conclude true;", "return (" + expressions[i] + ");");
+			Assert.assertEquals(expressions[i], expected[i], mlm.run(new TestContext(), null)[0].toString());
+		}
+		// other values take the operators
+		MedicalLogicModule mlm = ActionTests.parseTemplate("x := (1, 2); s := \"a\";", "conclude true;",
+				"return (x * 2 + 1, s * 2 + 1, x + 1 > 2);");
+		Assert.assertEquals("(3,5,null,false,true)", mlm.run(new TestContext(), null)[0].toString());
+		ArdenValue arg = ArdenNumber.create(3, new GregorianCalendar(1990, 0, 1).getTimeInMillis());
+		assertEvalWithArgument("12", "arg * arg + arg", arg, new TestContext());
+		assertEvalWithArgument("true", "time of (arg * arg + arg) = time of arg", arg, new TestContext());
+	}
+
+	@Test
+	public void UnboxedArithmeticInLargeDataSlot() throws Exception {
+		// more than 32 KB of code in the data slot, which the constructor
+		// has to jump across
+		StringBuilder data = new StringBuilder("x0 := 1;");
+		double expected = 1;
+		for (int i = 1; i < 700; i++) {
+			data.append(" x").append(i).append(" := ").append(i).append(" * 2 + x").append(i - 1).append(" / 3;");
+			expected = i * 2 + expected / 3;
+		}
+		MedicalLogicModule mlm = ActionTests.parseTemplate(data.toString(), "conclude true;", "return x699;");
+		ArdenValue result = mlm.run(new TestContext(), null)[0];
+		Assert.assertEquals(expected, ((ArdenNumber) result).value, 1e-9);
+	}
+
+	@Test
+	public void UnboxedArithmeticInLargeLogicSlot() throws Exception {
+		// an if statement whose branch spans more than 32 KB of boxed code
+		StringBuilder logic = new StringBuilder("if x0 > 0 then");
+		double expected = 1;
+		for (int i = 1; i < 1000; i++) {
+			logic.append(" x").append(i).append(" := ").append(i).append(" * 2 + x").append(i - 1).append(" / 3;");
+			expected = i * 2 + expected / 3;
+		}
+		logic.append(" endif; conclude true;");
+		MedicalLogicModule mlm = ActionTests.parseTemplate("x0 := 1;", logic.toString(), "return x999;");
+		ArdenValue result = mlm.run(new TestContext(), null)[0];
+		Assert.assertEquals(expected, ((ArdenNumber) result).value, 1e-9);
+	}
+
 	@Test
 	public void TimeStampWithFractionalSeconds() throws Exception {
 		assertEval("1989-01-01T13:30:00.123", "1989-01-01T13:30:00.123");
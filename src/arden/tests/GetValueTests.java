@@ -1,13 +1,16 @@
 package arden.tests;
 
 import java.io.InputStreamReader;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import arden.compiler.CompiledMlm;
 import arden.compiler.Compiler;
+import arden.runtime.ArdenList;
 import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenString;
 import arden.runtime.ArdenValue;
 import arden.runtime.MedicalLogicModule;
 
@@ -48,4 +51,38 @@ public class GetValueTests {
 		Assert.assertEquals(ArdenNumber.create(2.0, ArdenValue.NOPRIMARYTIME), mlm.getValue("num"));
 		Assert.assertNull(mlm.getValue("does_not_exist"));
 	}
+	
+	@Test
+	public void X28ConcurrentInvocations() throws Exception {
+		final CompiledMlm mlm = (CompiledMlm) compile("x2.8");
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int allergenCount = t + 1;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					ArdenValue[] allergens = new ArdenValue[allergenCount];
+					for (int i = 0; i < allergens.length; i++)
+						allergens[i] = new ArdenString("a" + i);
+					ArdenList list = new ArdenList(allergens);
+					try {
+						for (int i = 0; i < 50; i++) {
+							CompiledMlm.Invocation invocation = mlm.invoke(new TestContext(), new ArdenValue[] {
+									list, list, ArdenList.EMPTY, ArdenList.EMPTY });
+							Assert.assertEquals(ArdenNumber.create(allergenCount + 1, ArdenValue.NOPRIMARYTIME),
+									invocation.getValue("num"));
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		if (failure.get() != null)
+			throw new AssertionError(failure.get());
+	}
 }
@@ -1,15 +1,28 @@
 package arden.tests;
 
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.sql.Connection;
 import java.sql.Driver;
+import java.sql.PreparedStatement;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 import org.junit.Assert;
@@ -19,14 +32,23 @@ import uk.co.flamingpenguin.jewel.cli.CliFactory;
 
 import arden.CommandLineOptions;
 import arden.runtime.ArdenList;
+import arden.runtime.ArdenNull;
 import arden.runtime.ArdenNumber;
 import arden.runtime.ArdenString;
+import arden.runtime.ArdenTime;
 import arden.runtime.ArdenValue;
+import arden.runtime.BatchEvaluator;
+import arden.runtime.DatabaseQuery;
 import arden.runtime.ExecutionContext;
 import arden.runtime.MedicalLogicModule;
+import arden.runtime.MemoryQuery;
+import arden.runtime.QueryCache;
+import arden.runtime.jdbc.ConnectionPool;
 import arden.runtime.jdbc.DriverHelper;
 import arden.runtime.jdbc.JDBCExecutionContext;
+import arden.runtime.jdbc.JDBCPrefetcher;
 import arden.runtime.jdbc.JDBCQuery;
+import arden.runtime.jdbc.StatementCache;
 
 public class JDBCQueryTests {
 	private static boolean SQLiteLoaded = false;
@@ -76,14 +98,31 @@ public class JDBCQueryTests {
 		return statement;
 	}
 	
+	/** Opens an in-memory H2 database, or returns null if H2 is not available. */
+	public Connection openH2() throws SQLException {
+		try {
+			Class.forName("org.h2.Driver");
+		} catch (ClassNotFoundException e) {
+			System.err.println("H2 JDBC driver not found. Skipping associated test in " + this.getClass().getName());
+			return null;
+		}
+		return DriverManager.getConnection("jdbc:h2:mem:");
+	}
+	
 	@Test
 	public void ObjectToArdenValue() throws Exception {
 		Assert.assertEquals(new ArdenNumber(1.0), 
 				JDBCQuery.objectToArdenValue(new Integer(1)));
 		Assert.assertEquals(new ArdenNumber(1.0), 
 				JDBCQuery.objectToArdenValue(new Double(1.0)));
+		Assert.assertEquals(new ArdenNumber(1.0), 
+				JDBCQuery.objectToArdenValue(new Long(1)));
 		Assert.assertEquals(new ArdenString("hey"),
 				JDBCQuery.objectToArdenValue(new String("hey")));
+		Assert.assertEquals(new ArdenTime(1000),
+				JDBCQuery.objectToArdenValue(new Timestamp(1000)));
+		Assert.assertSame(ArdenNull.INSTANCE,
+				JDBCQuery.objectToArdenValue(null));
 	}
 	
 	private static void assertArrayNotEquals(Object[] expecteds, Object[] actuals) throws AssertionError {
@@ -121,6 +160,675 @@ public class JDBCQueryTests {
 		assertArrayNotEquals(expectedArrC, ardenValues);	
 	}
 	
+	@Test
+	public void TypedColumns() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		try {
+			Statement stmt = connection.createStatement();
+			stmt.executeUpdate("create table lab (id integer, val double, name varchar(20), taken timestamp)");
+			stmt.executeUpdate("insert into lab values (1, 5.5, 'glucose', '2010-01-01 12:00:00')");
+			stmt.executeUpdate("insert into lab values (2, null, null, null)");
+			ArdenValue[] ardenValues = JDBCQuery.resultSetToArdenValues(
+					stmt.executeQuery("select * from lab order by id"));
+			Assert.assertEquals(4, ardenValues.length);
+			ArdenValue[] ids = ((ArdenList) ardenValues[0]).getElements();
+			Assert.assertArrayEquals(new ArdenValue[] { new ArdenNumber(1), new ArdenNumber(2) }, ids);
+			ArdenValue[] vals = ((ArdenList) ardenValues[1]).getElements();
+			Assert.assertEquals(new ArdenNumber(5.5), vals[0]);
+			Assert.assertSame(ArdenNull.INSTANCE, vals[1]);
+			ArdenValue[] names = ((ArdenList) ardenValues[2]).getElements();
+			Assert.assertEquals(new ArdenString("glucose"), names[0]);
+			Assert.assertSame(ArdenNull.INSTANCE, names[1]);
+			ArdenValue[] times = ((ArdenList) ardenValues[3]).getElements();
+			Assert.assertEquals(new ArdenTime(Timestamp.valueOf("2010-01-01 12:00:00").getTime()), times[0]);
+			Assert.assertSame(ArdenNull.INSTANCE, times[1]);
+			
+			// a single row gives single values instead of lists
+			ardenValues = JDBCQuery.resultSetToArdenValues(stmt.executeQuery("select * from lab where id = 1"));
+			Assert.assertEquals(new ArdenNumber(5.5), ardenValues[1]);
+			Assert.assertTrue(ardenValues[3] instanceof ArdenTime);
+		} finally {
+			connection.close();
+		}
+	}
+	
+	@Test
+	public void ManyRows() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		try {
+			Statement stmt = connection.createStatement();
+			ResultSet results = stmt.executeQuery("select x, 'n' || x from system_range(1, 1000)");
+			ArdenValue[] ardenValues = JDBCQuery.resultSetToArdenValues(results);
+			ArdenList numbers = (ArdenList) ardenValues[0];
+			Assert.assertTrue(numbers.isNumeric());
+			Assert.assertEquals(1000, numbers.size());
+			Assert.assertEquals(new ArdenNumber(1000), numbers.getElements()[999]);
+			Assert.assertEquals(new ArdenString("n500"), ardenValues[1].getElements()[499]);
+		} finally {
+			connection.close();
+		}
+	}
+	
+	@Test
+	public void PrimaryTimeColumn() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		try {
+			Statement stmt = connection.createStatement();
+			stmt.executeUpdate("create table potassium (val double, unit varchar(10), taken timestamp)");
+			stmt.executeUpdate("insert into potassium values (4.1, 'mmol/l', '2010-01-01 08:00:00')");
+			stmt.executeUpdate("insert into potassium values (5.9, 'mmol/l', '2010-01-03 08:00:00')");
+			stmt.executeUpdate("insert into potassium values (3.8, 'mmol/l', '2010-01-02 08:00:00')");
+			long day1 = Timestamp.valueOf("2010-01-01 08:00:00").getTime();
+			long day2 = Timestamp.valueOf("2010-01-02 08:00:00").getTime();
+			long day3 = Timestamp.valueOf("2010-01-03 08:00:00").getTime();
+			
+			JDBCQuery query = new JDBCQuery("select val, unit, taken as PrimaryTime from potassium", connection);
+			ArdenValue[] ardenValues = query.execute();
+			Assert.assertEquals(2, ardenValues.length);
+			ArdenValue[] values = ardenValues[0].getElements();
+			Assert.assertEquals(day1, values[0].primaryTime);
+			Assert.assertEquals(day3, values[1].primaryTime);
+			Assert.assertEquals(day2, ardenValues[1].getElements()[2].primaryTime);
+			
+			ArdenValue[] latest = query.latest().execute();
+			Assert.assertEquals(new ArdenNumber(5.9), latest[0]);
+			Assert.assertEquals(day3, latest[0].primaryTime);
+			
+			ArdenValue[] early = query.occursBefore(new ArdenTime(day3)).execute();
+			Assert.assertArrayEquals(new ArdenValue[] { new ArdenNumber(4.1), new ArdenNumber(3.8) },
+					early[0].getElements());
+			
+			// a configured column name
+			query = new JDBCQuery("select val, taken from potassium", connection, "taken");
+			Assert.assertEquals(day2, query.occursAfter(new ArdenTime(day1)).earliest().execute()[0].primaryTime);
+		} finally {
+			connection.close();
+		}
+	}
+	
+	/** Compares the SQL translation of the operators with MemoryQuery. */
+	@Test
+	public void PushDown() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		try {
+			Statement stmt = connection.createStatement();
+			stmt.executeUpdate("create table lab (patient integer, val integer, taken timestamp)");
+			long start = Timestamp.valueOf("2010-01-01 00:00:00").getTime();
+			for (int i = 0; i < 50; i++) {
+				String val = (i == 7) ? "null" : String.valueOf((i * 37) % 11);
+				stmt.executeUpdate("insert into lab values (" + (i % 2) + ", " + val + ", '"
+						+ new Timestamp(start + i * 3600000L) + "')");
+			}
+			String mapping = "select val, taken as primarytime from lab where patient = 0;";
+			JDBCQuery query = new JDBCQuery(mapping, connection);
+			MemoryQuery memory = new MemoryQuery(query.execute());
+			ArdenTime from = new ArdenTime(start + 10 * 3600000L);
+			ArdenTime to = new ArdenTime(start + 30 * 3600000L);
+			Assert.assertTrue(query.occursWithinTo(from, to).latest(2) instanceof JDBCQuery);
+			Assert.assertTrue(query.occursWithinTo(from, to).average() instanceof JDBCQuery);
+			
+			assertSameResult(memory.occursWithinTo(from, to), query.occursWithinTo(from, to));
+			assertSameResult(memory.occursNotWithinTo(from, to), query.occursNotWithinTo(from, to));
+			assertSameResult(memory.occursBefore(from), query.occursBefore(from));
+			assertSameResult(memory.occursNotBefore(from), query.occursNotBefore(from));
+			assertSameResult(memory.occursAfter(to), query.occursAfter(to));
+			assertSameResult(memory.occursNotAfter(to), query.occursNotAfter(to));
+			assertSameResult(memory.occursAt(from), query.occursAt(from));
+			assertSameResult(memory.occursNotAt(from), query.occursNotAt(from));
+			assertSameResult(memory.latest(), query.latest());
+			assertSameResult(memory.earliest(), query.earliest());
+			assertSameResult(memory.occursBefore(to).latest(), query.occursBefore(to).latest());
+			assertSameResult(memory.occursAfter(to).earliest(3), query.occursAfter(to).earliest(3));
+			assertSameResult(memory.occursAfter(new ArdenTime(start + 100 * 3600000L)).latest(), query.occursAfter(
+					new ArdenTime(start + 100 * 3600000L)).latest());
+			assertSameResult(memory.count(), query.count());
+			assertSameResult(memory.occursWithinTo(from, to).count(), query.occursWithinTo(from, to).count());
+			assertSameResult(memory.exist(), query.exist());
+			// the range includes the null value
+			assertSameResult(memory.sum(), query.sum());
+			assertSameResult(memory.average(), query.average());
+			assertSameResult(memory.occursAfter(to).sum(), query.occursAfter(to).sum());
+			assertSameResult(memory.occursAfter(to).average(), query.occursAfter(to).average());
+			assertSameResult(memory.occursAt(to).average(), query.occursAt(to).average());
+			// operators that are evaluated in memory after the SQL part
+			assertSameResult(memory.occursAfter(to).maximum(), query.occursAfter(to).maximum());
+			assertSameResult(memory.latest(3).average(), query.latest(3).average());
+		} finally {
+			connection.close();
+		}
+	}
+	
+	/** A single row stays a single value per column, like in memory. */
+	@Test
+	public void PushDownOfSingleRow() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		try {
+			Statement stmt = connection.createStatement();
+			stmt.executeUpdate("create table weight (patient integer, val integer, taken timestamp)");
+			long start = Timestamp.valueOf("2010-01-01 00:00:00").getTime();
+			stmt.executeUpdate("insert into weight values (1, 80, '" + new Timestamp(start) + "')");
+			for (int i = 0; i < 3; i++)
+				stmt.executeUpdate("insert into weight values (2, " + (70 + i) + ", '"
+						+ new Timestamp(start + i * 60000L) + "')");
+			ArdenTime time = new ArdenTime(start + 60000L);
+			for (int patient = 1; patient <= 2; patient++) {
+				JDBCQuery query = new JDBCQuery("select val, taken as primarytime from weight where patient = "
+						+ patient, connection);
+				MemoryQuery memory = new MemoryQuery(query.execute());
+				Assert.assertTrue(query.occursBefore(time) instanceof JDBCQuery);
+				ArdenValue[] pushedDown = query.occursBefore(time).tryExecute();
+				Assert.assertNotNull(pushedDown);
+				Assert.assertEquals(patient == 2, pushedDown[0] instanceof ArdenList);
+				assertSameResult(memory.occursBefore(time), query.occursBefore(time));
+				assertSameResult(memory.occursAfter(time), query.occursAfter(time));
+				assertSameResult(memory.occursBefore(time).count(), query.occursBefore(time).count());
+			}
+		} finally {
+			connection.close();
+		}
+	}
+	
+	/** Like in memory, there is no latest or earliest row if a row has no primary time. */
+	@Test
+	public void PushDownWithNullTime() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		try {
+			Statement stmt = connection.createStatement();
+			stmt.executeUpdate("create table temperature (val integer, taken timestamp)");
+			long start = Timestamp.valueOf("2010-01-01 00:00:00").getTime();
+			for (int i = 0; i < 10; i++) {
+				String taken = (i == 4) ? "null" : "'" + new Timestamp(start + i * 60000L) + "'";
+				stmt.executeUpdate("insert into temperature values (" + (36 + i) + ", " + taken + ")");
+			}
+			JDBCQuery query = new JDBCQuery("select val, taken as primarytime from temperature", connection);
+			MemoryQuery memory = new MemoryQuery(query.execute());
+			Assert.assertTrue(query.latest() instanceof JDBCQuery);
+			Assert.assertEquals(ArdenNull.INSTANCE, query.latest().execute()[0]);
+			assertSameResult(memory.latest(), query.latest());
+			assertSameResult(memory.earliest(), query.earliest());
+			assertSameResult(memory.latest(3), query.latest(3));
+			assertSameResult(memory.earliest(3), query.earliest(3));
+			// the row without primary time is not filtered out by a time constraint
+			ArdenTime time = new ArdenTime(start + 5 * 60000L);
+			assertSameResult(memory.occursNotAfter(time).latest(), query.occursNotAfter(time).latest());
+			assertSameResult(memory.occursBefore(time).earliest(2), query.occursBefore(time).earliest(2));
+		} finally {
+			connection.close();
+		}
+	}
+	
+	/** Databases that reject the translated statement get the result evaluated in memory. */
+	@Test
+	public void PushDownFallsBackToMemory() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		try {
+			Statement stmt = connection.createStatement();
+			stmt.executeUpdate("create table pulse (val integer, taken timestamp)");
+			long start = Timestamp.valueOf("2010-01-01 00:00:00").getTime();
+			for (int i = 0; i < 10; i++)
+				stmt.executeUpdate("insert into pulse values (" + (60 + i) + ", '" + new Timestamp(start + i * 60000L)
+						+ "')");
+			// the comment hides the end of the statements built around the mapping
+			String mapping = "select val, taken as primarytime from pulse -- all values";
+			StatementCache cache = new StatementCache(connection, 10);
+			JDBCQuery query = new JDBCQuery(mapping, connection, JDBCQuery.DEFAULT_PRIMARY_TIME_COLUMN, cache, null);
+			MemoryQuery memory = new MemoryQuery(query.execute());
+			ArdenTime time = new ArdenTime(start + 5 * 60000L);
+			DatabaseQuery sum = query.sum();
+			Assert.assertTrue(sum instanceof JDBCQuery);
+			assertSameResult(memory.latest(3), query.latest(3));
+			assertSameResult(memory.sum(), sum);
+			assertSameResult(memory.occursAfter(time).count(), query.occursAfter(time).count());
+			assertSameResult(memory.occursAfter(new ArdenTime(start * 2)).count(), query.occursAfter(
+					new ArdenTime(start * 2)).count());
+			assertSameResult(memory.occursBefore(time).average(), query.occursBefore(time).average());
+			
+			// the mapping is not translated on this connection anymore
+			JDBCQuery again = new JDBCQuery(mapping, connection, JDBCQuery.DEFAULT_PRIMARY_TIME_COLUMN, cache, null);
+			Assert.assertFalse(again.latest(3) instanceof JDBCQuery);
+			assertSameResult(memory.latest(3), again.latest(3));
+		} finally {
+			connection.close();
+		}
+	}
+	
+	/** Errors caused by the data only affect the failed execution. */
+	@Test
+	public void PushDownSurvivesDataErrors() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		try {
+			Statement stmt = connection.createStatement();
+			stmt.executeUpdate("create table pulse (val varchar(10), taken timestamp)");
+			long start = Timestamp.valueOf("2010-01-01 00:00:00").getTime();
+			for (int i = 0; i < 10; i++)
+				stmt.executeUpdate("insert into pulse values ('" + (60 + i) + "', '"
+						+ new Timestamp(start + i * 60000L) + "')");
+			stmt.executeUpdate("insert into pulse values ('none', '" + new Timestamp(start + 10 * 60000L) + "')");
+			String mapping = "select cast(val as integer) as val, taken as primarytime from pulse";
+			StatementCache cache = new StatementCache(connection, 10);
+			JDBCQuery query = new JDBCQuery(mapping, connection, JDBCQuery.DEFAULT_PRIMARY_TIME_COLUMN, cache, null);
+			DatabaseQuery sum = query.sum();
+			Assert.assertTrue(sum instanceof JDBCQuery);
+			Assert.assertNull(sum.tryExecute());
+			
+			stmt.executeUpdate("delete from pulse where val = 'none'");
+			JDBCQuery again = new JDBCQuery(mapping, connection, JDBCQuery.DEFAULT_PRIMARY_TIME_COLUMN, cache, null);
+			sum = again.sum();
+			Assert.assertTrue(sum instanceof JDBCQuery);
+			ArdenValue[] result = sum.execute();
+			Assert.assertEquals(645, ((ArdenNumber) result[0]).value, 0);
+		} finally {
+			connection.close();
+		}
+	}
+	
+	@Test
+	public void StatementCacheReusesStatements() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		try {
+			StatementCache cache = new StatementCache(connection, 2);
+			PreparedStatement first = cache.acquire("select 1");
+			cache.release("select 1", first);
+			Assert.assertSame(first, cache.acquire("select 1"));
+			Assert.assertEquals(1, cache.getHitCount());
+			Assert.assertEquals(1, cache.getMissCount());
+			cache.release("select 1", first);
+			
+			PreparedStatement second = cache.acquire("select 2");
+			PreparedStatement third = cache.acquire("select 3");
+			cache.release("select 2", second);
+			cache.release("select 3", third);
+			// "select 1" was the least recently used statement
+			Assert.assertTrue(first.isClosed());
+			Assert.assertFalse(second.isClosed());
+			Assert.assertEquals(2, cache.size());
+			
+			cache.close();
+			Assert.assertTrue(second.isClosed());
+			Assert.assertTrue(third.isClosed());
+			Assert.assertFalse(connection.isClosed());
+		} finally {
+			connection.close();
+		}
+	}
+	
+	@Test
+	public void MappingParameters() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		try {
+			Statement stmt = connection.createStatement();
+			stmt.executeUpdate("create table lab (patient varchar(10), val integer, taken timestamp)");
+			long start = Timestamp.valueOf("2010-01-01 00:00:00").getTime();
+			for (int i = 0; i < 10; i++) {
+				stmt.executeUpdate("insert into lab values ('p" + (i % 2) + "', " + i + ", '"
+						+ new Timestamp(start + i * 3600000L) + "')");
+			}
+			stmt.close();
+			StatementCache cache = new StatementCache(connection, StatementCache.DEFAULT_SIZE);
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("patient_id", "p1");
+			String mapping = "select val, taken as primarytime from lab where patient = :Patient_Id and val <> 0";
+			
+			for (int i = 0; i < 3; i++) {
+				JDBCQuery query = new JDBCQuery(mapping, connection, JDBCQuery.DEFAULT_PRIMARY_TIME_COLUMN, cache,
+						parameters);
+				ArdenValue[] result = query.execute();
+				Assert.assertEquals("(1,3,5,7,9)", result[0].toString());
+				// mapping parameters are bound before the parameters of the time constraints
+				result = query.occursAfter(new ArdenTime(start + 4 * 3600000L)).latest().execute();
+				Assert.assertEquals("9", result[0].toString());
+			}
+			Assert.assertTrue(cache.getHitCount() > 0);
+			cache.close();
+		} finally {
+			connection.close();
+		}
+	}
+	
+	/** Returns a connection that records the SQL text of the prepared statements. */
+	private static Connection recordStatements(final Connection connection, final List<String> statements) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("prepareStatement"))
+							statements.add((String) args[0]);
+						try {
+							return method.invoke(connection, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+	
+	@Test
+	public void CollectionParameters() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		try {
+			Statement stmt = connection.createStatement();
+			stmt.executeUpdate("create table ward (patient varchar(10), bed integer)");
+			stmt.executeUpdate("insert into ward values ('p1', 1), ('p2', 2), ('p3', 3)");
+			stmt.close();
+			List<String> statements = new ArrayList<String>();
+			Connection recording = recordStatements(connection, statements);
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			String mapping = "select bed from ward where patient in (:patients)";
+			
+			parameters.put("patients", Arrays.asList("p1", "p3"));
+			JDBCQuery query = new JDBCQuery(mapping, recording, JDBCQuery.DEFAULT_PRIMARY_TIME_COLUMN,
+					new StatementCache(recording, StatementCache.DEFAULT_SIZE), parameters);
+			Assert.assertEquals("(1,3)", query.execute()[0].toString());
+			Assert.assertEquals(Arrays.asList("select bed from ward where patient in (?, ?)"), statements);
+			
+			// an empty collection matches no rows; "IN ()" is invalid in most databases
+			statements.clear();
+			parameters.put("patients", Collections.emptyList());
+			query = new JDBCQuery(mapping, recording, JDBCQuery.DEFAULT_PRIMARY_TIME_COLUMN, new StatementCache(
+					recording, StatementCache.DEFAULT_SIZE), parameters);
+			ArdenValue[] count = query.count().tryExecute();
+			Assert.assertNotNull(count);
+			Assert.assertEquals(new ArdenNumber(0), count[0]);
+			for (String sql : statements)
+				Assert.assertTrue(sql, sql.contains("in (NULL)"));
+		} finally {
+			connection.close();
+		}
+	}
+	
+	@Test
+	public void ConnectionPoolLimits() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		connection.close();
+		ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:", 2, 50, ConnectionPool.DEFAULT_IDLE_TIMEOUT, 1, 4);
+		try {
+			StatementCache first = pool.acquire();
+			StatementCache second = pool.acquire();
+			Assert.assertNotSame(first.getConnection(), second.getConnection());
+			Assert.assertEquals(2, pool.getActiveCount());
+			try {
+				pool.acquire();
+				Assert.fail("expected a timeout");
+			} catch (SQLException e) {
+				// all connections are in use
+			}
+			pool.release(second);
+			Assert.assertSame(second, pool.acquire());
+			
+			// closed connections are not reused
+			second.getConnection().close();
+			pool.release(second);
+			Assert.assertEquals(0, pool.getIdleCount());
+			StatementCache third = pool.acquire();
+			Assert.assertNotSame(second, third);
+			Assert.assertFalse(third.getConnection().isClosed());
+			pool.release(third);
+			pool.release(first);
+			Assert.assertEquals(2, pool.getIdleCount());
+			Assert.assertEquals(0, pool.getActiveCount());
+		} finally {
+			pool.close();
+		}
+		Assert.assertEquals(0, pool.getIdleCount());
+	}
+	
+	@Test
+	public void ConnectionPoolIdleEviction() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		connection.close();
+		ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:", 2, 1000, 20, 1, 4);
+		try {
+			StatementCache statements = pool.acquire();
+			pool.release(statements);
+			Assert.assertEquals(1, pool.getIdleCount());
+			Thread.sleep(50);
+			pool.evictIdleConnections();
+			Assert.assertEquals(0, pool.getIdleCount());
+			Assert.assertTrue(statements.getConnection().isClosed());
+		} finally {
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void JDBCExecutionContextPool() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		connection.close();
+		// a named database, so that all pooled connections see the same data
+		String[] args = new String[] { "-e", "jdbc:h2:mem:contextpool;DB_CLOSE_DELAY=-1" };
+		CommandLineOptions options = CliFactory.parseArguments(CommandLineOptions.class, args);
+		JDBCExecutionContext context = new JDBCExecutionContext(options);
+		try {
+			context.setPatientId(Integer.valueOf(2));
+			MedicalLogicModule mlm = ActionTests.parseTemplate(
+					"varA := read {create table person (id integer, name varchar(10))};\n" +
+					"varB := read {insert into person values (1, 'A'), (2, 'B')};\n" +
+					"varC := read {select name from person where id = :patient_id};\n",
+					"conclude true;",
+					"return varC;");
+			ArdenValue[] result = mlm.run(context, null);
+			Assert.assertEquals(new ArdenString("B"), result[0]);
+			Assert.assertEquals(0, context.getConnectionPool().getActiveCount());
+			Assert.assertTrue(context.getConnectionPool().getIdleCount() >= 1);
+			context.write(new ArdenString("drop table person"), "database");
+		} finally {
+			context.close();
+		}
+	}
+	
+	@Test
+	public void BatchEvaluation() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		connection.close();
+		String[] args = new String[] { "-e", "jdbc:h2:mem:batch;DB_CLOSE_DELAY=-1" };
+		CommandLineOptions options = CliFactory.parseArguments(CommandLineOptions.class, args);
+		JDBCExecutionContext context = new JDBCExecutionContext(options);
+		try {
+			context.write(new ArdenString("create table vitals (patient integer, pulse integer)"), "database");
+			for (int i = 0; i < 100; i++)
+				context.write(new ArdenString("insert into vitals values (" + i + ", " + (60 + i) + ")"), "database");
+			String mapping = "select pulse from vitals where patient = :patient_id";
+			
+			JDBCExecutionContext child = context.forPatient(Integer.valueOf(7));
+			Assert.assertEquals("67", child.createQuery(mapping).execute()[0].toString());
+			Assert.assertSame(context.getDelayedCalls(), child.getDelayedCalls());
+			child.close();
+			Assert.assertEquals(1, context.getConnectionPool().getIdleCount());
+			
+			MedicalLogicModule mlm = ActionTests.parseTemplate("p := read {" + mapping + "};", "conclude p > 100;",
+					"return p;");
+			List<JDBCExecutionContext> patients = new ArrayList<JDBCExecutionContext>();
+			for (int i = 0; i < 100; i++)
+				patients.add(context.forPatient(Integer.valueOf(i)));
+			BatchEvaluator evaluator = new BatchEvaluator(mlm, ForkJoinPool.commonPool(), 16);
+			evaluator.setPrefetcher(new JDBCPrefetcher());
+			final Map<ExecutionContext, ArdenValue> results = new HashMap<ExecutionContext, ArdenValue>();
+			final List<Throwable> errors = new ArrayList<Throwable>();
+			long count = evaluator.evaluate(patients.iterator(), null, new BatchEvaluator.ResultHandler() {
+				@Override
+				public void completed(ExecutionContext context, ArdenValue[] result) {
+					if (result != null)
+						results.put(context, result[0]);
+				}
+				
+				@Override
+				public void failed(ExecutionContext context, Throwable error) {
+					errors.add(error);
+				}
+			});
+			Assert.assertEquals(100, count);
+			Assert.assertEquals(Collections.emptyList(), errors);
+			Assert.assertEquals(Collections.singleton(mapping), evaluator.getMappings());
+			Assert.assertEquals(59, results.size());
+			for (int i = 41; i < 100; i++)
+				Assert.assertEquals(new ArdenNumber(60 + i), results.get(patients.get(i)));
+			context.write(new ArdenString("drop table vitals"), "database");
+		} finally {
+			context.close();
+		}
+	}
+	
+	@Test
+	public void PrefetchesBatchOfPatients() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		connection.close();
+		String[] args = new String[] { "-e", "jdbc:h2:mem:prefetch;DB_CLOSE_DELAY=-1" };
+		CommandLineOptions options = CliFactory.parseArguments(CommandLineOptions.class, args);
+		JDBCExecutionContext context = new JDBCExecutionContext(options);
+		try {
+			context.write(new ArdenString("create table labs (patient integer, val integer, taken timestamp)"),
+					"database");
+			long start = Timestamp.valueOf("2010-01-01 00:00:00").getTime();
+			for (int i = 0; i < 10; i++) {
+				for (int j = 0; j <= i % 3; j++)
+					context.write(new ArdenString("insert into labs values (" + i + ", " + (10 * i + j) + ", '"
+							+ new Timestamp(start + j * 60000L) + "')"), "database");
+			}
+			String mapping = "select val, taken as primarytime from labs where patient = :patient_id order by taken";
+			String count = "select count(*) from labs where patient = :patient_id";
+			// a patient without rows, read without prefetching
+			Assert.assertEquals(ArdenList.EMPTY, context.forPatient(Integer.valueOf(10)).createQuery(mapping)
+					.execute()[0]);
+			List<ExecutionContext> patients = new ArrayList<ExecutionContext>();
+			for (int i = 0; i < 11; i++)
+				patients.add(context.forPatient(Integer.valueOf(i)));
+			new JDBCPrefetcher().prefetch(Arrays.asList(mapping, count), patients);
+			
+			// the prefetched rows are read although they are gone from the database
+			context.write(new ArdenString("delete from labs"), "database");
+			context.write(new ArdenString("insert into labs values (10, 999, null)"), "database");
+			for (int i = 0; i < 10; i++) {
+				JDBCExecutionContext patient = (JDBCExecutionContext) patients.get(i);
+				ArdenValue[] values = patient.createQuery(mapping).execute();
+				Assert.assertEquals(1, values.length);
+				Assert.assertEquals(i % 3 == 0 ? 1 : i % 3 + 1, values[0] instanceof ArdenList ? ((ArdenList) values[0])
+						.size() : 1);
+				ArdenValue latest = patient.createQuery(mapping).latest().execute()[0];
+				Assert.assertEquals(new ArdenNumber(10 * i + i % 3), latest);
+				Assert.assertEquals(start + (i % 3) * 60000L, latest.primaryTime);
+				// aggregates are not prefetched
+				Assert.assertEquals(new ArdenNumber(0), patient.createQuery(count).execute()[0]);
+			}
+			// patients without rows get the same empty lists without querying the database
+			JDBCExecutionContext patient = (JDBCExecutionContext) patients.get(10);
+			ArdenValue[] values = patient.createQuery(mapping).execute();
+			Assert.assertEquals(1, values.length);
+			Assert.assertEquals(ArdenList.EMPTY, values[0]);
+			context.write(new ArdenString("drop table labs"), "database");
+		} finally {
+			context.close();
+		}
+	}
+	
+	@Test
+	public void QueryCache() throws Exception {
+		Connection connection = openH2();
+		if (connection == null) {
+			return;
+		}
+		connection.close();
+		String[] args = new String[] { "-e", "jdbc:h2:mem:querycache;DB_CLOSE_DELAY=-1" };
+		CommandLineOptions options = CliFactory.parseArguments(CommandLineOptions.class, args);
+		JDBCExecutionContext context = new JDBCExecutionContext(options);
+		try {
+			Assert.assertNull(context.getQueryCache());
+			QueryCache cache = new QueryCache(100, 60000);
+			context.setQueryCache(cache);
+			context.write(new ArdenString("create table creatinine (patient integer, val double)"), "database");
+			context.write(new ArdenString("insert into creatinine values (1, 0.9), (2, 1.4)"), "database");
+			String mapping = "select val from creatinine where patient = :patient_id";
+			
+			JDBCExecutionContext first = context.forPatient(Integer.valueOf(1));
+			Assert.assertEquals("0.9", first.createQuery(mapping).execute()[0].toString());
+			Assert.assertEquals("0.9", first.createQuery(mapping).execute()[0].toString());
+			Assert.assertEquals("1.4", context.forPatient(Integer.valueOf(2)).createQuery(mapping).execute()[0].toString());
+			Assert.assertEquals(1, cache.getHitCount());
+			Assert.assertEquals(2, cache.getMissCount());
+			
+			// writes to the database invalidate the cached results
+			first.write(new ArdenString("update creatinine set val = 1.1 where patient = 1"), "database");
+			Assert.assertEquals(0, cache.size());
+			Assert.assertEquals("1.1", first.createQuery(mapping).execute()[0].toString());
+			
+			// failed queries are not cached
+			Assert.assertEquals(0, first.createQuery("select val from missing").execute().length);
+			Assert.assertEquals(1, cache.size());
+			
+			// parameter values are not mistaken for other parameters
+			String echo = "select cast(:patient_id as varchar) as p";
+			JDBCExecutionContext second = context.forPatient("2");
+			second.setParameter("unit", "mg");
+			Assert.assertEquals(new ArdenString("2"), second.createQuery(echo).execute()[0]);
+			Assert.assertEquals(new ArdenString("2, unit=mg"), context.forPatient("2, unit=mg").createQuery(echo)
+					.execute()[0]);
+			context.write(new ArdenString("drop table creatinine"), "database");
+		} finally {
+			context.close();
+		}
+	}
+	
+	private static void assertSameResult(DatabaseQuery expected, DatabaseQuery actual) {
+		ArdenValue[] expectedValues = expected.execute();
+		ArdenValue[] actualValues = actual.execute();
+		Assert.assertEquals(expectedValues.length, actualValues.length);
+		for (int i = 0; i < expectedValues.length; i++) {
+			Assert.assertEquals(expectedValues[i].toString(), actualValues[i].toString());
+			Assert.assertEquals(expectedValues[i].primaryTime, actualValues[i].primaryTime);
+			ArdenValue[] expectedElements = expectedValues[i].getElements();
+			ArdenValue[] actualElements = actualValues[i].getElements();
+			for (int j = 0; j < expectedElements.length; j++)
+				Assert.assertEquals(expectedElements[j].primaryTime, actualElements[j].primaryTime);
+		}
+	}
+	
 	@Test
 	public void JDBCExecutionContextRead() throws Exception {
 		if (loadSQLite() == null) {
@@ -144,7 +852,7 @@ public class JDBCQueryTests {
 
 		ArdenValue[] expected = {new ArdenNumber(1), new ArdenNumber(2), 
 				new ArdenString("A"), new ArdenString("B")};
-		ArdenValue[] resultList = ((ArdenList)(result[0])).values;
+		ArdenValue[] resultList = ((ArdenList)(result[0])).getElements();
 		
 		Assert.assertArrayEquals(expected, resultList);
 	}
@@ -0,0 +1,101 @@
+package arden.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.URL;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import arden.compiler.CompiledMlm;
+import arden.compiler.Compiler;
+import arden.compiler.KnowledgeBaseClassLoader;
+import arden.runtime.BaseExecutionContext;
+
+public class KnowledgeBaseClassLoaderTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Class<?> getImplementationClass(CompiledMlm mlm) throws Exception {
+		return mlm.createInstance(new TestContext(), null).getClass();
+	}
+
+	private static CompiledMlm compile(String mlmname, String action) throws Exception {
+		InputStream s = ActionTests.class.getResourceAsStream("ActionTemplate.mlm");
+		String code = ActionTests.inputStreamToString(s).replace("test_mlm", mlmname).replace("$DATA", "")
+				.replace("$LOGIC", "conclude true;").replace("$ACTION", action);
+		return new Compiler().compileMlm(new StringReader(code));
+	}
+
+	private static byte[] getClassData(CompiledMlm mlm) throws Exception {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		mlm.saveClassFile(data);
+		return data.toByteArray();
+	}
+
+	@Test
+	public void MlmsShareLoader() throws Exception {
+		KnowledgeBaseClassLoader loader = new KnowledgeBaseClassLoader(0);
+		CompiledMlm first = loader.addMlm(compile("first_mlm", "return 1;"));
+		CompiledMlm second = loader.addMlm(getClassData(compile("second_mlm", "return 2;")), "second_mlm");
+		Assert.assertEquals("1", first.run(new TestContext(), null)[0].toString());
+		Assert.assertEquals("2", second.run(new TestContext(), null)[0].toString());
+		Assert.assertSame(loader, getImplementationClass(first).getClassLoader());
+		Assert.assertSame(loader, getImplementationClass(second).getClassLoader());
+		Assert.assertSame(getImplementationClass(first), loader.loadClass("first_mlm"));
+		Assert.assertTrue(loader.containsClass("second_mlm"));
+	}
+
+	@Test
+	public void FirstClassOfNameIsKept() throws Exception {
+		KnowledgeBaseClassLoader loader = new KnowledgeBaseClassLoader(0);
+		CompiledMlm first = loader.addMlm(compile("some_mlm", "return 1;"));
+		Assert.assertFalse(loader.addClass("some_mlm", getClassData(compile("some_mlm", "return 2;"))));
+		CompiledMlm again = loader.addMlm(compile("some_mlm", "return 2;"));
+		Assert.assertSame(first, again);
+		Assert.assertEquals("1", again.run(new TestContext(), null)[0].toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void MlmCannotReplaceHelperClass() throws Exception {
+		KnowledgeBaseClassLoader loader = new KnowledgeBaseClassLoader(0);
+		loader.addClass("some_mlm", getClassData(compile("some_mlm", "return 1;")));
+		loader.addMlm(compile("some_mlm", "return 2;"));
+	}
+
+	@Test(expected = ClassNotFoundException.class)
+	public void UnknownClassIsNotFound() throws Exception {
+		new KnowledgeBaseClassLoader(0).loadClass("unknown_mlm");
+	}
+
+	@Test
+	public void UnloadModulesStartsNewGeneration() throws Exception {
+		File directory = folder.getRoot();
+		File file = new File(directory, "called_mlm.class");
+		OutputStream out = new FileOutputStream(file);
+		out.write(getClassData(compile("called_mlm", "return 1;")));
+		out.close();
+		BaseExecutionContext context = new BaseExecutionContext(new URL[] { directory.toURI().toURL() });
+		CompiledMlm old = (CompiledMlm) context.findModule("called_mlm", null);
+		Assert.assertSame(old, context.findModule("called_mlm", null));
+		Assert.assertSame(context.getModuleClassLoader(), getImplementationClass(old).getClassLoader());
+
+		// hot swap
+		out = new FileOutputStream(file);
+		out.write(getClassData(compile("called_mlm", "return 2;")));
+		out.close();
+		context.unloadModules();
+		CompiledMlm current = (CompiledMlm) context.findModule("called_mlm", null);
+		Assert.assertEquals(1, context.getModuleClassLoader().getGeneration());
+		Assert.assertSame(context.getModuleClassLoader(), getImplementationClass(current).getClassLoader());
+		Assert.assertEquals("2", current.run(new TestContext(), null)[0].toString());
+		// MLMs of the old generation keep working until they are released
+		Assert.assertEquals("1", old.run(new TestContext(), null)[0].toString());
+	}
+}
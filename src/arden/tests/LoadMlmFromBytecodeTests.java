@@ -33,6 +33,43 @@ public class LoadMlmFromBytecodeTests {
 	}
 	
 
+	@Test
+	public void ReportsIncompatibleClassFile() throws Exception {
+		CompiledMlm mlm = ActionTests.parseTemplate("", "conclude true;", "return null;");
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		mlm.saveClassFile(bos);
+		// refer to a field the runtime does not have
+		String data = new String(bos.toByteArray(), "ISO-8859-1");
+		Assert.assertTrue(data.contains("INSTANCE"));
+		byte[] patched = data.replace("INSTANCE", "INSTANCX").getBytes("ISO-8859-1");
+		MedicalLogicModule old = new CompiledMlm(new ByteArrayInputStream(patched), mlm.getName());
+		try {
+			old.run(new TestContext(), null);
+			Assert.fail();
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getMessage().contains("incompatible version"));
+			Assert.assertTrue(e.getCause() instanceof NoSuchFieldError);
+		}
+	}
+
+	@Test
+	public void RejectsOlderClassFileFormat() throws Exception {
+		CompiledMlm mlm = ActionTests.parseTemplate("", "conclude true;", "return null;");
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		mlm.saveClassFile(bos);
+		// without getFormatVersion(), like class files of older versions
+		String data = new String(bos.toByteArray(), "ISO-8859-1");
+		Assert.assertTrue(data.contains("getFormatVersion"));
+		byte[] patched = data.replace("getFormatVersion", "getFormatVersioX").getBytes("ISO-8859-1");
+		try {
+			new CompiledMlm(new ByteArrayInputStream(patched), mlm.getName()).run(new TestContext(), null);
+			Assert.fail();
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getMessage().contains("incompatible version"));
+			Assert.assertTrue(e.getMessage().contains("format 1"));
+		}
+	}
+
 	@Test
 	public void X21() throws Exception {
 		MedicalLogicModule mlm = compile("x2.1");
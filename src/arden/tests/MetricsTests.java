@@ -0,0 +1,77 @@
+package arden.tests;
+
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.compiler.CompiledMlm;
+import arden.runtime.ExecutionListener;
+import arden.runtime.metrics.MetricsRegistry;
+
+public class MetricsTests {
+	@Test
+	public void ContextsAreNotObservedByDefault() throws Exception {
+		Assert.assertSame(ExecutionListener.NONE, new TestContext().getExecutionListener());
+	}
+
+	@Test
+	public void RecordsSlotsQueriesAndWrites() throws Exception {
+		TestContext context = new TestContext();
+		MetricsRegistry metrics = new MetricsRegistry();
+		context.setExecutionListener(metrics);
+		CompiledMlm mlm = EvokeTests.parseTemplate("x := READ {lab results}; y := READ LAST {lab results};", "",
+				"conclude true;", "write \"a\"; write \"b\";");
+		mlm.run(context, null);
+		mlm.run(context, null);
+
+		MetricsRegistry.MlmMetrics mlmMetrics = metrics.getMlmMetrics(mlm.getName());
+		Assert.assertEquals(2, mlmMetrics.getRuns());
+		Assert.assertEquals(2, mlmMetrics.getConcluded());
+		Assert.assertEquals(0, mlmMetrics.getFailures());
+		Assert.assertEquals(2, mlmMetrics.getLatency(ExecutionListener.DATA).getCount());
+		Assert.assertEquals(2, mlmMetrics.getLatency(ExecutionListener.LOGIC).getCount());
+		Assert.assertEquals(2, mlmMetrics.getLatency(ExecutionListener.ACTION).getCount());
+		Assert.assertEquals(4, metrics.getQueryLatency("lab results").getCount());
+		Assert.assertEquals(4, metrics.getWriteCount(null));
+		Assert.assertEquals("a\nb\na\nb\n", context.getOutputText());
+	}
+
+	@Test
+	public void CountsFailures() throws Exception {
+		TestContext context = new TestContext();
+		MetricsRegistry metrics = new MetricsRegistry();
+		context.setExecutionListener(metrics);
+		CompiledMlm mlm = EvokeTests.parseTemplate("", "", "conclude false;", "");
+		mlm.run(context, null);
+		Assert.assertEquals(1, metrics.getMlmMetrics(mlm.getName()).getRuns());
+		Assert.assertEquals(0, metrics.getMlmMetrics(mlm.getName()).getConcluded());
+		Assert.assertEquals(0, metrics.getMlmMetrics(mlm.getName()).getLatency(ExecutionListener.ACTION).getCount());
+
+		CompiledMlm failing = EvokeTests.parseTemplate("x := MLM 'missing';", "", "conclude true;", "call x;");
+		try {
+			failing.run(context, null);
+			Assert.fail();
+		} catch (Exception e) {
+		}
+		Assert.assertEquals(1, metrics.getMlmMetrics(failing.getName()).getFailures());
+	}
+
+	@Test
+	public void WritesPrometheusText() throws Exception {
+		TestContext context = new TestContext();
+		MetricsRegistry metrics = new MetricsRegistry();
+		context.setExecutionListener(metrics);
+		CompiledMlm mlm = EvokeTests.parseTemplate("x := READ {\"quoted\" mapping};", "", "conclude true;", "");
+		mlm.run(context, null);
+
+		StringWriter out = new StringWriter();
+		metrics.writePrometheus(out);
+		String text = out.toString();
+		Assert.assertTrue(text.contains("# TYPE arden_mlm_runs_total counter\n"));
+		Assert.assertTrue(text.contains("arden_mlm_runs_total{mlm=\"" + mlm.getName() + "\"} 1\n"));
+		Assert.assertTrue(text.contains("arden_mlm_phase_seconds_count{mlm=\"" + mlm.getName()
+				+ "\",phase=\"logic\"} 1\n"));
+		Assert.assertTrue(text.contains("arden_query_seconds_bucket{mapping=\"\\\"quoted\\\" mapping\",le=\"+Inf\"} 1\n"));
+	}
+}
@@ -0,0 +1,220 @@
+package arden.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.MlmDaemon;
+import arden.MlmSchedule;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.ExecutionContext;
+import arden.runtime.LibraryMetadata;
+import arden.runtime.MaintenanceMetadata;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.MedicalLogicModuleImplementation;
+import arden.runtime.events.EvokeEvent;
+import arden.runtime.events.FixedDateEvokeEvent;
+
+public class MlmScheduleTests {
+	@Test
+	public void FixedDates() throws Exception {
+		TestContext context = EvokeTests.createTestContext();
+		MedicalLogicModule later = EvokeTests.parseEvoke("1992-03-04");
+		MedicalLogicModule earlier = EvokeTests.parseEvoke("1991-03-04");
+		MedicalLogicModule past = EvokeTests.parseEvoke("1989-03-04");
+		MlmSchedule schedule = new MlmSchedule(context, null);
+		schedule.add(later);
+		schedule.add(earlier);
+		schedule.add(past);
+		Assert.assertEquals(2, schedule.size());
+		Assert.assertEquals(EvokeTests.createDate(1991, 2, 4), schedule.getNextTime());
+		Assert.assertTrue(schedule.pollDue(EvokeTests.createDate(1991, 2, 3)).isEmpty());
+
+		context.setCurrentTime(EvokeTests.createDate(1991, 2, 4));
+		Assert.assertEquals(Arrays.asList(earlier), schedule.pollDue(context.getCurrentTime()));
+		context.setCurrentTime(EvokeTests.createDate(1993, 0, 1));
+		Assert.assertEquals(Arrays.asList(later), schedule.pollDue(context.getCurrentTime()));
+		Assert.assertTrue(schedule.pollDue(context.getCurrentTime()).isEmpty());
+		Assert.assertTrue(schedule.isEmpty());
+	}
+
+	@Test
+	public void CyclicEvent() throws Exception {
+		TestContext context = EvokeTests.createTestContext();
+		MedicalLogicModule mlm = EvokeTests.parseEvoke("every 5 days for 10 years starting 5 days after 1992-03-04");
+		MlmSchedule schedule = new MlmSchedule(context, null);
+		schedule.add(mlm);
+		List<MedicalLogicModule> runs = new ArrayList<MedicalLogicModule>();
+		for (int day = 9; day <= 19; day++) {
+			context.setCurrentTime(EvokeTests.createDate(1992, 2, day));
+			runs.addAll(schedule.pollDue(context.getCurrentTime()));
+		}
+		// 1992-03-09, 1992-03-14 and 1992-03-19
+		Assert.assertEquals(3, runs.size());
+		// the next run time is determined once the current time is after the last one
+		Assert.assertEquals(EvokeTests.createDate(1992, 2, 19).value + 1, schedule.getNextTime().value);
+		context.setCurrentTime(EvokeTests.createDate(1992, 2, 20));
+		Assert.assertTrue(schedule.pollDue(context.getCurrentTime()).isEmpty());
+		Assert.assertEquals(EvokeTests.createDate(1992, 2, 24), schedule.getNextTime());
+	}
+
+	@Test
+	public void RescheduleAndRemove() throws Exception {
+		TestContext context = EvokeTests.createTestContext();
+		MedicalLogicModule mlm = EvokeTests.parseEvoke("every 5 days for 10 years starting 5 days after 1992-03-04");
+		MlmSchedule schedule = new MlmSchedule(context, null);
+		schedule.add(mlm);
+		schedule.add(mlm);
+		Assert.assertEquals(1, schedule.size());
+		schedule.remove(mlm);
+		Assert.assertTrue(schedule.isEmpty());
+		Assert.assertNull(schedule.getNextTime());
+	}
+
+	@Test(timeout = 10000)
+	public void DaemonReturnsWhenNothingIsScheduled() throws Exception {
+		TestContext context = EvokeTests.createTestContext();
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		mlms.add(EvokeTests.parseEvoke("1989-03-04"));
+		new MlmDaemon(mlms, context, null).run();
+	}
+
+	@Test(timeout = 10000)
+	public void DaemonWakesUpWhenStopped() throws Exception {
+		TestContext context = EvokeTests.createTestContext();
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		mlms.add(EvokeTests.parseEvoke("1992-03-04"));
+		MlmDaemon daemon = new MlmDaemon(mlms, context, null);
+		Thread thread = new Thread(daemon);
+		thread.start();
+		Thread.sleep(50);
+		Assert.assertTrue(thread.isAlive());
+		daemon.stop();
+		thread.join();
+	}
+
+	/** An MLM that runs at a fixed time, sleeps and records that it ran. */
+	private static final class SleepingModule implements MedicalLogicModule {
+		private final String name;
+		private final double priority;
+		private final long sleep;
+		private final EvokeEvent evoke;
+		private final List<String> log;
+
+		SleepingModule(String name, double priority, long sleep, ArdenTime time, List<String> log) {
+			this.name = name;
+			this.priority = priority;
+			this.sleep = sleep;
+			this.evoke = new FixedDateEvokeEvent(time);
+			this.log = log;
+		}
+
+		@Override
+		public ArdenValue[] run(ExecutionContext context, ArdenValue[] arguments) {
+			try {
+				Thread.sleep(sleep);
+				log.add(name);
+			} catch (InterruptedException e) {
+				log.add(name + " interrupted");
+			}
+			return null;
+		}
+
+		@Override
+		public MedicalLogicModuleImplementation createInstance(ExecutionContext context, ArdenValue[] arguments) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public MaintenanceMetadata getMaintenance() {
+			return null;
+		}
+
+		@Override
+		public LibraryMetadata getLibrary() {
+			return null;
+		}
+
+		@Override
+		public double getPriority() {
+			return priority;
+		}
+
+		@Override
+		public double getUrgency() {
+			return 50;
+		}
+
+		@Override
+		public EvokeEvent getEvoke(ExecutionContext context, ArdenValue[] arguments) {
+			return evoke;
+		}
+
+		@Override
+		public ArdenValue getValue(String name) {
+			return null;
+		}
+	}
+
+	private static ArdenTime inMilliseconds(long milliseconds) {
+		return new ArdenTime(System.currentTimeMillis() + milliseconds);
+	}
+
+	@Test(timeout = 10000)
+	public void DaemonRunsByPriority() throws Exception {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		ArdenTime time = inMilliseconds(100);
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		mlms.add(new SleepingModule("low", 10, 0, time, log));
+		mlms.add(new SleepingModule("high", 90, 0, time, log));
+		mlms.add(new SleepingModule("medium", 50, 0, time, log));
+		new MlmDaemon(mlms, new TestContext(), null).run();
+		Assert.assertEquals(Arrays.asList("high", "medium", "low"), log);
+	}
+
+	@Test(timeout = 10000)
+	public void DaemonRunsInParallel() throws Exception {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		ArdenTime time = inMilliseconds(100);
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		for (int i = 0; i < 4; i++)
+			mlms.add(new SleepingModule("mlm" + i, 50, 500, time, log));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			MlmDaemon daemon = new MlmDaemon(mlms, new TestContext(), null, executor, 0, 10);
+			long start = System.currentTimeMillis();
+			daemon.run();
+			Assert.assertTrue(System.currentTimeMillis() - start < 1500);
+			Assert.assertEquals(4, log.size());
+			Assert.assertEquals(0, daemon.getPendingCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void DaemonInterruptsAfterTimeout() throws Exception {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		mlms.add(new SleepingModule("slow", 50, 60000, inMilliseconds(50), log));
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			new MlmDaemon(mlms, new TestContext(), null, executor, 100, 1).run();
+			Assert.assertEquals(Arrays.asList("slow interrupted"), log);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package arden.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenNull;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.BinaryOperator;
+import arden.runtime.DatabaseQuery;
+import arden.runtime.ExpressionHelpers;
+import arden.runtime.MemoryQuery;
+
+/**
+ * Checks that operators on lists in numeric form give the same results as on
+ * the equivalent lists of ArdenNumbers.
+ */
+public class NumericListTests {
+	private static final long HOUR = 60L * 60 * 1000;
+
+	private static final double[] NUMBERS = { 120, 95, 180, 95, 210, 150 };
+	private static final long[] TIMES = { 3 * HOUR, 1 * HOUR, 5 * HOUR, 2 * HOUR, 6 * HOUR, 4 * HOUR };
+
+	private static ArdenList numeric(double[] numbers, long[] times) {
+		return new ArdenList(numbers.clone(), times.clone());
+	}
+
+	private static ArdenList boxed(double[] numbers, long[] times) {
+		ArdenValue[] values = new ArdenValue[numbers.length];
+		for (int i = 0; i < values.length; i++)
+			values[i] = ArdenNumber.create(numbers[i], times[i]);
+		return new ArdenList(values);
+	}
+
+	private static void assertSameResult(ArdenValue expected, ArdenValue actual) {
+		Assert.assertEquals(expected.getClass(), actual.getClass());
+		Assert.assertEquals(expected.toString(), actual.toString());
+		Assert.assertEquals(expected.primaryTime, actual.primaryTime);
+		if (expected instanceof ArdenList) {
+			ArdenValue[] e = expected.getElements();
+			ArdenValue[] a = actual.getElements();
+			Assert.assertEquals(e.length, a.length);
+			for (int i = 0; i < e.length; i++)
+				assertSameResult(e[i], a[i]);
+		}
+	}
+
+	@Test
+	public void ElementsAreCreatedOnDemand() throws Exception {
+		ArdenList list = numeric(NUMBERS, TIMES);
+		Assert.assertTrue(list.isNumeric());
+		Assert.assertEquals(6, list.size());
+		ArdenValue[] elements = list.getElements();
+		Assert.assertSame(elements, list.getElements());
+		assertSameResult(boxed(NUMBERS, TIMES), list);
+		Assert.assertEquals(boxed(NUMBERS, TIMES), list);
+	}
+
+	@Test
+	public void NaNIsNull() throws Exception {
+		ArdenList list = new ArdenList(new double[] { 1, Double.NaN }, new long[] { HOUR, 2 * HOUR });
+		Assert.assertTrue(list.getElements()[1] instanceof ArdenNull);
+		Assert.assertEquals(2 * HOUR, list.getElements()[1].primaryTime);
+	}
+
+	@Test
+	public void Arithmetic() throws Exception {
+		ArdenValue scalar = ArdenNumber.create(10, 3 * HOUR);
+		BinaryOperator[] ops = { BinaryOperator.ADD, BinaryOperator.SUB, BinaryOperator.MUL, BinaryOperator.DIV,
+				BinaryOperator.POW, BinaryOperator.LT, BinaryOperator.GE, BinaryOperator.EQ, BinaryOperator.NE };
+		for (BinaryOperator op : ops) {
+			assertSameResult(op.run(boxed(NUMBERS, TIMES), scalar), op.run(numeric(NUMBERS, TIMES), scalar));
+			assertSameResult(op.run(scalar, boxed(NUMBERS, TIMES)), op.run(scalar, numeric(NUMBERS, TIMES)));
+			assertSameResult(op.run(boxed(NUMBERS, TIMES), boxed(NUMBERS, TIMES)), op.run(numeric(NUMBERS, TIMES),
+					numeric(NUMBERS, TIMES)));
+		}
+		Assert.assertTrue(((ArdenList) BinaryOperator.ADD.run(numeric(NUMBERS, TIMES), scalar)).isNumeric());
+	}
+
+	@Test
+	public void NullElements() throws Exception {
+		double[] numbers = { 1, Double.NaN, 3 };
+		long[] times = { HOUR, 2 * HOUR, 3 * HOUR };
+		ArdenValue zero = new ArdenNumber(0);
+		assertSameResult(BinaryOperator.POW.run(boxed(numbers, times), zero), BinaryOperator.POW.run(numeric(
+				numbers, times), zero));
+		assertSameResult(BinaryOperator.DIV.run(boxed(numbers, times), zero), BinaryOperator.DIV.run(numeric(
+				numbers, times), zero));
+		assertSameResult(BinaryOperator.GT.run(boxed(numbers, times), zero), BinaryOperator.GT.run(numeric(numbers,
+				times), zero));
+		assertSameResult(ExpressionHelpers.sum(boxed(numbers, times)), ExpressionHelpers.sum(numeric(numbers, times)));
+		assertSameResult(ExpressionHelpers.average(boxed(numbers, times)), ExpressionHelpers.average(numeric(numbers,
+				times)));
+		assertSameResult(ExpressionHelpers.increase(boxed(numbers, times)), ExpressionHelpers.increase(numeric(
+				numbers, times)));
+	}
+
+	@Test
+	public void Aggregations() throws Exception {
+		ArdenList boxed = boxed(NUMBERS, TIMES);
+		ArdenList numeric = numeric(NUMBERS, TIMES);
+		assertSameResult(ExpressionHelpers.sum(boxed), ExpressionHelpers.sum(numeric));
+		assertSameResult(ExpressionHelpers.average(boxed), ExpressionHelpers.average(numeric));
+		assertSameResult(ExpressionHelpers.variance(boxed), ExpressionHelpers.variance(numeric));
+		assertSameResult(ExpressionHelpers.slope(boxed), ExpressionHelpers.slope(numeric));
+		assertSameResult(ExpressionHelpers.increase(boxed), ExpressionHelpers.increase(numeric));
+		assertSameResult(ExpressionHelpers.indexMinimum(boxed), ExpressionHelpers.indexMinimum(numeric));
+		assertSameResult(ExpressionHelpers.indexMaximum(boxed), ExpressionHelpers.indexMaximum(numeric));
+		assertSameResult(ExpressionHelpers.indexEarliest(boxed), ExpressionHelpers.indexEarliest(numeric));
+		assertSameResult(ExpressionHelpers.indexLatest(boxed), ExpressionHelpers.indexLatest(numeric));
+		assertSameResult(ExpressionHelpers.last(boxed, 2), ExpressionHelpers.last(numeric, 2));
+		assertSameResult(ExpressionHelpers.where(boxed, BinaryOperator.GT.run(boxed, new ArdenNumber(100))),
+				ExpressionHelpers.where(numeric, BinaryOperator.GT.run(numeric, new ArdenNumber(100))));
+		// none of the above needed the boxed elements
+		Assert.assertTrue(((ArdenList) ExpressionHelpers.increase(numeric)).isNumeric());
+	}
+
+	@Test
+	public void EmptyList() throws Exception {
+		ArdenList empty = new ArdenList(new double[0], new long[0]);
+		assertSameResult(ExpressionHelpers.sum(ArdenList.EMPTY), ExpressionHelpers.sum(empty));
+		assertSameResult(ExpressionHelpers.average(ArdenList.EMPTY), ExpressionHelpers.average(empty));
+		assertSameResult(ExpressionHelpers.variance(ArdenList.EMPTY), ExpressionHelpers.variance(empty));
+		assertSameResult(ExpressionHelpers.increase(ArdenList.EMPTY), ExpressionHelpers.increase(empty));
+		assertSameResult(ExpressionHelpers.indexLatest(ArdenList.EMPTY), ExpressionHelpers.indexLatest(empty));
+	}
+
+	@Test
+	public void MemoryQueryTimeConstraints() throws Exception {
+		ArdenTime start = new ArdenTime(2 * HOUR);
+		ArdenTime end = new ArdenTime(4 * HOUR);
+		DatabaseQuery boxed = new MemoryQuery(new ArdenValue[] { boxed(NUMBERS, TIMES) });
+		DatabaseQuery numeric = new MemoryQuery(new ArdenValue[] { numeric(NUMBERS, TIMES) });
+		assertSameResult(boxed.occursWithinTo(start, end).execute()[0], numeric.occursWithinTo(start, end)
+				.execute()[0]);
+		assertSameResult(boxed.occursWithinTo(end, start).execute()[0], numeric.occursWithinTo(end, start)
+				.execute()[0]);
+		assertSameResult(boxed.occursNotWithinTo(start, end).execute()[0], numeric.occursNotWithinTo(start, end)
+				.execute()[0]);
+		assertSameResult(boxed.occursBefore(end).execute()[0], numeric.occursBefore(end).execute()[0]);
+		assertSameResult(boxed.occursNotBefore(end).execute()[0], numeric.occursNotBefore(end).execute()[0]);
+		assertSameResult(boxed.occursAfter(start).execute()[0], numeric.occursAfter(start).execute()[0]);
+		assertSameResult(boxed.occursNotAfter(start).execute()[0], numeric.occursNotAfter(start).execute()[0]);
+		assertSameResult(boxed.occursAt(start).execute()[0], numeric.occursAt(start).execute()[0]);
+		assertSameResult(boxed.occursNotAt(start).execute()[0], numeric.occursNotAt(start).execute()[0]);
+		assertSameResult(boxed.occursAfter(start).latest().execute()[0], numeric.occursAfter(start).latest()
+				.execute()[0]);
+		assertSameResult(boxed.maximum().execute()[0], numeric.maximum().execute()[0]);
+		assertSameResult(boxed.first(3).execute()[0], numeric.first(3).execute()[0]);
+	}
+}
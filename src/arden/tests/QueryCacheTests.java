@@ -0,0 +1,178 @@
+package arden.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.runtime.ArdenList;
+import arden.runtime.ArdenNumber;
+import arden.runtime.ArdenTime;
+import arden.runtime.ArdenValue;
+import arden.runtime.DatabaseQuery;
+import arden.runtime.MemoryQuery;
+import arden.runtime.QueryCache;
+
+public class QueryCacheTests {
+	private static class CountingQuery extends DatabaseQuery {
+		int executions;
+
+		@Override
+		public ArdenValue[] execute() {
+			executions++;
+			return new ArdenValue[] { new ArdenNumber(1).setTime(1000), new ArdenNumber(2).setTime(2000) };
+		}
+	}
+
+	/** Returns one column with a list of two values. */
+	private static final class ListQuery extends CountingQuery {
+		@Override
+		public ArdenValue[] execute() {
+			executions++;
+			return new ArdenValue[] { new ArdenList(new ArdenValue[] { new ArdenNumber(1).setTime(1000),
+					new ArdenNumber(2).setTime(2000) }) };
+		}
+	}
+
+	/** Evaluates "latest" when it is executed, like a JDBCQuery. */
+	private static final class LazyQuery extends CountingQuery {
+		@Override
+		public DatabaseQuery latest() {
+			return new DatabaseQuery() {
+				@Override
+				public ArdenValue[] execute() {
+					executions++;
+					return new ArdenValue[] { new ArdenNumber(2).setTime(2000) };
+				}
+			};
+		}
+	}
+
+	@Test
+	public void SharesResults() throws Exception {
+		QueryCache cache = new QueryCache(10, 60000);
+		CountingQuery query = new CountingQuery();
+		Assert.assertEquals(2, cache.wrap(query, "lab", "lab p1").execute().length);
+		Assert.assertEquals(2, cache.wrap(query, "lab", "lab p1").execute().length);
+		Assert.assertEquals(1, query.executions);
+		cache.wrap(query, "lab", "lab p2").execute();
+		Assert.assertEquals(2, query.executions);
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(2, cache.getMissCount());
+
+		cache.invalidateAll();
+		Assert.assertEquals(0, cache.size());
+		cache.wrap(query, "lab", "lab p1").execute();
+		Assert.assertEquals(3, query.executions);
+	}
+
+	@Test
+	public void ConstraintsArePartOfTheKey() throws Exception {
+		QueryCache cache = new QueryCache(10, 60000);
+		LazyQuery query = new LazyQuery();
+		DatabaseQuery cached = cache.wrap(query, "lab", "lab");
+		Assert.assertEquals(2, cached.execute().length);
+		Assert.assertEquals(new ArdenNumber(2), cached.latest().execute()[0]);
+		Assert.assertEquals(2, query.executions);
+		Assert.assertEquals(new ArdenNumber(2), cached.latest().execute()[0]);
+		Assert.assertEquals(2, cached.execute().length);
+		Assert.assertEquals(2, query.executions);
+		Assert.assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void OtherOperatorsUseTheCachedResult() throws Exception {
+		QueryCache cache = new QueryCache(10, 60000);
+		ListQuery query = new ListQuery();
+		for (int i = 0; i < 3; i++)
+			Assert.assertEquals(new ArdenNumber(2), cache.wrap(query, "lab", "lab").last().execute()[0]);
+		Assert.assertEquals(1, query.executions);
+		Assert.assertEquals(2, cache.getHitCount());
+		Assert.assertEquals(1, cache.getMissCount());
+
+		// time windows relative to now must not become part of the key
+		for (int i = 0; i < 3; i++) {
+			DatabaseQuery window = cache.wrap(query, "lab", "lab").occursWithinTo(new ArdenTime(1500 + i),
+					new ArdenTime(3000 + i));
+			Assert.assertEquals(new ArdenList(new ArdenValue[] { new ArdenNumber(2) }), window.execute()[0]);
+		}
+		Assert.assertEquals(1, query.executions);
+		Assert.assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void ResultsReadBeforeInvalidationAreNotCached() throws Exception {
+		final QueryCache cache = new QueryCache(10, 60000);
+		// the data is changed while the query runs
+		CountingQuery query = new CountingQuery() {
+			@Override
+			public ArdenValue[] execute() {
+				ArdenValue[] result = super.execute();
+				cache.invalidateAll();
+				return result;
+			}
+		};
+		cache.wrap(query, "lab", "lab").execute();
+		Assert.assertEquals(0, cache.size());
+		cache.wrap(query, "lab", "lab").execute();
+		Assert.assertEquals(2, query.executions);
+	}
+
+	@Test
+	public void FailuresAreNotCached() throws Exception {
+		QueryCache cache = new QueryCache(10, 60000);
+		final CountingQuery query = new CountingQuery();
+		DatabaseQuery failing = new DatabaseQuery() {
+			@Override
+			public ArdenValue[] execute() {
+				ArdenValue[] result = tryExecute();
+				return result != null ? result : new ArdenValue[0];
+			}
+
+			@Override
+			public ArdenValue[] tryExecute() {
+				// fails the first time
+				return query.executions++ == 0 ? null : query.execute();
+			}
+		};
+		Assert.assertEquals(0, cache.wrap(failing, "lab", "lab").execute().length);
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(2, cache.wrap(failing, "lab", "lab").execute().length);
+		Assert.assertEquals(2, cache.wrap(failing, "lab", "lab").execute().length);
+		Assert.assertEquals(3, query.executions);
+	}
+
+	@Test
+	public void ExpiresResults() throws Exception {
+		QueryCache cache = new QueryCache(10, 60000);
+		cache.setTimeToLive("short", 20);
+		cache.setTimeToLive("never", 0);
+		CountingQuery query = new CountingQuery();
+		cache.wrap(query, "short", "short").execute();
+		cache.wrap(query, "short", "short").execute();
+		Assert.assertEquals(1, query.executions);
+		Thread.sleep(50);
+		cache.wrap(query, "short", "short").execute();
+		Assert.assertEquals(2, query.executions);
+
+		MemoryQuery uncached = new MemoryQuery(new ArdenValue[0]);
+		Assert.assertSame(uncached, cache.wrap(uncached, "never", "never"));
+	}
+
+	@Test
+	public void EvictsLeastRecentlyUsed() throws Exception {
+		QueryCache cache = new QueryCache(2, 60000);
+		CountingQuery a = new CountingQuery();
+		CountingQuery b = new CountingQuery();
+		CountingQuery c = new CountingQuery();
+		cache.wrap(a, "a", "a").execute();
+		cache.wrap(b, "b", "b").execute();
+		cache.wrap(a, "a", "a").execute();
+		cache.wrap(c, "c", "c").execute();
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals(1, cache.getEvictionCount());
+		// b was used least recently
+		cache.wrap(a, "a", "a").execute();
+		cache.wrap(b, "b", "b").execute();
+		Assert.assertEquals(1, a.executions);
+		Assert.assertEquals(2, b.executions);
+	}
+}
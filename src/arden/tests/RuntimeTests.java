@@ -1,6 +1,12 @@
 package arden.tests;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.junit.Assert;
@@ -29,4 +35,35 @@ public class RuntimeTests {
 		Assert.assertTrue(c.compare(t2, null) < 0);
 		Assert.assertTrue(c.compare(null, t2) > 0);
 	}
+
+	@Test
+	public void ArdenTimeToStringFromSeveralThreads() throws Exception {
+		final ArdenTime[] times = new ArdenTime[200];
+		final String[] expected = new String[times.length];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = new ArdenTime(1000000000000L + i * 86400123L);
+			expected[i] = times[i].toString();
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+			for (int t = 0; t < 4; t++) {
+				tasks.add(new Callable<Boolean>() {
+					public Boolean call() {
+						for (int n = 0; n < 50; n++) {
+							for (int i = 0; i < times.length; i++) {
+								if (!expected[i].equals(times[i].toString()))
+									return false;
+							}
+						}
+						return true;
+					}
+				});
+			}
+			for (Future<Boolean> result : pool.invokeAll(tasks))
+				Assert.assertTrue(result.get());
+		} finally {
+			pool.shutdown();
+		}
+	}
 }
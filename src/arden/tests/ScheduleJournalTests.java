@@ -0,0 +1,274 @@
+package arden.tests;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.MlmDaemon;
+import arden.MlmSchedule;
+import arden.compiler.Compiler;
+import arden.runtime.DatabaseQuery;
+import arden.runtime.MedicalLogicModule;
+import arden.runtime.ScheduleJournal;
+
+public class ScheduleJournalTests {
+	private static File createJournalFile() throws Exception {
+		File file = File.createTempFile("schedule", ".journal");
+		file.delete();
+		file.deleteOnExit();
+		new File(file.getPath() + ".compact").deleteOnExit();
+		return file;
+	}
+
+	@Test
+	public void ReplaysPendingRecords() throws Exception {
+		File file = createJournalFile();
+		ScheduleJournal journal = new ScheduleJournal(file);
+		long first = journal.add(ScheduleJournal.FIRING, 1000, "first", null);
+		long second = journal.add(ScheduleJournal.TRIGGER, 2000, "second", null);
+		journal.add(ScheduleJournal.CALL, 3000, "third", new byte[] { 1, 2, 3 });
+		journal.remove(second);
+		journal.close();
+
+		journal = new ScheduleJournal(file);
+		List<ScheduleJournal.Record> records = journal.getRecords();
+		Assert.assertEquals(2, records.size());
+		Assert.assertEquals(first, records.get(0).getId());
+		Assert.assertEquals(ScheduleJournal.FIRING, records.get(0).getKind());
+		Assert.assertEquals(1000, records.get(0).getTime());
+		Assert.assertEquals("first", records.get(0).getName());
+		Assert.assertEquals(ScheduleJournal.CALL, records.get(1).getKind());
+		Assert.assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, records.get(1).getPayload()));
+		Assert.assertTrue(journal.add(ScheduleJournal.FIRING, 4000, "fourth", null) > records.get(1).getId());
+		journal.close();
+	}
+
+	@Test
+	public void CompactsDeadRecords() throws Exception {
+		File file = createJournalFile();
+		ScheduleJournal journal = new ScheduleJournal(file, 4096, false);
+		List<Long> live = new ArrayList<Long>();
+		for (int i = 0; i < 100000; i++) {
+			long id = journal.add(ScheduleJournal.TRIGGER, i, "mlm" + (i % 10), null);
+			if (i % 1000 == 0)
+				live.add(id);
+			else
+				journal.remove(id);
+		}
+		// 100 live records, but far more were appended
+		Assert.assertTrue(journal.getCapacity() < 256 * 1024);
+		journal.close();
+
+		journal = new ScheduleJournal(file, 4096, false);
+		Assert.assertEquals(live.size(), journal.size());
+		for (int i = 0; i < live.size(); i++)
+			Assert.assertEquals(live.get(i).longValue(), journal.getRecords().get(i).getId());
+		journal.close();
+	}
+
+	@Test
+	public void GrowsWithoutDuplicatingRecords() throws Exception {
+		File file = createJournalFile();
+		ScheduleJournal journal = new ScheduleJournal(file, 4096, false);
+		int added = 0;
+		while (journal.getCapacity() == 4096) {
+			journal.add(ScheduleJournal.FIRING, added, "mlm" + added, null);
+			added++;
+		}
+		journal.close();
+
+		// every record is in the file once: walk the lengths after the file header
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		int count = 0;
+		long position = 4;
+		while (true) {
+			raf.seek(position);
+			int length = raf.readInt();
+			if (length == 0)
+				break;
+			count++;
+			position += 8 + length;
+		}
+		raf.close();
+		Assert.assertEquals(added, count);
+
+		journal = new ScheduleJournal(file, 4096, false);
+		Assert.assertEquals(added, journal.size());
+		for (int i = 0; i < added; i++)
+			Assert.assertEquals(i, journal.getRecords().get(i).getTime());
+		journal.close();
+	}
+
+	@Test
+	public void RecoversInterruptedCompaction() throws Exception {
+		File file = createJournalFile();
+		File compacted = new File(file.getPath() + ".compact");
+		ScheduleJournal journal = new ScheduleJournal(file, 4096, false);
+		journal.add(ScheduleJournal.FIRING, 1000, "pending", null);
+		journal.compact();
+		Assert.assertFalse(compacted.exists());
+		journal.close();
+
+		// a crash while writing the compacted file leaves the journal intact
+		RandomAccessFile raf = new RandomAccessFile(compacted, "rw");
+		raf.write(new byte[] { 1, 2, 3 });
+		raf.close();
+		journal = new ScheduleJournal(file, 4096, false);
+		Assert.assertFalse(compacted.exists());
+		Assert.assertEquals(1, journal.size());
+		journal.close();
+
+		// a compacted file without journal takes its place
+		Assert.assertTrue(file.renameTo(compacted));
+		journal = new ScheduleJournal(file, 4096, false);
+		Assert.assertFalse(compacted.exists());
+		Assert.assertEquals(1, journal.size());
+		Assert.assertEquals("pending", journal.getRecords().get(0).getName());
+		journal.close();
+	}
+
+	@Test
+	public void IgnoresDamagedRecords() throws Exception {
+		File file = createJournalFile();
+		ScheduleJournal journal = new ScheduleJournal(file, 4096, true);
+		journal.add(ScheduleJournal.FIRING, 1000, "intact", null);
+		journal.add(ScheduleJournal.FIRING, 2000, "damaged", null);
+		journal.close();
+
+		// the file header and the first record take 4 + 39 bytes
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(4 + 39 + 8 + 20);
+		raf.write(0xff);
+		raf.close();
+
+		journal = new ScheduleJournal(file, 4096, false);
+		Assert.assertEquals(1, journal.size());
+		Assert.assertEquals("intact", journal.getRecords().get(0).getName());
+		journal.add(ScheduleJournal.FIRING, 3000, "later", null);
+		journal.close();
+
+		journal = new ScheduleJournal(file, 4096, false);
+		Assert.assertEquals(2, journal.size());
+		Assert.assertEquals("later", journal.getRecords().get(1).getName());
+		journal.close();
+	}
+
+	@Test
+	public void RestoresMissedFirings() throws Exception {
+		File file = createJournalFile();
+		ScheduleJournal journal = new ScheduleJournal(file);
+		TestContext context = EvokeTests.createTestContext();
+		MedicalLogicModule mlm = EvokeTests.parseEvoke("1992-03-04");
+		MlmSchedule schedule = new MlmSchedule(context, null);
+		schedule.setJournal(journal);
+		schedule.add(mlm);
+		Assert.assertEquals(1, journal.size());
+		journal.close();
+
+		// restarted after the run time
+		journal = new ScheduleJournal(file);
+		context.setCurrentTime(EvokeTests.createDate(1993, 0, 1));
+		schedule = new MlmSchedule(context, null);
+		schedule.setJournal(journal);
+		schedule.restore(mlm, journal.getRecords().get(0));
+		Assert.assertEquals(Arrays.asList(mlm), schedule.pollDue(context.getCurrentTime()));
+		Assert.assertEquals(0, journal.size());
+		journal.close();
+	}
+
+	@Test(timeout = 10000)
+	public void DaemonRestoresDelayedTriggers() throws Exception {
+		File file = createJournalFile();
+		TestContext context = new TestContext();
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		mlms.add(EvokeTests.parseEvoke("e1 := EVENT{lab result storage}", "1 second after time of e1",
+				"write \"delayed\";"));
+
+		ScheduleJournal journal = new ScheduleJournal(file);
+		MlmDaemon daemon = new MlmDaemon(mlms, context, null);
+		daemon.setJournal(journal);
+		daemon.fireEvent("lab result storage");
+		Assert.assertEquals(1, journal.size());
+		// stopped before the trigger expired
+		journal.close();
+
+		journal = new ScheduleJournal(file);
+		daemon = new MlmDaemon(mlms, context, null);
+		daemon.setJournal(journal);
+		Assert.assertEquals(1, daemon.getDelayedTriggerCount());
+		daemon.run();
+		Assert.assertEquals("delayed\n", context.getOutputText());
+		// only the subscription of the MLM remains
+		Assert.assertEquals(1, journal.size());
+		Assert.assertEquals(ScheduleJournal.SUBSCRIPTION, journal.getRecords().get(0).getKind());
+		journal.close();
+	}
+
+	private static MedicalLogicModule parseMlm(String name, String version, String data, String evoke)
+			throws Exception {
+		String code = ActionTests.inputStreamToString(EvokeTests.class.getResourceAsStream("EvokeTemplate.mlm"))
+				.replace("test_mlm", name).replace("1.00", version).replace("$DATA", data)
+				.replace("$EVOKE", evoke).replace("$LOGIC", "conclude true;").replace("$ACTION", "");
+		return new Compiler().compileMlm(new StringReader(code));
+	}
+
+	/** The MLMs as compiled again after a restart; every data slot reads once. */
+	private static List<MedicalLogicModule> parseMlms(String onEventVersion) throws Exception {
+		List<MedicalLogicModule> mlms = new ArrayList<MedicalLogicModule>();
+		mlms.add(parseMlm("on_event", onEventVersion, "e1 := EVENT{lab result storage}; x := READ {a};", "e1"));
+		mlms.add(parseMlm("cyclic", "1.00", "x := READ {b};", "every 1 day for 10 years starting 1992-03-04"));
+		return mlms;
+	}
+
+	@Test
+	public void DaemonRestoresWithoutEvaluatingEvokeSlots() throws Exception {
+		File file = createJournalFile();
+		final int[] reads = new int[1];
+		TestContext context = new TestContext(EvokeTests.createDate(1990, 0, 1)) {
+			@Override
+			public DatabaseQuery createQuery(String mapping) {
+				reads[0]++;
+				return super.createQuery(mapping);
+			}
+		};
+
+		ScheduleJournal journal = new ScheduleJournal(file);
+		MlmDaemon daemon = new MlmDaemon(parseMlms("1.00"), context, null);
+		daemon.setJournal(journal);
+		// schedules the MLMs and returns
+		daemon.stop();
+		daemon.run();
+		Assert.assertEquals(2, reads[0]);
+		// a subscription for each MLM, and the next run time of cyclic
+		Assert.assertEquals(3, journal.size());
+		journal.close();
+
+		reads[0] = 0;
+		journal = new ScheduleJournal(file);
+		daemon = new MlmDaemon(parseMlms("1.00"), context, null);
+		daemon.setJournal(journal);
+		daemon.stop();
+		daemon.run();
+		daemon.fireEvent("unrelated event");
+		Assert.assertEquals(0, reads[0]);
+		Assert.assertEquals(3, journal.size());
+		// the evoke slot is evaluated when its event is fired
+		daemon.fireEvent("lab result storage");
+		Assert.assertEquals(1, reads[0]);
+		journal.close();
+
+		// a new version of an MLM is evaluated again
+		reads[0] = 0;
+		journal = new ScheduleJournal(file);
+		daemon = new MlmDaemon(parseMlms("1.01"), context, null);
+		daemon.setJournal(journal);
+		Assert.assertEquals(1, reads[0]);
+		journal.close();
+	}
+}
@@ -0,0 +1,75 @@
+package arden.tests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import arden.runtime.events.TimerWheel;
+
+public class TimerWheelTests {
+	private static final long START = 1262304000000L; // 2010-01-01
+
+	@Test
+	public void ExpiresInOrderOfDeadlines() throws Exception {
+		Random random = new Random(42);
+		TimerWheel<Long> wheel = new TimerWheel<Long>(START);
+		List<Long> deadlines = new ArrayList<Long>();
+		for (int i = 0; i < 20000; i++) {
+			// from milliseconds to years ahead
+			long deadline = START + (long) Math.pow(10, random.nextDouble() * 11);
+			deadlines.add(deadline);
+			wheel.schedule(deadline, deadline);
+		}
+		Collections.sort(deadlines);
+		Assert.assertEquals(deadlines.size(), wheel.size());
+
+		List<Long> expired = new ArrayList<Long>();
+		long now = START;
+		while (!wheel.isEmpty()) {
+			long next = wheel.getNextExpiry();
+			Assert.assertTrue(next <= deadlines.get(expired.size()));
+			// sometimes jump ahead of the next expiry
+			now = Math.max(now, next) + (random.nextBoolean() ? 0 : random.nextInt(100000));
+			for (Long deadline : wheel.advance(now)) {
+				Assert.assertTrue(deadline <= now);
+				expired.add(deadline);
+			}
+			if (expired.size() < deadlines.size())
+				Assert.assertTrue(deadlines.get(expired.size()) > now);
+		}
+		Assert.assertEquals(deadlines, expired);
+	}
+
+	@Test
+	public void Cancel() throws Exception {
+		TimerWheel<String> wheel = new TimerWheel<String>(START);
+		TimerWheel.Timer<String> first = wheel.schedule(START + 10, "first");
+		TimerWheel.Timer<String> second = wheel.schedule(START + 100000, "second");
+		wheel.schedule(START + 100000, "third");
+		Assert.assertTrue(wheel.cancel(second));
+		Assert.assertFalse(wheel.cancel(second));
+		Assert.assertFalse(second.isPending());
+		Assert.assertEquals(2, wheel.size());
+		Assert.assertEquals(1, wheel.advance(START + 10).size());
+		Assert.assertFalse(wheel.cancel(first));
+		Assert.assertEquals("[third]", wheel.advance(START + 200000).toString());
+		Assert.assertTrue(wheel.isEmpty());
+		Assert.assertEquals(Long.MAX_VALUE, wheel.getNextExpiry());
+	}
+
+	@Test
+	public void OverdueAndCoarseTicks() throws Exception {
+		TimerWheel<String> wheel = new TimerWheel<String>(START, 1000);
+		wheel.schedule(START - 5000, "overdue");
+		wheel.schedule(START + 1500, "later");
+		Assert.assertEquals("[overdue]", wheel.advance(START).toString());
+		// rounded up to the next whole second
+		Assert.assertEquals(START + 2000, wheel.getNextExpiry());
+		Assert.assertTrue(wheel.advance(START + 1999).isEmpty());
+		Assert.assertEquals("[later]", wheel.advance(START + 2000).toString());
+	}
+}